@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.cloudio.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.gef4.cloudio.Word;
+import org.eclipse.gef4.cloudio.layout.AwtExtentCalculator;
+import org.eclipse.gef4.cloudio.util.CloudMatrix;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.FontData;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AwtExtentCalculator} in headless mode, i.e. without a
+ * display.
+ */
+public class AwtExtentCalculatorTests {
+
+	private static final int ACCURACY = 4;
+
+	private static final int SIZE = 1024;
+
+	@BeforeClass
+	public static void setUpClass() {
+		System.setProperty("java.awt.headless", "true");
+	}
+
+	@Test
+	public void testCalcExtents() {
+		List<Word> words = new ArrayList<Word>();
+		words.add(getWord("Cloudio", 0));
+		words.add(getWord("Cloudio", 90));
+		words.add(getWord("gef", -45));
+		new AwtExtentCalculator(ACCURACY, SIZE, 96).calcExtents(words, 2);
+		for (Word word : words) {
+			Assert.assertTrue(word.stringExtent.x > 0);
+			Assert.assertTrue(word.stringExtent.y > 0);
+			Assert.assertTrue(word.width > 0);
+			Assert.assertTrue(word.height > 0);
+			Assert.assertNotNull(word.tree);
+
+			// the cells of the word lie within its extents
+			CloudMatrix matrix = new CloudMatrix(SIZE, ACCURACY);
+			Assert.assertTrue(word.tree.fits(matrix, 0, 0));
+			word.tree.move(0, 0);
+			word.tree.place(matrix, word.id);
+			int cells = 0;
+			for (int x = 0; x < SIZE / ACCURACY; x++) {
+				for (int y = 0; y < SIZE / ACCURACY; y++) {
+					if (!matrix.isEmpty(x, y)) {
+						Assert.assertEquals(word.id, matrix.get(x, y));
+						Assert.assertTrue(x * ACCURACY < word.width);
+						Assert.assertTrue(y * ACCURACY < word.height);
+						cells++;
+					}
+				}
+			}
+			Assert.assertTrue(cells > 0);
+		}
+		Word horizontal = words.get(0);
+		Word vertical = words.get(1);
+		Assert.assertEquals(horizontal.stringExtent, vertical.stringExtent);
+		Assert.assertEquals(horizontal.width, vertical.height);
+		Assert.assertEquals(horizontal.height, vertical.width);
+		Assert.assertTrue(horizontal.width > horizontal.height);
+	}
+
+	private static Word getWord(String string, float angle) {
+		Word word = new Word(string);
+		word.setFontData(new FontData[] { new FontData("Sans", 24, SWT.BOLD) });
+		word.angle = angle;
+		word.id = 1;
+		return word;
+	}
+
+}
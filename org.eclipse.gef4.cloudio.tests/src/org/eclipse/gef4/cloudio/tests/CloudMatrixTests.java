@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.cloudio.tests;
+
+import org.eclipse.gef4.cloudio.util.CloudMatrix;
+import org.eclipse.gef4.cloudio.util.RectTree;
+import org.eclipse.gef4.cloudio.util.SmallRect;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the bitset of the {@link CloudMatrix} with the masks of
+ * {@link RectTree}s, which cross the boundaries of the <code>long</code>s
+ * of a row.
+ */
+public class CloudMatrixTests {
+
+	@Test
+	public void testWordBoundary() {
+		CloudMatrix matrix = new CloudMatrix(256, 1);
+		RectTree word = createTree(10, 2);
+		// columns 60 to 69 are stored in two longs
+		Assert.assertTrue(word.fits(matrix, 60, 0));
+		word.move(60, 0);
+		word.place(matrix, (short) 1);
+		for (int x = 56; x < 74; x++) {
+			boolean inside = x >= 60 && x < 70;
+			for (int y = 0; y < 2; y++) {
+				Assert.assertEquals(!inside, matrix.isEmpty(x, y));
+				Assert.assertEquals(inside ? 1 : RectTree.EMPTY,
+						matrix.get(x, y));
+			}
+			Assert.assertTrue(matrix.isEmpty(x, 2));
+		}
+
+		RectTree cell = createTree(1, 1);
+		Assert.assertFalse(cell.fits(matrix, 63, 0));
+		Assert.assertFalse(cell.fits(matrix, 64, 1));
+		Assert.assertTrue(cell.fits(matrix, 59, 0));
+		Assert.assertTrue(cell.fits(matrix, 70, 1));
+		// overlapping in the first or the second long only
+		Assert.assertFalse(word.fits(matrix, 51, 1));
+		Assert.assertFalse(word.fits(matrix, 69, 0));
+		Assert.assertTrue(word.fits(matrix, 50, 0));
+		Assert.assertTrue(word.fits(matrix, 70, 0));
+		Assert.assertTrue(word.fits(matrix, 60, 2));
+	}
+
+	@Test
+	public void testWideMask() {
+		CloudMatrix matrix = new CloudMatrix(256, 1);
+		// a mask of two longs, which spreads over three longs of the row
+		RectTree wide = createTree(70, 1);
+		Assert.assertTrue(wide.fits(matrix, 100, 0));
+		wide.move(100, 0);
+		wide.place(matrix, (short) 2);
+		Assert.assertTrue(matrix.isEmpty(99, 0));
+		Assert.assertFalse(matrix.isEmpty(100, 0));
+		Assert.assertFalse(matrix.isEmpty(127, 0));
+		Assert.assertFalse(matrix.isEmpty(128, 0));
+		Assert.assertFalse(matrix.isEmpty(169, 0));
+		Assert.assertTrue(matrix.isEmpty(170, 0));
+		Assert.assertEquals(2, matrix.get(128, 0));
+
+		RectTree cell = createTree(1, 1);
+		Assert.assertFalse(cell.fits(matrix, 169, 0));
+		Assert.assertTrue(cell.fits(matrix, 170, 0));
+		Assert.assertFalse(wide.fits(matrix, 31, 0));
+		Assert.assertTrue(wide.fits(matrix, 30, 0));
+		Assert.assertTrue(wide.fits(matrix, 170, 0));
+		Assert.assertFalse(wide.fits(matrix, 187, 0));
+	}
+
+	@Test
+	public void testRightEdge() {
+		// the bits beyond the last cell of a row are always set
+		CloudMatrix matrix = new CloudMatrix(100, 1);
+		RectTree word = createTree(10, 1);
+		Assert.assertTrue(word.fits(matrix, 90, 0));
+		Assert.assertFalse(word.fits(matrix, 91, 0));
+		Assert.assertTrue(word.fits(matrix, 90, 99));
+		Assert.assertFalse(word.fits(matrix, 90, 100));
+		Assert.assertFalse(word.fits(matrix, -1, 0));
+	}
+
+	@Test
+	public void testReplaceIds() {
+		CloudMatrix matrix = new CloudMatrix(256, 1);
+		RectTree word = createTree(10, 1);
+		word.move(60, 0);
+		word.place(matrix, (short) 1);
+		word.move(70, 0);
+		word.place(matrix, (short) 2);
+		// the first word is removed, the second one gets the id 1
+		matrix.replaceIds(new short[] { RectTree.EMPTY, RectTree.EMPTY, 1 });
+		for (int x = 60; x < 70; x++) {
+			Assert.assertTrue(matrix.isEmpty(x, 0));
+			Assert.assertEquals(RectTree.EMPTY, matrix.get(x, 0));
+		}
+		Assert.assertEquals(1, matrix.get(70, 0));
+		Assert.assertTrue(word.fits(matrix, 60, 0));
+		Assert.assertFalse(word.fits(matrix, 61, 0));
+
+		matrix.reset();
+		Assert.assertTrue(matrix.isEmpty(70, 0));
+		Assert.assertTrue(word.fits(matrix, 70, 0));
+	}
+
+	/**
+	 * Creates a tree with all cells of the given number of columns and rows
+	 * filled, with one pixel per cell.
+	 */
+	private static RectTree createTree(int columns, int rows) {
+		RectTree tree = new RectTree(new SmallRect(0, 0, 128, 128), 1);
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < columns; x++) {
+				tree.insert(new SmallRect(x, y, 1, 1), (short) 1);
+			}
+		}
+		return tree;
+	}
+
+}
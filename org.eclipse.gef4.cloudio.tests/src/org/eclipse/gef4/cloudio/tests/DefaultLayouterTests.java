@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.cloudio.tests;
+
+import org.eclipse.gef4.cloudio.Word;
+import org.eclipse.gef4.cloudio.layout.DefaultLayouter;
+import org.eclipse.gef4.cloudio.util.CloudMatrix;
+import org.eclipse.gef4.cloudio.util.RectTree;
+import org.eclipse.gef4.cloudio.util.SmallRect;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DefaultLayouter} without a display, with words whose
+ * trees are filled rectangles.
+ */
+public class DefaultLayouterTests {
+
+	private static final int SIZE = 512;
+
+	private static final int ACCURACY = 4;
+
+	private static final int WORDS = 80;
+
+	@Test
+	public void testThreads() {
+		int[] sequential = layout(1);
+		int[] parallel = layout(4);
+		Assert.assertArrayEquals(sequential, parallel);
+		int placed = 0;
+		for (int i = 0; i < WORDS; i++) {
+			if (sequential[2 * i] != Integer.MIN_VALUE) {
+				placed++;
+			}
+		}
+		Assert.assertTrue(placed > WORDS / 2);
+	}
+
+	/**
+	 * Places the words with the given number of threads and returns the
+	 * locations of the words, or {@link Integer#MIN_VALUE} for words which
+	 * could not be placed.
+	 */
+	private static int[] layout(int threads) {
+		DefaultLayouter layouter = new DefaultLayouter(20, 10);
+		layouter.setOption(DefaultLayouter.SEED, 42L);
+		layouter.setOption(DefaultLayouter.THREADS, threads);
+		try {
+			Rectangle area = new Rectangle(0, 0, SIZE, SIZE);
+			CloudMatrix matrix = new CloudMatrix(SIZE, ACCURACY);
+			int[] locations = new int[2 * WORDS];
+			for (int i = 0; i < WORDS; i++) {
+				Word word = new Word("word" + i);
+				word.id = (short) (i + 1);
+				word.width = 8 + 37 * i % 120;
+				word.height = 8 + 13 * i % 32;
+				word.tree = createTree(word.width, word.height);
+				Point offset = layouter.getInitialOffset(word, area);
+				if (layouter.layout(offset, word, area, matrix)) {
+					locations[2 * i] = word.x;
+					locations[2 * i + 1] = word.y;
+				} else {
+					locations[2 * i] = Integer.MIN_VALUE;
+					locations[2 * i + 1] = Integer.MIN_VALUE;
+				}
+			}
+			return locations;
+		} finally {
+			layouter.dispose();
+		}
+	}
+
+	private static RectTree createTree(int width, int height) {
+		RectTree tree = new RectTree(new SmallRect(0, 0, 128, 128), ACCURACY);
+		for (int y = 0; y < height; y += ACCURACY) {
+			for (int x = 0; x < width; x += ACCURACY) {
+				tree.insert(new SmallRect(x, y, ACCURACY, ACCURACY),
+						(short) 1);
+			}
+		}
+		return tree;
+	}
+
+}
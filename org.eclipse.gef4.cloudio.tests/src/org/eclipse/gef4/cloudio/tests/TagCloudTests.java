@@ -16,6 +16,7 @@ import java.util.Set;
 
 import org.eclipse.gef4.cloudio.TagCloud;
 import org.eclipse.gef4.cloudio.Word;
+import org.eclipse.gef4.cloudio.util.RectTree;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseListener;
@@ -478,6 +479,114 @@ public class TagCloudTests {
 		Assert.assertTrue(rectChanged);
 	}
 
+	@Test
+	public void testAddWords() {
+		TagCloud cloud = new TagCloud(composite, SWT.NONE);
+		List<Word> words = new ArrayList<Word>();
+		for (int i = 0; i < 10; i++) {
+			words.add(getWord());
+		}
+		cloud.setWords(words, null);
+		List<Rectangle> rects = new ArrayList<Rectangle>();
+		for (Word word : words) {
+			rects.add(new Rectangle(word.x, word.y, word.width, word.height));
+		}
+		List<Word> added = new ArrayList<Word>();
+		for (int i = 0; i < 5; i++) {
+			added.add(getWord());
+		}
+		int placed = cloud.addWords(added, null);
+		Assert.assertEquals(5, placed);
+		Assert.assertEquals(15, cloud.getWords().size());
+		// Existing words must not have been moved
+		for (int i = 0; i < words.size(); i++) {
+			Word w = words.get(i);
+			Assert.assertEquals(rects.get(i), new Rectangle(w.x, w.y,
+					w.width, w.height));
+		}
+		// Ids must match the positions
+		for (int i = 0; i < cloud.getWords().size(); i++) {
+			Assert.assertEquals(i + 1, cloud.getWords().get(i).id);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddExistingWord() {
+		TagCloud cloud = new TagCloud(composite, SWT.NONE);
+		List<Word> words = new ArrayList<Word>();
+		words.add(getWord());
+		cloud.setWords(words, null);
+		cloud.addWords(words, null);
+	}
+
+	@Test
+	public void testRemoveWords() {
+		TagCloud cloud = new TagCloud(composite, SWT.NONE);
+		List<Word> words = new ArrayList<Word>();
+		for (int i = 0; i < 10; i++) {
+			words.add(getWord());
+		}
+		cloud.setWords(words, null);
+		List<Word> remaining = new ArrayList<Word>(cloud.getWords());
+		Set<Word> removed = new HashSet<Word>(remaining.subList(0, 3));
+		cloud.setSelection(removed);
+		remaining.removeAll(removed);
+		List<Rectangle> rects = new ArrayList<Rectangle>();
+		for (Word word : remaining) {
+			rects.add(new Rectangle(word.x, word.y, word.width, word.height));
+		}
+		cloud.removeWords(removed);
+		Assert.assertEquals(remaining, cloud.getWords());
+		Assert.assertTrue(cloud.getSelection().isEmpty());
+		// Remaining words must not have been moved
+		for (int i = 0; i < remaining.size(); i++) {
+			Word w = remaining.get(i);
+			Assert.assertEquals(rects.get(i), new Rectangle(w.x, w.y,
+					w.width, w.height));
+			Assert.assertEquals(i + 1, w.id);
+		}
+		// The freed space can be used again
+		int placed = cloud.addWords(new ArrayList<Word>(removed), null);
+		Assert.assertEquals(3, placed);
+	}
+
+	@Test
+	public void testMaskCache() {
+		TagCloud cloud = new TagCloud(composite, SWT.NONE);
+		List<Word> words = new ArrayList<Word>();
+		for (int i = 0; i < 5; i++) {
+			words.add(getWord());
+		}
+		cloud.setWords(words, null);
+		// Equal words share the cached tree from now on
+		cloud.layoutCloud(null, true);
+		RectTree tree = words.get(0).tree;
+		for (Word word : words) {
+			Assert.assertSame(tree, word.tree);
+		}
+		cloud.layoutCloud(null, true);
+		Assert.assertSame(tree, words.get(0).tree);
+		// A word with another angle is no hit
+		words.get(0).angle = 90;
+		cloud.layoutCloud(null, true);
+		Assert.assertNotSame(tree, words.get(0).tree);
+		Assert.assertSame(tree, words.get(1).tree);
+		// Entries exceeding the limit are evicted
+		cloud.setMaskCacheSize(1);
+		cloud.layoutCloud(null, true);
+		Assert.assertNotSame(tree, words.get(1).tree);
+		Assert.assertNotSame(words.get(1).tree, words.get(2).tree);
+		cloud.setMaskCacheSize(0);
+		cloud.layoutCloud(null, true);
+		Assert.assertNotSame(words.get(1).tree, words.get(2).tree);
+		// Words are cached again within a larger limit
+		cloud.setMaskCacheSize(1024 * 1024);
+		cloud.layoutCloud(null, true);
+		cloud.layoutCloud(null, true);
+		Assert.assertSame(words.get(1).tree, words.get(2).tree);
+		Assert.assertNotSame(words.get(0).tree, words.get(1).tree);
+	}
+
 	// @Test
 	// public void testLayoutTooLarge() {
 	// TagCloud cloud = new TagCloud(composite, SWT.NONE);
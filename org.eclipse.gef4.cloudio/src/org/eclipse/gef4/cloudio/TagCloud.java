@@ -9,6 +9,7 @@
 package org.eclipse.gef4.cloudio;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -22,6 +23,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.gef4.cloudio.layout.AwtExtentCalculator;
 import org.eclipse.gef4.cloudio.layout.DefaultLayouter;
 import org.eclipse.gef4.cloudio.layout.ILayouter;
 import org.eclipse.gef4.cloudio.util.CloudMatrix;
@@ -147,6 +149,12 @@ public class TagCloud extends Canvas {
 
 	private CloudMatrix cloudMatrix;
 
+	/**
+	 * The words which have been placed, and which are drawn on the text layer
+	 * image.
+	 */
+	private Set<Word> visibleWords = new HashSet<Word>();
+
 	/**
 	 * Executor service to process the creation of {@link RectTree} objects in
 	 * parallel.
@@ -171,6 +179,16 @@ public class TagCloud extends Canvas {
 
 	private float boostFactor;
 
+	/**
+	 * If set, word extents are calculated with java.awt instead of SWT.
+	 */
+	private boolean awtExtents;
+
+	/**
+	 * Extents of recently rendered words, reused by {@link #calcExtents}.
+	 */
+	private final WordMaskCache maskCache = new WordMaskCache(32 * 1024 * 1024);
+
 	private Listener hBarListener;
 
 	private Listener resizeListener;
@@ -283,6 +301,7 @@ public class TagCloud extends Canvas {
 		if (!this.isDisposed()) {
 			gc.dispose();
 		}
+		maskCache.clear();
 		super.dispose();
 	}
 
@@ -458,36 +477,60 @@ public class TagCloud extends Canvas {
 		}
 		if (wordsToUse == null)
 			return;
-		double step = 80D / wordsToUse.size();
+		calcExtents(wordsToUse, (short) 1, monitor);
+	}
+
+	/**
+	 * Calculates the bounds of the given words, sorts them by size and
+	 * assigns ids to them, starting with <code>firstId</code>.
+	 */
+	private void calcExtents(List<Word> words, short firstId,
+			IProgressMonitor monitor) {
+		double step = 80D / words.size();
 		double current = 0;
 		int next = 10;
 		executors = Executors.newFixedThreadPool(getNumberOfThreads());
 		final Color color = gc.getDevice().getSystemColor(SWT.COLOR_BLACK);
-		for (final Word word : wordsToUse) {
+		final AwtExtentCalculator calculator = awtExtents ? createExtentCalculator()
+				: null;
+		for (final Word word : words) {
 			FontData[] fontData = word.getFontData();
 			int fontSize = (int) getFontSize(word);
 			for (FontData data : fontData) {
 				data.setHeight((int) fontSize);
 			}
-			final Font font = new Font(gc.getDevice(), fontData);
-			gc.setFont(font);
-			final Point stringExtent = gc.stringExtent(word.string);
-			FontMetrics fm = gc.getFontMetrics();
-			stringExtent.y = fm.getHeight();
-			executors.execute(new Runnable() {
-				@Override
-				public void run() {
-					double radian = Math.toRadians(word.angle);
-					final double sin = Math.abs(Math.sin(radian));
-					final double cos = Math.abs(Math.cos(radian));
-					final int x = (int) ((cos * stringExtent.x) + (sin * stringExtent.y));
-					final int y = (int) ((cos * stringExtent.y) + (sin * stringExtent.x));
-					ImageData id = createImageData(word, font, stringExtent,
-							sin, cos, x, y, color);
-					calcWordExtents(word, id);
-					font.dispose();
-				}
-			});
+			if (maskCache.apply(word)) {
+				// extents are already known
+			} else if (calculator != null) {
+				executors.execute(new Runnable() {
+					@Override
+					public void run() {
+						calculator.calcExtents(word);
+						maskCache.put(word);
+					}
+				});
+			} else {
+				final Font font = new Font(gc.getDevice(), fontData);
+				gc.setFont(font);
+				final Point stringExtent = gc.stringExtent(word.string);
+				FontMetrics fm = gc.getFontMetrics();
+				stringExtent.y = fm.getHeight();
+				executors.execute(new Runnable() {
+					@Override
+					public void run() {
+						double radian = Math.toRadians(word.angle);
+						final double sin = Math.abs(Math.sin(radian));
+						final double cos = Math.abs(Math.cos(radian));
+						final int x = (int) ((cos * stringExtent.x) + (sin * stringExtent.y));
+						final int y = (int) ((cos * stringExtent.y) + (sin * stringExtent.x));
+						ImageData id = createImageData(word, font, stringExtent,
+								sin, cos, x, y, color);
+						calcWordExtents(word, id);
+						maskCache.put(word);
+						font.dispose();
+					}
+				});
+			}
 			if (monitor != null) {
 				current += step;
 				if (current > next) {
@@ -502,19 +545,26 @@ public class TagCloud extends Canvas {
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-		Collections.sort(wordsToUse, new Comparator<Word>() {
+		Collections.sort(words, new Comparator<Word>() {
 
 			@Override
 			public int compare(Word o1, Word o2) {
 				return (o2.width * o2.height) - (o1.width * o1.height);
 			}
 		});
-		short i = 1;
-		for (Word word : wordsToUse) {
+		short i = firstId;
+		for (Word word : words) {
 			word.id = i++;
 		}
 	}
 
+	private AwtExtentCalculator createExtentCalculator() {
+		AwtExtentCalculator calculator = new AwtExtentCalculator(accuracy,
+				maxSize, getDisplay().getDPI().y);
+		calculator.setAntialias(antialias != SWT.OFF);
+		return calculator;
+	}
+
 	private ImageData createImageData(final Word word, Font font,
 			Point stringExtent, final double sin, final double cos, int x,
 			int y, Color color) {
@@ -615,6 +665,7 @@ public class TagCloud extends Canvas {
 		gc.fillRectangle(tmpImage.getBounds());
 		executors = Executors.newFixedThreadPool(1);
 		int success = 0;
+		visibleWords.clear();
 		if (wordsToUse != null) {
 			double step = 100D / wordsToUse.size();
 			final GC g = gc;
@@ -627,6 +678,7 @@ public class TagCloud extends Canvas {
 					continue;
 				}
 				success++;
+				visibleWords.add(word);
 				if (word.x < r.x) {
 					r.x = word.x;
 				}
@@ -700,6 +752,26 @@ public class TagCloud extends Canvas {
 	 */
 	public int setWords(List<Word> values, IProgressMonitor monitor) {
 		checkWidget();
+		checkWords(values);
+		this.wordsToUse = new ArrayList<Word>(values);
+		if (boost > 0) {
+			double factor = boostFactor;
+			int i = boost;
+			for (Word word : values) {
+				if (factor <= 1) {
+					break;
+				}
+				word.weight *= factor;
+				factor -= 0.2;
+				i--;
+				if (i == 0)
+					break;
+			}
+		}
+		return layoutCloud(monitor, true);
+	}
+
+	private void checkWords(List<Word> values) {
 		Assert.isLegal(values != null, "List must not be null!");
 		for (Word word : values) {
 			Assert.isLegal(word != null, "Word must not be null!");
@@ -721,22 +793,152 @@ public class TagCloud extends Canvas {
 					"Angle must be between -90 and +90 (inclusive), but was "
 							+ word.angle);
 		}
-		this.wordsToUse = new ArrayList<Word>(values);
-		if (boost > 0) {
-			double factor = boostFactor;
-			int i = boost;
-			for (Word word : values) {
-				if (factor <= 1) {
-					break;
+	}
+
+	/**
+	 * Adds the given words to the cloud, without changing the positions of
+	 * the words which are already displayed. The new words are placed into
+	 * the remaining free space, and only the regions they cover are
+	 * repainted. To resize a word, remove it with
+	 * {@link #removeWords(Collection)}, change its weight and add it again.
+	 * If no word is displayed yet, a full layout is done instead.
+	 * 
+	 * @param values
+	 *            words which are not yet part of the cloud
+	 * @param monitor
+	 *            may be <code>null</code>.
+	 * @return the number of words which could be placed
+	 */
+	public int addWords(List<Word> values, IProgressMonitor monitor) {
+		checkWidget();
+		checkWords(values);
+		if (wordsToUse == null) {
+			return setWords(values, monitor);
+		}
+		List<Word> added = new ArrayList<Word>(values);
+		for (Word word : added) {
+			Assert.isLegal(!wordsToUse.contains(word),
+					"Word is already part of the cloud: " + word);
+		}
+		if (added.isEmpty()) {
+			return 0;
+		}
+		if (visibleWords.isEmpty()) {
+			wordsToUse.addAll(added);
+			return layoutCloud(monitor, true);
+		}
+		if (monitor != null) {
+			monitor.subTask("Calculating word boundaries...");
+		}
+		calcExtents(added, (short) (wordsToUse.size() + 1), monitor);
+		wordsToUse.addAll(added);
+		if (monitor != null) {
+			monitor.subTask("Placing words...");
+		}
+		final Rectangle cloudArea = getCloudArea();
+		List<Rectangle> dirty = new ArrayList<Rectangle>();
+		int success = 0;
+		for (Word word : added) {
+			Point point = layouter.getInitialOffset(word, cloudArea);
+			if (!layouter.layout(point, word, cloudArea, cloudMatrix)) {
+				System.err.println("Failed to place " + word.string);
+				continue;
+			}
+			success++;
+			visibleWords.add(word);
+			dirty.add(new Rectangle(word.x, word.y, word.width, word.height));
+		}
+		repaint(dirty);
+		return success;
+	}
+
+	/**
+	 * Removes the given words from the cloud, without changing the positions
+	 * of the remaining words. Only the regions covered by the removed words
+	 * are repainted. Words which are not part of the cloud are ignored.
+	 * 
+	 * @param values
+	 */
+	public void removeWords(Collection<Word> values) {
+		checkWidget();
+		Assert.isLegal(values != null, "Collection must not be null!");
+		if (wordsToUse == null)
+			return;
+		Set<Word> removed = new HashSet<Word>(values);
+		removed.retainAll(wordsToUse);
+		if (removed.isEmpty())
+			return;
+		List<Rectangle> dirty = new ArrayList<Rectangle>();
+		for (Word word : removed) {
+			if (visibleWords.remove(word)) {
+				dirty.add(new Rectangle(word.x, word.y, word.width,
+						word.height));
+			}
+		}
+		wordsToUse.removeAll(removed);
+		// Ids must match the positions in wordsToUse, see getWordAt()
+		short[] ids = new short[wordsToUse.size() + removed.size() + 1];
+		Arrays.fill(ids, RectTree.EMPTY);
+		short id = 1;
+		for (Word word : wordsToUse) {
+			ids[word.id] = id;
+			word.id = id++;
+		}
+		if (cloudMatrix != null) {
+			cloudMatrix.replaceIds(ids);
+		}
+		if (currentWord != null && removed.contains(currentWord)) {
+			currentWord = null;
+		}
+		repaint(dirty);
+		selection.removeAll(removed);
+	}
+
+	/**
+	 * Repaints the given regions of the text layer image, which is enlarged
+	 * if required, and updates the selection layer.
+	 */
+	private void repaint(List<Rectangle> dirty) {
+		if (textLayerImage == null || textLayerImage.isDisposed()
+				|| regionOffset == null)
+			return;
+		Rectangle bounds = textLayerImage.getBounds();
+		Rectangle region = new Rectangle(regionOffset.x, regionOffset.y,
+				bounds.width, bounds.height);
+		Rectangle grown = region;
+		for (Rectangle rect : dirty) {
+			grown = grown.union(rect);
+		}
+		if (!grown.equals(region)) {
+			Image image = new Image(getDisplay(), grown.width, grown.height);
+			GC gc = new GC(image);
+			gc.setBackground(getBackground());
+			gc.fillRectangle(image.getBounds());
+			gc.drawImage(textLayerImage, region.x - grown.x, region.y
+					- grown.y);
+			gc.dispose();
+			textLayerImage.dispose();
+			textLayerImage = image;
+			regionOffset = new Point(grown.x, grown.y);
+		}
+		GC gc = new GC(textLayerImage);
+		gc.setBackground(getBackground());
+		for (Rectangle rect : dirty) {
+			gc.setClipping(rect.x - regionOffset.x, rect.y - regionOffset.y,
+					rect.width, rect.height);
+			gc.fillRectangle(rect.x - regionOffset.x, rect.y - regionOffset.y,
+					rect.width, rect.height);
+			// Bounding boxes of neighbors may overlap the region
+			for (Word word : wordsToUse) {
+				if (visibleWords.contains(word)
+						&& rect.intersects(word.x, word.y, word.width,
+								word.height)) {
+					drawWord(gc, word, word.getColor());
 				}
-				word.weight *= factor;
-				factor -= 0.2;
-				i--;
-				if (i == 0)
-					break;
 			}
 		}
-		return layoutCloud(monitor, true);
+		gc.dispose();
+		setSelection(getSelection());
 	}
 
 	/**
@@ -1145,7 +1347,9 @@ public class TagCloud extends Canvas {
 		gc.fillRectangle(0, 0, textLayerImage.getBounds().width,
 				textLayerImage.getBounds().height);
 		for (Word word : wordsToUse) {
-			drawWord(gc, word, word.getColor());
+			if (visibleWords.contains(word)) {
+				drawWord(gc, word, word.getColor());
+			}
 		}
 		gc.dispose();
 		setSelection(getSelection());
@@ -1325,6 +1529,36 @@ public class TagCloud extends Canvas {
 		} else {
 			antialias = SWT.OFF;
 		}
+		maskCache.clear();
+	}
+
+	/**
+	 * Enable or disable the calculation of word extents with java.awt (see
+	 * {@link AwtExtentCalculator}) instead of SWT. The words are still drawn
+	 * with SWT, but their extents are calculated in parallel, without
+	 * creating an SWT image per word. Disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setAwtExtents(boolean enabled) {
+		checkWidget();
+		awtExtents = enabled;
+		maskCache.clear();
+	}
+
+	/**
+	 * Sets the maximum number of bytes used to cache the extents of
+	 * rendered words, such that words with the same string, font data and
+	 * angle need not be rendered again on the next layout. A value of
+	 * <code>0</code> disables the cache. By default, 32 MB are used.
+	 * 
+	 * @param bytes
+	 */
+	public void setMaskCacheSize(long bytes) {
+		checkWidget();
+		Assert.isLegal(bytes >= 0, "Cache size must not be negative: "
+				+ bytes);
+		maskCache.setMaxSize(bytes);
 	}
 
 	// /**
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.cloudio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.gef4.cloudio.util.RectTree;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * A least recently used cache of the extents of rendered words, that is
+ * their {@link RectTree}, width, height and string extent. Entries are
+ * identified by the string, the font data and the angle of a word, and
+ * evicted as soon as the estimated size of all entries exceeds a limit.
+ * <p>
+ * The trees are shared by all words with the same key. This is safe as
+ * the trees are not modified after their creation, apart from their
+ * position, which is set by the layouter right before it is tested.
+ * <p>
+ * The cache can be used from several threads.
+ */
+class WordMaskCache {
+
+	private static class Entry {
+
+		final RectTree tree;
+
+		final int width, height;
+
+		final Point stringExtent;
+
+		final int size;
+
+		Entry(Word word, String key) {
+			tree = word.tree;
+			width = word.width;
+			height = word.height;
+			stringExtent = new Point(word.stringExtent.x, word.stringExtent.y);
+			size = 64 + key.length() * 2 + tree.getMemorySize();
+		}
+
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+
+	private long maxSize;
+
+	private long size;
+
+	/**
+	 * Creates a cache which holds at most <code>maxSize</code> bytes.
+	 *
+	 * @param maxSize
+	 */
+	WordMaskCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Sets the maximum size of the cache in bytes, evicting entries if
+	 * required. A size of <code>0</code> disables the cache.
+	 *
+	 * @param maxSize
+	 */
+	synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	/**
+	 * Returns the estimated size of all entries in bytes.
+	 *
+	 * @return
+	 */
+	synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Copies the cached extents to the given word, whose font data must
+	 * already have the final height.
+	 *
+	 * @param word
+	 * @return <code>true</code> if the word was found in the cache
+	 */
+	synchronized boolean apply(Word word) {
+		Entry entry = entries.get(getKey(word));
+		if (entry == null) {
+			return false;
+		}
+		word.tree = entry.tree;
+		word.width = entry.width;
+		word.height = entry.height;
+		word.stringExtent = new Point(entry.stringExtent.x,
+				entry.stringExtent.y);
+		return true;
+	}
+
+	/**
+	 * Adds the extents of the given word, which have just been calculated.
+	 *
+	 * @param word
+	 */
+	synchronized void put(Word word) {
+		if (maxSize <= 0 || word.tree == null || word.stringExtent == null) {
+			return;
+		}
+		String key = getKey(word);
+		Entry entry = new Entry(word, key);
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			size -= old.size;
+		}
+		size += entry.size;
+		evict();
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private static String getKey(Word word) {
+		StringBuilder key = new StringBuilder(word.string);
+		key.append('\0').append(word.angle);
+		for (FontData data : word.getFontData()) {
+			key.append('\0').append(data);
+		}
+		return key.toString();
+	}
+
+}
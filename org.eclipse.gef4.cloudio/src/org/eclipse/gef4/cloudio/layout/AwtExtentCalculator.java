@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.cloudio.layout;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.gef4.cloudio.Word;
+import org.eclipse.gef4.cloudio.util.RectTree;
+import org.eclipse.gef4.cloudio.util.SmallRect;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * Calculates the extents of words with java.awt instead of an SWT
+ * <code>GC</code>, such that no display is required and words can be
+ * rasterized in parallel. For each word, the string is drawn into an
+ * off-screen {@link BufferedImage}, from which the
+ * <code>width</code>, <code>height</code>, <code>stringExtent</code> and
+ * <code>tree</code> of the word are computed, just like
+ * <code>TagCloud</code> does with SWT. The words can then be placed by an
+ * {@link ILayouter}.
+ * <p>
+ * The font of a word is the first element of its font data, with its
+ * height in points. As AWT fonts may be rendered slightly different than
+ * native fonts, words drawn with SWT may exceed the calculated extents by
+ * a pixel or two.
+ *
+ */
+public class AwtExtentCalculator {
+
+	/**
+	 * Pixels which are darker than this are part of the word.
+	 */
+	private static final int THRESHOLD = 250;
+
+	private final int accuracy;
+
+	private final int maxSize;
+
+	private final int dpi;
+
+	private boolean antialias = true;
+
+	/**
+	 * Creates a new calculator.
+	 *
+	 * @param accuracy
+	 *            the size of the cells of the word trees, as in
+	 *            <code>TagCloud</code>
+	 * @param maxSize
+	 *            the size of the cloud area
+	 * @param dpi
+	 *            the resolution used to convert font heights to pixels
+	 */
+	public AwtExtentCalculator(int accuracy, int maxSize, int dpi) {
+		Assert.isLegal(accuracy > 0,
+				"Parameter accuracy must be greater than 0, but was "
+						+ accuracy);
+		Assert.isLegal(maxSize > 0,
+				"Parameter maxSize must be greater than 0, but was " + maxSize);
+		Assert.isLegal(dpi > 0, "Parameter dpi must be greater than 0, but was "
+				+ dpi);
+		this.accuracy = accuracy;
+		this.maxSize = maxSize;
+		this.dpi = dpi;
+	}
+
+	/**
+	 * Enable or disable antialiasing. Enabled by default.
+	 *
+	 * @param enabled
+	 */
+	public void setAntialias(boolean enabled) {
+		this.antialias = enabled;
+	}
+
+	/**
+	 * Calculates the extents of the given words on the given number of
+	 * threads and returns when all of them are done. Neither the order nor
+	 * the ids of the words are changed.
+	 *
+	 * @param words
+	 * @param threads
+	 */
+	public void calcExtents(List<Word> words, int threads) {
+		Assert.isLegal(threads > 0, "Parameter threads must be greater than 0, but was " + threads);
+		ExecutorService executors = Executors.newFixedThreadPool(threads);
+		for (final Word word : words) {
+			executors.execute(new Runnable() {
+				@Override
+				public void run() {
+					calcExtents(word);
+				}
+			});
+		}
+		executors.shutdown();
+		try {
+			executors.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Calculates the extents of the given word. This method may be called
+	 * from several threads at once.
+	 *
+	 * @param word
+	 */
+	public void calcExtents(final Word word) {
+		Assert.isLegal(word.getFontData() != null,
+				"A word must define a fontdata array");
+		Font font = createFont(word.getFontData()[0]);
+		FontRenderContext frc = new FontRenderContext(null, antialias, true);
+		LineMetrics lm = font.getLineMetrics(word.string, frc);
+		final Point stringExtent = new Point((int) Math.ceil(font
+				.getStringBounds(word.string, frc).getWidth()),
+				(int) Math.ceil(lm.getHeight()));
+
+		double radian = Math.toRadians(word.angle);
+		final double sin = Math.abs(Math.sin(radian));
+		final double cos = Math.abs(Math.cos(radian));
+		final int x = (int) ((cos * stringExtent.x) + (sin * stringExtent.y));
+		final int y = (int) ((cos * stringExtent.y) + (sin * stringExtent.x));
+		word.width = x;
+		word.height = y;
+		word.stringExtent = stringExtent;
+
+		BufferedImage img = new BufferedImage(Math.max(1, x), Math.max(1, y),
+				BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = img.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, img.getWidth(), img.getHeight());
+		g.setColor(Color.BLACK);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				antialias ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+						: RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		// Same transformation as TagCloud.createImageData()
+		if (word.angle < 0) {
+			g.translate(0, img.getHeight() - (int) (cos * stringExtent.y));
+		} else {
+			g.translate((int) (sin * stringExtent.y), 0);
+		}
+		g.rotate(radian);
+		g.setFont(font);
+		g.drawString(word.string, 0, lm.getAscent());
+		g.dispose();
+
+		int max = Math.max(x, y);
+		int tmp = maxSize;
+		while (max < tmp) {
+			tmp = tmp / 2;
+		}
+		tmp = tmp * 2;
+		word.tree = new RectTree(new SmallRect(0, 0, tmp, tmp), accuracy);
+		insertCells(word, img);
+		word.tree.releaseRects();
+	}
+
+	/**
+	 * Inserts each cell of <code>accuracy</code> pixels which contains a
+	 * part of the word into the tree of the word.
+	 */
+	private void insertCells(Word word, BufferedImage img) {
+		final int width = img.getWidth();
+		final int height = img.getHeight();
+		final byte[] pixels = ((DataBufferByte) img.getRaster()
+				.getDataBuffer()).getData();
+		final int columns = (width + accuracy - 1) / accuracy;
+		final boolean[] filled = new boolean[columns];
+		for (int cellY = 0; cellY * accuracy < height; cellY++) {
+			int rows = Math.min(accuracy, height - cellY * accuracy);
+			for (int row = 0; row < rows; row++) {
+				int offset = (cellY * accuracy + row) * width;
+				for (int i = 0; i < width; i++) {
+					if ((pixels[offset + i] & 0xff) < THRESHOLD) {
+						filled[i / accuracy] = true;
+					}
+				}
+			}
+			for (int cellX = 0; cellX < columns; cellX++) {
+				if (filled[cellX]) {
+					word.tree.insert(new SmallRect(cellX * accuracy, cellY
+							* accuracy, accuracy, accuracy), word.id);
+					filled[cellX] = false;
+				}
+			}
+		}
+	}
+
+	private Font createFont(FontData fontData) {
+		int style = Font.PLAIN;
+		if ((fontData.getStyle() & SWT.BOLD) != 0) {
+			style |= Font.BOLD;
+		}
+		if ((fontData.getStyle() & SWT.ITALIC) != 0) {
+			style |= Font.ITALIC;
+		}
+		float size = fontData.getHeight() * dpi / 72f;
+		return new Font(fontData.getName(), style, 1).deriveFont(size);
+	}
+
+}
@@ -8,7 +8,14 @@
 *******************************************************************************/
 package org.eclipse.gef4.cloudio.layout;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.gef4.cloudio.Word;
@@ -29,6 +36,25 @@ public class DefaultLayouter implements ILayouter {
 
 	public static final String Y_AXIS_VARIATION = "yaxis";
 
+	/**
+	 * Seed of the random start points, a {@link Number}. Setting the
+	 * same seed before a layout yields the same layout again.
+	 */
+	public static final String SEED = "seed";
+
+	/**
+	 * Number of threads which test candidate positions of a word in
+	 * parallel, an {@link Integer} greater than <code>0</code>. The
+	 * default is <code>1</code>.
+	 */
+	public static final String THREADS = "threads";
+
+	/**
+	 * Number of spiral positions per thread which are tested in parallel,
+	 * before the next positions are computed.
+	 */
+	private static final int CANDIDATES_PER_THREAD = 64;
+
 
 	private Random random = new Random();
 	
@@ -49,6 +75,13 @@ public class DefaultLayouter implements ILayouter {
 	 */
 	private int yAxisVariation;
 
+	private int threads = 1;
+
+	/**
+	 * Tests candidate positions if more than one thread is used.
+	 */
+	private ExecutorService executor;
+
 
 	public DefaultLayouter(int i, int j) {
 		this.xAxisVariation = i;
@@ -81,7 +114,10 @@ public class DefaultLayouter implements ILayouter {
 	 * Tries to position the given word in the given area. First a start point is chosen,
 	 * then the {@link RectTree} of the word and the main area is used to detect whether
 	 * the word can be placed at the given position, or not. If not, the current point
-	 * is moved slightly in a spiral manner, similar to the approach of Wordle.  
+	 * is moved slightly in a spiral manner, similar to the approach of Wordle.
+	 * If several {@link #THREADS} are used, the next positions on the spiral are
+	 * tested in parallel, and the word is placed at the first one which fits, so
+	 * that the result does not depend on the number of threads.
 	 * @param word
 	 * @param cloudArea
 	 * @return
@@ -95,37 +131,127 @@ public class DefaultLayouter implements ILayouter {
 		offset.x += cloudArea.width/2;
 		offset.y += cloudArea.height/2;
 		final int accuracy = mainTree.getMinResolution();
-		for(int i = 0; i < 5000; i++) {
-			final double radius = Math.sqrt((double) (next.x * next.x + next.y * next.y)) + growFactor;
-			double atan = Math.atan2(next.y, next.x);
-			if(growFactor > 1.1) {
-				growFactor -= 0.0007;
-			}
-			if(radius < 80) {
-				atan += 0.7;
-			} else {
-				atan += 20 / radius;				
+		final int batchSize = executor == null ? 1 : threads * CANDIDATES_PER_THREAD;
+		final int[] xs = new int[batchSize];
+		final int[] ys = new int[batchSize];
+		int lastX = Integer.MIN_VALUE, lastY = Integer.MIN_VALUE;
+		int i = 0;
+		while(i < 5000) {
+			int candidates = 0;
+			for(; i < 5000 && candidates < batchSize; i++) {
+				final double radius = Math.sqrt((double) (next.x * next.x + next.y * next.y)) + growFactor;
+				double atan = Math.atan2(next.y, next.x);
+				if(growFactor > 1.1) {
+					growFactor -= 0.0007;
+				}
+				if(radius < 80) {
+					atan += 0.7;
+				} else {
+					atan += 20 / radius;
+				}
+				if(growFactor < 0.0005) {
+					growFactor = 0.0005;
+				}
+				next.x =  (int) (radius * Math.cos(atan));
+				next.y =  (int) (radius * Math.sin(atan));
+				word.x = ((next.x + offset.x)/accuracy)*accuracy;
+				word.y = ((next.y + offset.y)/accuracy)*accuracy;
+				// Close to the center, several steps end up in the same cell
+				if(word.x == lastX && word.y == lastY) continue;
+				lastX = word.x;
+				lastY = word.y;
+				if(word.tree == null) return false;
+				if(cloudArea.x <= word.x && cloudArea.y <= word.y && cloudArea.x+cloudArea.width >= word.x + word.width && cloudArea.y + cloudArea.height >= word.y + word.height) {
+					xs[candidates] = word.x;
+					ys[candidates] = word.y;
+					candidates++;
+				}
 			}
-			if(growFactor < 0.0005) {
-				growFactor = 0.0005;
+			int index = findFirstFit(word.tree, mainTree, xs, ys, candidates);
+			if(index >= 0) {
+				word.x = xs[index];
+				word.y = ys[index];
+				word.tree.move(word.x, word.y);
+				word.tree.place(mainTree, word.id);
+				return true;
 			}
-			next.x =  (int) (radius * Math.cos(atan));
-			next.y =  (int) (radius * Math.sin(atan));
-			word.x = ((next.x + offset.x)/accuracy)*accuracy;
-			word.y = ((next.y + offset.y)/accuracy)*accuracy;
-			RectTree rt = word.tree;
-			if(rt == null) break;
-			rt.move(word.x, word.y);
-			if(cloudArea.x <= word.x && cloudArea.y <= word.y && cloudArea.x+cloudArea.width >= word.x + word.width && cloudArea.y + cloudArea.height >= word.y + word.height) {
-				if(rt.fits(mainTree)) {
-					rt.place(mainTree, word.id);
-					return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of the first candidate position at which the given
+	 * tree fits, or <code>-1</code>, if it fits at none of them.
+	 */
+	private int findFirstFit(final RectTree rt, final CloudMatrix mainTree, final int[] xs, final int[] ys, final int candidates) {
+		if(candidates == 0) return -1;
+		// The first test is done in this thread, which also makes sure that
+		// the mask of the tree exists before other threads read it.
+		if(rt.fits(mainTree, xs[0], ys[0])) return 0;
+		if(executor != null && candidates > 1) {
+			final int step = threads;
+			final AtomicInteger first = new AtomicInteger(candidates);
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(step);
+			for(int t = 0; t < step; t++) {
+				final int start = t + 1;
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() {
+						for(int i = start; i < first.get(); i += step) {
+							if(rt.fits(mainTree, xs[i], ys[i])) {
+								int current = first.get();
+								while(i < current && !first.compareAndSet(current, i)) {
+									current = first.get();
+								}
+								break;
+							}
+						}
+						return null;
 					}
+				});
+			}
+			try {
+				executor.invokeAll(tasks);
+				int index = first.get();
+				return index < candidates ? index : -1;
+			} catch (InterruptedException e) {
+				// keep the interrupt for the caller and test the
+				// candidates in this thread instead
+				Thread.currentThread().interrupt();
+			}
+		}
+		for(int i = 1; i < candidates; i++) {
+			if(rt.fits(mainTree, xs[i], ys[i])) return i;
+		}
+		return -1;
+	}
+
+	private void setThreads(int threads) {
+		if(executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		this.threads = threads;
+		if(threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Cloudio Layouter");
+					thread.setDaemon(true);
+					return thread;
 				}
+			});
 		}
-		return false;
 	}
-	
+
+	/**
+	 * Shuts down the threads used to test candidate positions, see
+	 * {@link #THREADS}. Afterwards, the layouter tests them in the calling
+	 * thread, until the number of threads is set again.
+	 */
+	public void dispose() {
+		setThreads(1);
+	}
 
 	public void setOption(String optionName, Object object) {
 		if(X_AXIS_VARIATION.equals(optionName)) {
@@ -142,6 +268,18 @@ public class DefaultLayouter implements ILayouter {
 			this.yAxisVariation = value;
 			return;
 		}
+		if(SEED.equals(optionName)) {
+			Number value = (Number) object;
+			Assert.isLegal(value != null, "Seed must not be null!");
+			random = new Random(value.longValue());
+			return;
+		}
+		if(THREADS.equals(optionName)) {
+			Integer value = (Integer) object;
+			Assert.isLegal(value > 0, "Parameter must be greater than 0: " + value);
+			setThreads(value);
+			return;
+		}
 		System.err.println("Unrecognized option: " + optionName);
 	}
 	
@@ -7,23 +7,50 @@
 
 package org.eclipse.gef4.cloudio.util;
 
+import java.util.Arrays;
+
 import org.eclipse.gef4.cloudio.util.RectTree.RectNode;
 
 /**
- * This class contains all global information about the drawable area 
- * and the layouted words in form of a {@link RectTree}.
- * 
+ * This class contains all global information about the drawable area
+ * and the layouted words. The area is divided into cells of
+ * <code>minResolution</code> pixels. The occupied cells are stored
+ * as a bitset with one bit per cell, such that the mask of a word
+ * (see {@link RectTree#fits(CloudMatrix)}) can be tested with a few
+ * AND operations per row. The id of the word occupying a cell is
+ * stored in a separate grid.
+ *
  * @author sschwieb
  *
  */
 public class CloudMatrix {
-	
-	private RectTree tree;
-	
+
 	private final int max;
 
 	private final int minResolution;
 
+	/**
+	 * Number of cells per row and column.
+	 */
+	private final int cells;
+
+	/**
+	 * Number of <code>long</code>s per row of {@link #occupied}.
+	 */
+	private final int rowWords;
+
+	/**
+	 * One bit per cell, set if the cell is not available. The bits
+	 * beyond the last cell of a row are always set.
+	 */
+	private final long[] occupied;
+
+	/**
+	 * The id of the word (or {@link RectTree#BACKGROUND}) in each cell,
+	 * {@link RectTree#EMPTY} for free cells.
+	 */
+	private final short[] ids;
+
 	public int getMinResolution() {
 		return minResolution;
 	}
@@ -31,28 +58,134 @@ public class CloudMatrix {
 	public CloudMatrix(int maxSize, int minResolution) {
 		this.max = maxSize;
 		this.minResolution = minResolution;
+		this.cells = (max + minResolution - 1) / minResolution;
+		this.rowWords = (cells + 63) >>> 6;
+		this.occupied = new long[rowWords * cells];
+		this.ids = new short[cells * cells];
 		reset();
 	}
-	
+
 	public short get(int x, int y) {
-		return tree.getRoot().getWordId(x*minResolution,y*minResolution);
+		if(x < 0 || y < 0 || x >= cells || y >= cells) {
+			return RectTree.EMPTY;
+		}
+		return ids[y * cells + x];
 	}
-	
+
 	public boolean isEmpty(int x, int y) {
-		short id = tree.getRoot().getWordId(x*minResolution, y*minResolution);
-		return id == RectTree.EMPTY;
+		if(x < 0 || y < 0 || x >= cells || y >= cells) {
+			return false;
+		}
+		return (occupied[y * rowWords + (x >>> 6)] & (1L << x)) == 0;
 	}
 
 	public void reset() {
-		SmallRect root = new SmallRect(0, 0, max, max);
-		tree = new RectTree(root, minResolution);
+		Arrays.fill(occupied, 0L);
+		Arrays.fill(ids, RectTree.EMPTY);
+		int padding = cells & 63;
+		if(padding != 0) {
+			long last = -1L << padding;
+			for(int y = 0; y < cells; y++) {
+				occupied[y * rowWords + rowWords - 1] = last;
+			}
+		}
 	}
 
 	public void set(RectNode node, short id, short xOffset, short yOffset, int minResolution) {
-		int cleanX = ((xOffset + node.rect.x) / minResolution) * minResolution;
-		int cleanY = ((yOffset + node.rect.y) / minResolution) * minResolution;
-		SmallRect rect = new SmallRect(cleanX, cleanY, minResolution, minResolution);
-		tree.insert(rect, id);
+		int x1 = (xOffset + node.rect.x) / minResolution;
+		int y1 = (yOffset + node.rect.y) / minResolution;
+		int x2 = Math.max(x1 + 1, (xOffset + node.rect.x + node.rect.width) / minResolution);
+		int y2 = Math.max(y1 + 1, (yOffset + node.rect.y + node.rect.height) / minResolution);
+		for(int y = y1; y < y2; y++) {
+			for(int x = x1; x < x2; x++) {
+				set(x, y, id);
+			}
+		}
 	}
-	
+
+	private void set(int x, int y, short id) {
+		if(x < 0 || y < 0 || x >= cells || y >= cells) {
+			return;
+		}
+		occupied[y * rowWords + (x >>> 6)] |= 1L << x;
+		ids[y * cells + x] = id;
+	}
+
+	/**
+	 * Replaces the id of each word in the matrix with <code>newIds[id]</code>.
+	 * Words whose new id is {@link RectTree#EMPTY} are removed, such that
+	 * their cells become available again.
+	 *
+	 * @param newIds
+	 */
+	public void replaceIds(short[] newIds) {
+		for(int y = 0; y < cells; y++) {
+			for(int x = 0; x < cells; x++) {
+				int index = y * cells + x;
+				short id = ids[index];
+				if(id <= 0 || id >= newIds.length) continue;
+				short newId = newIds[id];
+				ids[index] = newId;
+				if(newId == RectTree.EMPTY) {
+					occupied[y * rowWords + (x >>> 6)] &= ~(1L << x);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests whether all cells of the given mask are available if its
+	 * top left cell is moved to the given cell. Each row of the mask
+	 * consists of <code>maskWords</code> <code>long</code>s with one
+	 * bit per column, the lowest bit of the first one being the leftmost
+	 * column. Cells outside of the matrix are never available.
+	 */
+	boolean fits(long[] mask, int maskWords, int maskRows, int x, int y) {
+		if(x < 0 || y < 0 || y + maskRows > cells) {
+			return false;
+		}
+		final int shift = x & 63;
+		final int firstWord = x >>> 6;
+		int maskIndex = 0;
+		for(int row = 0; row < maskRows; row++) {
+			final int rowStart = (y + row) * rowWords;
+			long carry = 0;
+			for(int i = 0; i < maskWords; i++) {
+				long bits = mask[maskIndex++];
+				int word = firstWord + i;
+				long shifted = (bits << shift) | carry;
+				carry = shift == 0 ? 0 : bits >>> (64 - shift);
+				if(shifted != 0 && (word >= rowWords || (occupied[rowStart + word] & shifted) != 0)) {
+					return false;
+				}
+			}
+			if(carry != 0) {
+				int word = firstWord + maskWords;
+				if(word >= rowWords || (occupied[rowStart + word] & carry) != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks all cells of the given mask as occupied by the given id,
+	 * with the top left cell of the mask at the given cell. The mask
+	 * is expected to fit, see {@link #fits(long[], int, int, int, int)}.
+	 */
+	void set(long[] mask, int maskWords, int maskRows, int x, int y, short id) {
+		int maskIndex = 0;
+		for(int row = 0; row < maskRows; row++) {
+			for(int i = 0; i < maskWords; i++) {
+				long bits = mask[maskIndex++];
+				while(bits != 0) {
+					int column = (i << 6) + Long.numberOfTrailingZeros(bits);
+					set(x + column, y + row, id);
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+
 }
@@ -10,7 +10,6 @@ package org.eclipse.gef4.cloudio.util;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -32,6 +31,14 @@ public class RectTree {
 	private RectNode root;
 	
 	private LinkedList<RectNode> leaves;
+
+	/**
+	 * The leaves rasterized as rows of bits, one bit per cell of
+	 * <code>minResolution</code> pixels, see {@link #getMask()}.
+	 */
+	private long[] mask;
+
+	private int maskWords, maskRows, maskX, maskY;
 	
 	public static short EMPTY = -3, MISC = -2, BACKGROUND = -1;
 		
@@ -165,17 +172,64 @@ public class RectTree {
 	}
 
 	public boolean fits(final CloudMatrix mainTree) {
-		LinkedList<RectNode> leaves = getLeaves();
-		Iterator<RectNode> nodes = leaves.iterator();
-		while(nodes.hasNext()) {
-			RectNode node = nodes.next();
-			if(!mainTree.isEmpty((node.rect.x+xOffset)/minResolution,(node.rect.y+yOffset)/minResolution)) {
-				nodes.remove();
-				leaves.addFirst(node);
-				return false;
+		return fits(mainTree, xOffset, yOffset);
+	}
+
+	/**
+	 * Tests whether the tree fits at the given position, without moving
+	 * it. As this only reads the matrix, it can be called from several
+	 * threads at once, as long as no word is placed meanwhile and the
+	 * tree has been tested once before.
+	 */
+	public boolean fits(final CloudMatrix mainTree, int x, int y) {
+		long[] mask = getMask();
+		return mainTree.fits(mask, maskWords, maskRows, x/minResolution + maskX, y/minResolution + maskY);
+	}
+
+	/**
+	 * Returns the cells covered by the leaves as rows of
+	 * <code>maskWords</code> <code>long</code>s, starting at
+	 * cell <code>(maskX, maskY)</code> of this tree.
+	 */
+	private long[] getMask() {
+		if(mask == null) {
+			Collection<RectNode> leaves = getLeaves();
+			int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+			int maxX = 0, maxY = 0;
+			for (RectNode node : leaves) {
+				minX = Math.min(minX, node.rect.x / minResolution);
+				minY = Math.min(minY, node.rect.y / minResolution);
+				maxX = Math.max(maxX, getEndCell(node.rect.x, node.rect.width));
+				maxY = Math.max(maxY, getEndCell(node.rect.y, node.rect.height));
 			}
+			if(leaves.isEmpty()) {
+				minX = minY = 0;
+			}
+			int words = (maxX - minX + 63) >>> 6;
+			int rows = maxY - minY;
+			long[] bits = new long[words * rows];
+			for (RectNode node : leaves) {
+				int x1 = node.rect.x / minResolution - minX;
+				int x2 = getEndCell(node.rect.x, node.rect.width) - minX;
+				int y1 = node.rect.y / minResolution - minY;
+				int y2 = getEndCell(node.rect.y, node.rect.height) - minY;
+				for(int y = y1; y < y2; y++) {
+					for(int x = x1; x < x2; x++) {
+						bits[y * words + (x >>> 6)] |= 1L << x;
+					}
+				}
+			}
+			maskWords = words;
+			maskRows = rows;
+			maskX = minX;
+			maskY = minY;
+			mask = bits;
 		}
-		return true;
+		return mask;
+	}
+
+	private int getEndCell(int start, int length) {
+		return Math.max(start / minResolution + 1, (start + length) / minResolution);
 	}
 
 	LinkedList<RectNode> getLeaves() {
@@ -200,17 +254,24 @@ public class RectTree {
 	}
 	
 	public void place(final CloudMatrix mainTree, short id) {
-		Collection<RectNode> leaves = getLeaves();
-		for (RectNode node : leaves) {
-			mainTree.set(node, id, xOffset, yOffset, minResolution);
-		}
+		long[] mask = getMask();
+		mainTree.set(mask, maskWords, maskRows, xOffset/minResolution + maskX, yOffset/minResolution + maskY, id);
 	}
 
 	public void releaseRects() {
-		getLeaves();
+		getMask();
 		root.children = null;
 	}
 
+	/**
+	 * Returns the approximate number of bytes used by the leaves and
+	 * the mask of this tree, after {@link #releaseRects()} has been called.
+	 */
+	public int getMemorySize() {
+		// a leaf consists of a RectNode, a SmallRect and a list entry
+		return 128 + getLeaves().size() * 96 + getMask().length * 8;
+	}
+
 	public RectNode getRoot() {
 		return root;
 	}
@@ -8,14 +8,54 @@
  *******************************************************************************/
 package org.eclipse.gef4.dot.tests;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 import junit.framework.TestCase;
 
+import org.eclipse.gef4.geometry.planar.Dimension;
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.geometry.planar.Rectangle;
 import org.eclipse.gef4.graph.Graph;
 import org.eclipse.gef4.graph.Node;
 import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.AlgorithmHelper;
+import org.eclipse.gef4.layout.algorithms.CachingLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.DFSLayerProvider;
+import org.eclipse.gef4.layout.algorithms.GraphSnapshot;
+import org.eclipse.gef4.layout.algorithms.GreedyCrossingReducer;
 import org.eclipse.gef4.layout.algorithms.GridLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.LayoutCache;
+import org.eclipse.gef4.layout.algorithms.LongestPathLayerProvider;
+import org.eclipse.gef4.layout.algorithms.MultilevelLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.NetworkSimplexLayerProvider;
+import org.eclipse.gef4.layout.algorithms.NodeWrapper;
+import org.eclipse.gef4.layout.algorithms.OverlapRemovalAlgorithm;
+import org.eclipse.gef4.layout.algorithms.ParallelSweepCrossingReducer;
+import org.eclipse.gef4.layout.algorithms.SpringLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.SugiyamaLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.TreeLayoutAlgorithm;
 import org.eclipse.gef4.layout.algorithms.TreeLayoutObserver;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayerProvider;
 import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
 import org.junit.Assert;
 
 /**
@@ -109,6 +149,1071 @@ public class LayoutAlgorithmTests extends TestCase {
 		Assert.assertFalse(node4.isAncestorOf(node3));
 	}
 
+	/**
+	 * Test that the tree maintained by TreeLayoutObserver while nodes and
+	 * connections are added and removed is the same as a tree built from
+	 * scratch.
+	 */
+	public void testTreeLayoutObserverIncrementalUpdates() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		TestLayoutContext.TestNodeLayout b = context.addNode("b");
+		TestLayoutContext.TestNodeLayout c = context.addNode("c");
+		TestLayoutContext.TestNodeLayout d = context.addNode("d");
+		context.addConnection(a, b);
+		context.addConnection(a, c);
+		TestLayoutContext.TestConnectionLayout bd = context.addConnection(b,
+				d);
+		TreeLayoutObserver observer = new TreeLayoutObserver(context, null);
+		assertSameTree(context, observer);
+
+		// a new node is a root until it is connected
+		TestLayoutContext.TestNodeLayout e = context.addNode("e");
+		assertSameTree(context, observer);
+		context.addConnection(c, e);
+		assertSameTree(context, observer);
+		Assert.assertEquals(2, observer.getTreeNode(e).getDepth());
+		Assert.assertTrue(observer.getTreeNode(a).isAncestorOf(
+				observer.getTreeNode(e)));
+
+		// a disconnected subtree becomes a tree of its own
+		context.addConnection(d, context.addNode("f"));
+		assertSameTree(context, observer);
+		context.removeConnection(bd);
+		assertSameTree(context, observer);
+		Assert.assertEquals(0, observer.getTreeNode(d).getDepth());
+		Assert.assertFalse(observer.getTreeNode(a).isAncestorOf(
+				observer.getTreeNode(d)));
+
+		// removing a leaf turns its parent into a leaf again
+		context.removeNode(e);
+		assertSameTree(context, observer);
+		Assert.assertEquals(0, observer.getTreeNode(c).getHeight());
+		observer.stop();
+	}
+
+	/**
+	 * Asserts that the tree of the given observer has the same structure and
+	 * parameters as a tree built from scratch for the given context.
+	 */
+	private static void assertSameTree(LayoutContext context,
+			TreeLayoutObserver observer) {
+		TreeLayoutObserver rebuilt = new TreeLayoutObserver(context, null);
+		rebuilt.stop();
+		assertSameNode(observer.getSuperRoot(), rebuilt.getSuperRoot());
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			TreeLayoutObserver.TreeNode node = observer.getTreeNode(nodes[i]);
+			TreeLayoutObserver.TreeNode expected = rebuilt
+					.getTreeNode(nodes[i]);
+			assertSameNode(node, expected);
+			Assert.assertEquals(nodes[i].toString(), expected.getParent()
+					.getNode(), node.getParent().getNode());
+			Assert.assertEquals(nodes[i].toString(), expected.getOrder(),
+					node.getOrder());
+			Assert.assertEquals(nodes[i].toString(), expected.isFirstChild(),
+					node.isFirstChild());
+			Assert.assertEquals(nodes[i].toString(), expected.isLastChild(),
+					node.isLastChild());
+			for (int j = 0; j < nodes.length; j++) {
+				Assert.assertEquals(nodes[i] + " ancestor of " + nodes[j],
+						expected.isAncestorOf(rebuilt.getTreeNode(nodes[j])),
+						node.isAncestorOf(observer.getTreeNode(nodes[j])));
+			}
+		}
+	}
+
+	private static void assertSameNode(TreeLayoutObserver.TreeNode node,
+			TreeLayoutObserver.TreeNode expected) {
+		String name = String.valueOf(expected.getNode());
+		Assert.assertEquals(name, expected.getDepth(), node.getDepth());
+		Assert.assertEquals(name, expected.getHeight(), node.getHeight());
+		Assert.assertEquals(name, expected.getNumOfLeaves(),
+				node.getNumOfLeaves());
+		Assert.assertEquals(name, expected.getNumOfDescendants(),
+				node.getNumOfDescendants());
+	}
+
+	/**
+	 * Test that the Barnes-Hut approximation of the repulsive forces in
+	 * SpringLayoutAlgorithm moves the nodes like the exact computation, up to
+	 * a small error, and exactly like it for a tiny threshold.
+	 */
+	public void testSpringLayoutApproximateRepulsion() {
+		assertApproximateRepulsion(1e-9, 1e-9);
+		assertApproximateRepulsion(0.5, 0.01);
+	}
+
+	private static void assertApproximateRepulsion(double theta,
+			double maxRelativeError) {
+		LayoutContext exactContext = createRing(80);
+		LayoutContext approximateContext = createRing(80);
+		SpringLayoutAlgorithm exact = new SpringLayoutAlgorithm();
+		SpringLayoutAlgorithm approximate = new SpringLayoutAlgorithm();
+		exact.setRandomSeed(42);
+		approximate.setRandomSeed(42);
+		approximate.setApproximateRepulsion(true);
+		approximate.setApproximationTheta(theta);
+		exact.setLayoutContext(exactContext);
+		approximate.setLayoutContext(approximateContext);
+
+		NodeLayout[] exactNodes = exactContext.getNodes();
+		NodeLayout[] approximateNodes = approximateContext.getNodes();
+		Point[] initial = new Point[exactNodes.length];
+		for (int i = 0; i < exactNodes.length; i++) {
+			initial[i] = exactNodes[i].getLocation();
+			Assert.assertEquals(initial[i], approximateNodes[i].getLocation());
+		}
+		exact.performOneIteration();
+		approximate.performOneIteration();
+		double maxDisplacement = 0;
+		double maxError = 0;
+		for (int i = 0; i < exactNodes.length; i++) {
+			Point location = exactNodes[i].getLocation();
+			maxDisplacement = Math.max(maxDisplacement,
+					location.getDistance(initial[i]));
+			maxError = Math.max(maxError,
+					location.getDistance(approximateNodes[i].getLocation()));
+		}
+		Assert.assertTrue("Nodes should move", maxDisplacement > 0);
+		Assert.assertTrue("Error " + maxError + " for theta " + theta
+				+ " is too large", maxError <= maxRelativeError
+				* maxDisplacement);
+	}
+
+	/**
+	 * Test that a parallel SpringLayoutAlgorithm layout stops after the last
+	 * complete iteration when its thread is interrupted, with the same result
+	 * as a layout limited to that number of iterations.
+	 */
+	public void testSpringLayoutParallelInterrupted() {
+		LayoutContext referenceContext = createRing(80);
+		SpringLayoutAlgorithm reference = new SpringLayoutAlgorithm();
+		reference.setRandomSeed(42);
+		reference.setParallelism(4);
+		reference.setIterations(3);
+		reference.setLayoutContext(referenceContext);
+		reference.applyLayout(true);
+
+		LayoutContext context = createRing(80);
+		SpringLayoutAlgorithm algorithm = new SpringLayoutAlgorithm();
+		algorithm.setRandomSeed(42);
+		algorithm.setParallelism(4);
+		final int[] iterations = new int[1];
+		algorithm
+				.addIterationListener(new SpringLayoutAlgorithm.IterationListener() {
+					public void iterationPerformed(
+							SpringLayoutAlgorithm algorithm, int iteration,
+							double energy, double maxDisplacement, long nanos) {
+						iterations[0]++;
+						if (iteration == 3) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+		algorithm.setLayoutContext(context);
+		try {
+			algorithm.applyLayout(true);
+			Assert.assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		Assert.assertEquals(3, iterations[0]);
+		NodeLayout[] referenceNodes = referenceContext.getNodes();
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertEquals(referenceNodes[i].getLocation(),
+					nodes[i].getLocation());
+		}
+	}
+
+	/**
+	 * Test that a complete SpringLayoutAlgorithm layout with approximated
+	 * repulsion places all nodes at distinct locations within the bounds.
+	 */
+	public void testSpringLayoutApproximateRepulsionFitsBounds() {
+		LayoutContext context = createRing(200);
+		SpringLayoutAlgorithm algorithm = new SpringLayoutAlgorithm();
+		algorithm.setRandomSeed(42);
+		algorithm.setApproximateRepulsion(true);
+		algorithm.setIterations(100);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		assertWithinBounds(context);
+		assertDistinctLocations(context);
+	}
+
+	/**
+	 * Creates a context holding a ring of the given number of nodes, where
+	 * every seventh node is also connected to a node across the ring.
+	 */
+	private static TestLayoutContext createRing(int size) {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = context.addNode("n" + i);
+		}
+		for (int i = 0; i < size; i++) {
+			context.addConnection(nodes[i], nodes[(i + 1) % size]);
+			if (i % 7 == 0)
+				context.addConnection(nodes[i], nodes[(3 * i + 5) % size]);
+		}
+		return context;
+	}
+
+	private static void assertWithinBounds(LayoutContext context) {
+		Rectangle bounds = context.getBounds();
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			Point location = nodes[i].getLocation();
+			Assert.assertFalse(nodes[i] + " at " + location,
+					Double.isNaN(location.x) || Double.isNaN(location.y));
+			Assert.assertTrue(nodes[i] + " at " + location + " outside of "
+					+ bounds, bounds.contains(location));
+		}
+	}
+
+	private static void assertDistinctLocations(LayoutContext context) {
+		NodeLayout[] nodes = context.getNodes();
+		Set<Point> locations = new HashSet<Point>();
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertTrue(nodes[i] + " shares its location",
+					locations.add(nodes[i].getLocation()));
+		}
+	}
+
+	/**
+	 * Test that the LongestPathLayerProvider puts each node into the layer
+	 * below the longest path leading to it, breaking cycles.
+	 */
+	public void testLongestPathLayerProvider() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		TestLayoutContext.TestNodeLayout b = context.addNode("b");
+		TestLayoutContext.TestNodeLayout c = context.addNode("c");
+		TestLayoutContext.TestNodeLayout d = context.addNode("d");
+		TestLayoutContext.TestNodeLayout x = context.addNode("x");
+		context.addConnection(a, b);
+		context.addConnection(b, c);
+		context.addConnection(c, d);
+		context.addConnection(a, d);
+		context.addConnection(x, d);
+		// a cycle, which is broken
+		context.addConnection(d, a);
+		int[] layers = computeLayers(context, new LongestPathLayerProvider());
+		Assert.assertEquals(0, layers[0]);
+		Assert.assertEquals(1, layers[1]);
+		Assert.assertEquals(2, layers[2]);
+		Assert.assertEquals(3, layers[3]);
+		Assert.assertEquals(0, layers[4]);
+	}
+
+	/**
+	 * Test that the NetworkSimplexLayerProvider moves nodes towards their
+	 * successors to shorten the connections, which the
+	 * LongestPathLayerProvider does not.
+	 */
+	public void testNetworkSimplexLayerProvider() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		TestLayoutContext.TestNodeLayout b = context.addNode("b");
+		TestLayoutContext.TestNodeLayout c = context.addNode("c");
+		TestLayoutContext.TestNodeLayout d = context.addNode("d");
+		TestLayoutContext.TestNodeLayout x = context.addNode("x");
+		context.addConnection(a, b);
+		context.addConnection(b, c);
+		context.addConnection(c, d);
+		context.addConnection(x, d);
+		int[] longestPath = computeLayers(context,
+				new LongestPathLayerProvider());
+		Assert.assertEquals(0, longestPath[4]);
+		int[] networkSimplex = computeLayers(context,
+				new NetworkSimplexLayerProvider());
+		Assert.assertEquals(0, networkSimplex[0]);
+		Assert.assertEquals(3, networkSimplex[3]);
+		Assert.assertEquals(2, networkSimplex[4]);
+		Assert.assertEquals(4, totalSpan(context, networkSimplex));
+		Assert.assertTrue(totalSpan(context, networkSimplex) < totalSpan(
+				context, longestPath));
+	}
+
+	/**
+	 * Test that the NetworkSimplexLayerProvider assigns layers respecting the
+	 * direction of all connections of a larger graph, with a total span not
+	 * greater than the one of the LongestPathLayerProvider.
+	 */
+	public void testNetworkSimplexLayerProviderRing() {
+		TestLayoutContext context = createRing(60);
+		int[] longestPath = computeLayers(context,
+				new LongestPathLayerProvider());
+		int[] networkSimplex = computeLayers(context,
+				new NetworkSimplexLayerProvider());
+		NodeLayout[] nodes = context.getNodes();
+		int reversed = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			ConnectionLayout[] outgoing = nodes[i].getOutgoingConnections();
+			for (int j = 0; j < outgoing.length; j++) {
+				int target = indexOf(nodes, outgoing[j].getTarget());
+				Assert.assertTrue(networkSimplex[i] != networkSimplex[target]);
+				if (networkSimplex[i] > networkSimplex[target])
+					reversed++;
+			}
+		}
+		// only the connections closing a cycle are reversed
+		Assert.assertTrue(reversed > 0 && reversed < nodes.length / 4);
+		Assert.assertTrue(totalSpan(context, networkSimplex) <= totalSpan(
+				context, longestPath));
+	}
+
+	/**
+	 * Lays out the given context with a SugiyamaLayoutAlgorithm using the
+	 * given layer provider, and returns the layer of each node derived from
+	 * its vertical location.
+	 */
+	/**
+	 * Test that the DFSLayerProvider puts every node into exactly one layer
+	 * if the unassigned nodes of a disconnected graph with a cycle are no
+	 * roots, so that a component has to be started at a node which is not a
+	 * root.
+	 */
+	public void testDFSLayerProviderCycle() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		TestLayoutContext.TestNodeLayout b = context.addNode("b");
+		TestLayoutContext.TestNodeLayout c = context.addNode("c");
+		TestLayoutContext.TestNodeLayout d = context.addNode("d");
+		TestLayoutContext.TestNodeLayout e = context.addNode("e");
+		TestLayoutContext.TestNodeLayout x = context.addNode("x");
+		context.addConnection(a, b);
+		context.addConnection(b, c);
+		context.addConnection(c, a);
+		context.addConnection(c, x);
+		context.addConnection(d, e);
+		List<NodeLayout> nodes = new ArrayList<NodeLayout>();
+		Collections.addAll(nodes, context.getNodes());
+		Map<NodeLayout, Integer> assignedNodes = new HashMap<NodeLayout, Integer>();
+		assignedNodes.put(a, 1);
+		assignedNodes.put(b, 2);
+		assignedNodes.put(c, 3);
+		assignedNodes.put(d, 1);
+		List<List<NodeWrapper>> layers = new DFSLayerProvider()
+				.calculateLayers(nodes, assignedNodes);
+		// the sinks e and x start new components
+		Assert.assertEquals(4, layers.size());
+		Assert.assertEquals(2, layers.get(0).size());
+		Assert.assertEquals(2, layers.get(1).size());
+		Assert.assertEquals(1, layers.get(2).size());
+		Assert.assertEquals(1, layers.get(3).size());
+	}
+
+	private static int[] computeLayers(LayoutContext context,
+			LayerProvider layerProvider) {
+		SugiyamaLayoutAlgorithm algorithm = new SugiyamaLayoutAlgorithm(
+				SugiyamaLayoutAlgorithm.Direction.VERTICAL, layerProvider);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		NodeLayout[] nodes = context.getNodes();
+		SortedSet<Double> rows = new TreeSet<Double>();
+		for (int i = 0; i < nodes.length; i++) {
+			rows.add(nodes[i].getLocation().y);
+		}
+		int[] layers = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			layers[i] = rows.headSet(nodes[i].getLocation().y).size();
+		}
+		return layers;
+	}
+
+	private static int totalSpan(LayoutContext context, int[] layers) {
+		NodeLayout[] nodes = context.getNodes();
+		ConnectionLayout[] connections = context.getConnections();
+		int span = 0;
+		for (int i = 0; i < connections.length; i++) {
+			span += Math.abs(layers[indexOf(nodes, connections[i].getSource())]
+					- layers[indexOf(nodes, connections[i].getTarget())]);
+		}
+		return span;
+	}
+
+	private static int indexOf(NodeLayout[] nodes, NodeLayout node) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == node)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Test that the compact placement of SugiyamaLayoutAlgorithm (Brandes and
+	 * Koepf) keeps the order of the nodes within each layer, which is
+	 * determined by the crossing reduction, and separates neighboring nodes
+	 * by at least the node spacing.
+	 */
+	public void testSugiyamaLayoutCompactPlacement() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[12];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = context.addNode("n" + i, 20 + 15 * (i % 4), 20);
+		}
+		for (int i = 1; i < nodes.length; i++) {
+			context.addConnection(nodes[(i - 1) / 3], nodes[i]);
+		}
+		context.addConnection(nodes[1], nodes[9]);
+		context.addConnection(nodes[0], nodes[11]);
+		context.addConnection(nodes[5], nodes[7]);
+
+		SugiyamaLayoutAlgorithm algorithm = new SugiyamaLayoutAlgorithm(
+				SugiyamaLayoutAlgorithm.Direction.VERTICAL,
+				new LongestPathLayerProvider());
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		List<List<NodeLayout>> gridRows = getRows(context);
+
+		algorithm.setPlacement(SugiyamaLayoutAlgorithm.Placement.COMPACT);
+		algorithm.setNodeSpacing(15);
+		algorithm.applyLayout(true);
+		List<List<NodeLayout>> compactRows = getRows(context);
+
+		Assert.assertEquals(gridRows, compactRows);
+		for (List<NodeLayout> row : compactRows) {
+			for (int i = 1; i < row.size(); i++) {
+				NodeLayout left = row.get(i - 1);
+				NodeLayout right = row.get(i);
+				double gap = right.getLocation().x - left.getLocation().x
+						- (left.getSize().width + right.getSize().width) / 2;
+				Assert.assertTrue(left + " and " + right + " are " + gap
+						+ " apart", gap >= 15 - 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Test that the ParallelSweepCrossingReducer gives the same result for
+	 * any number of threads, and that an interrupt while it waits for its
+	 * restarts neither fails the layout nor gets lost.
+	 */
+	public void testParallelSweepCrossingReducer() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[60];
+		Random random = new Random(7);
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = context.addNode("n" + i);
+			if (i > 0) {
+				context.addConnection(nodes[random.nextInt(i)], nodes[i]);
+				context.addConnection(nodes[random.nextInt(i)], nodes[i]);
+			}
+		}
+		List<List<NodeLayout>> sequentialRows = layoutWithParallelSweep(
+				context, 1);
+		Assert.assertEquals(sequentialRows,
+				layoutWithParallelSweep(context, 4));
+
+		Thread.currentThread().interrupt();
+		try {
+			List<List<NodeLayout>> rows = layoutWithParallelSweep(context, 4);
+			Assert.assertTrue(Thread.currentThread().isInterrupted());
+			int count = 0;
+			for (List<NodeLayout> row : rows) {
+				count += row.size();
+			}
+			Assert.assertEquals(nodes.length, count);
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Test that the GreedyCrossingReducer, which evaluates swaps with the
+	 * CrossingCounter, orders the layers of random graphs exactly as it did
+	 * when it compared all pairs of neighbors of the swapped nodes.
+	 */
+	public void testGreedyCrossingReducer() {
+		// computed with the pairwise comparison of neighbors
+		String[] expected = {
+				"[[n1, n2, n0, n5, n3], [n6, n4, n19, n9], "
+						+ "[n8, n10, n7, n12, n15], [n13, n11, n14], "
+						+ "[n16, n17], [n21, n18], [n22, n20], [n23], [n24]]",
+				"[[n0, n4, n1, n6, n7, n12, n17], [n5, n14, n2], "
+						+ "[n8, n15, n18, n3], [n10, n16, n9, n20, n21], "
+						+ "[n11], [n19, n13, n24], [n22], [n23]]",
+				"[[n1, n0, n8, n2, n14, n23], [n4, n3, n10, n9], "
+						+ "[n11, n5, n12, n16, n18], [n7, n17, n6, n19, n22], "
+						+ "[n15, n13, n20, n24], [n21]]" };
+		for (int seed = 0; seed < expected.length; seed++) {
+			TestLayoutContext context = new TestLayoutContext();
+			TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[25];
+			Random random = new Random(seed);
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = context.addNode("n" + i);
+				for (int j = 0; j < i; j++) {
+					if (random.nextInt(8) == 0) {
+						context.addConnection(nodes[j], nodes[i]);
+					}
+				}
+			}
+			SugiyamaLayoutAlgorithm algorithm = new SugiyamaLayoutAlgorithm(
+					SugiyamaLayoutAlgorithm.Direction.VERTICAL,
+					new LongestPathLayerProvider(),
+					new GreedyCrossingReducer());
+			algorithm.setLayoutContext(context);
+			algorithm.applyLayout(true);
+			Assert.assertEquals(expected[seed], getRows(context).toString());
+		}
+	}
+
+	private static List<List<NodeLayout>> layoutWithParallelSweep(
+			LayoutContext context, int parallelism) {
+		SugiyamaLayoutAlgorithm algorithm = new SugiyamaLayoutAlgorithm(
+				SugiyamaLayoutAlgorithm.Direction.VERTICAL,
+				new LongestPathLayerProvider(),
+				new ParallelSweepCrossingReducer(
+						ParallelSweepCrossingReducer.Heuristic.MEDIAN, 8,
+						parallelism, 0));
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		return getRows(context);
+	}
+
+	/**
+	 * Returns the nodes of the given context grouped by their vertical
+	 * location and sorted by their horizontal location.
+	 */
+	private static List<List<NodeLayout>> getRows(LayoutContext context) {
+		Map<Double, List<NodeLayout>> rows = new TreeMap<Double, List<NodeLayout>>();
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			List<NodeLayout> row = rows.get(nodes[i].getLocation().y);
+			if (row == null) {
+				row = new ArrayList<NodeLayout>();
+				rows.put(nodes[i].getLocation().y, row);
+			}
+			row.add(nodes[i]);
+		}
+		for (List<NodeLayout> row : rows.values()) {
+			Collections.sort(row, new Comparator<NodeLayout>() {
+				public int compare(NodeLayout n1, NodeLayout n2) {
+					return Double.compare(n1.getLocation().x,
+							n2.getLocation().x);
+				}
+			});
+		}
+		return new ArrayList<List<NodeLayout>>(rows.values());
+	}
+
+	/**
+	 * Test that the tidy placement of TreeLayoutAlgorithm keeps neighboring
+	 * nodes of each layer at least one unit apart and centers each parent
+	 * over its children, on an uneven tree.
+	 */
+	public void testTreeLayoutTidy() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[300];
+		Random random = new Random(3);
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = context.addNode("n" + i);
+			if (i > 0) {
+				// recent parents make the tree deep and uneven
+				context.addConnection(
+						nodes[i - 1 - random.nextInt(Math.min(i, 10))],
+						nodes[i]);
+			}
+		}
+		layoutTidy(context);
+		List<List<NodeLayout>> rows = getRows(context);
+		Assert.assertTrue(rows.size() > 10);
+		for (List<NodeLayout> row : rows) {
+			for (int i = 1; i < row.size(); i++) {
+				NodeLayout left = row.get(i - 1);
+				NodeLayout right = row.get(i);
+				double gap = right.getLocation().x - left.getLocation().x;
+				Assert.assertTrue(left + " and " + right + " are " + gap
+						+ " apart", gap >= 1 - 1e-9);
+			}
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			NodeLayout[] children = nodes[i].getSuccessingNodes();
+			if (children.length == 0) {
+				continue;
+			}
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int j = 0; j < children.length; j++) {
+				min = Math.min(min, children[j].getLocation().x);
+				max = Math.max(max, children[j].getLocation().x);
+			}
+			Assert.assertEquals(nodes[i] + " is not centered", (min + max) / 2,
+					nodes[i].getLocation().x, 1e-9);
+		}
+	}
+
+	/**
+	 * Test that the tidy placement of TreeLayoutAlgorithm places a very deep
+	 * chain of nodes without exhausting the stack.
+	 */
+	public void testTreeLayoutTidyDeepChain() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout previous = null;
+		for (int i = 0; i < 100000; i++) {
+			TestLayoutContext.TestNodeLayout node = context.addNode("n" + i);
+			if (previous != null) {
+				context.addConnection(previous, node);
+			}
+			previous = node;
+		}
+		layoutTidy(context);
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertEquals(0.5, nodes[i].getLocation().x, 1e-9);
+			Assert.assertEquals(i + 0.5, nodes[i].getLocation().y, 1e-9);
+		}
+	}
+
+	/**
+	 * Lays out the given context with the tidy TreeLayoutAlgorithm, in units
+	 * of one per node and layer.
+	 */
+	private static void layoutTidy(LayoutContext context) {
+		TreeLayoutAlgorithm algorithm = new TreeLayoutAlgorithm(
+				TreeLayoutAlgorithm.TOP_DOWN, new Dimension(1, 1));
+		algorithm.setTidy(true);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+	}
+
+	/**
+	 * Test that the OverlapRemovalAlgorithm leaves no overlapping nodes in a
+	 * crowded layout of nodes of different sizes, with and without spacing.
+	 */
+	public void testOverlapRemoval() {
+		assertOverlapsRemoved(0);
+		assertOverlapsRemoved(5);
+	}
+
+	private static void assertOverlapsRemoved(double nodeSpacing) {
+		TestLayoutContext context = new TestLayoutContext();
+		Random random = new Random(42);
+		for (int i = 0; i < 100; i++) {
+			context.addNode("n" + i, 20 + random.nextInt(40),
+					15 + random.nextInt(20)).setLocation(
+					random.nextInt(200), random.nextInt(200));
+		}
+		// nodes at the same location are moved apart, too
+		context.addNode("same1").setLocation(100, 100);
+		context.addNode("same2").setLocation(100, 100);
+		OverlapRemovalAlgorithm algorithm = new OverlapRemovalAlgorithm();
+		algorithm.setNodeSpacing(nodeSpacing);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		Assert.assertTrue(algorithm.getIterations() < algorithm
+				.getMaxIterations());
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			for (int j = i + 1; j < nodes.length; j++) {
+				Assert.assertFalse(nodes[i] + " overlaps " + nodes[j],
+						overlap(nodes[i], nodes[j], nodeSpacing));
+			}
+		}
+	}
+
+	/**
+	 * Test that the OverlapRemovalAlgorithm does not move nodes which do not
+	 * overlap.
+	 */
+	public void testOverlapRemovalWithoutOverlaps() {
+		TestLayoutContext context = new TestLayoutContext();
+		for (int i = 0; i < 10; i++) {
+			context.addNode("n" + i).setLocation(50 * i, 30 * (i % 2));
+		}
+		OverlapRemovalAlgorithm algorithm = new OverlapRemovalAlgorithm();
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		Assert.assertEquals(0, algorithm.getIterations());
+		NodeLayout[] nodes = context.getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertEquals(new Point(50 * i, 30 * (i % 2)),
+					nodes[i].getLocation());
+		}
+	}
+
+	/**
+	 * Test that overlaps between nodes which cannot be moved do not keep the
+	 * OverlapRemovalAlgorithm iterating, while overlaps with movable nodes
+	 * are still removed.
+	 */
+	public void testOverlapRemovalWithFixedNodes() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout fixed1 = context.addNode("fixed1");
+		fixed1.setLocation(0, 0);
+		fixed1.setMovable(false);
+		TestLayoutContext.TestNodeLayout fixed2 = context.addNode("fixed2");
+		fixed2.setLocation(10, 5);
+		fixed2.setMovable(false);
+		context.addNode("free1").setLocation(200, 0);
+		OverlapRemovalAlgorithm algorithm = new OverlapRemovalAlgorithm();
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		Assert.assertEquals(0, algorithm.getIterations());
+
+		TestLayoutContext.TestNodeLayout free2 = context.addNode("free2");
+		free2.setLocation(5, 0);
+		algorithm.applyLayout(true);
+		Assert.assertTrue(algorithm.getIterations() < algorithm
+				.getMaxIterations());
+		Assert.assertEquals(new Point(0, 0), fixed1.getLocation());
+		Assert.assertEquals(new Point(10, 5), fixed2.getLocation());
+		Assert.assertFalse(overlap(fixed1, free2, 0));
+		Assert.assertFalse(overlap(fixed2, free2, 0));
+	}
+
+	private static boolean overlap(NodeLayout node1, NodeLayout node2,
+			double spacing) {
+		double tolerance = 1e-6;
+		return Math.abs(node1.getLocation().x - node2.getLocation().x) < (node1
+				.getSize().width + node2.getSize().width) / 2 + spacing
+				- tolerance
+				&& Math.abs(node1.getLocation().y - node2.getLocation().y) < (node1
+						.getSize().height + node2.getSize().height)
+						/ 2
+						+ spacing - tolerance;
+	}
+
+	/**
+	 * Test that the MultilevelLayoutAlgorithm places all nodes of a large mesh
+	 * and of some smaller components at finite, distinct locations within the
+	 * bounds, keeps related nodes close, and is reproducible with a seed.
+	 */
+	public void testMultilevelLayout() {
+		TestLayoutContext context = createMesh(30);
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		context.addConnection(a, context.addNode("b"));
+		context.addNode("isolated");
+		MultilevelLayoutAlgorithm algorithm = new MultilevelLayoutAlgorithm();
+		algorithm.setRandomSeed(42);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		assertWithinBounds(context);
+		assertDistinctLocations(context);
+
+		NodeLayout[] nodes = context.getNodes();
+		ConnectionLayout[] connections = context.getConnections();
+		double connectionLength = 0;
+		for (int i = 0; i < connections.length; i++) {
+			connectionLength += connections[i].getSource().getLocation()
+					.getDistance(connections[i].getTarget().getLocation());
+		}
+		connectionLength /= connections.length;
+		double distance = 0;
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			distance += nodes[random.nextInt(nodes.length)].getLocation()
+					.getDistance(
+							nodes[random.nextInt(nodes.length)].getLocation());
+		}
+		distance /= 1000;
+		Assert.assertTrue("Connections of length " + connectionLength
+				+ " should be shorter than the average distance " + distance,
+				connectionLength < distance / 5);
+
+		Point[] locations = new Point[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			locations[i] = nodes[i].getLocation();
+			nodes[i].setLocation(0, 0);
+		}
+		algorithm.applyLayout(true);
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertEquals(locations[i], nodes[i].getLocation());
+		}
+	}
+
+	/**
+	 * Test that the MultilevelLayoutAlgorithm handles empty and tiny graphs.
+	 */
+	public void testMultilevelLayoutSmallGraphs() {
+		TestLayoutContext context = new TestLayoutContext();
+		MultilevelLayoutAlgorithm algorithm = new MultilevelLayoutAlgorithm();
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		context.addNode("single");
+		algorithm.applyLayout(true);
+		assertWithinBounds(context);
+		context.addConnection((TestLayoutContext.TestNodeLayout) context
+				.getNodes()[0], context.addNode("other"));
+		algorithm.applyLayout(true);
+		assertWithinBounds(context);
+		assertDistinctLocations(context);
+	}
+
+	/**
+	 * Creates a context holding a square mesh with the given number of nodes
+	 * per side.
+	 */
+	private static TestLayoutContext createMesh(int size) {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout[] nodes = new TestLayoutContext.TestNodeLayout[size
+				* size];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = context.addNode("n" + i, 10, 10);
+		}
+		for (int row = 0; row < size; row++) {
+			for (int column = 0; column < size; column++) {
+				int i = row * size + column;
+				if (column + 1 < size)
+					context.addConnection(nodes[i], nodes[i + 1]);
+				if (row + 1 < size)
+					context.addConnection(nodes[i], nodes[i + size]);
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Test that AlgorithmHelper.getMinimumDistance finds the same closest pair
+	 * as a scan of all pairs, for scattered locations as well as for integer
+	 * locations with ties and coincident nodes.
+	 */
+	public void testMinimumDistance() {
+		Random random = new Random(11);
+		for (int n = 2; n <= 300; n += 17) {
+			for (int grid = 0; grid < 2; grid++) {
+				TestLayoutContext context = new TestLayoutContext();
+				for (int i = 0; i < n; i++) {
+					TestLayoutContext.TestNodeLayout node = context
+							.addNode("n" + i);
+					if (grid == 1) {
+						node.setLocation(random.nextInt(n), random.nextInt(n));
+					} else {
+						node.setLocation(random.nextDouble() * 1000,
+								random.nextDouble() * 10);
+					}
+				}
+				EntityLayout[] entities = context.getEntities();
+				Dimension expected = new Dimension(Double.MAX_VALUE,
+						Double.MAX_VALUE);
+				double minDistance = Double.MAX_VALUE;
+				for (int i = 0; i < entities.length; i++) {
+					Point location1 = entities[i].getLocation();
+					for (int j = i + 1; j < entities.length; j++) {
+						Point location2 = entities[j].getLocation();
+						double dx = location1.x - location2.x;
+						double dy = location1.y - location2.y;
+						if (dx * dx + dy * dy < minDistance) {
+							minDistance = dx * dx + dy * dy;
+							expected.width = Math.abs(dx);
+							expected.height = Math.abs(dy);
+						}
+					}
+				}
+				Assert.assertEquals(expected,
+						AlgorithmHelper.getMinimumDistance(entities));
+			}
+		}
+	}
+
+	/**
+	 * Test the successor and predecessor lists of a GraphSnapshot for
+	 * directed, undirected and self-loop connections, and for connections
+	 * whose ends are pruned or not part of the snapshot.
+	 */
+	public void testGraphSnapshotAdjacency() {
+		TestLayoutContext context = new TestLayoutContext();
+		TestLayoutContext.TestNodeLayout a = context.addNode("a");
+		TestLayoutContext.TestNodeLayout b = context.addNode("b");
+		TestLayoutContext.TestNodeLayout c = context.addNode("c");
+		TestLayoutContext.TestNodeLayout p = context.addNode("p");
+		TestLayoutContext.TestNodeLayout q = context.addNode("q");
+		TestLayoutContext.TestNodeLayout x = context.addNode("x");
+		TestLayoutContext.TestSubgraphLayout s = new TestLayoutContext.TestSubgraphLayout(
+				true);
+		s.addNodes(new NodeLayout[] { p });
+		new TestLayoutContext.TestSubgraphLayout(false)
+				.addNodes(new NodeLayout[] { q });
+		context.addConnection(a, b);
+		context.addConnection(b, c).setDirected(false);
+		context.addConnection(c, c).setDirected(false);
+		// attributed to the subgraph of p
+		context.addConnection(a, p);
+		// left out, as q is pruned to a subgraph which is no entity
+		context.addConnection(q, b);
+		// left out, as x is not part of the snapshot
+		context.addConnection(x, a);
+
+		GraphSnapshot snapshot = new GraphSnapshot(new EntityLayout[] { a,
+				b, c, s }, context.getConnections());
+		Assert.assertEquals(4, snapshot.getEntityCount());
+		Assert.assertEquals(4, snapshot.getConnectionCount());
+		Assert.assertArrayEquals(new int[] { 0, 1, 2, 0 },
+				snapshot.getSources());
+		Assert.assertArrayEquals(new int[] { 1, 2, 2, 3 },
+				snapshot.getTargets());
+		Assert.assertTrue(snapshot.isDirected(0));
+		Assert.assertFalse(snapshot.isDirected(1));
+		Assert.assertFalse(snapshot.isDirected(2));
+		Assert.assertTrue(snapshot.isDirected(3));
+
+		// the undirected b -- c is stored in both directions, the self-loop
+		// of c only once
+		Assert.assertArrayEquals(new int[] { 0, 2, 3, 5, 5 },
+				snapshot.getSuccessorOffsets());
+		Assert.assertArrayEquals(new int[] { 1, 3, 2, 1, 2 },
+				snapshot.getSuccessors());
+		Assert.assertArrayEquals(new int[] { 0, 3, 1, 1, 2 },
+				snapshot.getSuccessorConnections());
+		Assert.assertArrayEquals(new int[] { 0, 0, 2, 4, 5 },
+				snapshot.getPredecessorOffsets());
+		Assert.assertArrayEquals(new int[] { 0, 2, 1, 2, 0 },
+				snapshot.getPredecessors());
+		Assert.assertArrayEquals(new int[] { 0, 1, 1, 2, 3 },
+				snapshot.getPredecessorConnections());
+
+		Assert.assertEquals(2, snapshot.indexOf(c));
+		Assert.assertEquals(3, snapshot.indexOf(s));
+		Assert.assertEquals(-1, snapshot.indexOf(p));
+	}
+
+	/**
+	 * Test that layouts stored in a LayoutCache are restored by a
+	 * CachingLayoutAlgorithm after saving and loading the cache, and that a
+	 * changed graph does not match the stored fingerprint.
+	 */
+	public void testLayoutCacheRoundTrip() throws IOException {
+		LayoutCache cache = new LayoutCache();
+		TestLayoutContext context = createRing(20);
+		CachingLayoutAlgorithm algorithm = new CachingLayoutAlgorithm(
+				new GridLayoutAlgorithm(), cache);
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		Assert.assertFalse(algorithm.isRestored());
+		Assert.assertEquals(1, cache.size());
+		NodeLayout[] nodes = context.getNodes();
+		Point[] locations = new Point[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			locations[i] = nodes[i].getLocation();
+		}
+
+		File file = File.createTempFile("layouts", ".cache");
+		try {
+			cache.save(file);
+			LayoutCache loaded = new LayoutCache();
+			Assert.assertTrue(loaded.load(file));
+			Assert.assertEquals(1, loaded.size());
+			TestLayoutContext copy = createRing(20);
+			algorithm = new CachingLayoutAlgorithm(new GridLayoutAlgorithm(),
+					loaded);
+			algorithm.setLayoutContext(copy);
+			algorithm.applyLayout(true);
+			Assert.assertTrue(algorithm.isRestored());
+			NodeLayout[] copiedNodes = copy.getNodes();
+			for (int i = 0; i < copiedNodes.length; i++) {
+				Assert.assertEquals(locations[i], copiedNodes[i].getLocation());
+			}
+
+			// a stale fingerprint is a miss
+			copy.addConnection(
+					(TestLayoutContext.TestNodeLayout) copiedNodes[0],
+					(TestLayoutContext.TestNodeLayout) copiedNodes[10]);
+			algorithm.applyLayout(true);
+			Assert.assertFalse(algorithm.isRestored());
+			copiedNodes[1].setSize(50, 50);
+			algorithm.applyLayout(true);
+			Assert.assertFalse(algorithm.isRestored());
+			algorithm.setParameters(new Object[] { "changed" });
+			algorithm.applyLayout(true);
+			Assert.assertFalse(algorithm.isRestored());
+			Assert.assertEquals(4, loaded.size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test that reconfiguring the wrapped algorithm through its setters,
+	 * without passing the new settings as parameters, is a cache miss.
+	 */
+	public void testLayoutCacheAlgorithmSettings() {
+		TestLayoutContext context = createRing(10);
+		SpringLayoutAlgorithm spring = new SpringLayoutAlgorithm();
+		spring.setIterations(10);
+		CachingLayoutAlgorithm algorithm = new CachingLayoutAlgorithm(spring,
+				new LayoutCache());
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		Assert.assertFalse(algorithm.isRestored());
+		algorithm.applyLayout(true);
+		Assert.assertTrue(algorithm.isRestored());
+		spring.setSpringLength(2 * spring.getSpringLength());
+		algorithm.applyLayout(true);
+		Assert.assertFalse(algorithm.isRestored());
+
+		SugiyamaLayoutAlgorithm sugiyama = new SugiyamaLayoutAlgorithm();
+		algorithm = new CachingLayoutAlgorithm(sugiyama, new LayoutCache());
+		algorithm.setLayoutContext(context);
+		algorithm.applyLayout(true);
+		algorithm.applyLayout(true);
+		Assert.assertTrue(algorithm.isRestored());
+		sugiyama.setNodeSpacing(2 * sugiyama.getNodeSpacing());
+		algorithm.applyLayout(true);
+		Assert.assertFalse(algorithm.isRestored());
+	}
+
+	/**
+	 * Test that corrupt or truncated cache files are not loaded and leave the
+	 * cache unchanged.
+	 */
+	public void testLayoutCacheLoadCorrupt() throws IOException {
+		LayoutCache cache = new LayoutCache();
+		cache.put("fingerprint", new double[] { 1, 2, 3, 4 });
+		File file = File.createTempFile("layouts", ".cache");
+		try {
+			Assert.assertFalse(cache
+					.load(new File(file.getPath() + ".missing")));
+
+			writeInts(file, new int[] { 0x12345678, 1, 1 });
+			Assert.assertFalse(cache.load(file));
+
+			// a huge number of layouts and a huge layout
+			writeInts(file, new int[] { 0x4C434143, 1, Integer.MAX_VALUE });
+			Assert.assertFalse(cache.load(file));
+			writeInts(file,
+					new int[] { 0x4C434143, 1, 1, 0, Integer.MAX_VALUE });
+			Assert.assertFalse(cache.load(file));
+			writeInts(file, new int[] { 0x4C434143, 1, 1, 0, -1 });
+			Assert.assertFalse(cache.load(file));
+
+			// a truncated file
+			LayoutCache other = new LayoutCache();
+			other.put("other", new double[] { 5, 6, 7, 8 });
+			other.save(file);
+			truncate(file, file.length() - 8);
+			Assert.assertFalse(cache.load(file));
+
+			Assert.assertEquals(1, cache.size());
+			Assert.assertNull(cache.get("other"));
+			Assert.assertEquals(4, cache.get("fingerprint").length);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void writeInts(File file, int[] values) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			for (int i = 0; i < values.length; i++) {
+				out.writeInt(values[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
 	/* Use a private subclass to access protected members: */
 	private static class TestNode extends TreeLayoutObserver.TreeNode {
 		protected TestNode() {
@@ -0,0 +1,478 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.dot.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.gef4.geometry.planar.Dimension;
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.geometry.planar.Rectangle;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.ContextListener;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.ExpandCollapseManager;
+import org.eclipse.gef4.layout.interfaces.GraphStructureListener;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.LayoutListener;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+import org.eclipse.gef4.layout.interfaces.PruningListener;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+
+/**
+ * A headless layout context for the layout tests, which holds its nodes and
+ * connections in memory. Graph structure listeners are notified when nodes or
+ * connections are added or removed. Nodes can be pruned to a
+ * {@link TestSubgraphLayout}, but the context does not manage subgraphs and
+ * does not support background layout.
+ */
+class TestLayoutContext implements LayoutContext {
+
+	static class TestNodeLayout implements NodeLayout {
+
+		private final String name;
+
+		private double x, y, width, height;
+
+		private boolean minimized;
+
+		private boolean movable = true;
+
+		private SubgraphLayout subgraph;
+
+		private final List<TestConnectionLayout> incoming = new ArrayList<TestConnectionLayout>();
+
+		private final List<TestConnectionLayout> outgoing = new ArrayList<TestConnectionLayout>();
+
+		TestNodeLayout(String name, double width, double height) {
+			this.name = name;
+			this.width = width;
+			this.height = height;
+		}
+
+		public Point getLocation() {
+			return new Point(x, y);
+		}
+
+		public void setLocation(double x, double y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		public Dimension getSize() {
+			return new Dimension(width, height);
+		}
+
+		public void setSize(double width, double height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		public double getPreferredAspectRatio() {
+			return 0;
+		}
+
+		public boolean isResizable() {
+			return false;
+		}
+
+		public boolean isMovable() {
+			return movable;
+		}
+
+		void setMovable(boolean movable) {
+			this.movable = movable;
+		}
+
+		public EntityLayout[] getSuccessingEntities() {
+			return getSuccessingNodes();
+		}
+
+		public EntityLayout[] getPredecessingEntities() {
+			return getPredecessingNodes();
+		}
+
+		public Object[] getItems() {
+			return new Object[] { this };
+		}
+
+		public boolean isPrunable() {
+			return true;
+		}
+
+		public boolean isPruned() {
+			return subgraph != null;
+		}
+
+		public SubgraphLayout getSubgraph() {
+			return subgraph;
+		}
+
+		public void prune(SubgraphLayout subgraph) {
+			this.subgraph = subgraph;
+		}
+
+		public NodeLayout[] getSuccessingNodes() {
+			NodeLayout[] result = new NodeLayout[outgoing.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = outgoing.get(i).getTarget();
+			}
+			return result;
+		}
+
+		public NodeLayout[] getPredecessingNodes() {
+			NodeLayout[] result = new NodeLayout[incoming.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = incoming.get(i).getSource();
+			}
+			return result;
+		}
+
+		public ConnectionLayout[] getIncomingConnections() {
+			return incoming.toArray(new ConnectionLayout[incoming.size()]);
+		}
+
+		public ConnectionLayout[] getOutgoingConnections() {
+			return outgoing.toArray(new ConnectionLayout[outgoing.size()]);
+		}
+
+		public void setMinimized(boolean minimized) {
+			this.minimized = minimized;
+		}
+
+		public boolean isMinimized() {
+			return minimized;
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	static class TestConnectionLayout implements ConnectionLayout {
+
+		private final TestNodeLayout source, target;
+
+		private boolean directed = true;
+
+		private boolean visible = true;
+
+		TestConnectionLayout(TestNodeLayout source, TestNodeLayout target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		public NodeLayout getSource() {
+			return source;
+		}
+
+		public NodeLayout getTarget() {
+			return target;
+		}
+
+		public double getWeight() {
+			return 1;
+		}
+
+		public boolean isDirected() {
+			return directed;
+		}
+
+		void setDirected(boolean directed) {
+			this.directed = directed;
+		}
+
+		public void setVisible(boolean visible) {
+			this.visible = visible;
+		}
+
+		public boolean isVisible() {
+			return visible;
+		}
+
+		public String toString() {
+			return source + (directed ? " -> " : " -- ") + target;
+		}
+	}
+
+	/**
+	 * A subgraph of size 40x20, which is not part of any context. Adding a
+	 * node prunes it to the subgraph, removing it unprunes it.
+	 */
+	static class TestSubgraphLayout implements SubgraphLayout {
+
+		private final boolean graphEntity;
+
+		private final List<NodeLayout> nodes = new ArrayList<NodeLayout>();
+
+		private double x, y;
+
+		TestSubgraphLayout(boolean graphEntity) {
+			this.graphEntity = graphEntity;
+		}
+
+		public NodeLayout[] getNodes() {
+			return nodes.toArray(new NodeLayout[nodes.size()]);
+		}
+
+		public int countNodes() {
+			return nodes.size();
+		}
+
+		public void addNodes(NodeLayout[] nodes) {
+			for (int i = 0; i < nodes.length; i++) {
+				this.nodes.add(nodes[i]);
+				nodes[i].prune(this);
+			}
+		}
+
+		public void removeNodes(NodeLayout[] nodes) {
+			for (int i = 0; i < nodes.length; i++) {
+				this.nodes.remove(nodes[i]);
+				nodes[i].prune(null);
+			}
+		}
+
+		public boolean isGraphEntity() {
+			return graphEntity;
+		}
+
+		public boolean isDirectionDependant() {
+			return false;
+		}
+
+		public void setDirection(int direction) {
+		}
+
+		public Point getLocation() {
+			return new Point(x, y);
+		}
+
+		public void setLocation(double x, double y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		public Dimension getSize() {
+			return new Dimension(40, 20);
+		}
+
+		public void setSize(double width, double height) {
+		}
+
+		public double getPreferredAspectRatio() {
+			return 0;
+		}
+
+		public boolean isResizable() {
+			return false;
+		}
+
+		public boolean isMovable() {
+			return true;
+		}
+
+		public EntityLayout[] getSuccessingEntities() {
+			return new EntityLayout[0];
+		}
+
+		public EntityLayout[] getPredecessingEntities() {
+			return new EntityLayout[0];
+		}
+
+		public Object[] getItems() {
+			return nodes.toArray();
+		}
+	}
+
+	private final List<TestNodeLayout> nodes = new ArrayList<TestNodeLayout>();
+
+	private final List<TestConnectionLayout> connections = new ArrayList<TestConnectionLayout>();
+
+	private final List<GraphStructureListener> structureListeners = new ArrayList<GraphStructureListener>();
+
+	private Rectangle bounds = new Rectangle(0, 0, 1000, 1000);
+
+	private LayoutAlgorithm mainLayoutAlgorithm;
+
+	private ExpandCollapseManager expandCollapseManager;
+
+	/**
+	 * Adds a node of size 40x20 and notifies the graph structure listeners.
+	 */
+	TestNodeLayout addNode(String name) {
+		return addNode(name, 40, 20);
+	}
+
+	/**
+	 * Adds a node of the given size and notifies the graph structure
+	 * listeners.
+	 */
+	TestNodeLayout addNode(String name, double width, double height) {
+		TestNodeLayout node = new TestNodeLayout(name, width, height);
+		nodes.add(node);
+		for (GraphStructureListener listener : copyOf(structureListeners)) {
+			listener.nodeAdded(this, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Removes the given node and its connections, notifying the graph
+	 * structure listeners about the connections first.
+	 */
+	void removeNode(TestNodeLayout node) {
+		for (TestConnectionLayout connection : copyOf(node.incoming)) {
+			removeConnection(connection);
+		}
+		for (TestConnectionLayout connection : copyOf(node.outgoing)) {
+			removeConnection(connection);
+		}
+		nodes.remove(node);
+		for (GraphStructureListener listener : copyOf(structureListeners)) {
+			listener.nodeRemoved(this, node);
+		}
+	}
+
+	/**
+	 * Adds a directed connection and notifies the graph structure listeners.
+	 */
+	TestConnectionLayout addConnection(TestNodeLayout source,
+			TestNodeLayout target) {
+		TestConnectionLayout connection = new TestConnectionLayout(source,
+				target);
+		connections.add(connection);
+		source.outgoing.add(connection);
+		target.incoming.add(connection);
+		for (GraphStructureListener listener : copyOf(structureListeners)) {
+			listener.connectionAdded(this, connection);
+		}
+		return connection;
+	}
+
+	/**
+	 * Removes the given connection and notifies the graph structure
+	 * listeners.
+	 */
+	void removeConnection(TestConnectionLayout connection) {
+		connections.remove(connection);
+		connection.source.outgoing.remove(connection);
+		connection.target.incoming.remove(connection);
+		for (GraphStructureListener listener : copyOf(structureListeners)) {
+			listener.connectionRemoved(this, connection);
+		}
+	}
+
+	void setBounds(Rectangle bounds) {
+		this.bounds = bounds.getCopy();
+	}
+
+	private static <T> List<T> copyOf(List<T> list) {
+		return new ArrayList<T>(list);
+	}
+
+	public NodeLayout[] getNodes() {
+		return nodes.toArray(new NodeLayout[nodes.size()]);
+	}
+
+	public ConnectionLayout[] getConnections() {
+		return connections.toArray(new ConnectionLayout[connections.size()]);
+	}
+
+	public EntityLayout[] getEntities() {
+		return nodes.toArray(new EntityLayout[nodes.size()]);
+	}
+
+	public ConnectionLayout[] getConnections(EntityLayout layoutEntity1,
+			EntityLayout layoutEntity2) {
+		List<ConnectionLayout> result = new ArrayList<ConnectionLayout>();
+		for (TestConnectionLayout connection : connections) {
+			if ((connection.source == layoutEntity1 && connection.target == layoutEntity2)
+					|| (connection.source == layoutEntity2 && connection.target == layoutEntity1))
+				result.add(connection);
+		}
+		return result.toArray(new ConnectionLayout[result.size()]);
+	}
+
+	public Rectangle getBounds() {
+		return bounds.getCopy();
+	}
+
+	public boolean isBoundsExpandable() {
+		return false;
+	}
+
+	public SubgraphLayout[] getSubgraphs() {
+		return new SubgraphLayout[0];
+	}
+
+	public SubgraphLayout createSubgraph(NodeLayout[] nodes) {
+		throw new UnsupportedOperationException(
+				"Test contexts do not support subgraphs");
+	}
+
+	public boolean isPruningEnabled() {
+		return false;
+	}
+
+	public boolean isBackgroundLayoutEnabled() {
+		return false;
+	}
+
+	public void setMainLayoutAlgorithm(LayoutAlgorithm algorithm) {
+		mainLayoutAlgorithm = algorithm;
+	}
+
+	public LayoutAlgorithm getMainLayoutAlgorithm() {
+		return mainLayoutAlgorithm;
+	}
+
+	public void setExpandCollapseManager(
+			ExpandCollapseManager expandCollapseManager) {
+		this.expandCollapseManager = expandCollapseManager;
+	}
+
+	public ExpandCollapseManager getExpandCollapseManager() {
+		return expandCollapseManager;
+	}
+
+	public void addLayoutListener(LayoutListener listener) {
+	}
+
+	public void removeLayoutListener(LayoutListener listener) {
+	}
+
+	public void addGraphStructureListener(GraphStructureListener listener) {
+		structureListeners.add(listener);
+	}
+
+	public void removeGraphStructureListener(GraphStructureListener listener) {
+		structureListeners.remove(listener);
+	}
+
+	public void addContextListener(ContextListener listener) {
+	}
+
+	public void removeContextListener(ContextListener listener) {
+	}
+
+	public void addPruningListener(PruningListener listener) {
+	}
+
+	public void removePruningListener(PruningListener listener) {
+	}
+
+	public void flushChanges(boolean animationHint) {
+	}
+
+}
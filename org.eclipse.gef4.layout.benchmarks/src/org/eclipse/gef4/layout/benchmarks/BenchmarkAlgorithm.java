@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.BarycentricCrossingReducer;
+import org.eclipse.gef4.layout.algorithms.DFSLayerProvider;
+import org.eclipse.gef4.layout.algorithms.GreedyCrossingReducer;
+import org.eclipse.gef4.layout.algorithms.GridLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.MultilevelLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.NetworkSimplexLayerProvider;
+import org.eclipse.gef4.layout.algorithms.ParallelSweepCrossingReducer;
+import org.eclipse.gef4.layout.algorithms.RadialLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.SplitCrossingReducer;
+import org.eclipse.gef4.layout.algorithms.SpringLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.SugiyamaLayoutAlgorithm;
+import org.eclipse.gef4.layout.algorithms.SugiyamaLayoutAlgorithm.Direction;
+import org.eclipse.gef4.layout.algorithms.SugiyamaLayoutAlgorithm.Placement;
+import org.eclipse.gef4.layout.algorithms.TreeLayoutAlgorithm;
+
+/**
+ * The configurations of the layout algorithms that are benchmarked. Each
+ * configuration has a default limit for the number of nodes, above which it
+ * is skipped because a single layout would take minutes.
+ */
+public enum BenchmarkAlgorithm {
+
+	SPRING("spring", 2000) {
+		public LayoutAlgorithm create(long seed) {
+			SpringLayoutAlgorithm algorithm = new SpringLayoutAlgorithm();
+			algorithm.setRandomSeed(seed);
+			return algorithm;
+		}
+	},
+
+	SPRING_BARNES_HUT("spring-bh", 10000) {
+		public LayoutAlgorithm create(long seed) {
+			SpringLayoutAlgorithm algorithm = new SpringLayoutAlgorithm();
+			algorithm.setRandomSeed(seed);
+			algorithm.setApproximateRepulsion(true);
+			return algorithm;
+		}
+	},
+
+	MULTILEVEL("multilevel", 100000) {
+		public LayoutAlgorithm create(long seed) {
+			MultilevelLayoutAlgorithm algorithm = new MultilevelLayoutAlgorithm();
+			algorithm.setRandomSeed(seed);
+			return algorithm;
+		}
+	},
+
+	SUGIYAMA("sugiyama", 10000) {
+		public LayoutAlgorithm create(long seed) {
+			return new SugiyamaLayoutAlgorithm(Direction.VERTICAL,
+					new DFSLayerProvider(), new BarycentricCrossingReducer());
+		}
+	},
+
+	SUGIYAMA_GREEDY("sugiyama-greedy", 1000) {
+		public LayoutAlgorithm create(long seed) {
+			return new SugiyamaLayoutAlgorithm(Direction.VERTICAL,
+					new DFSLayerProvider(), new GreedyCrossingReducer());
+		}
+	},
+
+	SUGIYAMA_SPLIT("sugiyama-split", 1000) {
+		public LayoutAlgorithm create(long seed) {
+			return new SugiyamaLayoutAlgorithm(Direction.VERTICAL,
+					new DFSLayerProvider(), new SplitCrossingReducer());
+		}
+	},
+
+	SUGIYAMA_SWEEP("sugiyama-sweep", 10000) {
+		public LayoutAlgorithm create(long seed) {
+			ParallelSweepCrossingReducer crossingReducer = new ParallelSweepCrossingReducer();
+			crossingReducer.setRandomSeed(seed);
+			SugiyamaLayoutAlgorithm algorithm = new SugiyamaLayoutAlgorithm(
+					Direction.VERTICAL, new NetworkSimplexLayerProvider(),
+					crossingReducer);
+			algorithm.setPlacement(Placement.COMPACT);
+			return algorithm;
+		}
+	},
+
+	TREE("tree", 100000) {
+		public LayoutAlgorithm create(long seed) {
+			return new TreeLayoutAlgorithm();
+		}
+	},
+
+	TREE_TIDY("tree-tidy", 100000) {
+		public LayoutAlgorithm create(long seed) {
+			TreeLayoutAlgorithm algorithm = new TreeLayoutAlgorithm();
+			algorithm.setTidy(true);
+			return algorithm;
+		}
+	},
+
+	RADIAL("radial", 100000) {
+		public LayoutAlgorithm create(long seed) {
+			return new RadialLayoutAlgorithm();
+		}
+	},
+
+	GRID("grid", 100000) {
+		public LayoutAlgorithm create(long seed) {
+			return new GridLayoutAlgorithm();
+		}
+	};
+
+	private final String name;
+
+	private final int maxNodes;
+
+	private BenchmarkAlgorithm(String name, int maxNodes) {
+		this.name = name;
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * Returns the name by which this configuration is selected on the command
+	 * line.
+	 *
+	 * @return the name of this configuration
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the largest number of nodes this configuration is benchmarked
+	 * with by default.
+	 *
+	 * @return the default limit for the number of nodes
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * Creates a new instance of the configured algorithm.
+	 *
+	 * @param seed
+	 *            the seed for algorithms with random choices
+	 * @return the new algorithm
+	 */
+	public abstract LayoutAlgorithm create(long seed);
+
+	/**
+	 * Returns the configuration with the given name.
+	 *
+	 * @param name
+	 *            the name of the configuration
+	 * @return the configuration
+	 * @throws IllegalArgumentException
+	 *             if there is no configuration with the given name
+	 */
+	public static BenchmarkAlgorithm forName(String name) {
+		for (BenchmarkAlgorithm algorithm : values()) {
+			if (algorithm.name.equals(name))
+				return algorithm;
+		}
+		throw new IllegalArgumentException("Unknown algorithm: " + name);
+	}
+
+}
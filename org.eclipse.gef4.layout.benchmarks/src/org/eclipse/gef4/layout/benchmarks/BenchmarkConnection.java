@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+
+/**
+ * A directed connection of a {@link BenchmarkContext} with weight 1.
+ */
+public class BenchmarkConnection implements ConnectionLayout {
+
+	private final BenchmarkNode source, target;
+
+	private boolean visible = true;
+
+	BenchmarkConnection(BenchmarkNode source, BenchmarkNode target) {
+		this.source = source;
+		this.target = target;
+		source.outgoing.add(this);
+		target.incoming.add(this);
+	}
+
+	public NodeLayout getSource() {
+		return source;
+	}
+
+	public NodeLayout getTarget() {
+		return target;
+	}
+
+	public double getWeight() {
+		return 1;
+	}
+
+	public boolean isDirected() {
+		return true;
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public String toString() {
+		return source + " -> " + target;
+	}
+
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.gef4.geometry.planar.Rectangle;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.ContextListener;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.ExpandCollapseManager;
+import org.eclipse.gef4.layout.interfaces.GraphStructureListener;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.LayoutListener;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+import org.eclipse.gef4.layout.interfaces.PruningListener;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+
+/**
+ * A headless layout context, which holds its nodes and connections in memory.
+ * The graph does not change after it has been built, so listeners are never
+ * notified, and neither pruning nor background layout are supported.
+ */
+public class BenchmarkContext implements LayoutContext {
+
+	/**
+	 * The default width of the nodes.
+	 */
+	public static final double DEFAULT_NODE_WIDTH = 40;
+
+	/**
+	 * The default height of the nodes.
+	 */
+	public static final double DEFAULT_NODE_HEIGHT = 20;
+
+	private final List<BenchmarkNode> nodes = new ArrayList<BenchmarkNode>();
+
+	private final List<BenchmarkConnection> connections = new ArrayList<BenchmarkConnection>();
+
+	private Rectangle bounds = new Rectangle(0, 0, 1000, 1000);
+
+	private LayoutAlgorithm mainLayoutAlgorithm;
+
+	private ExpandCollapseManager expandCollapseManager;
+
+	/**
+	 * Adds a node with the default size.
+	 *
+	 * @return the new node
+	 */
+	public BenchmarkNode addNode() {
+		BenchmarkNode node = new BenchmarkNode(nodes.size(),
+				DEFAULT_NODE_WIDTH, DEFAULT_NODE_HEIGHT);
+		nodes.add(node);
+		return node;
+	}
+
+	/**
+	 * Adds a connection between the nodes at the given indices.
+	 *
+	 * @param source
+	 *            the index of the source node
+	 * @param target
+	 *            the index of the target node
+	 * @return the new connection
+	 */
+	public BenchmarkConnection addConnection(int source, int target) {
+		BenchmarkConnection connection = new BenchmarkConnection(
+				nodes.get(source), nodes.get(target));
+		connections.add(connection);
+		return connection;
+	}
+
+	/**
+	 * Returns the node at the given index.
+	 *
+	 * @param index
+	 *            the index of the node
+	 * @return the node
+	 */
+	public BenchmarkNode getNode(int index) {
+		return nodes.get(index);
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 *
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the number of connections.
+	 *
+	 * @return the number of connections
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Sets the bounds in which the nodes should be laid out.
+	 *
+	 * @param bounds
+	 *            the new bounds
+	 */
+	public void setBounds(Rectangle bounds) {
+		this.bounds = bounds.getCopy();
+	}
+
+	public NodeLayout[] getNodes() {
+		return nodes.toArray(new NodeLayout[nodes.size()]);
+	}
+
+	public ConnectionLayout[] getConnections() {
+		return connections.toArray(new ConnectionLayout[connections.size()]);
+	}
+
+	public EntityLayout[] getEntities() {
+		return nodes.toArray(new EntityLayout[nodes.size()]);
+	}
+
+	public ConnectionLayout[] getConnections(EntityLayout layoutEntity1,
+			EntityLayout layoutEntity2) {
+		List<ConnectionLayout> result = new ArrayList<ConnectionLayout>();
+		if (layoutEntity1 instanceof BenchmarkNode
+				&& layoutEntity2 instanceof BenchmarkNode) {
+			BenchmarkNode node1 = (BenchmarkNode) layoutEntity1;
+			for (BenchmarkConnection connection : node1.outgoing) {
+				if (connection.getTarget() == layoutEntity2)
+					result.add(connection);
+			}
+			for (BenchmarkConnection connection : node1.incoming) {
+				if (connection.getSource() == layoutEntity2)
+					result.add(connection);
+			}
+		}
+		return result.toArray(new ConnectionLayout[result.size()]);
+	}
+
+	public Rectangle getBounds() {
+		return bounds.getCopy();
+	}
+
+	public boolean isBoundsExpandable() {
+		return false;
+	}
+
+	public SubgraphLayout[] getSubgraphs() {
+		return new SubgraphLayout[0];
+	}
+
+	public SubgraphLayout createSubgraph(NodeLayout[] nodes) {
+		throw new UnsupportedOperationException(
+				"Benchmark contexts do not support subgraphs");
+	}
+
+	public boolean isPruningEnabled() {
+		return false;
+	}
+
+	public boolean isBackgroundLayoutEnabled() {
+		return false;
+	}
+
+	public void setMainLayoutAlgorithm(LayoutAlgorithm algorithm) {
+		mainLayoutAlgorithm = algorithm;
+	}
+
+	public LayoutAlgorithm getMainLayoutAlgorithm() {
+		return mainLayoutAlgorithm;
+	}
+
+	public void setExpandCollapseManager(
+			ExpandCollapseManager expandCollapseManager) {
+		this.expandCollapseManager = expandCollapseManager;
+	}
+
+	public ExpandCollapseManager getExpandCollapseManager() {
+		return expandCollapseManager;
+	}
+
+	public void addLayoutListener(LayoutListener listener) {
+	}
+
+	public void removeLayoutListener(LayoutListener listener) {
+	}
+
+	public void addGraphStructureListener(GraphStructureListener listener) {
+	}
+
+	public void removeGraphStructureListener(GraphStructureListener listener) {
+	}
+
+	public void addContextListener(ContextListener listener) {
+	}
+
+	public void removeContextListener(ContextListener listener) {
+	}
+
+	public void addPruningListener(PruningListener listener) {
+	}
+
+	public void removePruningListener(PruningListener listener) {
+	}
+
+	public void flushChanges(boolean animationHint) {
+	}
+
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.gef4.geometry.planar.Dimension;
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+
+/**
+ * A node of a {@link BenchmarkContext}, which only stores its location and
+ * size. Nodes cannot be pruned.
+ */
+public class BenchmarkNode implements NodeLayout {
+
+	private final int index;
+
+	private double x, y;
+
+	private double width, height;
+
+	private boolean minimized;
+
+	final List<BenchmarkConnection> incoming = new ArrayList<BenchmarkConnection>();
+
+	final List<BenchmarkConnection> outgoing = new ArrayList<BenchmarkConnection>();
+
+	BenchmarkNode(int index, double width, double height) {
+		this.index = index;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Returns the position of this node among the nodes of its context.
+	 *
+	 * @return the index of this node
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public Point getLocation() {
+		return new Point(x, y);
+	}
+
+	public void setLocation(double x, double y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	public Dimension getSize() {
+		return new Dimension(width, height);
+	}
+
+	public void setSize(double width, double height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public double getPreferredAspectRatio() {
+		return 0;
+	}
+
+	public boolean isResizable() {
+		return false;
+	}
+
+	public boolean isMovable() {
+		return true;
+	}
+
+	public EntityLayout[] getSuccessingEntities() {
+		return getSuccessingNodes();
+	}
+
+	public EntityLayout[] getPredecessingEntities() {
+		return getPredecessingNodes();
+	}
+
+	public Object[] getItems() {
+		return new Object[] { this };
+	}
+
+	public boolean isPrunable() {
+		return false;
+	}
+
+	public boolean isPruned() {
+		return false;
+	}
+
+	public SubgraphLayout getSubgraph() {
+		return null;
+	}
+
+	public void prune(SubgraphLayout subgraph) {
+		throw new UnsupportedOperationException(
+				"Benchmark nodes cannot be pruned");
+	}
+
+	public NodeLayout[] getSuccessingNodes() {
+		NodeLayout[] result = new NodeLayout[outgoing.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = outgoing.get(i).getTarget();
+		}
+		return result;
+	}
+
+	public NodeLayout[] getPredecessingNodes() {
+		NodeLayout[] result = new NodeLayout[incoming.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = incoming.get(i).getSource();
+		}
+		return result;
+	}
+
+	public ConnectionLayout[] getIncomingConnections() {
+		return incoming.toArray(new ConnectionLayout[incoming.size()]);
+	}
+
+	public ConnectionLayout[] getOutgoingConnections() {
+		return outgoing.toArray(new ConnectionLayout[outgoing.size()]);
+	}
+
+	public void setMinimized(boolean minimized) {
+		this.minimized = minimized;
+	}
+
+	public boolean isMinimized() {
+		return minimized;
+	}
+
+	public String toString() {
+		return "Node " + index;
+	}
+
+}
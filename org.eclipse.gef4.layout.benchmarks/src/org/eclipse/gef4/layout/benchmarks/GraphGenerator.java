@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import java.util.Random;
+
+import org.eclipse.gef4.geometry.planar.Rectangle;
+
+/**
+ * Generates the synthetic graphs the layout algorithms are benchmarked on. All
+ * generated graphs are connected, and their connections always lead from an
+ * older to a newer node, so that they contain no directed cycles. The same
+ * seed always yields the same graph.
+ */
+public enum GraphGenerator {
+
+	/**
+	 * A complete tree in which every node has three children.
+	 */
+	TREE("tree") {
+		protected void connect(BenchmarkContext context, Random random) {
+			for (int i = 1; i < context.getNodeCount(); i++) {
+				context.addConnection((i - 1) / 3, i);
+			}
+		}
+	},
+
+	/**
+	 * A directed acyclic graph with about two connections per node. Each node
+	 * is connected to one to three of the nodes added shortly before it, so
+	 * that the graph has many short layers.
+	 */
+	DAG("dag") {
+		protected void connect(BenchmarkContext context, Random random) {
+			for (int i = 1; i < context.getNodeCount(); i++) {
+				int window = Math.min(i, 20);
+				int parents = Math.min(window, 1 + random.nextInt(3));
+				int first = i - window + random.nextInt(window - parents + 1);
+				for (int k = 0; k < parents; k++) {
+					context.addConnection(first + k, i);
+				}
+			}
+		}
+	},
+
+	/**
+	 * A scale-free graph grown by preferential attachment as described by
+	 * Barabasi and Albert: each new node is connected to two existing nodes,
+	 * which are chosen with a probability proportional to their degree.
+	 */
+	SCALE_FREE("scalefree") {
+		protected void connect(BenchmarkContext context, Random random) {
+			int n = context.getNodeCount();
+			// every node appears once per incident connection
+			int[] endpoints = new int[4 * n];
+			int count = 0;
+			for (int i = 1; i < n; i++) {
+				int first = count == 0 ? 0 : endpoints[random.nextInt(count)];
+				context.addConnection(first, i);
+				int second = count == 0 ? first : endpoints[random
+						.nextInt(count)];
+				if (second != first) {
+					context.addConnection(second, i);
+					endpoints[count++] = second;
+					endpoints[count++] = i;
+				}
+				endpoints[count++] = first;
+				endpoints[count++] = i;
+			}
+		}
+	},
+
+	/**
+	 * A square grid in which every node is connected to its right and its
+	 * lower neighbor.
+	 */
+	GRID("grid") {
+		protected void connect(BenchmarkContext context, Random random) {
+			int n = context.getNodeCount();
+			int columns = (int) Math.ceil(Math.sqrt(n));
+			for (int i = 0; i < n; i++) {
+				if ((i + 1) % columns != 0 && i + 1 < n)
+					context.addConnection(i, i + 1);
+				if (i + columns < n)
+					context.addConnection(i, i + columns);
+			}
+		}
+	};
+
+	private final String name;
+
+	private GraphGenerator(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name by which this generator is selected on the command
+	 * line.
+	 *
+	 * @return the name of this generator
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Creates a context with a new graph. The bounds of the context grow with
+	 * the square root of the number of nodes, so that the nodes of large
+	 * graphs fit into them.
+	 *
+	 * @param nodes
+	 *            the number of nodes
+	 * @param seed
+	 *            the seed of the random choices
+	 * @return a context containing the graph
+	 */
+	public BenchmarkContext generate(int nodes, long seed) {
+		BenchmarkContext context = new BenchmarkContext();
+		for (int i = 0; i < nodes; i++) {
+			context.addNode();
+		}
+		connect(context, new Random(seed));
+		double size = Math.max(1000, 4 * BenchmarkContext.DEFAULT_NODE_WIDTH
+				* Math.sqrt(nodes));
+		context.setBounds(new Rectangle(0, 0, size, size));
+		return context;
+	}
+
+	/**
+	 * Adds the connections of the graph to the nodes of the given context.
+	 */
+	protected abstract void connect(BenchmarkContext context, Random random);
+
+	/**
+	 * Returns the generator with the given name.
+	 *
+	 * @param name
+	 *            the name of the generator
+	 * @return the generator
+	 * @throws IllegalArgumentException
+	 *             if there is no generator with the given name
+	 */
+	public static GraphGenerator forName(String name) {
+		for (GraphGenerator generator : values()) {
+			if (generator.name.equals(name))
+				return generator;
+		}
+		throw new IllegalArgumentException("Unknown graph: " + name);
+	}
+
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+
+/**
+ * Runs the layout algorithms on generated graphs and reports the time per
+ * layout, the allocated memory and the quality of the results. It is started
+ * as a Java application with arguments of the form <code>name=value</code>:
+ * <dl>
+ * <dt><code>algorithms</code></dt>
+ * <dd>comma separated names of {@link BenchmarkAlgorithm}s, all by default</dd>
+ * <dt><code>graphs</code></dt>
+ * <dd>comma separated names of {@link GraphGenerator}s, all by default</dd>
+ * <dt><code>sizes</code></dt>
+ * <dd>comma separated numbers of nodes, <code>100,1000,10000</code> by default
+ * </dd>
+ * <dt><code>maxNodes</code></dt>
+ * <dd>overrides the limit of each algorithm for the number of nodes</dd>
+ * <dt><code>warmup</code>, <code>iterations</code></dt>
+ * <dd>the number of untimed and timed layouts, <code>3</code> and
+ * <code>5</code> by default</dd>
+ * <dt><code>seed</code></dt>
+ * <dd>the seed of the graphs and algorithms, <code>42</code> by default</dd>
+ * </dl>
+ * Every layout is computed on a freshly generated graph, whose generation is
+ * not timed. The allocated memory is only measured on JVMs that support
+ * <code>com.sun.management.ThreadMXBean</code>, and only for the thread that
+ * runs the benchmark, so allocations by worker threads of parallel algorithms
+ * are missing. The quality is measured on the result of the last layout.
+ */
+public class LayoutBenchmark {
+
+	/**
+	 * The number of pivot nodes for estimating the stress.
+	 */
+	private static final int STRESS_PIVOTS = 32;
+
+	/**
+	 * Counting crossings stops after this many tests, which takes a few
+	 * seconds.
+	 */
+	private static final long MAX_CROSSING_TESTS = 500000000L;
+
+	private List<BenchmarkAlgorithm> algorithms = new ArrayList<BenchmarkAlgorithm>();
+
+	private List<GraphGenerator> graphs = new ArrayList<GraphGenerator>();
+
+	private int[] sizes = { 100, 1000, 10000 };
+
+	private int maxNodes = -1;
+
+	private int warmup = 3;
+
+	private int iterations = 5;
+
+	private long seed = 42;
+
+	private final ThreadMXBean threadBean = ManagementFactory
+			.getThreadMXBean();
+
+	private Method allocatedBytesMethod;
+
+	/**
+	 * Runs the benchmark with the given arguments.
+	 *
+	 * @param args
+	 *            the arguments as described in the class comment
+	 */
+	public static void main(String[] args) {
+		LayoutBenchmark benchmark = new LayoutBenchmark();
+		try {
+			benchmark.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		benchmark.run(System.out);
+	}
+
+	private void parseArguments(String[] args) {
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 0)
+				throw new IllegalArgumentException("Expected name=value: "
+						+ arg);
+			String name = arg.substring(0, separator);
+			String[] values = arg.substring(separator + 1).split(",");
+			if ("algorithms".equals(name)) {
+				for (String value : values) {
+					algorithms.add(BenchmarkAlgorithm.forName(value));
+				}
+			} else if ("graphs".equals(name)) {
+				for (String value : values) {
+					graphs.add(GraphGenerator.forName(value));
+				}
+			} else if ("sizes".equals(name)) {
+				sizes = new int[values.length];
+				for (int i = 0; i < values.length; i++) {
+					sizes[i] = parseInt(name, values[i]);
+				}
+			} else if ("maxNodes".equals(name)) {
+				maxNodes = parseInt(name, values[0]);
+			} else if ("warmup".equals(name)) {
+				warmup = parseInt(name, values[0]);
+			} else if ("iterations".equals(name)) {
+				iterations = Math.max(1, parseInt(name, values[0]));
+			} else if ("seed".equals(name)) {
+				seed = parseInt(name, values[0]);
+			} else {
+				throw new IllegalArgumentException("Unknown argument: " + name);
+			}
+		}
+		if (algorithms.isEmpty()) {
+			for (BenchmarkAlgorithm algorithm : BenchmarkAlgorithm.values()) {
+				algorithms.add(algorithm);
+			}
+		}
+		if (graphs.isEmpty()) {
+			for (GraphGenerator graph : GraphGenerator.values()) {
+				graphs.add(graph);
+			}
+		}
+	}
+
+	private static int parseInt(String name, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number for " + name
+					+ ": " + value);
+		}
+	}
+
+	/**
+	 * Runs all configured combinations of algorithms, graphs and sizes and
+	 * prints one line for each.
+	 *
+	 * @param out
+	 *            the stream to print the results to
+	 */
+	public void run(PrintStream out) {
+		initAllocationMeasurement();
+		out.println("# " + System.getProperty("java.vm.name") + " "
+				+ System.getProperty("java.version") + ", "
+				+ Runtime.getRuntime().availableProcessors() + " processors, "
+				+ warmup + " warmup and " + iterations + " measured layouts");
+		out.println(String.format("%-16s %-10s %7s %7s %10s %9s %9s %9s %9s %7s",
+				"algorithm", "graph", "nodes", "edges", "ms/op", "+-ms",
+				"MB/op", "MB/s", "crossings", "stress"));
+		for (BenchmarkAlgorithm algorithm : algorithms) {
+			for (GraphGenerator graph : graphs) {
+				for (int size : sizes) {
+					if (size > (maxNodes < 0 ? algorithm.getMaxNodes()
+							: maxNodes))
+						continue;
+					out.println(measure(algorithm, graph, size));
+				}
+			}
+		}
+	}
+
+	private String measure(BenchmarkAlgorithm algorithm, GraphGenerator graph,
+			int size) {
+		for (int i = 0; i < warmup; i++) {
+			layout(algorithm, graph.generate(size, seed));
+		}
+		double[] millis = new double[iterations];
+		long allocated = 0;
+		BenchmarkContext context = null;
+		for (int i = 0; i < iterations; i++) {
+			context = graph.generate(size, seed);
+			long bytesBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			layout(algorithm, context);
+			millis[i] = (System.nanoTime() - start) / 1e6;
+			long bytesAfter = getAllocatedBytes();
+			allocated = bytesBefore < 0 || allocated < 0 ? -1 : allocated
+					+ bytesAfter - bytesBefore;
+		}
+
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			mean += millis[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (int i = 0; i < iterations; i++) {
+			variance += (millis[i] - mean) * (millis[i] - mean);
+		}
+		double deviation = iterations > 1 ? Math.sqrt(variance
+				/ (iterations - 1)) : 0;
+		double megabytes = allocated / (1024.0 * 1024.0) / iterations;
+
+		QualityMetrics metrics = new QualityMetrics(context);
+		long crossings = metrics.countCrossings(MAX_CROSSING_TESTS);
+		double stress = metrics.computeStress(STRESS_PIVOTS, seed);
+		return String.format(
+				"%-16s %-10s %7d %7d %10.2f %9.2f %9s %9s %9s %7.4f",
+				algorithm.getName(), graph.getName(), size,
+				context.getConnectionCount(), mean, deviation,
+				allocated < 0 ? "-" : String.format("%.2f", megabytes),
+				allocated < 0 || mean == 0 ? "-" : String.format("%.1f",
+						megabytes / mean * 1000), crossings < 0 ? "-"
+						: String.valueOf(crossings), stress);
+	}
+
+	private void layout(BenchmarkAlgorithm algorithm, BenchmarkContext context) {
+		LayoutAlgorithm layoutAlgorithm = algorithm.create(seed);
+		layoutAlgorithm.setLayoutContext(context);
+		layoutAlgorithm.applyLayout(true);
+	}
+
+	/**
+	 * Looks up the method of the HotSpot specific ThreadMXBean that returns
+	 * the bytes allocated by a thread.
+	 */
+	private void initAllocationMeasurement() {
+		try {
+			Class<?> beanClass = Class
+					.forName("com.sun.management.ThreadMXBean");
+			if (beanClass.isInstance(threadBean)) {
+				allocatedBytesMethod = beanClass.getMethod(
+						"getThreadAllocatedBytes", new Class[] { long.class });
+				if (getAllocatedBytes() < 0)
+					allocatedBytesMethod = null;
+			}
+		} catch (Exception e) {
+			allocatedBytesMethod = null;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far or
+	 * -1 if that cannot be measured.
+	 */
+	private long getAllocatedBytes() {
+		if (allocatedBytesMethod == null)
+			return -1;
+		try {
+			return ((Long) allocatedBytesMethod.invoke(threadBean,
+					new Object[] { Long.valueOf(Thread.currentThread()
+							.getId()) })).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+}
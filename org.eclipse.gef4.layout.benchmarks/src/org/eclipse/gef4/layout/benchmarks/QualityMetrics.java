@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.benchmarks;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+
+/**
+ * Measures the quality of a layout, with the connections drawn as straight
+ * lines between the centers of their nodes.
+ */
+public class QualityMetrics {
+
+	private final double[] x, y;
+
+	private final int[] sources, targets;
+
+	/**
+	 * Creates metrics for the current locations of the nodes of the given
+	 * context.
+	 *
+	 * @param context
+	 *            the laid out context
+	 */
+	public QualityMetrics(BenchmarkContext context) {
+		int n = context.getNodeCount();
+		x = new double[n];
+		y = new double[n];
+		for (int i = 0; i < n; i++) {
+			Point location = context.getNode(i).getLocation();
+			x[i] = location.x;
+			y[i] = location.y;
+		}
+		ConnectionLayout[] connections = context.getConnections();
+		sources = new int[connections.length];
+		targets = new int[connections.length];
+		for (int c = 0; c < connections.length; c++) {
+			sources[c] = ((BenchmarkNode) connections[c].getSource())
+					.getIndex();
+			targets[c] = ((BenchmarkNode) connections[c].getTarget())
+					.getIndex();
+		}
+	}
+
+	/**
+	 * Counts the pairs of connections that cross each other. Connections
+	 * sharing a node do not count as crossing. The connections are swept from
+	 * left to right, so that only pairs whose horizontal extents overlap are
+	 * tested. As that may still be quadratic for dense drawings, counting
+	 * stops after the given number of tests.
+	 *
+	 * @param maxTests
+	 *            the maximal number of pairs to test
+	 * @return the number of crossings or -1 if counting has been stopped
+	 */
+	public long countCrossings(long maxTests) {
+		int m = sources.length;
+		final double[] minX = new double[m];
+		double[] maxX = new double[m];
+		Integer[] sorted = new Integer[m];
+		for (int c = 0; c < m; c++) {
+			minX[c] = Math.min(x[sources[c]], x[targets[c]]);
+			maxX[c] = Math.max(x[sources[c]], x[targets[c]]);
+			sorted[c] = c;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(minX[a], minX[b]);
+			}
+		});
+
+		long crossings = 0;
+		long tests = 0;
+		for (int i = 0; i < m; i++) {
+			int a = sorted[i];
+			for (int j = i + 1; j < m && minX[sorted[j]] <= maxX[a]; j++) {
+				if (++tests > maxTests)
+					return -1;
+				int b = sorted[j];
+				if (sources[a] == sources[b] || sources[a] == targets[b]
+						|| targets[a] == sources[b] || targets[a] == targets[b])
+					continue;
+				if (intersect(sources[a], targets[a], sources[b], targets[b]))
+					crossings++;
+			}
+		}
+		return crossings;
+	}
+
+	/**
+	 * Tests whether the segments between the nodes p1, p2 and q1, q2 have a
+	 * common point.
+	 */
+	private boolean intersect(int p1, int p2, int q1, int q2) {
+		double d1 = orientation(q1, q2, p1);
+		double d2 = orientation(q1, q2, p2);
+		double d3 = orientation(p1, p2, q1);
+		double d4 = orientation(p1, p2, q2);
+		if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+				&& ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0)))
+			return true;
+		return (d1 == 0 && onSegment(q1, q2, p1))
+				|| (d2 == 0 && onSegment(q1, q2, p2))
+				|| (d3 == 0 && onSegment(p1, p2, q1))
+				|| (d4 == 0 && onSegment(p1, p2, q2));
+	}
+
+	private double orientation(int a, int b, int c) {
+		return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+	}
+
+	private boolean onSegment(int a, int b, int c) {
+		return Math.min(x[a], x[b]) <= x[c] && x[c] <= Math.max(x[a], x[b])
+				&& Math.min(y[a], y[b]) <= y[c] && y[c] <= Math.max(y[a], y[b]);
+	}
+
+	/**
+	 * Computes the normalized stress of the layout, which compares the
+	 * Euclidean distances of the nodes to their graph-theoretic distances,
+	 * ignoring the directions of the connections. The layout is scaled
+	 * optimally first, so that the stress does not depend on the size of the
+	 * drawing. A value of 0 means that the distances are proportional, values
+	 * close to 1 that they are unrelated.
+	 * <p>
+	 * Only the distances from the given number of randomly chosen pivot nodes
+	 * are considered, so that the stress can be estimated in linear time.
+	 * Pairs of nodes that are not connected by any path are ignored.
+	 *
+	 * @param pivots
+	 *            the number of pivot nodes
+	 * @param seed
+	 *            the seed for choosing the pivots
+	 * @return the normalized stress or {@link Double#NaN} if there are no
+	 *         connected pairs
+	 */
+	public double computeStress(int pivots, long seed) {
+		int n = x.length;
+		int[][] neighbors = getNeighbors();
+		int[] distance = new int[n];
+		int[] queue = new int[n];
+		Random random = new Random(seed);
+		// the optimal scale s minimizes the sum of (s*e - d)^2 / d^2, for
+		// which sum(e/d) and sum(e^2/d^2) are sufficient
+		double ratios = 0, squaredRatios = 0;
+		long pairs = 0;
+		for (int p = 0; p < Math.min(pivots, n); p++) {
+			int pivot = pivots >= n ? p : random.nextInt(n);
+			Arrays.fill(distance, -1);
+			distance[pivot] = 0;
+			queue[0] = pivot;
+			int head = 0, tail = 1;
+			while (head < tail) {
+				int v = queue[head++];
+				for (int w : neighbors[v]) {
+					if (distance[w] < 0) {
+						distance[w] = distance[v] + 1;
+						queue[tail++] = w;
+					}
+				}
+			}
+			for (int k = 1; k < tail; k++) {
+				int v = queue[k];
+				double euclidean = Math.sqrt((x[v] - x[pivot])
+						* (x[v] - x[pivot]) + (y[v] - y[pivot])
+						* (y[v] - y[pivot]));
+				double ratio = euclidean / distance[v];
+				ratios += ratio;
+				squaredRatios += ratio * ratio;
+				pairs++;
+			}
+		}
+		if (pairs == 0)
+			return Double.NaN;
+		if (squaredRatios == 0)
+			return 1;
+		return 1 - ratios * ratios / (squaredRatios * pairs);
+	}
+
+	private int[][] getNeighbors() {
+		int n = x.length;
+		int[] degree = new int[n];
+		for (int c = 0; c < sources.length; c++) {
+			degree[sources[c]]++;
+			degree[targets[c]]++;
+		}
+		int[][] neighbors = new int[n][];
+		for (int i = 0; i < n; i++) {
+			neighbors[i] = new int[degree[i]];
+			degree[i] = 0;
+		}
+		for (int c = 0; c < sources.length; c++) {
+			neighbors[sources[c]][degree[sources[c]]++] = targets[c];
+			neighbors[targets[c]][degree[targets[c]]++] = sources[c];
+		}
+		return neighbors;
+	}
+
+}
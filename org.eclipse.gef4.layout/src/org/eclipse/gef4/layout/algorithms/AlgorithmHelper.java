@@ -31,6 +31,25 @@ public class AlgorithmHelper {
 	 */
 	public static void fitWithinBounds(EntityLayout[] entities,
 			Rectangle destinationBounds, boolean resize) {
+		fitWithinBounds(entities, destinationBounds, resize, false);
+	}
+
+	/**
+	 * Fits given entities within given bounds, preserving their relative
+	 * locations. If <code>avoidOverlaps</code> is set and resizing the
+	 * entities would make more pairs of them overlap than fitting them without
+	 * resizing, the entities are only moved and keep their sizes.
+	 * 
+	 * @param entities
+	 * @param destinationBounds
+	 * @param resize
+	 *            whether resizable entities are scaled along with the bounds
+	 * @param avoidOverlaps
+	 *            whether resizing is skipped if it would add overlaps
+	 */
+	public static void fitWithinBounds(EntityLayout[] entities,
+			Rectangle destinationBounds, boolean resize,
+			boolean avoidOverlaps) {
 		Rectangle startingBounds = getLayoutBounds(entities, false);
 		double sizeScale = Math.min(destinationBounds.getWidth()
 				/ startingBounds.getWidth(), destinationBounds.getHeight()
@@ -39,33 +58,72 @@ public class AlgorithmHelper {
 			fitSingleEntity(entities[0], destinationBounds, resize);
 			return;
 		}
+		int length = entities.length;
+		double[] x = new double[length];
+		double[] y = new double[length];
+		double[] width = new double[length];
+		double[] height = new double[length];
+		if (resize && avoidOverlaps) {
+			fit(entities, startingBounds, destinationBounds, 1, x, y, width,
+					height);
+			long overlapsWithoutResize = new SpatialGrid(x, y).countOverlaps(
+					width, height);
+			fit(entities, startingBounds, destinationBounds, sizeScale, x, y,
+					width, height);
+			long overlapsWithResize = new SpatialGrid(x, y).countOverlaps(
+					width, height);
+			resize = overlapsWithResize <= overlapsWithoutResize;
+		}
+		if (!resize) {
+			fit(entities, startingBounds, destinationBounds, 1, x, y, width,
+					height);
+		} else if (!avoidOverlaps) {
+			fit(entities, startingBounds, destinationBounds, sizeScale, x, y,
+					width, height);
+		}
+		for (int i = 0; i < length; i++) {
+			EntityLayout entity = entities[i];
+			if (resize && entity.isResizable()) {
+				entity.setSize(width[i], height[i]);
+			}
+			if (entity.isMovable()) {
+				entity.setLocation(x[i], y[i]);
+			}
+		}
+	}
+
+	/**
+	 * Computes the locations and sizes of the given entities when fitted into
+	 * the destination bounds, with resizable entities scaled by the given
+	 * factor.
+	 */
+	private static void fit(EntityLayout[] entities, Rectangle startingBounds,
+			Rectangle destinationBounds, double sizeScale, double[] x,
+			double[] y, double[] width, double[] height) {
 		for (int i = 0; i < entities.length; i++) {
 			EntityLayout entity = entities[i];
 			Dimension size = entity.getSize();
+			if (entity.isResizable()) {
+				size.width *= sizeScale;
+				size.height *= sizeScale;
+			}
+			width[i] = size.width;
+			height[i] = size.height;
+			Point location = entity.getLocation();
 			if (entity.isMovable()) {
-				Point location = entity.getLocation();
 				double percentX = (location.x - startingBounds.getX())
 						/ (startingBounds.getWidth());
 				double percentY = (location.y - startingBounds.getY())
 						/ (startingBounds.getHeight());
-
-				if (resize && entity.isResizable()) {
-					size.width *= sizeScale;
-					size.height *= sizeScale;
-					entity.setSize(size.width, size.height);
-				}
-
 				location.x = destinationBounds.getX() + size.width / 2
 						+ percentX
 						* (destinationBounds.getWidth() - size.width);
 				location.y = destinationBounds.getY() + size.height / 2
 						+ percentY
 						* (destinationBounds.getHeight() - size.height);
-				entity.setLocation(location.x, location.y);
-
-			} else if (resize && entity.isResizable()) {
-				entity.setSize(size.width * sizeScale, size.height * sizeScale);
 			}
+			x[i] = location.x;
+			y[i] = location.y;
 		}
 	}
 
@@ -201,23 +259,19 @@ public class AlgorithmHelper {
 	public static Dimension getMinimumDistance(EntityLayout[] entities) {
 		Dimension horAndVertdistance = new Dimension(Double.MAX_VALUE,
 				Double.MAX_VALUE);
-		double minDistance = Double.MAX_VALUE;
-
-		// TODO: Very Slow!
+		double[] x = new double[entities.length];
+		double[] y = new double[entities.length];
 		for (int i = 0; i < entities.length; i++) {
-			Point location1 = entities[i].getLocation();
-			for (int j = i + 1; j < entities.length; j++) {
-				Point location2 = entities[j].getLocation();
-				double distanceX = location1.x - location2.x;
-				double distanceY = location1.y - location2.y;
-				double distance = distanceX * distanceX + distanceY * distanceY;
-
-				if (distance < minDistance) {
-					minDistance = distance;
-					horAndVertdistance.width = Math.abs(distanceX);
-					horAndVertdistance.height = Math.abs(distanceY);
-				}
-			}
+			Point location = entities[i].getLocation();
+			x[i] = location.x;
+			y[i] = location.y;
+		}
+		int[] closestPair = new SpatialGrid(x, y).getClosestPair();
+		if (closestPair != null) {
+			horAndVertdistance.width = Math.abs(x[closestPair[0]]
+					- x[closestPair[1]]);
+			horAndVertdistance.height = Math.abs(y[closestPair[0]]
+					- y[closestPair[1]]);
 		}
 		return horAndVertdistance;
 	}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+/**
+ * Array utilities for the layout algorithms, which have to run on J2SE-1.5
+ * and therefore cannot use <code>java.util.Arrays.copyOf()</code>.
+ */
+final class ArrayHelper {
+
+	private ArrayHelper() {
+	}
+
+	/**
+	 * Returns a copy of the given array, truncated or padded with zeros to
+	 * the given length.
+	 */
+	static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the given array, truncated or padded with zeros to
+	 * the given length.
+	 */
+	static double[] copyOf(double[] array, int length) {
+		double[] copy = new double[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the given array, truncated or padded with
+	 * <code>false</code> to the given length.
+	 */
+	static boolean[] copyOf(boolean[] array, int length) {
+		boolean[] copy = new boolean[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+		return copy;
+	}
+
+}
@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns coordinates within the layers of an ordered layering, following
+ * the method of Brandes and Koepf (http://dx.doi.org/10.1007/3-540-45848-4_3).
+ * <p>
+ * Each node is aligned with the median of its neighbors in the adjacent layer,
+ * preferring inner segments between dummy nodes, so that long connections are
+ * drawn straight. The resulting blocks are compacted according to the sizes
+ * of the nodes. This is done for the four combinations of aligning upwards or
+ * downwards and compacting to the left or right, and the results are balanced
+ * by taking the average median coordinate of each node. Every step takes
+ * linear time in the number of nodes and connections (apart from sorting the
+ * neighbors of each node) and works on primitive arrays.
+ * <p>
+ * Only the predecessors and successors in adjacent layers are considered.
+ * Padding wrappers have to be removed from the layers beforehand.
+ */
+class BrandesKoepfPlacement {
+
+	private final int n;
+	private final NodeWrapper[] wrappers;
+	private final int[] layerOffsets;
+	private final int[] layerOf;
+	private final int[] positions;
+	private final int[] upOffsets, up;
+	private final int[] downOffsets, down;
+	private final boolean[] upMarked, downMarked;
+
+	private final double[] sizes;
+	private final double nodeSpacing;
+	private final double dummySpacing;
+
+	/**
+	 * Creates a new placement for the given layers.
+	 *
+	 * @param layers
+	 *            the ordered layers without padding wrappers
+	 * @param sizes
+	 *            the size of each node along its layer, indexed by the order
+	 *            of the nodes within the layers (the nodes of the first layer
+	 *            first)
+	 * @param nodeSpacing
+	 *            the minimal space between two nodes
+	 * @param dummySpacing
+	 *            the minimal space between a dummy node and any other node
+	 */
+	public BrandesKoepfPlacement(List<List<NodeWrapper>> layers,
+			double[] sizes, double nodeSpacing, double dummySpacing) {
+		this.sizes = sizes;
+		this.nodeSpacing = nodeSpacing;
+		this.dummySpacing = dummySpacing;
+		layerOffsets = new int[layers.size() + 1];
+		for (int l = 0; l < layers.size(); l++) {
+			layerOffsets[l + 1] = layerOffsets[l] + layers.get(l).size();
+		}
+		n = layerOffsets[layers.size()];
+		wrappers = new NodeWrapper[n];
+		layerOf = new int[n];
+		positions = new int[n];
+		for (int l = 0; l < layers.size(); l++) {
+			int k = layerOffsets[l];
+			for (NodeWrapper nw : layers.get(l)) {
+				layerOf[k] = l;
+				positions[k] = k - layerOffsets[l];
+				wrappers[k++] = nw;
+			}
+		}
+		IdentityIndexMap ids = new IdentityIndexMap(wrappers);
+		upOffsets = new int[n + 1];
+		downOffsets = new int[n + 1];
+		up = collectNeighbors(ids, upOffsets, true);
+		down = collectNeighbors(ids, downOffsets, false);
+		upMarked = new boolean[up.length];
+		downMarked = new boolean[down.length];
+		markConflicts();
+	}
+
+	/**
+	 * Computes the coordinate of the center of each node along its layer. The
+	 * smallest coordinate of the left border of a node is 0.
+	 *
+	 * @return the coordinates, indexed like the sizes
+	 */
+	public double[] place() {
+		double[][] coordinates = new double[4][];
+		int smallest = 0;
+		double[] min = new double[4];
+		double[] max = new double[4];
+		for (int d = 0; d < 4; d++) {
+			boolean downwards = (d & 1) == 0;
+			boolean leftwards = (d & 2) == 0;
+			int[] roots = new int[n];
+			align(downwards, leftwards, roots);
+			coordinates[d] = compact(leftwards, roots);
+			min[d] = Double.POSITIVE_INFINITY;
+			max[d] = Double.NEGATIVE_INFINITY;
+			for (int v = 0; v < n; v++) {
+				min[d] = Math.min(min[d], coordinates[d][v] - sizes[v] / 2);
+				max[d] = Math.max(max[d], coordinates[d][v] + sizes[v] / 2);
+			}
+			if (max[d] - min[d] < max[smallest] - min[smallest]) {
+				smallest = d;
+			}
+		}
+
+		// align the left-compacted layouts to the left border of the
+		// smallest one and the right-compacted ones to its right border, and
+		// take the average of the two median coordinates
+		double[] result = new double[n];
+		if (n == 0) {
+			return result;
+		}
+		double[] values = new double[4];
+		double left = Double.POSITIVE_INFINITY;
+		for (int v = 0; v < n; v++) {
+			for (int d = 0; d < 4; d++) {
+				double shift = (d & 2) == 0 ? min[smallest] - min[d]
+						: max[smallest] - max[d];
+				values[d] = coordinates[d][v] + shift;
+			}
+			Arrays.sort(values);
+			result[v] = (values[1] + values[2]) / 2;
+			left = Math.min(left, result[v] - sizes[v] / 2);
+		}
+		for (int v = 0; v < n; v++) {
+			result[v] -= left;
+		}
+		return result;
+	}
+
+	private int[] collectNeighbors(IdentityIndexMap ids, int[] offsets,
+			boolean predecessors) {
+		int[] neighbors = new int[16];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = size;
+			int layer = layerOf[i] + (predecessors ? -1 : 1);
+			for (NodeWrapper nw : predecessors ? wrappers[i].pred
+					: wrappers[i].succ) {
+				int j = ids.get(nw);
+				if (j < 0 || layerOf[j] != layer) {
+					continue;
+				}
+				if (size == neighbors.length) {
+					neighbors = ArrayHelper.copyOf(neighbors, size * 2);
+				}
+				neighbors[size++] = j;
+			}
+			// sort the neighbors by their position
+			for (int k = offsets[i] + 1; k < size; k++) {
+				int j = neighbors[k];
+				int m = k - 1;
+				while (m >= offsets[i] && positions[neighbors[m]] > positions[j]) {
+					neighbors[m + 1] = neighbors[m];
+					m--;
+				}
+				neighbors[m + 1] = j;
+			}
+		}
+		offsets[n] = size;
+		return ArrayHelper.copyOf(neighbors, size);
+	}
+
+	private boolean isInnerSegment(int u, int v) {
+		return wrappers[u].isDummy() && wrappers[v].isDummy();
+	}
+
+	/**
+	 * Marks the connections which cross an inner segment (type 1 conflicts),
+	 * so that they are not used for the alignment.
+	 */
+	private void markConflicts() {
+		for (int l = 0; l + 2 < layerOffsets.length; l++) {
+			int lowerFrom = layerOffsets[l + 1];
+			int lowerTo = layerOffsets[l + 2];
+			int upperSize = layerOffsets[l + 1] - layerOffsets[l];
+			int k0 = 0;
+			int scanned = lowerFrom;
+			for (int v = lowerFrom; v < lowerTo; v++) {
+				int k1 = -1;
+				if (wrappers[v].isDummy()) {
+					for (int k = upOffsets[v]; k < upOffsets[v + 1]; k++) {
+						if (isInnerSegment(up[k], v)) {
+							k1 = positions[up[k]];
+						}
+					}
+				}
+				if (k1 < 0 && v < lowerTo - 1) {
+					continue;
+				}
+				if (k1 < 0) {
+					k1 = upperSize - 1;
+				}
+				for (; scanned <= v; scanned++) {
+					for (int k = upOffsets[scanned]; k < upOffsets[scanned + 1]; k++) {
+						int p = positions[up[k]];
+						if ((p < k0 || p > k1)
+								&& !isInnerSegment(up[k], scanned)) {
+							mark(up[k], scanned, k);
+						}
+					}
+				}
+				k0 = k1;
+			}
+		}
+	}
+
+	private void mark(int upper, int lower, int upIndex) {
+		upMarked[upIndex] = true;
+		for (int k = downOffsets[upper]; k < downOffsets[upper + 1]; k++) {
+			if (down[k] == lower) {
+				downMarked[k] = true;
+			}
+		}
+	}
+
+	/**
+	 * Aligns each node with a median neighbor in the previous layer (in the
+	 * given vertical direction), forming blocks which are identified by their
+	 * topmost (respectively bottommost) node.
+	 */
+	private void align(boolean downwards, boolean leftwards, int[] roots) {
+		int[] align = new int[n];
+		for (int v = 0; v < n; v++) {
+			roots[v] = v;
+			align[v] = v;
+		}
+		int[] offsets = downwards ? upOffsets : downOffsets;
+		int[] neighbors = downwards ? up : down;
+		boolean[] marked = downwards ? upMarked : downMarked;
+		int numberOfLayers = layerOffsets.length - 1;
+		for (int i = 1; i < numberOfLayers; i++) {
+			int l = downwards ? i : numberOfLayers - 1 - i;
+			int from = layerOffsets[l];
+			int to = layerOffsets[l + 1];
+			int r = leftwards ? -1 : Integer.MAX_VALUE;
+			for (int k = 0; k < to - from; k++) {
+				int v = leftwards ? from + k : to - 1 - k;
+				int degree = offsets[v + 1] - offsets[v];
+				if (degree == 0) {
+					continue;
+				}
+				int lower = offsets[v] + (degree - 1) / 2;
+				int upper = offsets[v] + degree / 2;
+				for (int m = 0; m < 2 && align[v] == v; m++) {
+					int median = (m == 0) == leftwards ? lower : upper;
+					int u = neighbors[median];
+					if (marked[median]
+							|| (leftwards ? r >= positions[u]
+									: r <= positions[u])) {
+						continue;
+					}
+					align[u] = v;
+					roots[v] = roots[u];
+					align[v] = roots[v];
+					r = positions[u];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Places the blocks as close as possible in the given horizontal
+	 * direction. The blocks form an acyclic graph, in which each block
+	 * precedes the blocks of the nodes following its nodes within their
+	 * layers. The blocks are placed by a longest path computation in
+	 * topological order and then pulled towards their successors.
+	 */
+	private double[] compact(boolean leftwards, int[] roots) {
+		// collect the edges between the blocks
+		int[] offsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			if (hasNext(v, leftwards)) {
+				offsets[roots[v] + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] fill = ArrayHelper.copyOf(offsets, n);
+		int[] targets = new int[offsets[n]];
+		double[] separations = new double[offsets[n]];
+		int[] inDegree = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (hasNext(v, leftwards)) {
+				int w = leftwards ? v + 1 : v - 1;
+				int e = fill[roots[v]]++;
+				targets[e] = roots[w];
+				separations[e] = separation(v, w);
+				inDegree[roots[w]]++;
+			}
+		}
+
+		// longest path from the leftmost blocks
+		int[] topological = new int[n];
+		int size = 0;
+		for (int v = 0; v < n; v++) {
+			if (roots[v] == v && inDegree[v] == 0) {
+				topological[size++] = v;
+			}
+		}
+		double[] blockCoordinates = new double[n];
+		for (int head = 0; head < size; head++) {
+			int b = topological[head];
+			for (int e = offsets[b]; e < offsets[b + 1]; e++) {
+				int c = targets[e];
+				blockCoordinates[c] = Math.max(blockCoordinates[c],
+						blockCoordinates[b] + separations[e]);
+				if (--inDegree[c] == 0) {
+					topological[size++] = c;
+				}
+			}
+		}
+		// pull the blocks towards their successors to close gaps
+		for (int t = size - 1; t >= 0; t--) {
+			int b = topological[t];
+			double limit = Double.POSITIVE_INFINITY;
+			for (int e = offsets[b]; e < offsets[b + 1]; e++) {
+				limit = Math.min(limit, blockCoordinates[targets[e]]
+						- separations[e]);
+			}
+			if (limit != Double.POSITIVE_INFINITY) {
+				blockCoordinates[b] = Math.max(blockCoordinates[b], limit);
+			}
+		}
+
+		double[] coordinates = new double[n];
+		for (int v = 0; v < n; v++) {
+			coordinates[v] = leftwards ? blockCoordinates[roots[v]]
+					: -blockCoordinates[roots[v]];
+		}
+		return coordinates;
+	}
+
+	private boolean hasNext(int v, boolean leftwards) {
+		int l = layerOf[v];
+		return leftwards ? v + 1 < layerOffsets[l + 1] : v > layerOffsets[l];
+	}
+
+	private double separation(int v, int w) {
+		double spacing = wrappers[v].isDummy() || wrappers[w].isDummy() ? dummySpacing
+				: nodeSpacing;
+		return (sizes[v] + sizes[w]) / 2 + spacing;
+	}
+
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.gef4.geometry.planar.Rectangle;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+
+/**
+ * Wraps another layout algorithm and stores its results in a
+ * {@link LayoutCache}, so that a graph which has already been laid out is not
+ * laid out again.
+ * <p>
+ * Before the wrapped algorithm is run, a fingerprint of the context is
+ * computed from the class of the wrapped algorithm, its settings, the bounds
+ * of the context, the sizes and flags of the entities and the connections
+ * between them. If the cache
+ * holds a layout for this fingerprint, the stored locations and sizes are
+ * applied to the entities instead. The current locations of the entities are
+ * not part of the fingerprint.
+ * <p>
+ * The settings of the algorithms of this package are read from their
+ * getters. The settings of any other algorithm, and those without a getter
+ * such as the layer provider of a {@link SugiyamaLayoutAlgorithm}, are only
+ * known through {@link #setParameters(Object[])}. If they are not passed
+ * there, reconfiguring the wrapped algorithm restores layouts computed with
+ * the old configuration.
+ * <p>
+ * Entities are identified by their position in
+ * {@link LayoutContext#getEntities()}, so a stored layout is only found again
+ * if the context lists the entities in the same order.
+ */
+public class CachingLayoutAlgorithm implements LayoutAlgorithm {
+
+	/**
+	 * Changes whenever the contents of the fingerprint change, so that
+	 * layouts persisted by an older version are not applied.
+	 */
+	private static final int FINGERPRINT_VERSION = 2;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef"
+			.toCharArray();
+
+	private final LayoutAlgorithm algorithm;
+
+	private final LayoutCache cache;
+
+	private Object[] parameters = new Object[0];
+
+	private LayoutContext context;
+
+	private boolean restored;
+
+	/**
+	 * Creates a new algorithm, which caches the layouts computed by the given
+	 * algorithm.
+	 * <p>
+	 * Only the settings of the algorithms of this package which have a getter
+	 * are part of the fingerprint. Any other setting of the given algorithm
+	 * has to be passed to {@link #setParameters(Object[])}, and passed again
+	 * whenever it changes, otherwise stale layouts are restored.
+	 *
+	 * @param algorithm
+	 *            the algorithm to compute the layouts with
+	 * @param cache
+	 *            the cache to store the layouts in
+	 */
+	public CachingLayoutAlgorithm(LayoutAlgorithm algorithm, LayoutCache cache) {
+		this.algorithm = algorithm;
+		this.cache = cache;
+	}
+
+	public void applyLayout(boolean clean) {
+		if (!clean || context == null) {
+			restored = false;
+			algorithm.applyLayout(clean);
+			return;
+		}
+		GraphSnapshot snapshot = new GraphSnapshot(context);
+		String fingerprint = computeFingerprint(snapshot);
+		int length = snapshot.getEntityCount();
+		double[] layout = cache.get(fingerprint);
+		restored = isValid(layout, length);
+		if (restored) {
+			double[] x = snapshot.getX();
+			double[] y = snapshot.getY();
+			double[] width = snapshot.getWidth();
+			double[] height = snapshot.getHeight();
+			for (int i = 0; i < length; i++) {
+				x[i] = layout[4 * i];
+				y[i] = layout[4 * i + 1];
+				width[i] = layout[4 * i + 2];
+				height[i] = layout[4 * i + 3];
+			}
+			snapshot.writeSizes();
+			snapshot.writeLocations();
+			return;
+		}
+
+		algorithm.applyLayout(clean);
+		snapshot.readGeometry();
+		layout = new double[4 * length];
+		for (int i = 0; i < length; i++) {
+			layout[4 * i] = snapshot.getX()[i];
+			layout[4 * i + 1] = snapshot.getY()[i];
+			layout[4 * i + 2] = snapshot.getWidth()[i];
+			layout[4 * i + 3] = snapshot.getHeight()[i];
+		}
+		cache.put(fingerprint, layout);
+	}
+
+	/**
+	 * Checks that the given layout, which may have been loaded from a file,
+	 * holds finite locations and sizes of the given number of entities.
+	 */
+	private static boolean isValid(double[] layout, int length) {
+		if (layout == null || layout.length != 4 * length)
+			return false;
+		for (int i = 0; i < layout.length; i++) {
+			if (Double.isNaN(layout[i]) || Double.isInfinite(layout[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes a SHA-1 digest of everything that determines the result of
+	 * the wrapped algorithm, apart from the initial locations.
+	 */
+	private String computeFingerprint(GraphSnapshot snapshot) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-1
+			throw new IllegalStateException(e.getMessage());
+		}
+		update(digest, FINGERPRINT_VERSION);
+		update(digest, algorithm.getClass().getName());
+		update(digest, parameters.length);
+		for (int i = 0; i < parameters.length; i++) {
+			update(digest, String.valueOf(parameters[i]));
+		}
+		Object[] settings = getSettings();
+		update(digest, settings.length);
+		for (int i = 0; i < settings.length; i++) {
+			update(digest, String.valueOf(settings[i]));
+		}
+
+		Rectangle bounds = context.getBounds();
+		update(digest, bounds.getX());
+		update(digest, bounds.getY());
+		update(digest, bounds.getWidth());
+		update(digest, bounds.getHeight());
+
+		int length = snapshot.getEntityCount();
+		update(digest, length);
+		for (int i = 0; i < length; i++) {
+			EntityLayout entity = snapshot.getEntity(i);
+			update(digest, snapshot.getWidth()[i]);
+			update(digest, snapshot.getHeight()[i]);
+			update(digest, (entity.isMovable() ? 1 : 0)
+					| (entity.isResizable() ? 2 : 0)
+					| (entity instanceof SubgraphLayout ? 4 : 0));
+		}
+
+		int connections = snapshot.getConnectionCount();
+		update(digest, connections);
+		for (int c = 0; c < connections; c++) {
+			update(digest, snapshot.getSources()[c]);
+			update(digest, snapshot.getTargets()[c]);
+			update(digest, snapshot.getWeights()[c]);
+			update(digest, snapshot.isDirected(c) ? 1 : 0);
+		}
+
+		byte[] bytes = digest.digest();
+		char[] hex = new char[2 * bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Returns the values of the getters of the wrapped algorithm which
+	 * determine its result. The parallelism and the state of the last run are
+	 * left out.
+	 */
+	private Object[] getSettings() {
+		if (algorithm instanceof SpringLayoutAlgorithm) {
+			SpringLayoutAlgorithm spring = (SpringLayoutAlgorithm) algorithm;
+			return new Object[] { spring.isResizing(), spring.getSpringMove(),
+					spring.getSpringStrain(), spring.getSpringTimeout(),
+					spring.getSpringLength(), spring.getSpringGravitation(),
+					spring.isApproximateRepulsion(),
+					spring.getApproximationTheta(),
+					spring.getConvergenceThreshold(), spring.getRandomSeed(),
+					spring.isIncremental(), spring.getIncrementalIterations(),
+					spring.getIterations(), spring.getRandom(),
+					spring.fitWithinBounds };
+		}
+		if (algorithm instanceof SugiyamaLayoutAlgorithm) {
+			SugiyamaLayoutAlgorithm sugiyama = (SugiyamaLayoutAlgorithm) algorithm;
+			return new Object[] { sugiyama.getPlacement(),
+					sugiyama.getNodeSpacing(), sugiyama.getLayerSpacing() };
+		}
+		if (algorithm instanceof TreeLayoutAlgorithm) {
+			TreeLayoutAlgorithm tree = (TreeLayoutAlgorithm) algorithm;
+			return new Object[] { tree.getDirection(), tree.isResizing(),
+					tree.isTidy() };
+		}
+		if (algorithm instanceof BoxLayoutAlgorithm) {
+			BoxLayoutAlgorithm box = (BoxLayoutAlgorithm) algorithm;
+			return new Object[] { box.isResizing(), box.getOrientation() };
+		}
+		if (algorithm instanceof GridLayoutAlgorithm) {
+			return new Object[] { ((GridLayoutAlgorithm) algorithm)
+					.isResizing() };
+		}
+		if (algorithm instanceof RadialLayoutAlgorithm) {
+			return new Object[] { ((RadialLayoutAlgorithm) algorithm)
+					.isResizing() };
+		}
+		if (algorithm instanceof MultilevelLayoutAlgorithm) {
+			MultilevelLayoutAlgorithm multilevel = (MultilevelLayoutAlgorithm) algorithm;
+			return new Object[] { multilevel.getMaxIterations(),
+					multilevel.getCoarsestSize(),
+					multilevel.getApproximationTheta() };
+		}
+		if (algorithm instanceof OverlapRemovalAlgorithm) {
+			OverlapRemovalAlgorithm removal = (OverlapRemovalAlgorithm) algorithm;
+			return new Object[] { removal.getNodeSpacing(),
+					removal.getMaxIterations() };
+		}
+		if (algorithm instanceof SpaceTreeLayoutAlgorithm) {
+			SpaceTreeLayoutAlgorithm spaceTree = (SpaceTreeLayoutAlgorithm) algorithm;
+			return new Object[] { spaceTree.getLeafGap(),
+					spaceTree.getBranchGap(), spaceTree.getLayerGap(),
+					spaceTree.getDirection() };
+		}
+		return new Object[0];
+	}
+
+	private static void update(MessageDigest digest, int value) {
+		digest.update((byte) (value >>> 24));
+		digest.update((byte) (value >>> 16));
+		digest.update((byte) (value >>> 8));
+		digest.update((byte) value);
+	}
+
+	private static void update(MessageDigest digest, double value) {
+		long bits = Double.doubleToLongBits(value);
+		update(digest, (int) (bits >>> 32));
+		update(digest, (int) bits);
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		update(digest, value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			digest.update((byte) (c >>> 8));
+			digest.update((byte) c);
+		}
+	}
+
+	public void setLayoutContext(LayoutContext context) {
+		this.context = context;
+		algorithm.setLayoutContext(context);
+	}
+
+	/**
+	 * Sets the values of the parameters of the wrapped algorithm, which
+	 * become part of the fingerprint through their string representation, in
+	 * addition to the settings read from the getters of the algorithms of this
+	 * package. They have to be set again whenever the wrapped algorithm is
+	 * reconfigured, otherwise layouts computed with the old configuration are
+	 * reused.
+	 *
+	 * @param parameters
+	 *            the values of the parameters of the wrapped algorithm
+	 */
+	public void setParameters(Object[] parameters) {
+		this.parameters = parameters.clone();
+	}
+
+	/**
+	 * Returns the wrapped algorithm.
+	 *
+	 * @return the wrapped algorithm
+	 */
+	public LayoutAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Returns the cache the layouts are stored in.
+	 *
+	 * @return the cache
+	 */
+	public LayoutCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns whether the last layout has been restored from the cache
+	 * instead of being computed by the wrapped algorithm.
+	 *
+	 * @return <code>true</code> if the last layout has been restored
+	 */
+	public boolean isRestored() {
+		return restored;
+	}
+
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+
+/**
+ * Counts edge crossings of layered graphs.
+ * <p>
+ * The crossings between two adjacent layers are counted in O(e log v) using
+ * the accumulator tree of Barth, Juenger and Mutzel
+ * (http://dx.doi.org/10.1007/3-540-36151-0_13). In addition, an instance of
+ * this class counts the crossings between the connections of two nodes of the
+ * same layer, which is used by crossing reducers to evaluate swapping them.
+ * The neighbors of each node are collected only once per instance and the
+ * counting works on reused primitive arrays.
+ */
+class CrossingCounter {
+
+	private final Map<NodeLayout, NodeWrapper> map;
+
+	private final Map<NodeWrapper, NodeWrapper[]> neighbors = new IdentityHashMap<NodeWrapper, NodeWrapper[]>();
+
+	private long[] keysA = new long[16];
+	private long[] keysB = new long[16];
+
+	/**
+	 * Creates a counter for the nodes wrapped by the given map.
+	 *
+	 * @param map
+	 *            maps each node to the wrapper defining its layer and index
+	 */
+	public CrossingCounter(Map<NodeLayout, NodeWrapper> map) {
+		this.map = map;
+	}
+
+	/**
+	 * Returns the number of crossings between the connections of the two
+	 * given nodes of the same layer at their current positions, considering
+	 * only neighbors on the same side of the layer.
+	 *
+	 * @param nodeA
+	 * @param nodeB
+	 * @return the number of crossings
+	 */
+	public int numberOfCrosses(NodeWrapper nodeA, NodeWrapper nodeB) {
+		if (nodeA.equals(nodeB) || nodeA.index == nodeB.index)
+			return 0;
+		NodeWrapper[] adjacentOfA = getNeighbors(nodeA);
+		NodeWrapper[] adjacentOfB = getNeighbors(nodeB);
+		return numberOfCrosses(nodeA, nodeB, adjacentOfA, adjacentOfB, true)
+				+ numberOfCrosses(nodeA, nodeB, adjacentOfA, adjacentOfB,
+						false);
+	}
+
+	private int numberOfCrosses(NodeWrapper nodeA, NodeWrapper nodeB,
+			NodeWrapper[] adjacentOfA, NodeWrapper[] adjacentOfB, boolean above) {
+		// sort the neighbors on the given side by index, remembering their
+		// position in the neighbor array in the lower bits
+		if (keysA.length < adjacentOfA.length)
+			keysA = new long[Math.max(adjacentOfA.length, keysA.length * 2)];
+		if (keysB.length < adjacentOfB.length)
+			keysB = new long[Math.max(adjacentOfB.length, keysB.length * 2)];
+		int sizeA = collect(nodeA.layer, adjacentOfA, above, keysA);
+		int sizeB = collect(nodeA.layer, adjacentOfB, above, keysB);
+		if (sizeA == 0 || sizeB == 0)
+			return 0;
+		Arrays.sort(keysA, 0, sizeA);
+		Arrays.sort(keysB, 0, sizeB);
+
+		boolean leftOf = nodeA.index < nodeB.index;
+		int numOfCrosses = 0;
+		int j = 0; // first neighbor of B whose index is not below the current
+		for (int i = 0; i < sizeA; i++) {
+			int index = (int) (keysA[i] >> 32);
+			while (j < sizeB && (int) (keysB[j] >> 32) < index)
+				j++;
+			int k = j; // first neighbor of B whose index is above the current
+			while (k < sizeB && (int) (keysB[k] >> 32) == index) {
+				if (crossesAtSameIndex(nodeA, nodeB,
+						adjacentOfA[(int) keysA[i]],
+						adjacentOfB[(int) keysB[k]]))
+					numOfCrosses++;
+				k++;
+			}
+			// if A is left of B, neighbors of B left of the neighbor of A
+			// cross, otherwise those right of it
+			numOfCrosses += leftOf ? j : sizeB - k;
+		}
+		return numOfCrosses;
+	}
+
+	private static int collect(int layer, NodeWrapper[] adjacent,
+			boolean above, long[] keys) {
+		int size = 0;
+		for (int i = 0; i < adjacent.length; i++) {
+			NodeWrapper nw = adjacent[i];
+			if (above ? nw.layer < layer : nw.layer > layer)
+				keys[size++] = ((long) nw.index << 32) | i;
+		}
+		return size;
+	}
+
+	/**
+	 * Decides whether the connections from node A to a and from node B to b
+	 * cross, if a and b are located at the same index of different layers.
+	 */
+	private static boolean crossesAtSameIndex(NodeWrapper nodeA,
+			NodeWrapper nodeB, NodeWrapper a, NodeWrapper b) {
+		if (nodeA.index < nodeB.index) {
+			if (nodeA.index >= b.index) {
+				// implies nodeB.index > b.index
+				// top-left or bottom-left quarter
+				return (a.layer > b.layer && nodeA.layer < b.layer)
+						|| (a.layer < b.layer && b.layer < nodeA.layer);
+			} else if (nodeB.index <= b.index) {
+				// implies nodeA.index < b.index
+				// top-right or bottom-right quarter
+				return (a.layer > b.layer && a.layer < nodeB.layer)
+						|| (a.layer < b.layer && a.layer > nodeB.layer);
+			}
+		} else {
+			if (nodeB.index >= b.index) {
+				// implies nodeA.index > b.index
+				// top-left or bottom-left quarter
+				return (a.layer > b.layer && nodeB.layer > a.layer)
+						|| (a.layer < b.layer && a.layer > nodeB.layer);
+			} else if (nodeA.index <= b.index) {
+				// implies nodeB.index < b.index
+				// top-right or bottom-right quarter
+				return (a.layer > b.layer && b.layer > nodeA.layer)
+						|| (a.layer < b.layer && b.layer < nodeA.layer);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the wrappers of the predecessors and successors of the given
+	 * node. Successors which are predecessors as well (bidirectional
+	 * connections) are contained only once.
+	 */
+	private NodeWrapper[] getNeighbors(NodeWrapper nw) {
+		NodeWrapper[] result = neighbors.get(nw);
+		if (result == null) {
+			NodeLayout[] predecessors = nw.node.getPredecessingNodes();
+			NodeLayout[] successors = nw.node.getSuccessingNodes();
+			NodeLayout[] union = new NodeLayout[predecessors.length
+					+ successors.length];
+			System.arraycopy(predecessors, 0, union, 0, predecessors.length);
+			int size = predecessors.length;
+			for (NodeLayout successor : successors) {
+				boolean contained = false;
+				for (int i = 0; i < size && !contained; i++)
+					contained = union[i].equals(successor);
+				if (!contained)
+					union[size++] = successor;
+			}
+			NodeWrapper[] wrappers = new NodeWrapper[size];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				NodeWrapper wrapper = map.get(union[i]);
+				if (wrapper != null)
+					wrappers[count++] = wrapper;
+			}
+			result = new NodeWrapper[count];
+			System.arraycopy(wrappers, 0, result, 0, count);
+			neighbors.put(nw, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the crossings between the edges of two adjacent layers. The
+	 * edges are sorted lexicographically by their positions in the northern
+	 * and southern layer using two counting sort passes, afterwards the
+	 * inversions of the southern positions are counted with an accumulator
+	 * tree.
+	 *
+	 * @param north
+	 *            the position of each edge's end point in the northern layer
+	 * @param south
+	 *            the position of each edge's end point in the southern layer
+	 * @param numberOfEdges
+	 *            the number of edges
+	 * @param northSize
+	 *            the number of positions in the northern layer
+	 * @param southSize
+	 *            the number of positions in the southern layer
+	 * @return the number of crossings
+	 */
+	public static long countCrossings(int[] north, int[] south,
+			int numberOfEdges, int northSize, int southSize) {
+		if (numberOfEdges < 2)
+			return 0;
+		// sort by south, then (stable) by north
+		int[] bySouth = countingSort(south, null, numberOfEdges, southSize);
+		int[] order = countingSort(north, bySouth, numberOfEdges, northSize);
+
+		int firstIndex = 1;
+		while (firstIndex < southSize)
+			firstIndex *= 2;
+		int treeSize = 2 * firstIndex - 1;
+		firstIndex -= 1; // index of the leftmost leaf
+		long[] tree = new long[treeSize];
+		long crossings = 0;
+		for (int k = 0; k < numberOfEdges; k++) {
+			int index = south[order[k]] + firstIndex;
+			tree[index]++;
+			while (index > 0) {
+				if ((index & 1) == 1)
+					crossings += tree[index + 1];
+				index = (index - 1) / 2;
+				tree[index]++;
+			}
+		}
+		return crossings;
+	}
+
+	/**
+	 * Returns the edges ordered by the given keys, preserving the given order
+	 * of edges with equal keys.
+	 */
+	private static int[] countingSort(int[] keys, int[] order,
+			int numberOfEdges, int range) {
+		int[] counts = new int[range + 1];
+		for (int k = 0; k < numberOfEdges; k++)
+			counts[keys[k] + 1]++;
+		for (int i = 0; i < range; i++)
+			counts[i + 1] += counts[i];
+		int[] result = new int[numberOfEdges];
+		for (int k = 0; k < numberOfEdges; k++) {
+			int e = order == null ? k : order[k];
+			result[counts[keys[e]]++] = e;
+		}
+		return result;
+	}
+
+}
@@ -11,9 +11,12 @@
 package org.eclipse.gef4.layout.algorithms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
 import org.eclipse.gef4.layout.interfaces.LayerProvider;
@@ -28,36 +31,38 @@ import org.eclipse.gef4.layout.interfaces.NodeLayout;
  */
 public class DFSLayerProvider implements LayerProvider {
 
+	private static final byte UNSEEN = 0;
+	private static final byte OPENED = 1;
+	private static final byte CLOSED = 2;
+
 	private Map<NodeLayout, Integer> assignedNodes = new IdentityHashMap<NodeLayout, Integer>();
-	private ArrayList<NodeLayout> openedList = new ArrayList<NodeLayout>();
-	private ArrayList<NodeLayout> closedList = new ArrayList<NodeLayout>();
-	private ArrayList<NodeLayout> initClosedList = new ArrayList<NodeLayout>();
 	private final List<List<NodeWrapper>> layers = new ArrayList<List<NodeWrapper>>();
 	private final Map<NodeLayout, NodeWrapper> map = new IdentityHashMap<NodeLayout, NodeWrapper>();
 
+	// int-indexed snapshot of the graph, valid during calculateLayers()
+	private final Map<NodeLayout, Integer> ids = new IdentityHashMap<NodeLayout, Integer>();
+	private final List<NodeLayout> indexedNodes = new ArrayList<NodeLayout>();
+	private int[][] neighbors;
+	private byte[] states;
+	private int rootCursor;
+
 	/**
-	 * Returns the mutual connections of the two array given as parameters.
+	 * Returns the number of connections contained in both arrays given as
+	 * parameters.
 	 * 
 	 * @param a
 	 * @param b
 	 * @return
 	 */
-	private List<ConnectionLayout> intersectOfConnections(ConnectionLayout[] a,
+	private static int sizeOfIntersect(ConnectionLayout[] a,
 			ConnectionLayout[] b) {
-		ArrayList<ConnectionLayout> res = new ArrayList<ConnectionLayout>();
-
+		Set<ConnectionLayout> connections = new HashSet<ConnectionLayout>(
+				Arrays.asList(b));
+		int size = 0;
 		for (int i = 0; i < a.length; i++)
-			for (int j = 0; j < b.length; j++)
-				if (a[i].equals(b[j]))
-					res.add(a[i]);
-
-		return res;
-	}
-
-	private void addToInitClosedList(NodeLayout node, int layout) {
-		NodeWrapper nw = new NodeWrapper(node, layout);
-		map.put(node, nw);
-		initClosedList.add(node);
+			if (connections.contains(a[i]))
+				size++;
+		return size;
 	}
 
 	/**
@@ -67,25 +72,11 @@ public class DFSLayerProvider implements LayerProvider {
 	 * @return
 	 */
 	public ArrayList<NodeLayout> getRoots(List<NodeLayout> nodes) {
-		// TODO Auto-generated method stub
 		ArrayList<NodeLayout> res = new ArrayList<NodeLayout>();
 
 		for (NodeLayout node : nodes) {
-			// directed edges
-			if (node.getIncomingConnections().length == 0)
+			if (isRoot(node))
 				res.add(node);
-			else {
-				int sizeOfIntersect = intersectOfConnections(
-						node.getIncomingConnections(),
-						node.getOutgoingConnections()).size();
-				// there are more outgoing edges, besides the bidirectionals
-				if (node.getOutgoingConnections().length > sizeOfIntersect)
-					res.add(node);
-				// only bidirectional edges, no incoming directed edges
-				if (node.getIncomingConnections().length == sizeOfIntersect
-						&& node.getOutgoingConnections().length == sizeOfIntersect)
-					res.add(node);
-			}
 		}
 
 		// if no sources then we only have bidirectional edges and/or cycles
@@ -95,6 +86,21 @@ public class DFSLayerProvider implements LayerProvider {
 		return res;
 	}
 
+	private boolean isRoot(NodeLayout node) {
+		ConnectionLayout[] incoming = node.getIncomingConnections();
+		// directed edges
+		if (incoming.length == 0)
+			return true;
+		ConnectionLayout[] outgoing = node.getOutgoingConnections();
+		int sizeOfIntersect = sizeOfIntersect(incoming, outgoing);
+		// there are more outgoing edges, besides the bidirectionals
+		if (outgoing.length > sizeOfIntersect)
+			return true;
+		// only bidirectional edges, no incoming directed edges
+		return incoming.length == sizeOfIntersect
+				&& outgoing.length == sizeOfIntersect;
+	}
+
 	public Map<NodeLayout, Integer> getAssignedNodes() {
 		// TODO Auto-generated method stub
 		return assignedNodes;
@@ -109,162 +115,184 @@ public class DFSLayerProvider implements LayerProvider {
 		assignedNodes.clear();
 	}
 
-	private static void updateIndex(List<NodeWrapper> list) {
-		for (int index = 0; index < list.size(); index++)
-			list.get(index).index = index;
+	/**
+	 * Appends a new wrapper of the given node to the given layer, creating
+	 * empty layers in between if necessary.
+	 * 
+	 * @param node
+	 * @param level
+	 */
+	private void addToLayer(NodeLayout node, int level) {
+		while (level >= layers.size())
+			layers.add(new ArrayList<NodeWrapper>());
+		List<NodeWrapper> layer = layers.get(level);
+		NodeWrapper nw = new NodeWrapper(node, level);
+		nw.index = layer.size();
+		map.put(node, nw);
+		layer.add(nw);
 	}
 
 	/**
-	 * Creates a new layer and puts the elements of this layer to the map.
+	 * Returns the index of the given node in the snapshot, adding it if
+	 * necessary.
 	 * 
-	 * @param list
+	 * @param node
+	 * @return
 	 */
-	private void addLayer(List<NodeLayout> list) {
-		ArrayList<NodeWrapper> layer = new ArrayList<NodeWrapper>(list.size());
-		for (NodeLayout node : list) {
-			// wrap each NodeLayout with the internal data object and provide a
-			// corresponding mapping
-			NodeWrapper nw = new NodeWrapper(node, layers.size());
-			map.put(node, nw);
-			layer.add(nw);
+	private int getId(NodeLayout node) {
+		Integer id = ids.get(node);
+		if (id == null) {
+			id = indexedNodes.size();
+			ids.put(node, id);
+			indexedNodes.add(node);
 		}
-		layers.add(layer);
-		updateIndex(layer);
+		return id;
 	}
 
 	/**
-	 * Finds the connected nodes to be processed.
+	 * Snapshots the neighbors of all given nodes (and of all nodes reachable
+	 * from them), so that the connections of each node are queried only once.
 	 * 
-	 * @param toUnfold
-	 * @return
+	 * @param nodes
 	 */
-	private ArrayList<NodeLayout> Unfold(NodeLayout toUnfold) {
-		ArrayList<NodeLayout> res = new ArrayList<NodeLayout>();
-
-		for (int i = 0; i < toUnfold.getOutgoingConnections().length; i++) {
-			NodeLayout endPoint = toUnfold.getOutgoingConnections()[i]
-					.getTarget();
-			if (endPoint.equals(toUnfold))
-				endPoint = toUnfold.getOutgoingConnections()[i].getSource();
-			if (!closedList.contains(endPoint)
-					&& !openedList.contains(endPoint)
-					&& !res.contains(endPoint))
-				res.add(endPoint);
-		}
-		for (int i = 0; i < toUnfold.getIncomingConnections().length; i++) {
-			NodeLayout endPoint = toUnfold.getIncomingConnections()[i]
-					.getTarget();
-			if (endPoint.equals(toUnfold))
-				endPoint = toUnfold.getIncomingConnections()[i].getSource();
-			if (!closedList.contains(endPoint)
-					&& !openedList.contains(endPoint)
-					&& !res.contains(endPoint))
-				res.add(endPoint);
+	private void createSnapshot(List<NodeLayout> nodes) {
+		ids.clear();
+		indexedNodes.clear();
+		for (NodeLayout node : nodes)
+			getId(node);
+		List<int[]> adjacency = new ArrayList<int[]>(indexedNodes.size());
+		// endpoints that are not contained in the given nodes are appended
+		// to indexedNodes, so that they are visited as well
+		for (int i = 0; i < indexedNodes.size(); i++) {
+			NodeLayout node = indexedNodes.get(i);
+			ConnectionLayout[] outgoing = node.getOutgoingConnections();
+			ConnectionLayout[] incoming = node.getIncomingConnections();
+			int[] adjacent = new int[outgoing.length + incoming.length];
+			int k = 0;
+			for (ConnectionLayout connection : outgoing) {
+				NodeLayout endPoint = connection.getTarget();
+				if (endPoint.equals(node))
+					endPoint = connection.getSource();
+				adjacent[k++] = getId(endPoint);
+			}
+			for (ConnectionLayout connection : incoming) {
+				NodeLayout endPoint = connection.getTarget();
+				if (endPoint.equals(node))
+					endPoint = connection.getSource();
+				adjacent[k++] = getId(endPoint);
+			}
+			adjacency.add(adjacent);
 		}
+		neighbors = adjacency.toArray(new int[adjacency.size()][]);
+		states = new byte[indexedNodes.size()];
+	}
 
-		return res;
+	/**
+	 * Processes the nodes reachable from the given start node in depth first
+	 * order. Each unfolded node puts its not yet visited neighbors into the
+	 * layer following its own one.
+	 * 
+	 * @param start
+	 */
+	private void unfold(int start) {
+		int[] openedStack = new int[indexedNodes.size() + 1];
+		int top = 0;
+		openedStack[top++] = start;
+		if (states[start] == UNSEEN)
+			states[start] = OPENED;
+		while (top > 0) {
+			int toUnfold = openedStack[--top];
+			int[] adjacent = neighbors[toUnfold];
+			int unfolded = 0;
+			int level = map.get(indexedNodes.get(toUnfold)).layer + 1;
+			for (int i = 0; i < adjacent.length; i++) {
+				int endPoint = adjacent[i];
+				if (states[endPoint] == UNSEEN) {
+					states[endPoint] = OPENED;
+					addToLayer(indexedNodes.get(endPoint), level);
+					// remember the unfolded nodes behind the current top
+					openedStack[top + unfolded++] = endPoint;
+				}
+			}
+			// the first unfolded node has to be unfolded next
+			for (int i = 0, j = unfolded - 1; i < j; i++, j--) {
+				int tmp = openedStack[top + i];
+				openedStack[top + i] = openedStack[top + j];
+				openedStack[top + j] = tmp;
+			}
+			top += unfolded;
+			states[toUnfold] = CLOSED;
+		}
 	}
 
 	public List<List<NodeWrapper>> calculateLayers(List<NodeLayout> nodes,
 			Map<NodeLayout, Integer> assignedNodes) {
-		// TODO Auto-generated method stub
-		openedList.clear();
-		initClosedList.clear();
-		closedList.clear();
 		layers.clear();
 		map.clear();
+		createSnapshot(nodes);
 
 		// Assigns the given nodes to there layers
+		int remaining = nodes.size();
 		if (assignedNodes != null) {
 			for (NodeLayout node : nodes) {
-				if (assignedNodes.containsKey(node))
-					addToInitClosedList(node, assignedNodes.get(node));
-			}
-		}
-
-		// Only at first iteration, clearing initClosedList, starting to build
-		// layers
-		if (initClosedList.size() > 0) {
-			closedList.addAll(initClosedList);
-			nodes.removeAll(initClosedList);
-			initClosedList.clear();
-
-			for (NodeLayout node : closedList) {
-				if (map.get(node).layer < layers.size()) {
-					layers.get(map.get(node).layer).add(map.get(node));
-					updateIndex(layers.get(map.get(node).layer));
-				} else {
-					while (map.get(node).layer != layers.size()) {
-						ArrayList<NodeLayout> layer = new ArrayList<NodeLayout>();
-						addLayer(layer);
-					}
-					ArrayList<NodeLayout> layer = new ArrayList<NodeLayout>();
-					layer.add(node);
-					addLayer(layer);
+				Integer layer = assignedNodes.get(node);
+				if (layer != null && states[getId(node)] == UNSEEN) {
+					addToLayer(node, layer);
+					states[getId(node)] = CLOSED;
+					remaining--;
 				}
 			}
 		}
 
-		ArrayList<NodeLayout> startPoints = new ArrayList<NodeLayout>();
-		if (nodes.size() > 0) {
-
-			// Starts by finding a root or selecting the first from the assigned
-			// ones
+		if (remaining > 0) {
+			NodeLayout[] nodeArray = nodes.toArray(new NodeLayout[nodes
+					.size()]);
+			rootCursor = 0;
+			// Starts by finding a root or selecting the first from the
+			// assigned ones
 			if (layers.size() > 0 && layers.get(0).size() > 0)
-				startPoints.add(layers.get(0).get(0).node);
-			else if (layers.size() == 0) {
-				startPoints.add(getRoots(nodes).get(0));
-				addLayer(startPoints);
-			} else {
-				startPoints.add(getRoots(nodes).get(0));
-				for (NodeLayout startPoint : startPoints) {
-					if (!map.containsKey(startPoint)) {
-						NodeWrapper nw = new NodeWrapper(startPoint, 0);
-						map.put(startPoint, nw);
-						layers.get(0).add(nw);
-					}
-				}
-				updateIndex(layers.get(0));
-			}
-			openedList.addAll(startPoints);
-
-			// while openedList isn't empty it searches for further nodes and
-			// adding them to the next layer
-			NodeLayout toUnfold = startPoints.get(0);
-			while (openedList.size() != 0) {
-				ArrayList<NodeLayout> unfolded = Unfold(toUnfold);
-				if (unfolded.size() > 0) {
-					int level = map.get(toUnfold).layer + 1;
-					if (level < layers.size()) {
-						for (NodeLayout n : unfolded) {
-							if (!map.containsKey(n)) {
-								NodeWrapper nw = new NodeWrapper(n, level);
-								map.put(n, nw);
-								layers.get(level).add(nw);
-							}
-						}
-						updateIndex(layers.get(level));
-					} else {
-						ArrayList<NodeLayout> layer = new ArrayList<NodeLayout>();
-						layer.addAll(unfolded);
-						addLayer(layer);
-					}
-					openedList.addAll(0, unfolded);
-				}
-				closedList.add(toUnfold);
-				openedList.remove(toUnfold);
-				nodes.remove(toUnfold);
+				unfold(getId(layers.get(0).get(0).node));
+			else
+				unfold(startNewComponent(nodeArray, 0));
 
-				if (openedList.size() != 0)
-					toUnfold = openedList.get(0);
-			}
-
-			// If there is more nodes, but openedList is empty means that a new
-			// root element is required
-			if (nodes.size() > 0) {
-				calculateLayers(nodes, null);
+			// If there are more nodes, but all reachable nodes have been
+			// processed, a new root element is required
+			for (int i = 0; i < nodeArray.length; i++) {
+				if (states[getId(nodeArray[i])] == UNSEEN)
+					unfold(startNewComponent(nodeArray, i));
 			}
 		}
+
+		ids.clear();
+		indexedNodes.clear();
+		neighbors = null;
+		states = null;
 		return layers;
 	}
+
+	/**
+	 * Puts the first unprocessed root of the given nodes (or the first
+	 * unprocessed node if there is no root) into the first layer. As processed
+	 * nodes stay processed, the search for roots continues where it stopped
+	 * last time.
+	 * 
+	 * @param nodes
+	 * @param firstUnprocessed
+	 *            index from which on the nodes may be unprocessed
+	 * @return the index of the new start node in the snapshot
+	 */
+	private int startNewComponent(NodeLayout[] nodes, int firstUnprocessed) {
+		while (rootCursor < nodes.length
+				&& (states[getId(nodes[rootCursor])] != UNSEEN || !isRoot(nodes[rootCursor])))
+			rootCursor++;
+		int start = rootCursor;
+		if (start == nodes.length) {
+			// nodes assigned to a layer are processed as well
+			start = firstUnprocessed;
+			while (states[getId(nodes[start])] != UNSEEN)
+				start++;
+		}
+		addToLayer(nodes[start], 0);
+		return getId(nodes[start]);
+	}
 }
@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import org.eclipse.gef4.geometry.planar.Dimension;
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+
+/**
+ * A snapshot of the entities and connections of a {@link LayoutContext},
+ * stored in primitive arrays, so that layout algorithms do not have to build
+ * their own index maps and adjacency lists on each run.
+ * <p>
+ * Each entity is identified by its index in the snapshot. The structure of
+ * the graph is read once when the snapshot is created and cannot be changed
+ * afterwards:
+ * <ul>
+ * <li>Connection <code>c</code> leads from entity
+ * <code>getSources()[c]</code> to entity <code>getTargets()[c]</code>.
+ * Connections whose source or target is not part of the snapshot are left
+ * out. A connection between pruned nodes is attributed to the subgraphs the
+ * nodes are pruned to, if those are graph entities.</li>
+ * <li>The successors of entity <code>i</code> are
+ * <code>getSuccessors()[k]</code> for <code>k</code> from
+ * <code>getSuccessorOffsets()[i]</code> up to (excluding)
+ * <code>getSuccessorOffsets()[i + 1]</code>, reached through connection
+ * <code>getSuccessorConnections()[k]</code>. Predecessors are stored the same
+ * way. Like in {@link NodeLayout}, the ends of connections that are not
+ * directed are both successors and predecessors of each other.</li>
+ * </ul>
+ * The locations (centers) and sizes of the entities are copied into arrays,
+ * which algorithms may modify freely and transfer back to the entities with
+ * {@link #writeLocations()} and {@link #writeSizes()}.
+ */
+public class GraphSnapshot {
+
+	private final EntityLayout[] entities;
+
+	private final IdentityIndexMap entityToIndex;
+
+	private final int[] sources, targets;
+
+	private final double[] weights;
+
+	private final boolean[] directed;
+
+	private int[] successorOffsets, successors, successorConnections;
+
+	private int[] predecessorOffsets, predecessors, predecessorConnections;
+
+	private final double[] x, y, width, height;
+
+	/**
+	 * Creates a snapshot of the entities and connections of the given
+	 * context.
+	 *
+	 * @param context
+	 *            the context to take the snapshot of
+	 */
+	public GraphSnapshot(LayoutContext context) {
+		this(context.getEntities(), context.getConnections());
+	}
+
+	/**
+	 * Creates a snapshot of the given entities and of those of the given
+	 * connections that connect them. The entities are indexed in the given
+	 * order.
+	 *
+	 * @param entities
+	 *            the entities to take the snapshot of
+	 * @param connections
+	 *            the connections to take the snapshot of
+	 */
+	public GraphSnapshot(EntityLayout[] entities, ConnectionLayout[] connections) {
+		this.entities = entities;
+		entityToIndex = new IdentityIndexMap(entities);
+
+		int[] sources = new int[connections.length];
+		int[] targets = new int[connections.length];
+		double[] weights = new double[connections.length];
+		boolean[] directed = new boolean[connections.length];
+		int count = 0;
+		for (int i = 0; i < connections.length; i++) {
+			int source = indexOfEnd(connections[i].getSource());
+			int target = indexOfEnd(connections[i].getTarget());
+			if (source < 0 || target < 0)
+				continue;
+			sources[count] = source;
+			targets[count] = target;
+			weights[count] = connections[i].getWeight();
+			directed[count] = connections[i].isDirected();
+			count++;
+		}
+		if (count < connections.length) {
+			sources = ArrayHelper.copyOf(sources, count);
+			targets = ArrayHelper.copyOf(targets, count);
+			weights = ArrayHelper.copyOf(weights, count);
+			directed = ArrayHelper.copyOf(directed, count);
+		}
+		this.sources = sources;
+		this.targets = targets;
+		this.weights = weights;
+		this.directed = directed;
+		buildAdjacency();
+
+		int length = entities.length;
+		x = new double[length];
+		y = new double[length];
+		width = new double[length];
+		height = new double[length];
+		readGeometry();
+	}
+
+	private int indexOfEnd(NodeLayout node) {
+		int index = entityToIndex.get(node);
+		if (index < 0 && node.isPruned()) {
+			SubgraphLayout subgraph = node.getSubgraph();
+			if (subgraph.isGraphEntity())
+				index = entityToIndex.get(subgraph);
+		}
+		return index;
+	}
+
+	/**
+	 * Builds the compressed successor and predecessor lists of all entities.
+	 */
+	private void buildAdjacency() {
+		int length = entities.length;
+		successorOffsets = new int[length + 1];
+		predecessorOffsets = new int[length + 1];
+		for (int c = 0; c < sources.length; c++) {
+			successorOffsets[sources[c] + 1]++;
+			predecessorOffsets[targets[c] + 1]++;
+			if (!directed[c] && sources[c] != targets[c]) {
+				successorOffsets[targets[c] + 1]++;
+				predecessorOffsets[sources[c] + 1]++;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			successorOffsets[i + 1] += successorOffsets[i];
+			predecessorOffsets[i + 1] += predecessorOffsets[i];
+		}
+
+		successors = new int[successorOffsets[length]];
+		successorConnections = new int[successorOffsets[length]];
+		predecessors = new int[predecessorOffsets[length]];
+		predecessorConnections = new int[predecessorOffsets[length]];
+		int[] successorFill = ArrayHelper.copyOf(successorOffsets, length);
+		int[] predecessorFill = ArrayHelper.copyOf(predecessorOffsets, length);
+		for (int c = 0; c < sources.length; c++) {
+			int source = sources[c];
+			int target = targets[c];
+			successors[successorFill[source]] = target;
+			successorConnections[successorFill[source]++] = c;
+			predecessors[predecessorFill[target]] = source;
+			predecessorConnections[predecessorFill[target]++] = c;
+			if (!directed[c] && source != target) {
+				successors[successorFill[target]] = source;
+				successorConnections[successorFill[target]++] = c;
+				predecessors[predecessorFill[source]] = target;
+				predecessorConnections[predecessorFill[source]++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Copies the current locations and sizes of the entities into the arrays
+	 * of this snapshot, overwriting any changes made to them.
+	 */
+	public void readGeometry() {
+		for (int i = 0; i < entities.length; i++) {
+			Point location = entities[i].getLocation();
+			x[i] = location.x;
+			y[i] = location.y;
+			Dimension size = entities[i].getSize();
+			width[i] = size.width;
+			height[i] = size.height;
+		}
+	}
+
+	/**
+	 * Sets the locations of all movable entities to the values stored in
+	 * {@link #getX()} and {@link #getY()}.
+	 */
+	public void writeLocations() {
+		for (int i = 0; i < entities.length; i++) {
+			if (entities[i].isMovable())
+				entities[i].setLocation(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Sets the sizes of all resizable entities to the values stored in
+	 * {@link #getWidth()} and {@link #getHeight()}.
+	 */
+	public void writeSizes() {
+		for (int i = 0; i < entities.length; i++) {
+			if (entities[i].isResizable())
+				entities[i].setSize(width[i], height[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of entities in this snapshot.
+	 *
+	 * @return the number of entities
+	 */
+	public int getEntityCount() {
+		return entities.length;
+	}
+
+	/**
+	 * Returns the entity with the given index.
+	 *
+	 * @param index
+	 *            the index of the entity
+	 * @return the entity
+	 */
+	public EntityLayout getEntity(int index) {
+		return entities[index];
+	}
+
+	/**
+	 * Returns the index of the given entity.
+	 *
+	 * @param entity
+	 *            the entity to look up
+	 * @return the index of the entity or -1 if it is not part of this
+	 *         snapshot
+	 */
+	public int indexOf(EntityLayout entity) {
+		return entityToIndex.get(entity);
+	}
+
+	/**
+	 * Returns the number of connections in this snapshot.
+	 *
+	 * @return the number of connections
+	 */
+	public int getConnectionCount() {
+		return sources.length;
+	}
+
+	/**
+	 * Returns the index of the source entity of each connection. The returned
+	 * array must not be modified.
+	 *
+	 * @return the sources of the connections
+	 */
+	public int[] getSources() {
+		return sources;
+	}
+
+	/**
+	 * Returns the index of the target entity of each connection. The returned
+	 * array must not be modified.
+	 *
+	 * @return the targets of the connections
+	 */
+	public int[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Returns the weight of each connection. The returned array must not be
+	 * modified.
+	 *
+	 * @return the weights of the connections
+	 * @see ConnectionLayout#getWeight()
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Returns whether the given connection is directed.
+	 *
+	 * @param connection
+	 *            the index of the connection
+	 * @return <code>true</code> if the connection is directed
+	 */
+	public boolean isDirected(int connection) {
+		return directed[connection];
+	}
+
+	/**
+	 * Returns the offsets of the successor lists of the entities, which has
+	 * one more element than there are entities. The returned array must not
+	 * be modified.
+	 *
+	 * @return the successor offsets
+	 */
+	public int[] getSuccessorOffsets() {
+		return successorOffsets;
+	}
+
+	/**
+	 * Returns the successor lists of all entities. The returned array must
+	 * not be modified.
+	 *
+	 * @return the successors
+	 */
+	public int[] getSuccessors() {
+		return successors;
+	}
+
+	/**
+	 * Returns the connection leading to each successor returned by
+	 * {@link #getSuccessors()}. The returned array must not be modified.
+	 *
+	 * @return the connections to the successors
+	 */
+	public int[] getSuccessorConnections() {
+		return successorConnections;
+	}
+
+	/**
+	 * Returns the offsets of the predecessor lists of the entities, which has
+	 * one more element than there are entities. The returned array must not
+	 * be modified.
+	 *
+	 * @return the predecessor offsets
+	 */
+	public int[] getPredecessorOffsets() {
+		return predecessorOffsets;
+	}
+
+	/**
+	 * Returns the predecessor lists of all entities. The returned array must
+	 * not be modified.
+	 *
+	 * @return the predecessors
+	 */
+	public int[] getPredecessors() {
+		return predecessors;
+	}
+
+	/**
+	 * Returns the connection leading to each predecessor returned by
+	 * {@link #getPredecessors()}. The returned array must not be modified.
+	 *
+	 * @return the connections to the predecessors
+	 */
+	public int[] getPredecessorConnections() {
+		return predecessorConnections;
+	}
+
+	/**
+	 * Returns the x coordinates of the centers of the entities. Changes to
+	 * the returned array are transferred to the entities by
+	 * {@link #writeLocations()}.
+	 *
+	 * @return the x coordinates
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the y coordinates of the centers of the entities. Changes to
+	 * the returned array are transferred to the entities by
+	 * {@link #writeLocations()}.
+	 *
+	 * @return the y coordinates
+	 */
+	public double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the widths of the entities. Changes to the returned array are
+	 * transferred to the entities by {@link #writeSizes()}.
+	 *
+	 * @return the widths
+	 */
+	public double[] getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the heights of the entities. Changes to the returned array are
+	 * transferred to the entities by {@link #writeSizes()}.
+	 *
+	 * @return the heights
+	 */
+	public double[] getHeight() {
+		return height;
+	}
+
+}
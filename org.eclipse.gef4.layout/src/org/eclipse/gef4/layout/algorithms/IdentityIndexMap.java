@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+/**
+ * Maps objects (compared by identity) to their index within an array, without
+ * boxing the indices. The map uses open addressing with linear probing and is
+ * sized once for the given array, so that lookups do not allocate.
+ */
+class IdentityIndexMap {
+
+	private final Object[] keys;
+
+	private final int[] values;
+
+	private final int mask;
+
+	/**
+	 * Creates a new map, which maps each element of the given array to its
+	 * index. If an element is contained more than once, it is mapped to its
+	 * first index.
+	 *
+	 * @param elements
+	 *            the elements to index
+	 */
+	public IdentityIndexMap(Object[] elements) {
+		int capacity = 16;
+		while (capacity < elements.length * 2) {
+			capacity <<= 1;
+		}
+		keys = new Object[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] != null) {
+				put(elements[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the given element.
+	 *
+	 * @param element
+	 *            the element to look up (may be <code>null</code>)
+	 * @return the index of the given element or -1 if it is not contained
+	 */
+	public int get(Object element) {
+		if (element == null) {
+			return -1;
+		}
+		int slot = hash(element);
+		while (keys[slot] != null) {
+			if (keys[slot] == element) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void put(Object element, int index) {
+		int slot = hash(element);
+		while (keys[slot] != null) {
+			if (keys[slot] == element) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = element;
+		values[slot] = index;
+	}
+
+	private int hash(Object element) {
+		int h = System.identityHashCode(element);
+		// spread the bits, identity hash codes tend to be clustered
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h & mask;
+	}
+
+}
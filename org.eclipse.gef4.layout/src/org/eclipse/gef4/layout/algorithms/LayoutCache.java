@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores the results of layout computations for the
+ * {@link CachingLayoutAlgorithm}, keyed by a fingerprint of the laid out graph.
+ * The cache holds a limited number of layouts and evicts the least recently
+ * used one when it is full. Its contents can be written to a file and read
+ * back, so that layouts survive a restart of the application.
+ * <p>
+ * A cache may be shared by several algorithms and accessed from several
+ * threads.
+ */
+public class LayoutCache {
+
+	/**
+	 * The default value for the maximal number of layouts held by a cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * Identifies files written by {@link #save(File)}, followed by the format
+	 * version.
+	 */
+	private static final int MAGIC = 0x4C434143;
+
+	private static final int VERSION = 1;
+
+	private final LinkedHashMap<String, double[]> layouts;
+
+	private int capacity;
+
+	/**
+	 * Creates a cache holding at most {@link #DEFAULT_CAPACITY} layouts.
+	 */
+	public LayoutCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of layouts.
+	 *
+	 * @param capacity
+	 *            the maximal number of layouts
+	 */
+	public LayoutCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		layouts = new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+				return size() > LayoutCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the layout stored for the given fingerprint and marks it as
+	 * recently used.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the graph
+	 * @return a copy of the stored layout data or <code>null</code> if there
+	 *         is none
+	 */
+	public synchronized double[] get(String fingerprint) {
+		double[] layout = layouts.get(fingerprint);
+		return layout == null ? null : layout.clone();
+	}
+
+	/**
+	 * Stores the given layout for the given fingerprint, evicting the least
+	 * recently used layout if the cache is full.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the graph
+	 * @param layout
+	 *            the layout data, which is copied
+	 */
+	public synchronized void put(String fingerprint, double[] layout) {
+		layouts.put(fingerprint, layout.clone());
+	}
+
+	/**
+	 * Removes all layouts from this cache.
+	 */
+	public synchronized void clear() {
+		layouts.clear();
+	}
+
+	/**
+	 * Returns the number of layouts held by this cache.
+	 *
+	 * @return the number of layouts
+	 */
+	public synchronized int size() {
+		return layouts.size();
+	}
+
+	/**
+	 * Sets the maximal number of layouts held by this cache. If the cache
+	 * holds more layouts, the least recently used ones are evicted.
+	 *
+	 * @param capacity
+	 *            the maximal number of layouts
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: "
+					+ capacity);
+		}
+		this.capacity = capacity;
+		Iterator<String> iterator = layouts.keySet().iterator();
+		while (layouts.size() > capacity) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the maximal number of layouts held by this cache.
+	 *
+	 * @return the maximal number of layouts
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Writes all layouts of this cache to the given file, from the least to
+	 * the most recently used one.
+	 *
+	 * @param file
+	 *            the file to write to, which is overwritten
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public synchronized void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(layouts.size());
+			for (Map.Entry<String, double[]> entry : layouts.entrySet()) {
+				out.writeUTF(entry.getKey());
+				double[] layout = entry.getValue();
+				out.writeInt(layout.length);
+				for (int i = 0; i < layout.length; i++) {
+					out.writeDouble(layout[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Adds the layouts written to the given file by {@link #save(File)} to
+	 * this cache, as the most recently used ones. A file which cannot be read
+	 * completely is treated like a cache miss: the cache is left unchanged
+	 * and <code>false</code> is returned. The sizes stored in the file are
+	 * checked against its length before anything is allocated, so that a
+	 * corrupt file cannot exhaust the memory.
+	 * <p>
+	 * The loaded layouts are not checked against any graph. The
+	 * {@link CachingLayoutAlgorithm} only restores a layout if it holds the
+	 * values of exactly the entities of the laid out context.
+	 *
+	 * @param file
+	 *            the file to read from
+	 * @return <code>true</code> if the layouts have been loaded,
+	 *         <code>false</code> if the file cannot be read or has not been
+	 *         written by a cache
+	 */
+	public synchronized boolean load(File file) {
+		long fileLength = file.length();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			// each layout takes at least the lengths of its fingerprint and
+			// data, i.e. 6 bytes, and each value takes 8 bytes
+			int size = in.readInt();
+			if (size < 0 || size > fileLength / 6) {
+				return false;
+			}
+			String[] fingerprints = new String[size];
+			double[][] loaded = new double[size][];
+			for (int k = 0; k < size; k++) {
+				fingerprints[k] = in.readUTF();
+				int length = in.readInt();
+				if (length < 0 || length > fileLength / 8) {
+					return false;
+				}
+				loaded[k] = new double[length];
+				for (int i = 0; i < loaded[k].length; i++) {
+					loaded[k][i] = in.readDouble();
+				}
+			}
+			for (int k = 0; k < size; k++) {
+				layouts.put(fingerprints[k], loaded[k]);
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// the layouts have already been read
+				}
+			}
+		}
+	}
+
+}
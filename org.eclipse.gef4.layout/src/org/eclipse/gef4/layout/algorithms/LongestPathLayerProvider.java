@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.LayerProvider;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+
+/**
+ * Assigns each node to the layer following the deepest of its predecessors,
+ * i.e. sources are put into the first layer and every other node is put into
+ * the layer below the longest path leading to it. The assignment takes linear
+ * time in the number of nodes and connections and results in the minimal
+ * number of layers.
+ * <p>
+ * Cycles are broken by reversing the connections that close a cycle during a
+ * depth first search. Connections spanning more than one layer are chained
+ * over dummy nodes, so that the resulting layers can be processed by a
+ * {@link org.eclipse.gef4.layout.interfaces.CrossingReducer}. Preassigned
+ * layers are not supported by this provider.
+ */
+public class LongestPathLayerProvider implements LayerProvider {
+
+	public Map<NodeLayout, Integer> getAssignedNodes() {
+		return null;
+	}
+
+	public void addAssignedNode(NodeLayout node, int layer) {
+	}
+
+	public void clearAssignedNodes() {
+	}
+
+	public List<List<NodeWrapper>> calculateLayers(List<NodeLayout> nodes,
+			Map<NodeLayout, Integer> assignedNodes) {
+		NodeLayout[] nodeArray = nodes.toArray(new NodeLayout[nodes.size()]);
+		IdentityIndexMap index = new IdentityIndexMap(nodeArray);
+
+		// collect the connections between the given nodes, skipping loops
+		// and multiple connections between the same nodes
+		int[] lastTail = new int[nodeArray.length];
+		for (int i = 0; i < lastTail.length; i++)
+			lastTail[i] = -1;
+		int[] tails = new int[16];
+		int[] heads = new int[16];
+		int numberOfEdges = 0;
+		for (int u = 0; u < nodeArray.length; u++) {
+			for (ConnectionLayout connection : nodeArray[u]
+					.getOutgoingConnections()) {
+				// undirected connections are outgoing for both of their nodes
+				if (connection.getSource() != nodeArray[u])
+					continue;
+				int v = index.get(connection.getTarget());
+				if (v < 0 || v == u || lastTail[v] == u)
+					continue;
+				lastTail[v] = u;
+				if (numberOfEdges == tails.length) {
+					tails = ArrayHelper.copyOf(tails, numberOfEdges * 2);
+					heads = ArrayHelper.copyOf(heads, numberOfEdges * 2);
+				}
+				tails[numberOfEdges] = u;
+				heads[numberOfEdges] = v;
+				numberOfEdges++;
+			}
+		}
+		tails = ArrayHelper.copyOf(tails, numberOfEdges);
+		heads = ArrayHelper.copyOf(heads, numberOfEdges);
+
+		breakCycles(nodeArray.length, tails, heads);
+		int[] layers = assignLayers(nodeArray.length, tails, heads);
+		return createLayers(nodeArray, layers, tails, heads);
+	}
+
+	/**
+	 * Assigns a layer to each node, so that the head of each edge is located
+	 * in a layer below its tail. The edges are guaranteed to be acyclic.
+	 *
+	 * @param numberOfNodes
+	 * @param tails
+	 *            the tail node of each edge
+	 * @param heads
+	 *            the head node of each edge
+	 * @return the layer of each node, starting at 0
+	 */
+	int[] assignLayers(int numberOfNodes, int[] tails, int[] heads) {
+		int[] offsets = new int[numberOfNodes + 1];
+		int[] inDegree = new int[numberOfNodes];
+		for (int e = 0; e < tails.length; e++) {
+			offsets[tails[e] + 1]++;
+			inDegree[heads[e]]++;
+		}
+		for (int i = 0; i < numberOfNodes; i++)
+			offsets[i + 1] += offsets[i];
+		int[] fill = ArrayHelper.copyOf(offsets, numberOfNodes);
+		int[] successors = new int[tails.length];
+		for (int e = 0; e < tails.length; e++)
+			successors[fill[tails[e]]++] = heads[e];
+
+		// visit the nodes in topological order
+		int[] layers = new int[numberOfNodes];
+		int[] queue = new int[numberOfNodes];
+		int head = 0, tail = 0;
+		for (int i = 0; i < numberOfNodes; i++)
+			if (inDegree[i] == 0)
+				queue[tail++] = i;
+		while (head < tail) {
+			int u = queue[head++];
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = successors[k];
+				layers[v] = Math.max(layers[v], layers[u] + 1);
+				if (--inDegree[v] == 0)
+					queue[tail++] = v;
+			}
+		}
+		return layers;
+	}
+
+	/**
+	 * Reverses all edges that close a cycle during a depth first search, so
+	 * that the given edges become acyclic.
+	 */
+	private static void breakCycles(int numberOfNodes, int[] tails,
+			int[] heads) {
+		int[] offsets = new int[numberOfNodes + 1];
+		for (int e = 0; e < tails.length; e++)
+			offsets[tails[e] + 1]++;
+		for (int i = 0; i < numberOfNodes; i++)
+			offsets[i + 1] += offsets[i];
+		int[] fill = ArrayHelper.copyOf(offsets, numberOfNodes);
+		int[] outgoing = new int[tails.length];
+		for (int e = 0; e < tails.length; e++)
+			outgoing[fill[tails[e]]++] = e;
+
+		// 0 = unvisited, 1 = on the stack, 2 = finished
+		byte[] states = new byte[numberOfNodes];
+		int[] stack = new int[numberOfNodes];
+		int[] cursor = new int[numberOfNodes];
+		boolean[] reverse = new boolean[tails.length];
+		for (int root = 0; root < numberOfNodes; root++) {
+			if (states[root] != 0)
+				continue;
+			int top = 0;
+			stack[top++] = root;
+			states[root] = 1;
+			cursor[root] = offsets[root];
+			while (top > 0) {
+				int u = stack[top - 1];
+				if (cursor[u] == offsets[u + 1]) {
+					states[u] = 2;
+					top--;
+					continue;
+				}
+				int e = outgoing[cursor[u]++];
+				int v = heads[e];
+				if (states[v] == 1) {
+					reverse[e] = true;
+				} else if (states[v] == 0) {
+					states[v] = 1;
+					cursor[v] = offsets[v];
+					stack[top++] = v;
+				}
+			}
+		}
+		for (int e = 0; e < tails.length; e++) {
+			if (reverse[e]) {
+				int tmp = tails[e];
+				tails[e] = heads[e];
+				heads[e] = tmp;
+			}
+		}
+	}
+
+	/**
+	 * Wraps the nodes into {@link NodeWrapper}s of their layers and chains the
+	 * tail and head of each edge over dummy wrappers in the layers in between.
+	 */
+	private static List<List<NodeWrapper>> createLayers(NodeLayout[] nodes,
+			int[] layers, int[] tails, int[] heads) {
+		int numberOfLayers = 0;
+		for (int i = 0; i < layers.length; i++)
+			numberOfLayers = Math.max(numberOfLayers, layers[i] + 1);
+		List<List<NodeWrapper>> result = new ArrayList<List<NodeWrapper>>(
+				numberOfLayers);
+		for (int l = 0; l < numberOfLayers; l++)
+			result.add(new ArrayList<NodeWrapper>());
+		NodeWrapper[] wrappers = new NodeWrapper[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			wrappers[i] = new NodeWrapper(nodes[i], layers[i]);
+			result.get(layers[i]).add(wrappers[i]);
+		}
+		for (int e = 0; e < tails.length; e++) {
+			NodeWrapper predecessor = wrappers[tails[e]];
+			NodeWrapper nw = wrappers[heads[e]];
+			for (int level = predecessor.layer + 1; level < nw.layer; level++) {
+				NodeWrapper dummy = new NodeWrapper(level);
+				dummy.addPredecessor(predecessor);
+				predecessor.addSuccessor(dummy);
+				predecessor = dummy;
+				result.get(level).add(dummy);
+			}
+			nw.addPredecessor(predecessor);
+			predecessor.addSuccessor(nw);
+		}
+		for (List<NodeWrapper> layer : result)
+			for (int i = 0; i < layer.size(); i++)
+				layer.get(i).index = i;
+		return result;
+	}
+
+}
@@ -0,0 +1,632 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.gef4.geometry.planar.Rectangle;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+
+/**
+ * A force-directed layout for large graphs, which computes the layout on a
+ * hierarchy of increasingly coarse graphs as proposed by Walshaw
+ * (http://dx.doi.org/10.1007/3-540-44541-2_17) and Hu
+ * (http://www.mathematica-journal.com/issue/v10i1/graph_draw.html).
+ * <p>
+ * The graph is coarsened repeatedly by collapsing a maximal matching of
+ * related nodes, until it is small or cannot be coarsened much further. The
+ * coarsest graph is laid out starting from random positions, which is cheap
+ * because of its size. Afterwards the layout of each graph is used as the
+ * starting point for the next finer one, so that the finer levels only need
+ * a few iterations to refine the local structure, while the global structure
+ * has already been found on the coarse levels.
+ * <p>
+ * On each level, the spring-electrical model is used: related nodes attract
+ * each other with <code>d^2 / K</code> and all nodes repel each other with
+ * <code>C * K^2 / d</code>, where <code>K</code> is the natural spring
+ * length of the level. The repulsion is approximated with a quadtree, so
+ * that an iteration costs O(n log n). The repulsion decreases only linearly
+ * with the distance, which keeps large meshes from folding. On the coarsest level,
+ * the step length is adapted to the progress of the layout, while the finer
+ * levels start with short steps that are reduced steadily.
+ * <p>
+ * The connected components of the graph are laid out separately and
+ * arranged in rows afterwards.
+ */
+public class MultilevelLayoutAlgorithm implements LayoutAlgorithm {
+
+	/**
+	 * The default value for the maximal number of iterations per level.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 300;
+
+	/**
+	 * The default value for the number of nodes below which the graph is not
+	 * coarsened any further.
+	 */
+	public static final int DEFAULT_COARSEST_SIZE = 50;
+
+	/**
+	 * The default value for the threshold used to approximate repulsive
+	 * forces.
+	 */
+	public static final double DEFAULT_THETA = 1.2;
+
+	/**
+	 * The relative strength of the repulsive forces.
+	 */
+	private static final double REPULSION = 0.2;
+
+	/**
+	 * The distance between the bounding boxes of the connected components,
+	 * relative to the natural spring length.
+	 */
+	private static final double COMPONENT_SPACING = 2;
+
+	/**
+	 * The initial step length on the refined levels, relative to the natural
+	 * spring length.
+	 */
+	private static final double REFINEMENT_STEP = 0.3;
+
+	/**
+	 * The factor by which the step length is adapted.
+	 */
+	private static final double COOLING = 0.9;
+
+	/**
+	 * A level is laid out until the average node movement in one iteration
+	 * falls below this fraction of the natural spring length.
+	 */
+	private static final double TOLERANCE = 0.01;
+
+	/**
+	 * Coarsening stops if a level would keep more than this fraction of the
+	 * nodes of the finer level.
+	 */
+	private static final double MIN_REDUCTION = 0.75;
+
+	/**
+	 * The ratio of the natural spring lengths of two subsequent levels.
+	 */
+	private static final double LEVEL_SCALE = Math.sqrt(7.0 / 4.0);
+
+	private LayoutContext context;
+
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+	private int coarsestSize = DEFAULT_COARSEST_SIZE;
+
+	private double theta = DEFAULT_THETA;
+
+	private final Random random = new Random();
+
+	private long seed;
+
+	private boolean seeded = false;
+
+	private QuadTree quadTree;
+
+	/**
+	 * A graph of one level of the hierarchy.
+	 */
+	private static class Level {
+
+		/**
+		 * The neighbors of node <code>i</code> are <code>adjacent[k]</code>
+		 * for <code>k</code> from <code>offsets[i]</code> up to (excluding)
+		 * <code>offsets[i + 1]</code>.
+		 */
+		final int[] offsets, adjacent;
+
+		/**
+		 * The number of nodes of the original graph collapsed into each node.
+		 */
+		final int[] weights;
+
+		/**
+		 * The node of the next coarser level, into which each node has been
+		 * collapsed, or <code>null</code> for the coarsest level.
+		 */
+		int[] parents;
+
+		Level(int[] offsets, int[] adjacent, int[] weights) {
+			this.offsets = offsets;
+			this.adjacent = adjacent;
+			this.weights = weights;
+		}
+
+		int size() {
+			return weights.length;
+		}
+	}
+
+	public void applyLayout(boolean clean) {
+		if (!clean)
+			return;
+		EntityLayout[] entities = context.getEntities();
+		if (entities.length == 0)
+			return;
+		GraphSnapshot snapshot = new GraphSnapshot(entities,
+				context.getConnections());
+		if (seeded)
+			random.setSeed(seed);
+
+		int length = entities.length;
+		Level graph = createLevel(snapshot.getSources(),
+				snapshot.getTargets(), snapshot.getConnectionCount(),
+				ones(length));
+		int[] order = new int[length];
+		int[] componentStart = new int[length + 1];
+		int components = findComponents(graph, order, componentStart);
+
+		// lay out each connected component on its own, because the repulsion
+		// would drive unconnected components apart without bound
+		double[] x = snapshot.getX();
+		double[] y = snapshot.getY();
+		int[] localIndex = new int[length];
+		int[] sources = new int[graph.adjacent.length / 2];
+		int[] targets = new int[sources.length];
+		for (int c = 0; c < components; c++) {
+			int from = componentStart[c];
+			int to = componentStart[c + 1];
+			for (int k = from; k < to; k++) {
+				localIndex[order[k]] = k - from;
+			}
+			int count = 0;
+			for (int k = from; k < to; k++) {
+				int i = order[k];
+				for (int e = graph.offsets[i]; e < graph.offsets[i + 1]; e++) {
+					int j = graph.adjacent[e];
+					if (i < j) {
+						sources[count] = localIndex[i];
+						targets[count] = localIndex[j];
+						count++;
+					}
+				}
+			}
+			double[] componentX = new double[to - from];
+			double[] componentY = new double[to - from];
+			layout(createLevel(sources, targets, count, ones(to - from)),
+					componentX, componentY);
+			for (int k = from; k < to; k++) {
+				x[order[k]] = componentX[k - from];
+				y[order[k]] = componentY[k - from];
+			}
+		}
+		pack(order, componentStart, components, x, y);
+
+		snapshot.writeLocations();
+		Rectangle bounds = new Rectangle(context.getBounds());
+		int insets = 4;
+		bounds.setX(bounds.getX() + insets);
+		bounds.setY(bounds.getY() + insets);
+		bounds.setWidth(bounds.getWidth() - 2 * insets);
+		bounds.setHeight(bounds.getHeight() - 2 * insets);
+		AlgorithmHelper.fitWithinBounds(entities, bounds, false);
+		quadTree = null;
+	}
+
+	/**
+	 * Computes the multilevel layout of a connected graph, whose natural
+	 * spring length is 1.
+	 */
+	private void layout(Level graph, double[] resultX, double[] resultY) {
+		List<Level> levels = new ArrayList<Level>();
+		Level level = graph;
+		levels.add(level);
+		while (level.size() > coarsestSize) {
+			Level coarser = coarsen(level);
+			if (coarser.size() > MIN_REDUCTION * level.size()) {
+				level.parents = null;
+				break;
+			}
+			levels.add(coarser);
+			level = coarser;
+		}
+
+		// lay out the coarsest level from random positions
+		double k = Math.pow(LEVEL_SCALE, levels.size() - 1);
+		double[] x = new double[level.size()];
+		double[] y = new double[level.size()];
+		double extent = k * Math.sqrt(level.size());
+		for (int i = 0; i < x.length; i++) {
+			x[i] = random.nextDouble() * extent;
+			y[i] = random.nextDouble() * extent;
+		}
+		layout(level, x, y, k, false);
+
+		// refine the finer levels
+		for (int l = levels.size() - 2; l >= 0; l--) {
+			Level finer = levels.get(l);
+			k /= LEVEL_SCALE;
+			double[] finerX = new double[finer.size()];
+			double[] finerY = new double[finer.size()];
+			for (int i = 0; i < finerX.length; i++) {
+				// separate nodes collapsed into the same parent slightly
+				double angle = random.nextDouble() * 2 * Math.PI;
+				finerX[i] = x[finer.parents[i]] + Math.cos(angle) * k * 0.1;
+				finerY[i] = y[finer.parents[i]] + Math.sin(angle) * k * 0.1;
+			}
+			x = finerX;
+			y = finerY;
+			layout(finer, x, y, k, true);
+		}
+		System.arraycopy(x, 0, resultX, 0, x.length);
+		System.arraycopy(y, 0, resultY, 0, y.length);
+	}
+
+	private static int[] ones(int length) {
+		int[] ones = new int[length];
+		for (int i = 0; i < length; i++) {
+			ones[i] = 1;
+		}
+		return ones;
+	}
+
+	/**
+	 * Lists the nodes of the given level grouped by connected component. The
+	 * nodes of component <code>c</code> are <code>order[k]</code> for
+	 * <code>k</code> from <code>componentStart[c]</code> up to (excluding)
+	 * <code>componentStart[c + 1]</code>.
+	 *
+	 * @return the number of components
+	 */
+	private static int findComponents(Level level, int[] order,
+			int[] componentStart) {
+		int length = level.size();
+		boolean[] visited = new boolean[length];
+		int components = 0;
+		int size = 0;
+		for (int root = 0; root < length; root++) {
+			if (visited[root])
+				continue;
+			componentStart[components++] = size;
+			// breadth-first search, using the order array as queue
+			visited[root] = true;
+			order[size++] = root;
+			for (int head = size - 1; head < size; head++) {
+				int i = order[head];
+				for (int k = level.offsets[i]; k < level.offsets[i + 1]; k++) {
+					int j = level.adjacent[k];
+					if (!visited[j]) {
+						visited[j] = true;
+						order[size++] = j;
+					}
+				}
+			}
+		}
+		componentStart[components] = size;
+		return components;
+	}
+
+	/**
+	 * Arranges the bounding boxes of the components in rows, starting with
+	 * the highest ones, so that the whole layout is roughly square.
+	 */
+	private static void pack(int[] order, int[] componentStart,
+			int components, double[] x, double[] y) {
+		final double[] minX = new double[components];
+		final double[] minY = new double[components];
+		final double[] width = new double[components];
+		final double[] height = new double[components];
+		Integer[] sorted = new Integer[components];
+		double area = 0, maxWidth = 0;
+		for (int c = 0; c < components; c++) {
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			minX[c] = Double.POSITIVE_INFINITY;
+			minY[c] = Double.POSITIVE_INFINITY;
+			for (int k = componentStart[c]; k < componentStart[c + 1]; k++) {
+				minX[c] = Math.min(minX[c], x[order[k]]);
+				minY[c] = Math.min(minY[c], y[order[k]]);
+				maxX = Math.max(maxX, x[order[k]]);
+				maxY = Math.max(maxY, y[order[k]]);
+			}
+			width[c] = maxX - minX[c];
+			height[c] = maxY - minY[c];
+			area += (width[c] + COMPONENT_SPACING)
+					* (height[c] + COMPONENT_SPACING);
+			maxWidth = Math.max(maxWidth, width[c]);
+			sorted[c] = c;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer c1, Integer c2) {
+				return Double.compare(height[c2], height[c1]);
+			}
+		});
+
+		double rowWidth = Math.max(Math.sqrt(area), maxWidth);
+		double rowX = 0, rowY = 0, rowHeight = 0;
+		for (int s = 0; s < components; s++) {
+			int c = sorted[s];
+			if (rowX > 0 && rowX + width[c] > rowWidth) {
+				rowY += rowHeight + COMPONENT_SPACING;
+				rowX = 0;
+				rowHeight = 0;
+			}
+			for (int k = componentStart[c]; k < componentStart[c + 1]; k++) {
+				x[order[k]] += rowX - minX[c];
+				y[order[k]] += rowY - minY[c];
+			}
+			rowX += width[c] + COMPONENT_SPACING;
+			rowHeight = Math.max(rowHeight, height[c]);
+		}
+	}
+
+	/**
+	 * Creates a level from the given edges, ignoring loops and merging
+	 * multiple edges between the same nodes.
+	 */
+	private static Level createLevel(int[] sources, int[] targets,
+			int numberOfEdges, int[] weights) {
+		int length = weights.length;
+		int[] offsets = new int[length + 1];
+		for (int e = 0; e < numberOfEdges; e++) {
+			if (sources[e] != targets[e]) {
+				offsets[sources[e] + 1]++;
+				offsets[targets[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] fill = ArrayHelper.copyOf(offsets, length);
+		int[] adjacent = new int[offsets[length]];
+		for (int e = 0; e < numberOfEdges; e++) {
+			if (sources[e] != targets[e]) {
+				adjacent[fill[sources[e]]++] = targets[e];
+				adjacent[fill[targets[e]]++] = sources[e];
+			}
+		}
+
+		// remove duplicates in place
+		int[] lastRow = new int[length];
+		for (int i = 0; i < length; i++) {
+			lastRow[i] = -1;
+		}
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			int start = size;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				int j = adjacent[k];
+				if (lastRow[j] != i) {
+					lastRow[j] = i;
+					adjacent[size++] = j;
+				}
+			}
+			offsets[i] = start;
+		}
+		offsets[length] = size;
+		return new Level(offsets, ArrayHelper.copyOf(adjacent, size), weights);
+	}
+
+	/**
+	 * Collapses a maximal matching of the given level. The nodes are visited
+	 * in random order and each is matched with its lightest unmatched
+	 * neighbor, so that the weights of the coarse nodes stay balanced.
+	 */
+	private Level coarsen(Level level) {
+		int length = level.size();
+		int[] order = new int[length];
+		for (int i = 0; i < length; i++) {
+			order[i] = i;
+		}
+		for (int i = length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+
+		int[] parents = new int[length];
+		for (int i = 0; i < length; i++) {
+			parents[i] = -1;
+		}
+		int coarseLength = 0;
+		for (int o = 0; o < length; o++) {
+			int i = order[o];
+			if (parents[i] >= 0)
+				continue;
+			int match = -1;
+			for (int k = level.offsets[i]; k < level.offsets[i + 1]; k++) {
+				int j = level.adjacent[k];
+				if (parents[j] < 0
+						&& (match < 0 || level.weights[j] < level.weights[match]))
+					match = j;
+			}
+			parents[i] = coarseLength;
+			if (match >= 0)
+				parents[match] = coarseLength;
+			coarseLength++;
+		}
+		level.parents = parents;
+
+		int[] weights = new int[coarseLength];
+		for (int i = 0; i < length; i++) {
+			weights[parents[i]] += level.weights[i];
+		}
+		int numberOfEdges = level.adjacent.length;
+		int[] sources = new int[numberOfEdges];
+		int[] targets = new int[numberOfEdges];
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			for (int k = level.offsets[i]; k < level.offsets[i + 1]; k++) {
+				int j = level.adjacent[k];
+				if (i < j) {
+					sources[count] = parents[i];
+					targets[count] = parents[j];
+					count++;
+				}
+			}
+		}
+		return createLevel(sources, targets, count, weights);
+	}
+
+	/**
+	 * Improves the layout of the given level until it has converged or the
+	 * maximal number of iterations has been performed.
+	 */
+	private void layout(Level level, double[] x, double[] y, double k,
+			boolean refine) {
+		int length = level.size();
+		if (length < 2)
+			return;
+		if (quadTree == null)
+			quadTree = new QuadTree();
+		double[] forcesX = new double[length];
+		double[] forcesY = new double[length];
+		double repulsion = REPULSION * k * k;
+		double minDistanceSq = 1e-4 * k * k;
+		double step = refine ? REFINEMENT_STEP * k : k;
+		double energy = Double.POSITIVE_INFINITY;
+		int progress = 0;
+		for (int iteration = 0; iteration < maxIterations; iteration++) {
+			for (int i = 0; i < length; i++) {
+				forcesX[i] = 0;
+				forcesY[i] = 0;
+			}
+			quadTree.build(x, y);
+			quadTree.accumulateRepulsion(0, length, theta, repulsion, 1,
+					minDistanceSq, forcesX, forcesY);
+			for (int i = 0; i < length; i++) {
+				for (int e = level.offsets[i]; e < level.offsets[i + 1]; e++) {
+					int j = level.adjacent[e];
+					double dx = x[j] - x[i];
+					double dy = y[j] - y[i];
+					double distance = Math.sqrt(dx * dx + dy * dy);
+					forcesX[i] += dx * distance / k;
+					forcesY[i] += dy * distance / k;
+				}
+			}
+
+			// move each node by the step length in the direction of its force
+			double previousEnergy = energy;
+			energy = 0;
+			double movement = 0;
+			for (int i = 0; i < length; i++) {
+				double force = Math.sqrt(forcesX[i] * forcesX[i] + forcesY[i]
+						* forcesY[i]);
+				if (force > 0) {
+					x[i] += step * forcesX[i] / force;
+					y[i] += step * forcesY[i] / force;
+					movement += step;
+				}
+				energy += force * force;
+			}
+
+			// the refined levels only need to be adjusted locally, so they
+			// are cooled down steadily; the coarsest level speeds up while
+			// the energy keeps decreasing and slows down otherwise
+			if (refine) {
+				step *= COOLING;
+			} else if (energy < previousEnergy) {
+				progress++;
+				if (progress >= 5) {
+					progress = 0;
+					step /= COOLING;
+				}
+			} else {
+				progress = 0;
+				step *= COOLING;
+			}
+			if (movement < TOLERANCE * k * length)
+				break;
+		}
+	}
+
+	public void setLayoutContext(LayoutContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Sets the maximal number of iterations performed on each level. Default
+	 * value is {@link #DEFAULT_MAX_ITERATIONS}.
+	 *
+	 * @param maxIterations
+	 *            the maximal number of iterations per level
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Returns the maximal number of iterations performed on each level.
+	 *
+	 * @return the maximal number of iterations per level
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the number of nodes below which the graph is not coarsened any
+	 * further. Default value is {@link #DEFAULT_COARSEST_SIZE}.
+	 *
+	 * @param coarsestSize
+	 *            the size of the coarsest level
+	 */
+	public void setCoarsestSize(int coarsestSize) {
+		this.coarsestSize = coarsestSize;
+	}
+
+	/**
+	 * Returns the number of nodes below which the graph is not coarsened any
+	 * further.
+	 *
+	 * @return the size of the coarsest level
+	 */
+	public int getCoarsestSize() {
+		return coarsestSize;
+	}
+
+	/**
+	 * Sets the threshold used to approximate the repulsive forces. Larger
+	 * values are faster but less accurate. Default value is
+	 * {@link #DEFAULT_THETA}.
+	 *
+	 * @param theta
+	 *            the approximation threshold
+	 */
+	public void setApproximationTheta(double theta) {
+		this.theta = theta;
+	}
+
+	/**
+	 * Returns the threshold used to approximate the repulsive forces.
+	 *
+	 * @return the approximation threshold
+	 */
+	public double getApproximationTheta() {
+		return theta;
+	}
+
+	/**
+	 * Sets the seed of the random numbers used for the initial placement and
+	 * the coarsening, so that subsequent layouts of the same graph are
+	 * identical.
+	 *
+	 * @param seed
+	 *            the seed
+	 */
+	public void setRandomSeed(long seed) {
+		this.seed = seed;
+		this.seeded = true;
+	}
+
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+/**
+ * Assigns the nodes to layers, so that the total span of all connections (and
+ * thereby the number of dummy nodes needed by the crossing reduction) is
+ * minimal. The layering is computed by the network simplex method of Gansner
+ * et al. (http://dx.doi.org/10.1109/32.221135), starting from the layering of
+ * the {@link LongestPathLayerProvider}.
+ * <p>
+ * Each iteration replaces one edge of a spanning tree of tight edges and costs
+ * linear time in the number of nodes and connections. The number of
+ * iterations can be bounded, in which case the best layering found so far is
+ * used.
+ */
+public class NetworkSimplexLayerProvider extends LongestPathLayerProvider {
+
+	/**
+	 * The default value for the maximum number of iterations.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 5000;
+
+	private final int maxIterations;
+
+	// the graph
+	private int n;
+	private int[] tails, heads;
+	private int[] ranks;
+	private int[] incidentOffsets, incident;
+
+	// the spanning forest of tight edges
+	private boolean[] treeEdge;
+	private int[] components;
+	private int[] roots;
+	private int[] parentEdge;
+	private int[] low, lim;
+	private int[] postorder;
+	private int[] cutNet;
+	private int[] balance;
+
+	public NetworkSimplexLayerProvider() {
+		this(DEFAULT_MAX_ITERATIONS);
+	}
+
+	/**
+	 * Creates a new provider, which stops the optimization after the given
+	 * number of iterations.
+	 *
+	 * @param maxIterations
+	 *            the maximum number of iterations
+	 */
+	public NetworkSimplexLayerProvider(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	int[] assignLayers(int numberOfNodes, int[] tails, int[] heads) {
+		this.n = numberOfNodes;
+		this.tails = tails;
+		this.heads = heads;
+		ranks = super.assignLayers(numberOfNodes, tails, heads);
+		if (tails.length > 0) {
+			initIncidence();
+			feasibleTree();
+			initTree();
+			optimize();
+		}
+		normalize();
+		int[] result = ranks;
+		this.tails = this.heads = null;
+		ranks = incidentOffsets = incident = components = roots = parentEdge = null;
+		low = lim = postorder = cutNet = balance = null;
+		treeEdge = null;
+		return result;
+	}
+
+	private int slack(int e) {
+		return ranks[heads[e]] - ranks[tails[e]] - 1;
+	}
+
+	private void initIncidence() {
+		incidentOffsets = new int[n + 1];
+		balance = new int[n];
+		for (int e = 0; e < tails.length; e++) {
+			incidentOffsets[tails[e] + 1]++;
+			incidentOffsets[heads[e] + 1]++;
+			// outgoing minus incoming edges of each node
+			balance[tails[e]]++;
+			balance[heads[e]]--;
+		}
+		for (int i = 0; i < n; i++)
+			incidentOffsets[i + 1] += incidentOffsets[i];
+		int[] fill = ArrayHelper.copyOf(incidentOffsets, n);
+		incident = new int[2 * tails.length];
+		for (int e = 0; e < tails.length; e++) {
+			incident[fill[tails[e]]++] = e;
+			incident[fill[heads[e]]++] = e;
+		}
+	}
+
+	/**
+	 * Builds a spanning tree of tight edges for each connected component,
+	 * shifting the ranks of the partial tree until an incident edge becomes
+	 * tight.
+	 */
+	private void feasibleTree() {
+		treeEdge = new boolean[tails.length];
+		components = new int[n];
+		for (int i = 0; i < n; i++)
+			components[i] = -1;
+		int[] treeNodes = new int[n];
+		int[] componentRoots = new int[n];
+		int numberOfComponents = 0;
+		for (int root = 0; root < n; root++) {
+			if (components[root] >= 0)
+				continue;
+			int component = numberOfComponents++;
+			componentRoots[component] = root;
+			components[root] = component;
+			treeNodes[0] = root;
+			int size = growTightTree(treeNodes, 0, 1, component);
+			while (true) {
+				// find the incident non-tree edge with minimal slack
+				int minEdge = -1;
+				for (int t = 0; t < size; t++) {
+					int u = treeNodes[t];
+					for (int k = incidentOffsets[u]; k < incidentOffsets[u + 1]; k++) {
+						int e = incident[k];
+						int other = tails[e] == u ? heads[e] : tails[e];
+						if (components[other] != component
+								&& (minEdge < 0 || slack(e) < slack(minEdge)))
+							minEdge = e;
+					}
+				}
+				if (minEdge < 0)
+					break;
+				int delta = slack(minEdge);
+				if (components[heads[minEdge]] == component)
+					delta = -delta;
+				for (int t = 0; t < size; t++)
+					ranks[treeNodes[t]] += delta;
+				size = growTightTree(treeNodes, 0, size, component);
+			}
+		}
+		roots = ArrayHelper.copyOf(componentRoots, numberOfComponents);
+	}
+
+	/**
+	 * Adds all nodes reachable over tight edges from the given tree nodes to
+	 * the tree.
+	 *
+	 * @return the new size of the tree
+	 */
+	private int growTightTree(int[] treeNodes, int from, int size,
+			int component) {
+		for (int t = from; t < size; t++) {
+			int u = treeNodes[t];
+			for (int k = incidentOffsets[u]; k < incidentOffsets[u + 1]; k++) {
+				int e = incident[k];
+				int other = tails[e] == u ? heads[e] : tails[e];
+				if (components[other] < 0 && slack(e) == 0) {
+					components[other] = component;
+					treeEdge[e] = true;
+					treeNodes[size++] = other;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Computes the postorder numbering of the spanning forest and the
+	 * aggregated balance of each subtree, from which the cut values are
+	 * derived.
+	 */
+	private void initTree() {
+		if (parentEdge == null) {
+			parentEdge = new int[n];
+			low = new int[n];
+			lim = new int[n];
+			postorder = new int[n];
+			cutNet = new int[n];
+		}
+		// collect the tree edges incident to each node
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < tails.length; e++) {
+			if (treeEdge[e]) {
+				offsets[tails[e] + 1]++;
+				offsets[heads[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++)
+			offsets[i + 1] += offsets[i];
+		int[] fill = ArrayHelper.copyOf(offsets, n);
+		int[] treeIncident = new int[offsets[n]];
+		for (int e = 0; e < tails.length; e++) {
+			if (treeEdge[e]) {
+				treeIncident[fill[tails[e]]++] = e;
+				treeIncident[fill[heads[e]]++] = e;
+			}
+		}
+
+		int[] stack = new int[n];
+		int[] cursor = new int[n];
+		int number = 0;
+		for (int r = 0; r < roots.length; r++) {
+			int root = roots[r];
+			int top = 0;
+			stack[top++] = root;
+			parentEdge[root] = -1;
+			cursor[root] = offsets[root];
+			low[root] = number;
+			while (top > 0) {
+				int u = stack[top - 1];
+				if (cursor[u] < offsets[u + 1]) {
+					int e = treeIncident[cursor[u]++];
+					if (e == parentEdge[u])
+						continue;
+					int v = tails[e] == u ? heads[e] : tails[e];
+					parentEdge[v] = e;
+					cursor[v] = offsets[v];
+					low[v] = number;
+					stack[top++] = v;
+				} else {
+					lim[u] = number;
+					postorder[number++] = u;
+					top--;
+				}
+			}
+		}
+
+		// aggregate the balances bottom up
+		for (int i = 0; i < n; i++) {
+			int u = postorder[i];
+			cutNet[u] = balance[u];
+		}
+		for (int i = 0; i < n; i++) {
+			int u = postorder[i];
+			int e = parentEdge[u];
+			if (e >= 0) {
+				int parent = tails[e] == u ? heads[e] : tails[e];
+				cutNet[parent] += cutNet[u];
+			}
+		}
+	}
+
+	/**
+	 * Returns the cut value of the tree edge connecting the given node to its
+	 * parent, i.e. the number of edges from the tail to the head component
+	 * minus the number of edges from the head to the tail component.
+	 */
+	private int cutValue(int u) {
+		// the net outflow of the subtree of u
+		return tails[parentEdge[u]] == u ? cutNet[u] : -cutNet[u];
+	}
+
+	private boolean inSubtree(int v, int u) {
+		return low[u] <= lim[v] && lim[v] <= lim[u];
+	}
+
+	private void optimize() {
+		int start = 0;
+		for (int iteration = 0; iteration < maxIterations; iteration++) {
+			// search cyclically for a tree edge with negative cut value
+			int leaving = -1;
+			for (int i = 0; i < n; i++) {
+				int u = (start + i) % n;
+				if (parentEdge[u] >= 0 && cutValue(u) < 0) {
+					leaving = u;
+					break;
+				}
+			}
+			if (leaving < 0)
+				return;
+			start = leaving + 1;
+
+			// the subtree below the leaving edge is either its tail or its
+			// head component, search an entering edge from the head to the
+			// tail component with minimal slack
+			boolean subtreeIsTail = tails[parentEdge[leaving]] == leaving;
+			int entering = -1;
+			for (int e = 0; e < tails.length; e++) {
+				if (treeEdge[e]
+						|| components[tails[e]] != components[leaving])
+					continue;
+				boolean tailInside = inSubtree(tails[e], leaving);
+				boolean headInside = inSubtree(heads[e], leaving);
+				if (tailInside == headInside)
+					continue;
+				if (subtreeIsTail == headInside
+						&& (entering < 0 || slack(e) < slack(entering)))
+					entering = e;
+			}
+			if (entering < 0)
+				return;
+
+			// shift the subtree, so that the entering edge becomes tight
+			int delta = subtreeIsTail ? -slack(entering) : slack(entering);
+			for (int i = low[leaving]; i <= lim[leaving]; i++)
+				ranks[postorder[i]] += delta;
+			treeEdge[parentEdge[leaving]] = false;
+			treeEdge[entering] = true;
+			initTree();
+		}
+	}
+
+	private void normalize() {
+		if (components == null) {
+			return;
+		}
+		int[] min = new int[roots.length];
+		for (int c = 0; c < min.length; c++)
+			min[c] = Integer.MAX_VALUE;
+		for (int i = 0; i < n; i++)
+			min[components[i]] = Math.min(min[components[i]], ranks[i]);
+		for (int i = 0; i < n; i++)
+			ranks[i] -= min[components[i]];
+	}
+
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+
+/**
+ * This layout moves overlapping entities apart, keeping their sizes and
+ * roughly their relative positions. It is meant to be run after another
+ * layout algorithm, for example by combining both in a
+ * {@link CompositeLayoutAlgorithm}.
+ * <p>
+ * The overlaps are removed iteratively, similar to the PRISM algorithm of
+ * Gansner and Hu (http://dx.doi.org/10.7155/jgaa.00198): In each iteration,
+ * all overlapping pairs of entities are found using a uniform grid, and each
+ * pair is pushed apart along the line between their centers, by at most half
+ * of their distance. This repeats until no overlaps remain or the maximum
+ * number of iterations is reached. Each iteration runs in near-linear time
+ * unless the entities are very unevenly sized or distributed.
+ * <p>
+ * If many entities overlap and they cover a large part of their bounding box,
+ * the layout is scaled up around its center first. Local pushes alone would
+ * need many iterations to spread out a crowded layout.
+ */
+public class OverlapRemovalAlgorithm implements LayoutAlgorithm {
+
+	/**
+	 * The default value for the minimal distance between entities.
+	 */
+	public static final double DEFAULT_NODE_SPACING = 0;
+
+	/**
+	 * The default value for the maximal number of iterations.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+	/**
+	 * The distance of a pair grows by at most this factor in one iteration,
+	 * that is the pair is moved apart by at most half of its distance, so that
+	 * the relative positions are distorted gradually.
+	 */
+	private static final double MAX_EXPANSION = 1.5;
+
+	/**
+	 * Pairs are pushed slightly further than necessary, so that rounding
+	 * errors do not leave them overlapping.
+	 */
+	private static final double SEPARATION_TOLERANCE = 1e-6;
+
+	/**
+	 * Crowded layouts are scaled up until the entities cover at most this
+	 * fraction of their bounding box.
+	 */
+	private static final double MAX_DENSITY = 0.3;
+
+	/**
+	 * The angle between the directions in which pairs of entities with the
+	 * same center are moved apart.
+	 */
+	private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+	private LayoutContext context;
+
+	private double nodeSpacing = DEFAULT_NODE_SPACING;
+
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+	private int iterations;
+
+	public void applyLayout(boolean clean) {
+		if (!clean)
+			return;
+		EntityLayout[] entities = context.getEntities();
+		GraphSnapshot snapshot = new GraphSnapshot(entities,
+				new ConnectionLayout[0]);
+		int length = entities.length;
+		final double[] x = snapshot.getX();
+		final double[] y = snapshot.getY();
+		final double[] width = new double[length];
+		final double[] height = new double[length];
+		final boolean[] movable = new boolean[length];
+		for (int i = 0; i < length; i++) {
+			width[i] = snapshot.getWidth()[i] + nodeSpacing;
+			height[i] = snapshot.getHeight()[i] + nodeSpacing;
+			movable[i] = entities[i].isMovable();
+		}
+
+		final double[] shiftX = new double[length];
+		final double[] shiftY = new double[length];
+		final boolean[] overlapping = new boolean[1];
+		SpatialGrid.OverlapVisitor visitor = new SpatialGrid.OverlapVisitor() {
+			public void overlap(int i, int j) {
+				if (!movable[i] && !movable[j])
+					return;
+				overlapping[0] = true;
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double requiredX = (width[i] + width[j]) / 2;
+				double requiredY = (height[i] + height[j]) / 2;
+				double moveX, moveY;
+				if (dx == 0 && dy == 0) {
+					// move apart in a direction depending on the indices
+					double angle = (i + j) * GOLDEN_ANGLE;
+					moveX = Math.cos(angle) * requiredX / 2;
+					moveY = Math.sin(angle) * requiredY / 2;
+				} else {
+					// the factor by which the distance has to grow to remove
+					// the overlap in the cheaper direction
+					double factor = Math.min(
+							dx == 0 ? Double.POSITIVE_INFINITY : requiredX
+									/ Math.abs(dx),
+							dy == 0 ? Double.POSITIVE_INFINITY : requiredY
+									/ Math.abs(dy));
+					factor = Math.min(factor * (1 + SEPARATION_TOLERANCE),
+							MAX_EXPANSION) - 1;
+					moveX = dx * factor;
+					moveY = dy * factor;
+				}
+				if (movable[i] && movable[j]) {
+					push(i, -moveX / 2, -moveY / 2);
+					push(j, moveX / 2, moveY / 2);
+				} else if (movable[i]) {
+					push(i, -moveX, -moveY);
+				} else {
+					push(j, moveX, moveY);
+				}
+			}
+
+			private void push(int i, double dx, double dy) {
+				shiftX[i] += dx;
+				shiftY[i] += dy;
+			}
+		};
+
+		if (new SpatialGrid(x, y).countOverlaps(width, height) > length / 4)
+			spread(x, y, width, height, movable);
+		for (iterations = 0; iterations < maxIterations; iterations++) {
+			overlapping[0] = false;
+			new SpatialGrid(x, y).visitOverlaps(width, height, visitor);
+			if (!overlapping[0])
+				break;
+			for (int i = 0; i < length; i++) {
+				x[i] += shiftX[i];
+				y[i] += shiftY[i];
+				shiftX[i] = 0;
+				shiftY[i] = 0;
+			}
+		}
+		snapshot.writeLocations();
+	}
+
+	/**
+	 * Scales the locations of the movable entities around their center, so
+	 * that the entities cover at most {@link #MAX_DENSITY} of their bounding
+	 * box.
+	 */
+	private static void spread(double[] x, double[] y, double[] width,
+			double[] height, boolean[] movable) {
+		int length = x.length;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double area = 0, centerX = 0, centerY = 0;
+		for (int i = 0; i < length; i++) {
+			minX = Math.min(minX, x[i] - width[i] / 2);
+			minY = Math.min(minY, y[i] - height[i] / 2);
+			maxX = Math.max(maxX, x[i] + width[i] / 2);
+			maxY = Math.max(maxY, y[i] + height[i] / 2);
+			area += width[i] * height[i];
+			centerX += x[i];
+			centerY += y[i];
+		}
+		centerX /= length;
+		centerY /= length;
+		double density = area / ((maxX - minX) * (maxY - minY));
+		if (!(density > MAX_DENSITY) || Double.isInfinite(density))
+			return;
+		double scale = Math.sqrt(density / MAX_DENSITY);
+		for (int i = 0; i < length; i++) {
+			if (movable[i]) {
+				x[i] = centerX + (x[i] - centerX) * scale;
+				y[i] = centerY + (y[i] - centerY) * scale;
+			}
+		}
+	}
+
+	public void setLayoutContext(LayoutContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Sets the minimal distance between entities. Default value is
+	 * {@link #DEFAULT_NODE_SPACING}.
+	 *
+	 * @param nodeSpacing
+	 *            the minimal distance between entities
+	 */
+	public void setNodeSpacing(double nodeSpacing) {
+		this.nodeSpacing = nodeSpacing;
+	}
+
+	/**
+	 * Returns the minimal distance between entities.
+	 *
+	 * @return the minimal distance between entities
+	 */
+	public double getNodeSpacing() {
+		return nodeSpacing;
+	}
+
+	/**
+	 * Sets the maximal number of iterations. If overlaps remain after that
+	 * many iterations, the algorithm stops anyway. Default value is
+	 * {@link #DEFAULT_MAX_ITERATIONS}.
+	 *
+	 * @param maxIterations
+	 *            the maximal number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Returns the maximal number of iterations.
+	 *
+	 * @return the maximal number of iterations
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Returns the number of iterations performed by the last call of
+	 * {@link #applyLayout(boolean)}. It equals the maximal number of
+	 * iterations if overlaps remained.
+	 *
+	 * @return the number of iterations performed
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+}
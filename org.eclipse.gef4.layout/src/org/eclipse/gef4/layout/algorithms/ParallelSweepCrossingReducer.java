@@ -0,0 +1,537 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.gef4.layout.interfaces.CrossingReducer;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+
+/**
+ * Reduces crossings by alternating downward and upward layer sweeps, which
+ * order each layer by the median or barycenter of the neighbors in the
+ * previously ordered layer. The sweeps are repeated from several randomly
+ * shuffled initial orders (restarts), which are executed in parallel, and the
+ * order with the fewest crossings is kept. The first restart starts from the
+ * given order, so that the result is never worse than the input.
+ * <p>
+ * The reducer only considers connections between adjacent layers, i.e. the
+ * predecessors and successors of the {@link NodeWrapper}s, as created by
+ * layer providers which chain long connections over dummy nodes (e.g. the
+ * {@link LongestPathLayerProvider}). Crossings are counted with the
+ * {@link CrossingCounter}.
+ * <p>
+ * Restarts which have not been started when the time budget is exhausted are
+ * skipped, and running restarts stop after their current sweep. Without a
+ * time budget, the result only depends on the random seed and not on the
+ * number of threads.
+ */
+public class ParallelSweepCrossingReducer implements CrossingReducer {
+
+	/**
+	 * The heuristic used to order a layer with respect to the positions of
+	 * the neighbors in the adjacent layer.
+	 */
+	public enum Heuristic {
+		MEDIAN, BARYCENTER
+	};
+
+	/**
+	 * The default value for the maximum number of sweeps per restart.
+	 */
+	public static final int DEFAULT_MAX_SWEEPS = 24;
+
+	/**
+	 * The default value for the time budget in milliseconds.
+	 */
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+
+	private final Heuristic heuristic;
+	private final int restarts;
+	private final int parallelism;
+	private final long timeBudget;
+	private int maxSweeps = DEFAULT_MAX_SWEEPS;
+	private long seed;
+
+	private ExecutorService executor;
+
+	// snapshot of the layers
+	private NodeWrapper[] wrappers;
+	private int[] layerOffsets;
+	private int[] upOffsets, up;
+	private int[] downOffsets, down;
+	private int maxDegree;
+
+	/**
+	 * Creates a reducer using the median heuristic, which performs one
+	 * restart per available processor.
+	 */
+	public ParallelSweepCrossingReducer() {
+		this(Heuristic.MEDIAN);
+	}
+
+	/**
+	 * Creates a reducer using the given heuristic, which performs one restart
+	 * per available processor.
+	 *
+	 * @param heuristic
+	 *            the heuristic to order the layers with
+	 */
+	public ParallelSweepCrossingReducer(Heuristic heuristic) {
+		this(heuristic, Runtime.getRuntime().availableProcessors(), Runtime
+				.getRuntime().availableProcessors(), DEFAULT_TIME_BUDGET);
+	}
+
+	/**
+	 * Creates a reducer with the given configuration.
+	 *
+	 * @param heuristic
+	 *            the heuristic to order the layers with
+	 * @param restarts
+	 *            the number of restarts, at least 1
+	 * @param parallelism
+	 *            the number of threads executing the restarts, at least 1
+	 * @param timeBudget
+	 *            the time budget in milliseconds, or 0 for no limit
+	 */
+	public ParallelSweepCrossingReducer(Heuristic heuristic, int restarts,
+			int parallelism, long timeBudget) {
+		if (restarts < 1 || parallelism < 1 || timeBudget < 0) {
+			throw new IllegalArgumentException(
+					"The number of restarts and threads has to be positive and the time budget must not be negative.");
+		}
+		this.heuristic = heuristic;
+		this.restarts = restarts;
+		this.parallelism = parallelism;
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Sets the maximum number of sweeps per restart. A restart stops earlier,
+	 * if two subsequent sweeps do not reduce the number of crossings.
+	 *
+	 * @param maxSweeps
+	 *            the maximum number of sweeps
+	 */
+	public void setMaxSweeps(int maxSweeps) {
+		this.maxSweeps = maxSweeps;
+	}
+
+	/**
+	 * Returns the maximum number of sweeps per restart.
+	 *
+	 * @return the maximum number of sweeps
+	 */
+	public int getMaxSweeps() {
+		return maxSweeps;
+	}
+
+	/**
+	 * Sets the seed from which the random initial orders of the restarts are
+	 * derived.
+	 *
+	 * @param seed
+	 *            the random seed
+	 */
+	public void setRandomSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the seed from which the random initial orders of the restarts
+	 * are derived.
+	 *
+	 * @return the random seed
+	 */
+	public long getRandomSeed() {
+		return seed;
+	}
+
+	public Map<NodeLayout, NodeWrapper> crossReduction(
+			List<List<NodeWrapper>> nodes) {
+		createSnapshot(nodes);
+		final long deadline = timeBudget == 0 ? Long.MAX_VALUE : System
+				.nanoTime() + timeBudget * 1000000L;
+
+		final Restart[] results = new Restart[restarts];
+		if (parallelism == 1 || restarts == 1) {
+			for (int r = 0; r < restarts; r++) {
+				results[r] = new Restart(r);
+				results[r].run(deadline);
+			}
+		} else if (!runInParallel(results, deadline)) {
+			// restarts that are still running may write to the results, so
+			// the layers are left in their given order
+			return createMap(nodes);
+		}
+
+		// the first restart always runs, ties are resolved by the restart
+		// number to be independent of the scheduling
+		Restart best = results[0];
+		for (int r = 1; r < restarts; r++) {
+			if (results[r] != null && results[r].bestCrossings >= 0
+					&& results[r].bestCrossings < best.bestCrossings) {
+				best = results[r];
+			}
+		}
+
+		for (int l = 0; l < nodes.size(); l++) {
+			List<NodeWrapper> layer = nodes.get(l);
+			layer.clear();
+			for (int k = layerOffsets[l]; k < layerOffsets[l + 1]; k++) {
+				NodeWrapper nw = wrappers[best.bestOrder[k]];
+				nw.index = k - layerOffsets[l];
+				layer.add(nw);
+			}
+		}
+		return createMap(nodes);
+	}
+
+	/**
+	 * Runs all restarts on the executor and waits for them.
+	 *
+	 * @return <code>true</code> if all restarts have finished, or
+	 *         <code>false</code> if the current thread has been interrupted
+	 *         while waiting, in which case the remaining restarts are
+	 *         cancelled and the interrupt flag is restored
+	 */
+	private boolean runInParallel(final Restart[] results,
+			final long deadline) {
+		ExecutorService executor = getExecutor();
+		List<Future<?>> futures = new ArrayList<Future<?>>(restarts);
+		try {
+			for (int r = 0; r < restarts; r++) {
+				final int restart = r;
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						Restart result = new Restart(restart);
+						result.run(deadline);
+						results[restart] = result;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return true;
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static void cancel(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Maps the nodes of the given layers to their wrappers and releases the
+	 * snapshot.
+	 */
+	private Map<NodeLayout, NodeWrapper> createMap(
+			List<List<NodeWrapper>> nodes) {
+		Map<NodeLayout, NodeWrapper> map = new IdentityHashMap<NodeLayout, NodeWrapper>();
+		for (List<NodeWrapper> layer : nodes) {
+			for (NodeWrapper nw : layer) {
+				if (nw.node != null) {
+					map.put(nw.node, nw);
+				}
+			}
+		}
+		wrappers = null;
+		layerOffsets = upOffsets = up = downOffsets = down = null;
+		return map;
+	}
+
+	/**
+	 * Numbers the wrappers layer by layer and collects their neighbors in the
+	 * adjacent layers.
+	 */
+	private void createSnapshot(List<List<NodeWrapper>> nodes) {
+		layerOffsets = new int[nodes.size() + 1];
+		for (int l = 0; l < nodes.size(); l++) {
+			layerOffsets[l + 1] = layerOffsets[l] + nodes.get(l).size();
+		}
+		int n = layerOffsets[nodes.size()];
+		wrappers = new NodeWrapper[n];
+		int[] layerOf = new int[n];
+		for (int l = 0; l < nodes.size(); l++) {
+			int k = layerOffsets[l];
+			for (NodeWrapper nw : nodes.get(l)) {
+				layerOf[k] = l;
+				wrappers[k++] = nw;
+			}
+		}
+		IdentityIndexMap ids = new IdentityIndexMap(wrappers);
+		upOffsets = new int[n + 1];
+		downOffsets = new int[n + 1];
+		up = collectNeighbors(ids, layerOf, upOffsets, true);
+		down = collectNeighbors(ids, layerOf, downOffsets, false);
+		maxDegree = 0;
+		for (int i = 0; i < n; i++) {
+			maxDegree = Math.max(maxDegree, upOffsets[i + 1] - upOffsets[i]);
+			maxDegree = Math.max(maxDegree, downOffsets[i + 1]
+					- downOffsets[i]);
+		}
+	}
+
+	private int[] collectNeighbors(IdentityIndexMap ids, int[] layerOf,
+			int[] offsets, boolean predecessors) {
+		int n = wrappers.length;
+		int[] neighbors = new int[16];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = size;
+			int layer = layerOf[i] + (predecessors ? -1 : 1);
+			for (NodeWrapper nw : predecessors ? wrappers[i].pred
+					: wrappers[i].succ) {
+				int j = ids.get(nw);
+				if (j < 0 || layerOf[j] != layer) {
+					continue;
+				}
+				if (size == neighbors.length) {
+					neighbors = ArrayHelper.copyOf(neighbors, size * 2);
+				}
+				neighbors[size++] = j;
+			}
+		}
+		offsets[n] = size;
+		return ArrayHelper.copyOf(neighbors, size);
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			// idle threads terminate, so that no shutdown is needed
+			executor = new ThreadPoolExecutor(0, parallelism, 1,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r,
+									"ParallelSweepCrossingReducer worker");
+							thread.setDaemon(true);
+							return thread;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return executor;
+	}
+
+	/**
+	 * A single restart, which only reads the shared snapshot and keeps its
+	 * state in its own arrays.
+	 */
+	private class Restart {
+
+		private final int number;
+		// the ids of the nodes of each layer in their current order
+		private final int[] order;
+		// the position of each node within its layer
+		private final int[] positions;
+		private final double[] keys;
+		private final int[] buffer;
+		private final int[] neighborPositions;
+		private int[] north, south;
+
+		private int[] bestOrder;
+		private long bestCrossings = -1;
+
+		Restart(int number) {
+			this.number = number;
+			int n = wrappers.length;
+			order = new int[n];
+			positions = new int[n];
+			keys = new double[n];
+			buffer = new int[n];
+			neighborPositions = new int[maxDegree];
+			north = new int[down.length];
+			south = new int[down.length];
+		}
+
+		void run(long deadline) {
+			if (number > 0 && System.nanoTime() > deadline) {
+				return;
+			}
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			if (number > 0) {
+				shuffle(new Random(seed + number));
+			}
+			updatePositions(0, layerOffsets.length - 1);
+			bestCrossings = countCrossings();
+			bestOrder = order.clone();
+			int unsuccessful = 0;
+			for (int sweep = 0; sweep < maxSweeps && bestCrossings > 0
+					&& unsuccessful < 2; sweep++) {
+				// cancelled restarts are interrupted
+				if (System.nanoTime() > deadline
+						|| Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				if ((sweep & 1) == 0) {
+					for (int l = 1; l < layerOffsets.length - 1; l++) {
+						orderLayer(l, upOffsets, up);
+					}
+				} else {
+					for (int l = layerOffsets.length - 3; l >= 0; l--) {
+						orderLayer(l, downOffsets, down);
+					}
+				}
+				long crossings = countCrossings();
+				if (crossings < bestCrossings) {
+					bestCrossings = crossings;
+					System.arraycopy(order, 0, bestOrder, 0, order.length);
+					unsuccessful = 0;
+				} else {
+					unsuccessful++;
+				}
+			}
+		}
+
+		private void shuffle(Random random) {
+			for (int l = 0; l < layerOffsets.length - 1; l++) {
+				int from = layerOffsets[l];
+				for (int k = layerOffsets[l + 1] - 1; k > from; k--) {
+					int other = from + random.nextInt(k - from + 1);
+					int tmp = order[k];
+					order[k] = order[other];
+					order[other] = tmp;
+				}
+			}
+		}
+
+		private void updatePositions(int fromLayer, int toLayer) {
+			for (int l = fromLayer; l < toLayer; l++) {
+				for (int k = layerOffsets[l]; k < layerOffsets[l + 1]; k++) {
+					positions[order[k]] = k - layerOffsets[l];
+				}
+			}
+		}
+
+		/**
+		 * Orders the given layer by the median or barycenter of the positions
+		 * of the given neighbors. Nodes without such neighbors keep their
+		 * position.
+		 */
+		private void orderLayer(int layer, int[] offsets, int[] neighbors) {
+			int from = layerOffsets[layer];
+			int to = layerOffsets[layer + 1];
+			for (int k = from; k < to; k++) {
+				int i = order[k];
+				int degree = offsets[i + 1] - offsets[i];
+				if (degree == 0) {
+					keys[i] = positions[i];
+					continue;
+				}
+				for (int d = 0; d < degree; d++) {
+					neighborPositions[d] = positions[neighbors[offsets[i] + d]];
+				}
+				keys[i] = heuristic == Heuristic.MEDIAN ? median(degree)
+						: barycenter(degree);
+			}
+			sort(from, to);
+			updatePositions(layer, layer + 1);
+		}
+
+		private double barycenter(int degree) {
+			double sum = 0;
+			for (int d = 0; d < degree; d++) {
+				sum += neighborPositions[d];
+			}
+			return sum / degree;
+		}
+
+		/**
+		 * Returns the weighted median of Gansner et al., which is biased
+		 * towards the side where the neighbors are packed more closely.
+		 */
+		private double median(int degree) {
+			int[] p = neighborPositions;
+			Arrays.sort(p, 0, degree);
+			int m = degree / 2;
+			if ((degree & 1) == 1) {
+				return p[m];
+			}
+			if (degree == 2) {
+				return (p[0] + p[1]) / 2d;
+			}
+			double left = p[m - 1] - p[0];
+			double right = p[degree - 1] - p[m];
+			if (left + right == 0) {
+				return (p[m - 1] + p[m]) / 2d;
+			}
+			return (p[m - 1] * right + p[m] * left) / (left + right);
+		}
+
+		/**
+		 * Stable merge sort of the given range of the order by the keys.
+		 */
+		private void sort(int from, int to) {
+			for (int width = 1; width < to - from; width *= 2) {
+				for (int left = from; left < to - width; left += 2 * width) {
+					int middle = left + width;
+					int right = Math.min(middle + width, to);
+					int i = left, j = middle, k = left;
+					while (i < middle && j < right) {
+						buffer[k++] = keys[order[j]] < keys[order[i]] ? order[j++]
+								: order[i++];
+					}
+					while (i < middle) {
+						buffer[k++] = order[i++];
+					}
+					while (j < right) {
+						buffer[k++] = order[j++];
+					}
+					System.arraycopy(buffer, left, order, left, right - left);
+				}
+			}
+		}
+
+		private long countCrossings() {
+			long crossings = 0;
+			for (int l = 0; l < layerOffsets.length - 2; l++) {
+				int numberOfEdges = 0;
+				for (int k = layerOffsets[l]; k < layerOffsets[l + 1]; k++) {
+					int i = order[k];
+					for (int e = downOffsets[i]; e < downOffsets[i + 1]; e++) {
+						north[numberOfEdges] = positions[i];
+						south[numberOfEdges] = positions[down[e]];
+						numberOfEdges++;
+					}
+				}
+				crossings += CrossingCounter.countCrossings(north, south,
+						numberOfEdges, layerOffsets[l + 1] - layerOffsets[l],
+						layerOffsets[l + 2] - layerOffsets[l + 1]);
+			}
+			return crossings;
+		}
+	}
+
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+/**
+ * A point region quadtree storing the center of mass of each cell, used to
+ * approximate the repulsive forces of the {@link SpringLayoutAlgorithm} as
+ * proposed by Barnes and Hut (http://dx.doi.org/10.1038/324446a0). Instead of
+ * visiting every other node, a node visits a cell as a whole if the cell is
+ * small compared to its distance (controlled by <code>theta</code>), so that a
+ * single force computation costs O(log n) instead of O(n).
+ * <p>
+ * The cells are kept in parallel primitive arrays which are reused between
+ * subsequent builds, so that rebuilding the tree in every iteration does not
+ * produce any garbage once the arrays have grown to their final size.
+ */
+class QuadTree {
+
+	/**
+	 * Maximum depth of the tree. Cells at this depth are not subdivided any
+	 * further, so that (nearly) coincident points do not lead to an endless
+	 * subdivision.
+	 */
+	private static final int MAX_DEPTH = 48;
+
+	private static final int EMPTY = -1;
+
+	private static final int INTERNAL = -2;
+
+	private int size;
+
+	// per cell data
+	private double[] minX = new double[64];
+	private double[] minY = new double[64];
+	private double[] extent = new double[64];
+	private double[] mass = new double[64];
+	private double[] massX = new double[64];
+	private double[] massY = new double[64];
+	private int[] firstChild = new int[64];
+	private int[] point = new int[64];
+	private int[] depth = new int[64];
+
+	private double[] x, y;
+
+	/**
+	 * Rebuilds this tree for the given points.
+	 *
+	 * @param x
+	 *            the x-coordinates of the points
+	 * @param y
+	 *            the y-coordinates of the points
+	 */
+	public void build(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		size = 0;
+		if (x.length == 0) {
+			return;
+		}
+		double left = Double.POSITIVE_INFINITY;
+		double top = Double.POSITIVE_INFINITY;
+		double right = Double.NEGATIVE_INFINITY;
+		double bottom = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < x.length; i++) {
+			left = Math.min(left, x[i]);
+			top = Math.min(top, y[i]);
+			right = Math.max(right, x[i]);
+			bottom = Math.max(bottom, y[i]);
+		}
+		double rootExtent = Math.max(right - left, bottom - top);
+		// grow slightly, so that points on the right and bottom border are
+		// located inside of the root cell
+		rootExtent = rootExtent <= 0 ? 1 : rootExtent * 1.0001;
+		newCell(left, top, rootExtent, 0);
+		for (int i = 0; i < x.length; i++) {
+			insert(i);
+		}
+	}
+
+	/**
+	 * Accumulates the approximated repulsive forces, which all points apply on
+	 * each of the points within the given index range. The force between two
+	 * bodies is <code>gravitation * mass / distance^2</code>, where the
+	 * squared distance is bounded below by <code>minDistanceSq</code>.
+	 * <p>
+	 * This method does not modify the tree and only writes the forces of the
+	 * given range, so that it can be called concurrently for disjoint ranges.
+	 *
+	 * @param from
+	 *            index of the first point to compute the force for
+	 * @param to
+	 *            index after the last point to compute the force for
+	 * @param theta
+	 *            the approximation threshold, a cell is considered as a whole
+	 *            if the ratio of its extent and its distance is below this
+	 *            value
+	 * @param gravitation
+	 *            the strength of the repulsion
+	 * @param minDistanceSq
+	 *            the minimal squared distance considered between two bodies
+	 * @param forcesX
+	 *            array to which the forces in x direction are added
+	 * @param forcesY
+	 *            array to which the forces in y direction are added
+	 */
+	public void accumulateRepulsion(int from, int to, double theta,
+			double gravitation, double minDistanceSq, double[] forcesX,
+			double[] forcesY) {
+		accumulateRepulsion(from, to, theta, gravitation, 2, minDistanceSq,
+				forcesX, forcesY);
+	}
+
+	/**
+	 * Accumulates the approximated repulsive forces like
+	 * {@link #accumulateRepulsion(int, int, double, double, double, double[], double[])}
+	 * , but with a force of <code>gravitation * mass / distance^exponent</code>
+	 * between two bodies. A force decreasing with the plain distance has a
+	 * longer range, which helps to unfold large graphs.
+	 *
+	 * @param from
+	 *            index of the first point to compute the force for
+	 * @param to
+	 *            index after the last point to compute the force for
+	 * @param theta
+	 *            the approximation threshold
+	 * @param gravitation
+	 *            the strength of the repulsion
+	 * @param exponent
+	 *            the exponent of the distance, either 1 or 2
+	 * @param minDistanceSq
+	 *            the minimal squared distance considered between two bodies
+	 * @param forcesX
+	 *            array to which the forces in x direction are added
+	 * @param forcesY
+	 *            array to which the forces in y direction are added
+	 */
+	public void accumulateRepulsion(int from, int to, double theta,
+			double gravitation, int exponent, double minDistanceSq,
+			double[] forcesX, double[] forcesY) {
+		if (exponent != 1 && exponent != 2) {
+			throw new IllegalArgumentException("Unsupported exponent: "
+					+ exponent);
+		}
+		if (size == 0) {
+			return;
+		}
+		// each visited cell is replaced by its four children, so the stack
+		// grows by at most three per level
+		int[] stack = new int[3 * MAX_DEPTH + 4];
+		double thetaSq = theta * theta;
+		for (int i = from; i < to; i++) {
+			double px = x[i];
+			double py = y[i];
+			double fx = 0;
+			double fy = 0;
+			int top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				int cell = stack[--top];
+				double m = mass[cell];
+				if (m == 0) {
+					continue;
+				}
+				double cx = massX[cell] / m;
+				double cy = massY[cell] / m;
+				if (point[cell] == i) {
+					if (m == 1) {
+						continue;
+					}
+					// the point shares a cell of maximum depth with others
+					cx = (massX[cell] - px) / (m - 1);
+					cy = (massY[cell] - py) / (m - 1);
+					m = m - 1;
+				} else if (point[cell] == INTERNAL) {
+					double dx = px - cx;
+					double dy = py - cy;
+					double e = extent[cell];
+					if (e * e >= thetaSq * (dx * dx + dy * dy)) {
+						// too close, visit children
+						int child = firstChild[cell];
+						for (int c = 0; c < 4; c++) {
+							stack[top++] = child + c;
+						}
+						continue;
+					}
+				}
+				double dx = px - cx;
+				double dy = py - cy;
+				double distanceSq = Math.max(minDistanceSq, dx * dx + dy * dy);
+				double distance = Math.sqrt(distanceSq);
+				double f = gravitation * m
+						/ (exponent == 1 ? distance : distanceSq);
+				fx += f * dx / distance;
+				fy += f * dy / distance;
+			}
+			forcesX[i] += fx;
+			forcesY[i] += fy;
+		}
+	}
+
+	private void insert(int i) {
+		double px = x[i];
+		double py = y[i];
+		int cell = 0;
+		while (true) {
+			mass[cell] += 1;
+			massX[cell] += px;
+			massY[cell] += py;
+			if (point[cell] == EMPTY) {
+				point[cell] = i;
+				return;
+			}
+			if (point[cell] != INTERNAL) {
+				if (depth[cell] >= MAX_DEPTH) {
+					// keep the point aggregated in this leaf
+					return;
+				}
+				// split the leaf and push its point down
+				int other = point[cell];
+				point[cell] = INTERNAL;
+				subdivide(cell);
+				int child = childFor(cell, x[other], y[other]);
+				point[child] = other;
+				mass[child] = 1;
+				massX[child] = x[other];
+				massY[child] = y[other];
+			}
+			cell = childFor(cell, px, py);
+		}
+	}
+
+	private void subdivide(int cell) {
+		double half = extent[cell] / 2;
+		double left = minX[cell];
+		double top = minY[cell];
+		int d = depth[cell] + 1;
+		int first = newCell(left, top, half, d);
+		newCell(left + half, top, half, d);
+		newCell(left, top + half, half, d);
+		newCell(left + half, top + half, half, d);
+		firstChild[cell] = first;
+	}
+
+	private int childFor(int cell, double px, double py) {
+		double half = extent[cell] / 2;
+		int index = firstChild[cell];
+		if (px >= minX[cell] + half) {
+			index += 1;
+		}
+		if (py >= minY[cell] + half) {
+			index += 2;
+		}
+		return index;
+	}
+
+	private int newCell(double left, double top, double cellExtent,
+			int cellDepth) {
+		if (size == minX.length) {
+			grow();
+		}
+		int cell = size++;
+		minX[cell] = left;
+		minY[cell] = top;
+		extent[cell] = cellExtent;
+		mass[cell] = 0;
+		massX[cell] = 0;
+		massY[cell] = 0;
+		firstChild[cell] = EMPTY;
+		point[cell] = EMPTY;
+		depth[cell] = cellDepth;
+		return cell;
+	}
+
+	private void grow() {
+		int capacity = minX.length * 2;
+		minX = ArrayHelper.copyOf(minX, capacity);
+		minY = ArrayHelper.copyOf(minY, capacity);
+		extent = ArrayHelper.copyOf(extent, capacity);
+		mass = ArrayHelper.copyOf(mass, capacity);
+		massX = ArrayHelper.copyOf(massX, capacity);
+		massY = ArrayHelper.copyOf(massY, capacity);
+		firstChild = ArrayHelper.copyOf(firstChild, capacity);
+		point = ArrayHelper.copyOf(point, capacity);
+		depth = ArrayHelper.copyOf(depth, capacity);
+	}
+
+}
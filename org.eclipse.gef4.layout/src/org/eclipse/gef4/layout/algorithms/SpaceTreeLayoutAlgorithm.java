@@ -116,15 +116,39 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 			super.precomputeTree();
 			if (this == owner.getSuperRoot()) {
 				expanded = true;
-				while (spaceTreeLayers.size() <= this.height)
-					spaceTreeLayers.add(new SpaceTreeLayer(spaceTreeLayers
-							.size()));
+				addMissingLayers();
 
 				if (treeObserver != null)
 					refreshLayout(animate);
 			}
 		}
 
+		/**
+		 * Adds layers for all depths of the tree, so that layers exist for
+		 * the nodes that become visible when their parents are expanded.
+		 * Should be called on the super root.
+		 */
+		private void addMissingLayers() {
+			while (spaceTreeLayers.size() <= this.height)
+				spaceTreeLayers.add(new SpaceTreeLayer(spaceTreeLayers.size()));
+		}
+
+		/**
+		 * Returns the topmost ancestor of this node which is collapsed, so
+		 * that this node is hidden within its subgraph.
+		 * 
+		 * @return the topmost collapsed ancestor or null if all ancestors of
+		 *         this node are expanded
+		 */
+		private SpaceTreeNode getCollapsedAncestor() {
+			SpaceTreeNode collapsedAncestor = null;
+			for (SpaceTreeNode ancestor = (SpaceTreeNode) parent; ancestor != null; ancestor = (SpaceTreeNode) ancestor.parent) {
+				if (!ancestor.expanded)
+					collapsedAncestor = ancestor;
+			}
+			return collapsedAncestor;
+		}
+
 		public SubgraphLayout collapseAllChildrenIntoSubgraph(
 				SubgraphLayout subgraph, boolean includeYourself) {
 			expanded = false;
@@ -479,7 +503,7 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 				SpaceTreeNode nodeInLayer = null;
 				while (layerIterator.hasNext()) {
 					nodeInLayer = (SpaceTreeNode) layerIterator.next();
-					if (nodeInLayer.order >= nodeToAdd.order)
+					if (nodeInLayer.getOrder() >= nodeToAdd.getOrder())
 						break;
 					double expectedPostion = (previousNode == null) ? 0
 							: previousNode.positionInLayer
@@ -551,6 +575,26 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 			this.thickness = Math.max(this.thickness, nodeThickness);
 		}
 
+		/**
+		 * Sorts the nodes of this layer by their order. Nodes are usually
+		 * moved one after another while the tree does not change, so the
+		 * layer is only sorted if the order of its nodes has changed.
+		 */
+		private void sortNodes() {
+			for (int i = 1; i < nodes.size(); i++) {
+				if (((SpaceTreeNode) nodes.get(i - 1)).getOrder() > ((SpaceTreeNode) nodes
+						.get(i)).getOrder()) {
+					Collections.sort(nodes, new Comparator() {
+						public int compare(Object arg0, Object arg1) {
+							return ((SpaceTreeNode) arg0).order
+									- ((SpaceTreeNode) arg1).order;
+						}
+					});
+					return;
+				}
+			}
+		}
+
 		public void refreshThickness() {
 			this.thickness = 0;
 			for (Iterator iterator = nodes.iterator(); iterator.hasNext();) {
@@ -617,12 +661,7 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 		}
 
 		public void moveNode(SpaceTreeNode node, double newPosition) {
-			Collections.sort(nodes, new Comparator() {
-				public int compare(Object arg0, Object arg1) {
-					return ((SpaceTreeNode) arg0).order
-							- ((SpaceTreeNode) arg1).order;
-				}
-			});
+			sortNodes();
 			double positionInLayerAtStart = node.positionInLayer;
 			if (newPosition >= positionInLayerAtStart)
 				moveNodeForward(node, newPosition);
@@ -1038,6 +1077,32 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 
 	private SpaceTreeExpandCollapseManager expandCollapseManager = new SpaceTreeExpandCollapseManager();
 
+	/**
+	 * Keeps the layout up to date when the structure of the tree changes.
+	 * Changes within the subtree of a collapsed node only affect its
+	 * subgraph, so the rest of the tree is not traversed in that case.
+	 */
+	private TreeLayoutObserver.TreeListener treeListener = new TreeLayoutObserver.TreeListener() {
+		public void nodeRemoved(TreeLayoutObserver.TreeNode removedNode) {
+			SpaceTreeNode superRoot = (SpaceTreeNode) treeObserver
+					.getSuperRoot();
+			superRoot.addMissingLayers();
+			refreshLayout(animate);
+		}
+
+		protected void defaultHandle(TreeLayoutObserver.TreeNode changedNode) {
+			SpaceTreeNode superRoot = (SpaceTreeNode) treeObserver
+					.getSuperRoot();
+			superRoot.addMissingLayers();
+			SpaceTreeNode collapsedAncestor = ((SpaceTreeNode) changedNode)
+					.getCollapsedAncestor();
+			if (collapsedAncestor == null)
+				refreshLayout(animate);
+			else
+				refreshSubgraph(collapsedAncestor, animate);
+		}
+	};
+
 	private ContextListener contextListener = new ContextListener.Stub() {
 		public boolean boundsChanged(LayoutContext context) {
 			boolean previousBoundsWrong = (bounds == null || bounds.getWidth()
@@ -1269,6 +1334,7 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 		context.addContextListener(contextListener);
 		context.addLayoutListener(layoutListener);
 		treeObserver = new TreeLayoutObserver(context, spaceTreeNodeFactory);
+		treeObserver.addTreeListener(treeListener);
 
 		bounds = context.getBounds();
 	}
@@ -1320,6 +1386,30 @@ public class SpaceTreeLayoutAlgorithm implements LayoutAlgorithm {
 		context.flushChanges(animation);
 	}
 
+	/**
+	 * Works like {@link #refreshLayout(boolean)}, but only collapses the
+	 * descendants of the given collapsed node into its subgraph instead of
+	 * visiting all collapsed nodes. The locations of all visible nodes are
+	 * still refreshed, because the size of the subgraph may change the
+	 * thickness of its layer.
+	 * 
+	 * @param collapsedNode
+	 *            a collapsed node whose ancestors are all expanded
+	 * @param animation
+	 */
+	private void refreshSubgraph(SpaceTreeNode collapsedNode, boolean animation) {
+		if (!context.isBackgroundLayoutEnabled())
+			return;
+		SpaceTreeNode superRoot = (SpaceTreeNode) treeObserver.getSuperRoot();
+		if (animation && collapsedNode.flushCollapseChanges())
+			context.flushChanges(animation);
+		if (superRoot.flushLocationChanges(0) && animation)
+			context.flushChanges(animation);
+		collapsedNode.flushExpansionChanges();
+		superRoot.flushLocationChanges(0);
+		context.flushChanges(animation);
+	}
+
 	/**
 	 * Available space is the biggest of the following values:
 	 * <ul>
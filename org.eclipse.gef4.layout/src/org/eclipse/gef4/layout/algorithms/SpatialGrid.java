@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over a set of points, which supports proximity queries in
+ * near-linear time for evenly distributed points. The points of each cell are
+ * stored in a compressed array, so that building the grid allocates only a
+ * few arrays.
+ */
+class SpatialGrid {
+
+	private final double[] x, y;
+
+	private final double minX, minY, cellSize;
+
+	private final int columns, rows;
+
+	/**
+	 * The points in cell <code>c</code> are <code>cellPoints[k]</code> for
+	 * <code>k</code> from <code>cellStart[c]</code> up to (excluding)
+	 * <code>cellStart[c + 1]</code>, in ascending order.
+	 */
+	private final int[] cellStart, cellPoints;
+
+	/**
+	 * Creates a grid over the given points, whose cells are chosen so that
+	 * each one holds about one point if the points are evenly distributed.
+	 *
+	 * @param x
+	 *            the x coordinates of the points
+	 * @param y
+	 *            the y coordinates of the points
+	 */
+	public SpatialGrid(double[] x, double[] y) {
+		this(x, y, 0);
+	}
+
+	/**
+	 * Creates a grid over the given points. The cell size is enlarged if
+	 * necessary to keep the number of cells linear in the number of points.
+	 *
+	 * @param x
+	 *            the x coordinates of the points
+	 * @param y
+	 *            the y coordinates of the points
+	 * @param cellSize
+	 *            the minimal edge length of the cells
+	 */
+	public SpatialGrid(double[] x, double[] y, double cellSize) {
+		this.x = x;
+		this.y = y;
+		int n = x.length;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		if (n == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		double width = maxX - minX;
+		double height = maxY - minY;
+		// about one point per cell, but no more cells than twice the points
+		double size = Math.sqrt(width * height / Math.max(n, 1));
+		size = Math.max(size, Math.max(width, height) / Math.max(2 * n, 1));
+		size = Math.max(size, cellSize);
+		if (!(size > 0) || Double.isInfinite(size)) {
+			size = 1;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = size;
+		columns = (int) Math.min(width / size, 2 * n) + 1;
+		rows = (int) Math.min(height / size, 2 * n) + 1;
+
+		// counting sort of the points by cell
+		int cells = columns * rows;
+		int[] cellOf = new int[n];
+		cellStart = new int[cells + 1];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = column(x[i]) * rows + row(y[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] fill = ArrayHelper.copyOf(cellStart, cells);
+		cellPoints = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellPoints[fill[cellOf[i]]++] = i;
+		}
+	}
+
+	private int column(double x) {
+		int column = (int) ((x - minX) / cellSize);
+		return column < 0 ? 0 : column >= columns ? columns - 1 : column;
+	}
+
+	private int row(double y) {
+		int row = (int) ((y - minY) / cellSize);
+		return row < 0 ? 0 : row >= rows ? rows - 1 : row;
+	}
+
+	/**
+	 * Returns the closest pair of points. Among pairs of equal distance, the
+	 * one with the lexicographically smallest indices is returned.
+	 *
+	 * @return the indices of the closest pair (smaller index first) or
+	 *         <code>null</code> if there are less than two points
+	 */
+	public int[] getClosestPair() {
+		int n = x.length;
+		if (n < 2) {
+			return null;
+		}
+		int bestI = -1, bestJ = -1;
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			int column = column(x[i]);
+			int row = row(y[i]);
+			// points in ring r + 1 are at least r cells away
+			for (int r = 0; r <= Math.max(columns, rows); r++) {
+				if (r > 1) {
+					double ringDistance = (r - 1) * cellSize;
+					if (ringDistance * ringDistance > best) {
+						break;
+					}
+				}
+				for (int c = column - r; c <= column + r; c++) {
+					if (c < 0 || c >= columns) {
+						continue;
+					}
+					boolean edge = c == column - r || c == column + r;
+					for (int s = row - r; s <= row + r; s += edge ? 1
+							: Math.max(2 * r, 1)) {
+						if (s < 0 || s >= rows) {
+							continue;
+						}
+						int cell = c * rows + s;
+						for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+							int j = cellPoints[k];
+							if (j <= i) {
+								continue;
+							}
+							double dx = x[i] - x[j];
+							double dy = y[i] - y[j];
+							double distance = dx * dx + dy * dy;
+							// points are visited in ascending order, so ties
+							// only need to be broken by the second index
+							if (distance < best
+									|| (distance == best && i == bestI && j < bestJ)) {
+								best = distance;
+								bestI = i;
+								bestJ = j;
+							}
+						}
+					}
+				}
+			}
+		}
+		return bestI < 0 ? null : new int[] { bestI, bestJ };
+	}
+
+	/**
+	 * Receives the pairs of overlapping rectangles found by
+	 * {@link SpatialGrid#visitOverlaps(double[], double[], OverlapVisitor)}.
+	 */
+	interface OverlapVisitor {
+
+		/**
+		 * Called for each pair of overlapping rectangles.
+		 *
+		 * @param i
+		 *            the smaller index of the two points
+		 * @param j
+		 *            the larger index of the two points
+		 */
+		public void overlap(int i, int j);
+
+	}
+
+	/**
+	 * Counts the pairs of rectangles centered at the points of this grid that
+	 * overlap. Rectangles that only touch each other do not overlap.
+	 *
+	 * @param width
+	 *            the width of the rectangle at each point
+	 * @param height
+	 *            the height of the rectangle at each point
+	 * @return the number of overlapping pairs
+	 */
+	public long countOverlaps(double[] width, double[] height) {
+		final long[] overlaps = new long[1];
+		visitOverlaps(width, height, new OverlapVisitor() {
+			public void overlap(int i, int j) {
+				overlaps[0]++;
+			}
+		});
+		return overlaps[0];
+	}
+
+	/**
+	 * Reports all pairs of rectangles centered at the points of this grid
+	 * that overlap to the given visitor, ordered by their smaller and then by
+	 * their larger index. Rectangles that only touch each other do not
+	 * overlap.
+	 * <p>
+	 * Each rectangle is entered into all cells it covers, so that each one
+	 * only has to be compared with the rectangles in its own cells. This takes
+	 * near-linear time as long as most rectangles cover only a few cells.
+	 *
+	 * @param width
+	 *            the width of the rectangle at each point
+	 * @param height
+	 *            the height of the rectangle at each point
+	 * @param visitor
+	 *            the visitor to report the overlapping pairs to
+	 */
+	public void visitOverlaps(double[] width, double[] height,
+			OverlapVisitor visitor) {
+		int n = x.length;
+		int[] fromColumn = new int[n], toColumn = new int[n];
+		int[] fromRow = new int[n], toRow = new int[n];
+		for (int i = 0; i < n; i++) {
+			fromColumn[i] = column(x[i] - width[i] / 2);
+			toColumn[i] = column(x[i] + width[i] / 2);
+			fromRow[i] = row(y[i] - height[i] / 2);
+			toRow[i] = row(y[i] + height[i] / 2);
+		}
+
+		// counting sort of the rectangles by the cells they cover
+		int cells = columns * rows;
+		int[] rectangleStart = new int[cells + 1];
+		for (int i = 0; i < n; i++) {
+			for (int c = fromColumn[i]; c <= toColumn[i]; c++) {
+				for (int s = fromRow[i]; s <= toRow[i]; s++) {
+					rectangleStart[c * rows + s + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < cells; c++) {
+			rectangleStart[c + 1] += rectangleStart[c];
+		}
+		int[] fill = ArrayHelper.copyOf(rectangleStart, cells);
+		int[] rectangles = new int[rectangleStart[cells]];
+		for (int i = 0; i < n; i++) {
+			for (int c = fromColumn[i]; c <= toColumn[i]; c++) {
+				for (int s = fromRow[i]; s <= toRow[i]; s++) {
+					rectangles[fill[c * rows + s]++] = i;
+				}
+			}
+		}
+
+		int[] candidates = new int[16];
+		for (int i = 0; i < n; i++) {
+			int count = 0;
+			for (int c = fromColumn[i]; c <= toColumn[i]; c++) {
+				for (int s = fromRow[i]; s <= toRow[i]; s++) {
+					int cell = c * rows + s;
+					int end = rectangleStart[cell + 1];
+					for (int k = rectangleStart[cell]; k < end; k++) {
+						int j = rectangles[k];
+						if (j <= i
+								|| !overlap(x[i], x[j], width[i], width[j])
+								|| !overlap(y[i], y[j], height[i], height[j])) {
+							continue;
+						}
+						// overlapping rectangles may share several cells, so
+						// only the one holding the top left corner of their
+						// intersection reports them
+						double left = Math.max(x[i] - width[i] / 2, x[j]
+								- width[j] / 2);
+						double top = Math.max(y[i] - height[i] / 2, y[j]
+								- height[j] / 2);
+						if (column(left) != c || row(top) != s) {
+							continue;
+						}
+						if (count == candidates.length) {
+							candidates = ArrayHelper.copyOf(
+									candidates, 2 * count);
+						}
+						candidates[count++] = j;
+					}
+				}
+			}
+			Arrays.sort(candidates, 0, count);
+			for (int k = 0; k < count; k++) {
+				visitor.overlap(i, candidates[k]);
+			}
+		}
+	}
+
+	private static boolean overlap(double center1, double center2,
+			double extent1, double extent2) {
+		return Math.abs(center1 - center2) < (extent1 + extent2) / 2;
+	}
+
+}
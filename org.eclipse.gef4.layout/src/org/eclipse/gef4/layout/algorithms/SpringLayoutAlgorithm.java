@@ -10,13 +10,21 @@
  ******************************************************************************/
 package org.eclipse.gef4.layout.algorithms;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import org.eclipse.gef4.geometry.planar.Dimension;
 import org.eclipse.gef4.geometry.planar.Point;
 import org.eclipse.gef4.geometry.planar.Rectangle;
 import org.eclipse.gef4.layout.LayoutAlgorithm;
-import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
 import org.eclipse.gef4.layout.interfaces.EntityLayout;
 import org.eclipse.gef4.layout.interfaces.LayoutContext;
 import org.eclipse.gef4.layout.interfaces.LayoutListener;
@@ -78,6 +86,40 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 	 */
 	public static final double DEFAULT_SPRING_GRAVITATION = 2.0f;
 
+	/**
+	 * The default value for approximating the repulsive forces.
+	 */
+	public static final boolean DEFAULT_SPRING_APPROXIMATE_REPULSION = false;
+
+	/**
+	 * The default value for the threshold used to approximate repulsive
+	 * forces.
+	 */
+	public static final double DEFAULT_SPRING_THETA = 0.8d;
+
+	/**
+	 * The default value for the number of threads used to compute the forces.
+	 */
+	public static final int DEFAULT_SPRING_PARALLELISM = 1;
+
+	/**
+	 * The default value for the convergence threshold, 0 disables early
+	 * termination.
+	 */
+	public static final double DEFAULT_SPRING_CONVERGENCE = 0;
+
+	/**
+	 * The default value for keeping the positions of previously laid out
+	 * nodes.
+	 */
+	public static final boolean DEFAULT_SPRING_INCREMENTAL = false;
+
+	/**
+	 * The default value for the number of iterations used to relax an
+	 * incremental layout.
+	 */
+	public static final int DEFAULT_SPRING_INCREMENTAL_ITERATIONS = 100;
+
 	/**
 	 * Minimum distance considered between nodes
 	 */
@@ -126,6 +168,64 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 	 */
 	private double sprGravitation = DEFAULT_SPRING_GRAVITATION;
 
+	/**
+	 * The variable can be customized to set whether the repulsive forces are
+	 * approximated using a quadtree (Barnes-Hut) instead of being computed for
+	 * all pairs of nodes.
+	 */
+	private boolean sprApproximateRepulsion = DEFAULT_SPRING_APPROXIMATE_REPULSION;
+
+	/**
+	 * The variable can be customized to set the threshold used to approximate
+	 * the repulsive forces.
+	 */
+	private double sprTheta = DEFAULT_SPRING_THETA;
+
+	/**
+	 * The variable can be customized to set the number of threads used to
+	 * compute the forces.
+	 */
+	private int sprParallelism = DEFAULT_SPRING_PARALLELISM;
+
+	/**
+	 * The variable can be customized to set the maximum displacement (in
+	 * pixels) below which the layout is considered to be converged.
+	 */
+	private double sprConvergence = DEFAULT_SPRING_CONVERGENCE;
+
+	/**
+	 * The variable can be customized to set whether the nodes that were laid
+	 * out before keep their positions, so that only new nodes are placed.
+	 */
+	private boolean sprIncremental = DEFAULT_SPRING_INCREMENTAL;
+
+	/**
+	 * The variable can be customized to set the number of iterations used to
+	 * relax an incremental layout.
+	 */
+	private int sprIncrementalIterations = DEFAULT_SPRING_INCREMENTAL_ITERATIONS;
+
+	/**
+	 * The variable can be customized to set the seed of the random placement.
+	 */
+	private long sprSeed;
+
+	private boolean seeded = false;
+
+	private final Random random = new Random();
+
+	/**
+	 * The entities of the last completed layout, used to determine the new
+	 * entities of an incremental layout.
+	 */
+	private IdentityIndexMap laidOutEntities;
+
+	/**
+	 * The number of iterations of the current layout, which is lower than
+	 * {@link #sprIterations} for incremental layouts.
+	 */
+	private int iterationLimit = DEFAULT_SPRING_ITERATIONS;
+
 	/**
 	 * Variable indicating whether the algorithm should resize elements.
 	 */
@@ -133,10 +233,26 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	private int iteration;
 
-	private double[][] srcDestToSumOfWeights;
+	/**
+	 * The summed weights of the connections between related nodes, stored in
+	 * compressed sparse row format: the nodes related to node <code>i</code>
+	 * are <code>neighbors[neighborOffsets[i]]</code> up to (excluding)
+	 * <code>neighbors[neighborOffsets[i + 1]]</code>.
+	 */
+	private int[] neighborOffsets, neighbors;
+
+	private double[] neighborWeights;
+
+	private QuadTree quadTree;
+
+	private ExecutorService executor;
+
+	private int executorThreads;
 
 	private EntityLayout[] entities;
 
+	private GraphSnapshot snapshot;
+
 	private double[] forcesX, forcesY;
 
 	private double[] locationsX, locationsY;
@@ -153,17 +269,55 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	private LayoutContext context;
 
-	class SpringLayoutListener implements LayoutListener {
+	private double energy;
 
-		public boolean nodeMoved(LayoutContext context, NodeLayout node) {
-			// TODO Auto-generated method stub
-			for (int i = 0; i < entities.length; i++) {
-				if (entities[i] == node) {
-					locationsX[i] = entities[i].getLocation().x;
-					locationsY[i] = entities[i].getLocation().y;
+	private double maxDisplacement;
 
-				}
+	private boolean converged;
+
+	/**
+	 * Set if the forces of the current iteration could not be computed
+	 * because the calling thread has been interrupted.
+	 */
+	private boolean aborted;
+
+	private final List<IterationListener> iterationListeners = new ArrayList<IterationListener>();
+
+	/**
+	 * A listener that can be added to a {@link SpringLayoutAlgorithm} to get
+	 * notified about the progress of the layout after every iteration, e.g.
+	 * to tune its parameters or to monitor the layout costs.
+	 */
+	public static interface IterationListener {
+
+		/**
+		 * Called after an iteration has been computed.
+		 * 
+		 * @param algorithm
+		 *            the algorithm that performed the iteration
+		 * @param iteration
+		 *            the number of the performed iteration, starting at 1
+		 * @param energy
+		 *            the sum of the squared forces that moved the nodes
+		 * @param maxDisplacement
+		 *            the maximum distance (in pixels) a node moved in the
+		 *            iteration
+		 * @param nanos
+		 *            the time needed to compute the iteration in nanoseconds
+		 */
+		public void iterationPerformed(SpringLayoutAlgorithm algorithm,
+				int iteration, double energy, double maxDisplacement,
+				long nanos);
+	}
+
+	class SpringLayoutListener implements LayoutListener {
 
+		public boolean nodeMoved(LayoutContext context, NodeLayout node) {
+			int i = snapshot == null ? -1 : snapshot.indexOf(node);
+			if (i >= 0) {
+				Point location = node.getLocation();
+				locationsX[i] = location.x;
+				locationsY[i] = location.y;
 			}
 			return false;
 		}
@@ -188,7 +342,9 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 	}
 
 	public void applyLayout(boolean clean) {
-		initLayout();
+		// only place the nodes when a new layout is computed, otherwise the
+		// accumulated positions would be lost
+		initLayout(clean);
 		if (!clean)
 			return;
 		while (performAnotherNonContinuousIteration()) {
@@ -207,23 +363,22 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 			bounds2.setHeight(bounds2.getHeight() - 2 * insets);
 			AlgorithmHelper.fitWithinBounds(entities, bounds2, resize);
 		}
-
+		laidOutEntities = new IdentityIndexMap(entities);
 	}
 
 	public void setLayoutContext(LayoutContext context) {
 		this.context = context;
 		this.context.addLayoutListener(new SpringLayoutListener());
-		initLayout();
+		laidOutEntities = null;
+		initLayout(true);
 	}
 
 	public void performNIteration(int n) {
 		if (iteration == 0) {
-			entities = context.getEntities();
-			loadLocations();
-			initLayout();
+			initLayout(true);
 		}
 		bounds = context.getBounds();
-		for (int i = 0; i < n; i++) {
+		for (int i = 0; i < n && !aborted; i++) {
 			computeOneIteration();
 			saveLocations();
 		}
@@ -232,9 +387,7 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	public void performOneIteration() {
 		if (iteration == 0) {
-			entities = context.getEntities();
-			loadLocations();
-			initLayout();
+			initLayout(true);
 		}
 		bounds = context.getBounds();
 		computeOneIteration();
@@ -358,6 +511,215 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 		return sprGravitation;
 	}
 
+	/**
+	 * Sets whether or not this SpringLayoutAlgorithm approximates the repulsive
+	 * forces between nodes using a quadtree (Barnes-Hut). The approximation
+	 * reduces the costs of one iteration from O(n^2) to O(n log n), which is
+	 * recommended for large graphs.
+	 * 
+	 * @param approximate
+	 *            true if the repulsive forces should be approximated
+	 */
+	public void setApproximateRepulsion(boolean approximate) {
+		sprApproximateRepulsion = approximate;
+	}
+
+	/**
+	 * Returns whether or not this SpringLayoutAlgorithm approximates the
+	 * repulsive forces between nodes using a quadtree (Barnes-Hut).
+	 * 
+	 * @return true if the repulsive forces are approximated
+	 */
+	public boolean isApproximateRepulsion() {
+		return sprApproximateRepulsion;
+	}
+
+	/**
+	 * Sets the threshold used to approximate the repulsive forces. A group of
+	 * nodes is treated as a single body if the ratio of the group's extent and
+	 * its distance is below this value. Small values are more accurate, large
+	 * values are faster, 0 disables the approximation.
+	 * 
+	 * @param theta
+	 *            The approximation threshold.
+	 */
+	public void setApproximationTheta(double theta) {
+		sprTheta = theta;
+	}
+
+	/**
+	 * Returns the threshold used to approximate the repulsive forces.
+	 * 
+	 * @return The approximation threshold.
+	 */
+	public double getApproximationTheta() {
+		return sprTheta;
+	}
+
+	/**
+	 * Sets the number of threads this SpringLayoutAlgorithm uses to compute
+	 * the forces between nodes. The nodes are partitioned between the threads
+	 * and the results do not depend on the partitioning, so that parallel
+	 * layouts stay reproducible. A value of 1 (the default) computes the
+	 * forces in the calling thread. If the calling thread is interrupted
+	 * while it waits for the forces, the layout stops and keeps the locations
+	 * of the last complete iteration.
+	 * 
+	 * @param parallelism
+	 *            The number of threads, e.g.
+	 *            <code>Runtime.getRuntime().availableProcessors()</code>.
+	 */
+	public void setParallelism(int parallelism) {
+		sprParallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns the number of threads this SpringLayoutAlgorithm uses to compute
+	 * the forces between nodes.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getParallelism() {
+		return sprParallelism;
+	}
+
+	/**
+	 * Sets the convergence threshold of this SpringLayoutAlgorithm. The layout
+	 * is stopped before the number of iterations or the timeout is reached as
+	 * soon as no node moves more than the given distance within an iteration.
+	 * 
+	 * @param threshold
+	 *            The maximum displacement in pixels, 0 disables early
+	 *            termination.
+	 */
+	public void setConvergenceThreshold(double threshold) {
+		sprConvergence = threshold;
+	}
+
+	/**
+	 * Returns the convergence threshold of this SpringLayoutAlgorithm.
+	 * 
+	 * @return The maximum displacement in pixels.
+	 */
+	public double getConvergenceThreshold() {
+		return sprConvergence;
+	}
+
+	/**
+	 * Returns whether the last iteration moved no node farther than the
+	 * {@link #setConvergenceThreshold(double) convergence threshold}.
+	 * 
+	 * @return true if the layout has converged
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns the energy of the last iteration, that is the sum of the squared
+	 * forces that moved the nodes.
+	 * 
+	 * @return The energy of the last iteration.
+	 */
+	public double getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * Returns the maximum distance (in pixels) a node moved in the last
+	 * iteration.
+	 * 
+	 * @return The maximum displacement of the last iteration.
+	 */
+	public double getMaxDisplacement() {
+		return maxDisplacement;
+	}
+
+	/**
+	 * Adds a listener that will be informed after every iteration.
+	 * 
+	 * @param listener
+	 *            listener to add
+	 */
+	public void addIterationListener(IterationListener listener) {
+		iterationListeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener from the list of listeners to be informed after
+	 * every iteration.
+	 * 
+	 * @param listener
+	 *            listener to remove
+	 */
+	public void removeIterationListener(IterationListener listener) {
+		iterationListeners.remove(listener);
+	}
+
+	/**
+	 * Sets the seed used to place nodes randomly, so that subsequent layouts
+	 * of the same graph are reproducible.
+	 * 
+	 * @param seed
+	 *            The seed of the random placement.
+	 */
+	public void setRandomSeed(long seed) {
+		sprSeed = seed;
+		seeded = true;
+	}
+
+	/**
+	 * Returns the seed used to place nodes randomly.
+	 * 
+	 * @return The seed of the random placement.
+	 */
+	public long getRandomSeed() {
+		return sprSeed;
+	}
+
+	/**
+	 * Sets whether or not this SpringLayoutAlgorithm keeps the positions of
+	 * the nodes it has laid out before. If set, a relayout only places the
+	 * new nodes near their already placed neighbors and relaxes the layout
+	 * using {@link #setIncrementalIterations(int) a few iterations}, instead
+	 * of starting from a random placement.
+	 * 
+	 * @param incremental
+	 *            The incremental layout value.
+	 */
+	public void setIncremental(boolean incremental) {
+		sprIncremental = incremental;
+	}
+
+	/**
+	 * Returns whether or not this SpringLayoutAlgorithm keeps the positions of
+	 * the nodes it has laid out before.
+	 * 
+	 * @return The incremental layout value.
+	 */
+	public boolean isIncremental() {
+		return sprIncremental;
+	}
+
+	/**
+	 * Sets the number of iterations used to relax an incremental layout.
+	 * 
+	 * @param iterations
+	 *            The number of iterations.
+	 */
+	public void setIncrementalIterations(int iterations) {
+		sprIncrementalIterations = iterations;
+	}
+
+	/**
+	 * Returns the number of iterations used to relax an incremental layout.
+	 * 
+	 * @return The number of iterations.
+	 */
+	public int getIncrementalIterations() {
+		return sprIncrementalIterations;
+	}
+
 	/**
 	 * Sets the number of iterations to be used.
 	 * 
@@ -404,77 +766,119 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	private int[] counterY;
 
-	private void initLayout() {
+	private void initLayout(boolean place) {
 		entities = context.getEntities();
 		bounds = context.getBounds();
 		loadLocations();
 
-		srcDestToSumOfWeights = new double[entities.length][entities.length];
-		HashMap entityToPosition = new HashMap();
-		for (int i = 0; i < entities.length; i++) {
-			entityToPosition.put(entities[i], new Integer(i));
-		}
-
-		ConnectionLayout[] connections = context.getConnections();
-		for (int i = 0; i < connections.length; i++) {
-			ConnectionLayout connection = connections[i];
-			Integer source = (Integer) entityToPosition
-					.get(getEntity(connection.getSource()));
-			Integer target = (Integer) entityToPosition
-					.get(getEntity(connection.getTarget()));
-			if (source == null || target == null)
-				continue;
-			double weight = connection.getWeight();
-			weight = (weight <= 0 ? 0.1 : weight);
-			srcDestToSumOfWeights[source.intValue()][target.intValue()] += weight;
-			srcDestToSumOfWeights[target.intValue()][source.intValue()] += weight;
+		initNeighbors();
+
+		iterationLimit = sprIterations;
+		if (place) {
+			if (seeded)
+				random.setSeed(sprSeed);
+			if (sprIncremental && laidOutEntities != null) {
+				placeIncrementally(); // keep vertices laid out before
+				iterationLimit = Math.min(sprIterations,
+						sprIncrementalIterations);
+			} else if (sprRandom)
+				placeRandomly(); // put vertices in random places
 		}
 
-		if (sprRandom)
-			placeRandomly(); // put vertices in random places
-
 		iteration = 1;
+		converged = false;
+		aborted = false;
+		energy = 0;
+		maxDisplacement = 0;
 
 		startTime = System.currentTimeMillis();
 	}
 
-	private EntityLayout getEntity(NodeLayout node) {
-		if (!node.isPruned())
-			return node;
-		SubgraphLayout subgraph = node.getSubgraph();
-		if (subgraph.isGraphEntity())
-			return subgraph;
-		return null;
+	/**
+	 * Builds the compressed adjacency structure of related nodes, summing up
+	 * the weights of multiple connections between the same nodes.
+	 */
+	private void initNeighbors() {
+		int length = entities.length;
+		int[] sources = snapshot.getSources();
+		int[] targets = snapshot.getTargets();
+		double[] weights = snapshot.getWeights();
+		int[] offsets = new int[length + 1];
+		for (int c = 0; c < sources.length; c++) {
+			if (sources[c] != targets[c]) {
+				offsets[sources[c] + 1]++;
+				offsets[targets[c] + 1]++;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+
+		// fill in both directions, as forces are symmetric
+		int[] fill = ArrayHelper.copyOf(offsets, length);
+		int[] adjacent = new int[offsets[length]];
+		double[] adjacentWeights = new double[offsets[length]];
+		for (int c = 0; c < sources.length; c++) {
+			int source = sources[c];
+			int target = targets[c];
+			if (source == target)
+				continue;
+			double weight = weights[c] <= 0 ? 0.1 : weights[c];
+			adjacent[fill[source]] = target;
+			adjacentWeights[fill[source]++] = weight;
+			adjacent[fill[target]] = source;
+			adjacentWeights[fill[target]++] = weight;
+		}
+
+		// merge multiple connections between the same nodes in place
+		int[] slotOfNeighbor = new int[length];
+		int[] lastRow = new int[length];
+		for (int i = 0; i < length; i++) {
+			lastRow[i] = -1;
+		}
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			int start = size;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				int j = adjacent[k];
+				if (lastRow[j] == i) {
+					adjacentWeights[slotOfNeighbor[j]] += adjacentWeights[k];
+				} else {
+					lastRow[j] = i;
+					slotOfNeighbor[j] = size;
+					adjacent[size] = j;
+					adjacentWeights[size] = adjacentWeights[k];
+					size++;
+				}
+			}
+			offsets[i] = start;
+		}
+		offsets[length] = size;
+
+		neighborOffsets = offsets;
+		neighbors = ArrayHelper.copyOf(adjacent, size);
+		neighborWeights = ArrayHelper.copyOf(adjacentWeights, size);
 	}
 
 	private void loadLocations() {
-		if (locationsX == null || locationsX.length != entities.length) {
+		snapshot = new GraphSnapshot(entities, context.getConnections());
+		locationsX = snapshot.getX();
+		locationsY = snapshot.getY();
+		sizeW = snapshot.getWidth();
+		sizeH = snapshot.getHeight();
+		if (forcesX == null || forcesX.length != entities.length) {
 			int length = entities.length;
-			locationsX = new double[length];
-			locationsY = new double[length];
-			sizeW = new double[length];
-			sizeH = new double[length];
 			forcesX = new double[length];
 			forcesY = new double[length];
 			counterX = new int[length];
 			counterY = new int[length];
 		}
-		for (int i = 0; i < entities.length; i++) {
-			Point location = entities[i].getLocation();
-			locationsX[i] = location.x;
-			locationsY[i] = location.y;
-			Dimension size = entities[i].getSize();
-			sizeW[i] = size.width;
-			sizeH[i] = size.height;
-		}
 	}
 
 	private void saveLocations() {
-		if (entities == null)
+		if (snapshot == null)
 			return;
-		for (int i = 0; i < entities.length; i++) {
-			entities[i].setLocation(locationsX[i], locationsY[i]);
-		}
+		snapshot.writeLocations();
 	}
 
 	/**
@@ -487,7 +891,7 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 		long currentTime = System.currentTimeMillis();
 		double fractionComplete = (double) ((double) (currentTime - startTime) / ((double) maxTimeMS));
-		int currentIteration = (int) (fractionComplete * sprIterations);
+		int currentIteration = (int) (fractionComplete * iterationLimit);
 		if (currentIteration > iteration) {
 			iteration = currentIteration;
 		}
@@ -496,7 +900,7 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	protected boolean performAnotherNonContinuousIteration() {
 		setSprIterationsBasedOnTime();
-		return (iteration <= sprIterations);
+		return (iteration <= iterationLimit && !converged && !aborted);
 	}
 
 	protected int getCurrentLayoutStep() {
@@ -504,16 +908,27 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 	}
 
 	protected int getTotalNumberOfLayoutSteps() {
-		return sprIterations;
+		return iterationLimit;
 	}
 
 	protected void computeOneIteration() {
+		long start = System.nanoTime();
+		aborted = false;
 		computeForces();
+		if (aborted) {
+			return;
+		}
 		computePositions();
 		Rectangle currentBounds = getLayoutBounds();
 		improveBoundScaleX(currentBounds);
 		improveBoundScaleY(currentBounds);
 		moveToCenter(currentBounds);
+		converged = sprConvergence > 0 && maxDisplacement < sprConvergence;
+		long nanos = System.nanoTime() - start;
+		for (int i = 0; i < iterationListeners.size(); i++) {
+			iterationListeners.get(i).iterationPerformed(this, iteration,
+					energy, maxDisplacement, nanos);
+		}
 		iteration++;
 	}
 
@@ -535,9 +950,64 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 			locationsX[1] = bounds.getX() + bounds.getWidth();
 			locationsY[1] = bounds.getY() + bounds.getHeight();
 			for (int i = 2; i < locationsX.length; i++) {
-				locationsX[i] = bounds.getX() + Math.random()
+				locationsX[i] = bounds.getX() + random.nextDouble()
 						* bounds.getWidth();
-				locationsY[i] = bounds.getY() + Math.random()
+				locationsY[i] = bounds.getY() + random.nextDouble()
+						* bounds.getHeight();
+			}
+		}
+	}
+
+	/**
+	 * Keeps the vertices that were laid out before in place and puts new
+	 * vertices near the center of their already placed neighbors. The new
+	 * vertices are visited in breadth-first order starting at the placed ones,
+	 * so that chains of new vertices grow out of the existing layout. New
+	 * vertices without any path to a placed one are put in random places.
+	 */
+	private void placeIncrementally() {
+		int length = locationsX.length;
+		boolean[] placed = new boolean[length];
+		int[] queue = new int[length];
+		int head = 0, tail = 0;
+		for (int i = 0; i < length; i++) {
+			if (laidOutEntities.get(entities[i]) >= 0) {
+				placed[i] = true;
+				queue[tail++] = i;
+			}
+		}
+		double jitterX = 0.05 * bounds.getWidth();
+		double jitterY = 0.05 * bounds.getHeight();
+		while (head < tail) {
+			int u = queue[head++];
+			for (int k = neighborOffsets[u]; k < neighborOffsets[u + 1]; k++) {
+				int v = neighbors[k];
+				if (placed[v])
+					continue;
+				double sumX = 0, sumY = 0;
+				int count = 0;
+				for (int l = neighborOffsets[v]; l < neighborOffsets[v + 1]; l++) {
+					int w = neighbors[l];
+					if (placed[w]) {
+						sumX += locationsX[w];
+						sumY += locationsY[w];
+						count++;
+					}
+				}
+				// jitter, so that siblings do not start at the same position
+				locationsX[v] = sumX / count + (random.nextDouble() - 0.5)
+						* jitterX;
+				locationsY[v] = sumY / count + (random.nextDouble() - 0.5)
+						* jitterY;
+				placed[v] = true;
+				queue[tail++] = v;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			if (!placed[i]) {
+				locationsX[i] = bounds.getX() + random.nextDouble()
+						* bounds.getWidth();
+				locationsY[i] = bounds.getY() + random.nextDouble()
 						* bounds.getHeight();
 			}
 		}
@@ -567,47 +1037,19 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 				locationsY[i] = this.locationsY[i];
 			}
 		}
-		// TODO: Again really really slow!
-
 		for (int k = 0; k < 2; k++) {
-			for (int i = 0; i < this.locationsX.length; i++) {
-
-				for (int j = i + 1; j < locationsX.length; j++) {
-					double dx = (locationsX[i] - locationsX[j])
-							/ bounds.getWidth() / boundsScaleX;
-					double dy = (locationsY[i] - locationsY[j])
-							/ bounds.getHeight() / boundsScaleY;
-					double distance_sq = dx * dx + dy * dy;
-					// make sure distance and distance squared not too small
-					distance_sq = Math.max(MIN_DISTANCE * MIN_DISTANCE,
-							distance_sq);
-					double distance = Math.sqrt(distance_sq);
-
-					// If there are relationships between srcObj and destObj
-					// then decrease force on srcObj (a pull) in direction of
-					// destObj
-					// If no relation between srcObj and destObj then increase
-					// force on srcObj (a push) from direction of destObj.
-					double sumOfWeights = srcDestToSumOfWeights[i][j];
-
-					double f;
-					if (sumOfWeights > 0) {
-						// nodes are pulled towards each other
-						f = -sprStrain * Math.log(distance / sprLength)
-								* sumOfWeights;
-					} else {
-						// nodes are repelled from each other
-						f = sprGravitation / (distance_sq);
-					}
-					double dfx = f * dx / distance;
-					double dfy = f * dy / distance;
-
-					forcesX[k][i] += dfx;
-					forcesY[k][i] += dfy;
-
-					forcesX[k][j] -= dfx;
-					forcesY[k][j] -= dfy;
+			if (sprParallelism > 1) {
+				if (!computeForcesInParallel(locationsX, locationsY,
+						forcesX[k], forcesY[k])) {
+					// tasks that are still running may write the forces
+					aborted = true;
+					return;
 				}
+			} else {
+				computeRepulsion(locationsX, locationsY, forcesX[k],
+						forcesY[k]);
+				computeAttraction(locationsX, locationsY, forcesX[k],
+						forcesY[k]);
 			}
 
 			for (int i = 0; i < entities.length; i++) {
@@ -659,14 +1101,271 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 
 	}
 
+	/**
+	 * Computes the forces that repel all pairs of nodes from each other. The
+	 * repulsion between related nodes is compensated again by
+	 * {@link #computeAttraction(double[], double[], double[], double[])}.
+	 */
+	private void computeRepulsion(double[] locationsX, double[] locationsY,
+			double[] forcesX, double[] forcesY) {
+		int length = locationsX.length;
+		double scaleX = bounds.getWidth() * boundsScaleX;
+		double scaleY = bounds.getHeight() * boundsScaleY;
+		double minDistanceSq = MIN_DISTANCE * MIN_DISTANCE;
+		if (isApproximating()) {
+			buildQuadTree(locationsX, locationsY);
+			quadTree.accumulateRepulsion(0, length, sprTheta, sprGravitation,
+					minDistanceSq, forcesX, forcesY);
+			return;
+		}
+
+		// TODO: Again really really slow!
+		for (int i = 0; i < length; i++) {
+			for (int j = i + 1; j < length; j++) {
+				double dx = (locationsX[i] - locationsX[j]) / scaleX;
+				double dy = (locationsY[i] - locationsY[j]) / scaleY;
+				// make sure distance and distance squared not too small
+				double distance_sq = Math.max(minDistanceSq, dx * dx + dy
+						* dy);
+				double distance = Math.sqrt(distance_sq);
+
+				double f = sprGravitation / distance_sq;
+				double dfx = f * dx / distance;
+				double dfy = f * dy / distance;
+
+				forcesX[i] += dfx;
+				forcesY[i] += dfy;
+
+				forcesX[j] -= dfx;
+				forcesY[j] -= dfy;
+			}
+		}
+	}
+
+	/**
+	 * Computes the forces that pull related nodes towards each other. As
+	 * {@link #computeRepulsion(double[], double[], double[], double[])}
+	 * repels all pairs of nodes, the repulsion between related nodes is
+	 * subtracted again, so that related nodes are only attracted.
+	 */
+	private void computeAttraction(double[] locationsX, double[] locationsY,
+			double[] forcesX, double[] forcesY) {
+		double scaleX = bounds.getWidth() * boundsScaleX;
+		double scaleY = bounds.getHeight() * boundsScaleY;
+		double minDistanceSq = MIN_DISTANCE * MIN_DISTANCE;
+		for (int i = 0; i < locationsX.length; i++) {
+			for (int k = neighborOffsets[i]; k < neighborOffsets[i + 1]; k++) {
+				int j = neighbors[k];
+				if (j < i) {
+					// each pair is visited from both sides
+					continue;
+				}
+				double dx = (locationsX[i] - locationsX[j]) / scaleX;
+				double dy = (locationsY[i] - locationsY[j]) / scaleY;
+				double distance_sq = Math.max(minDistanceSq, dx * dx + dy
+						* dy);
+				double distance = Math.sqrt(distance_sq);
+
+				double f = -sprStrain * Math.log(distance / sprLength)
+						* neighborWeights[k] - sprGravitation / distance_sq;
+				double dfx = f * dx / distance;
+				double dfy = f * dy / distance;
+
+				forcesX[i] += dfx;
+				forcesY[i] += dfy;
+
+				forcesX[j] -= dfx;
+				forcesY[j] -= dfy;
+			}
+		}
+	}
+
+	private boolean isApproximating() {
+		return sprApproximateRepulsion && sprTheta > 0;
+	}
+
+	private void buildQuadTree(double[] locationsX, double[] locationsY) {
+		int length = locationsX.length;
+		double scaleX = bounds.getWidth() * boundsScaleX;
+		double scaleY = bounds.getHeight() * boundsScaleY;
+		double[] normalizedX = new double[length];
+		double[] normalizedY = new double[length];
+		for (int i = 0; i < length; i++) {
+			normalizedX[i] = locationsX[i] / scaleX;
+			normalizedY[i] = locationsY[i] / scaleY;
+		}
+		if (quadTree == null) {
+			quadTree = new QuadTree();
+		}
+		quadTree.build(normalizedX, normalizedY);
+	}
+
+	/**
+	 * Computes the repulsion and attraction of all nodes using the configured
+	 * number of threads. The nodes are partitioned into consecutive ranges
+	 * and each task only writes the forces of the nodes within its range, so
+	 * that no synchronization is needed. As the forces of each node are
+	 * summed up in the same order, independent of the partitioning, the
+	 * results are deterministic.
+	 * 
+	 * @return <code>true</code> if all forces have been computed, or
+	 *         <code>false</code> if the current thread has been interrupted
+	 *         before or while waiting, in which case the remaining tasks are
+	 *         cancelled and the interrupt flag is kept
+	 */
+	private boolean computeForcesInParallel(final double[] locationsX,
+			final double[] locationsY, final double[] forcesX,
+			final double[] forcesY) {
+		if (Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		final int length = locationsX.length;
+		if (isApproximating()) {
+			buildQuadTree(locationsX, locationsY);
+		}
+		// use more tasks than threads to balance uneven workloads
+		int numberOfTasks = Math.min(length, sprParallelism * 4);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(
+				numberOfTasks);
+		for (int t = 0; t < numberOfTasks; t++) {
+			final int from = (int) ((long) length * t / numberOfTasks);
+			final int to = (int) ((long) length * (t + 1) / numberOfTasks);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					computeRepulsion(from, to, locationsX, locationsY,
+							forcesX, forcesY);
+					computeAttraction(from, to, locationsX, locationsY,
+							forcesX, forcesY);
+					return null;
+				}
+			});
+		}
+		ExecutorService executor = getExecutor();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(
+				numberOfTasks);
+		try {
+			for (Callable<Object> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<Object> future : futures) {
+				future.get();
+			}
+			return true;
+		} catch (InterruptedException e) {
+			cancel(futures);
+			// cancelled tasks may still read the tree
+			quadTree = null;
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static void cancel(List<Future<Object>> futures) {
+		for (Future<Object> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Computes the repulsion of all other nodes on each node within the given
+	 * range, writing only the forces of these nodes.
+	 */
+	private void computeRepulsion(int from, int to, double[] locationsX,
+			double[] locationsY, double[] forcesX, double[] forcesY) {
+		double minDistanceSq = MIN_DISTANCE * MIN_DISTANCE;
+		if (isApproximating()) {
+			quadTree.accumulateRepulsion(from, to, sprTheta, sprGravitation,
+					minDistanceSq, forcesX, forcesY);
+			return;
+		}
+		int length = locationsX.length;
+		double scaleX = bounds.getWidth() * boundsScaleX;
+		double scaleY = bounds.getHeight() * boundsScaleY;
+		for (int i = from; i < to; i++) {
+			double fx = 0;
+			double fy = 0;
+			for (int j = 0; j < length; j++) {
+				if (j == i) {
+					continue;
+				}
+				double dx = (locationsX[i] - locationsX[j]) / scaleX;
+				double dy = (locationsY[i] - locationsY[j]) / scaleY;
+				double distance_sq = Math.max(minDistanceSq, dx * dx + dy
+						* dy);
+				double distance = Math.sqrt(distance_sq);
+
+				double f = sprGravitation / distance_sq;
+				fx += f * dx / distance;
+				fy += f * dy / distance;
+			}
+			forcesX[i] += fx;
+			forcesY[i] += fy;
+		}
+	}
+
+	/**
+	 * Computes the attraction of all related nodes on each node within the
+	 * given range, writing only the forces of these nodes.
+	 */
+	private void computeAttraction(int from, int to, double[] locationsX,
+			double[] locationsY, double[] forcesX, double[] forcesY) {
+		double scaleX = bounds.getWidth() * boundsScaleX;
+		double scaleY = bounds.getHeight() * boundsScaleY;
+		double minDistanceSq = MIN_DISTANCE * MIN_DISTANCE;
+		for (int i = from; i < to; i++) {
+			for (int k = neighborOffsets[i]; k < neighborOffsets[i + 1]; k++) {
+				int j = neighbors[k];
+				double dx = (locationsX[i] - locationsX[j]) / scaleX;
+				double dy = (locationsY[i] - locationsY[j]) / scaleY;
+				double distance_sq = Math.max(minDistanceSq, dx * dx + dy
+						* dy);
+				double distance = Math.sqrt(distance_sq);
+
+				double f = -sprStrain * Math.log(distance / sprLength)
+						* neighborWeights[k] - sprGravitation / distance_sq;
+				forcesX[i] += f * dx / distance;
+				forcesY[i] += f * dy / distance;
+			}
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null || executorThreads != sprParallelism) {
+			if (executor != null) {
+				executor.shutdown();
+			}
+			// idle threads terminate, so that no shutdown is needed
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(0,
+					sprParallelism, 1, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r,
+									"SpringLayoutAlgorithm worker");
+							thread.setDaemon(true);
+							return thread;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+			executor = pool;
+			executorThreads = sprParallelism;
+		}
+		return executor;
+	}
+
 	/**
 	 * Computes the position for each node in this SpringLayoutAlgorithm. The
 	 * computed position will be stored in the data repository. position =
-	 * position + sprMove * force
+	 * position + sprMove * force. The energy and the maximum displacement of
+	 * the iteration are updated as well.
 	 */
 	protected void computePositions() {
+		energy = 0;
+		maxDisplacement = 0;
 		for (int i = 0; i < entities.length; i++) {
 			if (entities[i].isMovable()) {
+				energy += forcesX[i] * forcesX[i] + forcesY[i] * forcesY[i];
 				double deltaX = sprMove * forcesX[i];
 				double deltaY = sprMove * forcesY[i];
 
@@ -679,8 +1378,12 @@ public class SpringLayoutAlgorithm implements LayoutAlgorithm {
 					deltaY *= maxMovement / dist;
 				}
 
-				locationsX[i] += deltaX * bounds.getWidth() * boundsScaleX;
-				locationsY[i] += deltaY * bounds.getHeight() * boundsScaleY;
+				deltaX *= bounds.getWidth() * boundsScaleX;
+				deltaY *= bounds.getHeight() * boundsScaleY;
+				locationsX[i] += deltaX;
+				locationsY[i] += deltaY;
+				maxDisplacement = Math.max(maxDisplacement,
+						Math.sqrt(deltaX * deltaX + deltaY * deltaY));
 			}
 		}
 	}
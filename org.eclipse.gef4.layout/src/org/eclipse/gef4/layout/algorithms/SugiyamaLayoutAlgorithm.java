@@ -54,6 +54,28 @@ public class SugiyamaLayoutAlgorithm implements LayoutAlgorithm, LayerProvider,
 		HORIZONTAL, VERTICAL
 	};
 
+	/**
+	 * The placement of the nodes within their layers: {@link #GRID} places the
+	 * nodes on an equidistant grid filling the layout area, {@link #COMPACT}
+	 * assigns coordinates according to the sizes of the nodes using the method
+	 * of Brandes and Koepf, which keeps long connections straight.
+	 */
+	public enum Placement {
+		GRID, COMPACT
+	};
+
+	/**
+	 * The default value for the minimal space between two nodes of a layer,
+	 * used by the {@link Placement#COMPACT} placement.
+	 */
+	public static final double DEFAULT_NODE_SPACING = 10;
+
+	/**
+	 * The default value for the space between two layers, used by the
+	 * {@link Placement#COMPACT} placement.
+	 */
+	public static final double DEFAULT_LAYER_SPACING = 40;
+
 	private List<List<NodeWrapper>> layers = new ArrayList<List<NodeWrapper>>();
 	private Map<NodeLayout, NodeWrapper> map = new IdentityHashMap<NodeLayout, NodeWrapper>();
 	private final Direction direction;
@@ -66,6 +88,10 @@ public class SugiyamaLayoutAlgorithm implements LayoutAlgorithm, LayerProvider,
 	private LayerProvider layerProvider;
 	private CrossingReducer crossingReducer;
 
+	private Placement placement = Placement.GRID;
+	private double nodeSpacing = DEFAULT_NODE_SPACING;
+	private double layerSpacing = DEFAULT_LAYER_SPACING;
+
 	/**
 	 * Constructs a tree-like, layered layout of a directed graph.
 	 * 
@@ -120,6 +146,65 @@ public class SugiyamaLayoutAlgorithm implements LayoutAlgorithm, LayerProvider,
 				new BarycentricCrossingReducer());
 	}
 
+	/**
+	 * Sets the placement of the nodes within their layers.
+	 * 
+	 * @param placement
+	 *            the placement
+	 */
+	public void setPlacement(Placement placement) {
+		this.placement = placement;
+	}
+
+	/**
+	 * Returns the placement of the nodes within their layers.
+	 * 
+	 * @return the placement
+	 */
+	public Placement getPlacement() {
+		return placement;
+	}
+
+	/**
+	 * Sets the minimal space between two nodes of a layer, used by the
+	 * {@link Placement#COMPACT} placement.
+	 * 
+	 * @param nodeSpacing
+	 *            the space between two nodes
+	 */
+	public void setNodeSpacing(double nodeSpacing) {
+		this.nodeSpacing = nodeSpacing;
+	}
+
+	/**
+	 * Returns the minimal space between two nodes of a layer.
+	 * 
+	 * @return the space between two nodes
+	 */
+	public double getNodeSpacing() {
+		return nodeSpacing;
+	}
+
+	/**
+	 * Sets the space between two layers, used by the
+	 * {@link Placement#COMPACT} placement.
+	 * 
+	 * @param layerSpacing
+	 *            the space between two layers
+	 */
+	public void setLayerSpacing(double layerSpacing) {
+		this.layerSpacing = layerSpacing;
+	}
+
+	/**
+	 * Returns the space between two layers.
+	 * 
+	 * @return the space between two layers
+	 */
+	public double getLayerSpacing() {
+		return layerSpacing;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -180,6 +265,10 @@ public class SugiyamaLayoutAlgorithm implements LayoutAlgorithm, LayerProvider,
 		if (dimension != null)
 			boundary = new Rectangle(0, 0, dimension.getWidth(),
 					dimension.getHeight());
+		if (placement == Placement.COMPACT) {
+			calculateCompactPositions(boundary);
+			return;
+		}
 		double dx = boundary.getWidth() / layers.size();
 		double dy = boundary.getHeight() / (last + 1);
 		if (direction == Direction.HORIZONTAL)
@@ -194,6 +283,66 @@ public class SugiyamaLayoutAlgorithm implements LayoutAlgorithm, LayerProvider,
 			}
 	}
 
+	/**
+	 * Places the nodes according to their sizes, starting at the top left
+	 * corner of the given boundary. The layers are separated by the layer
+	 * spacing, the coordinates within the layers are assigned by the
+	 * {@link BrandesKoepfPlacement}.
+	 */
+	private void calculateCompactPositions(Rectangle boundary) {
+		boolean vertical = direction == Direction.VERTICAL;
+		List<List<NodeWrapper>> compactLayers = new ArrayList<List<NodeWrapper>>(
+				layers.size());
+		int size = 0;
+		for (List<NodeWrapper> layer : layers) {
+			List<NodeWrapper> compactLayer = new ArrayList<NodeWrapper>(
+					layer.size());
+			for (NodeWrapper nw : layer)
+				if (!nw.isPadding())
+					compactLayer.add(nw);
+			compactLayers.add(compactLayer);
+			size += compactLayer.size();
+		}
+
+		// the size of each node along and across its layer
+		double[] sizes = new double[size];
+		double[] thickness = new double[compactLayers.size()];
+		int k = 0;
+		for (int l = 0; l < compactLayers.size(); l++) {
+			for (NodeWrapper nw : compactLayers.get(l)) {
+				if (nw.node != null) {
+					Dimension nodeSize = nw.node.getSize();
+					sizes[k] = vertical ? nodeSize.getWidth() : nodeSize
+							.getHeight();
+					thickness[l] = Math.max(thickness[l],
+							vertical ? nodeSize.getHeight() : nodeSize
+									.getWidth());
+				}
+				k++;
+			}
+		}
+
+		double[] coordinates = new BrandesKoepfPlacement(compactLayers,
+				sizes, nodeSpacing, nodeSpacing / 2).place();
+		double offset = 0;
+		k = 0;
+		for (int l = 0; l < compactLayers.size(); l++) {
+			double center = offset + thickness[l] / 2;
+			for (NodeWrapper nw : compactLayers.get(l)) {
+				if (nw.node != null) {
+					if (vertical)
+						nw.node.setLocation(boundary.getX() + coordinates[k],
+								boundary.getY() + center);
+					else
+						nw.node.setLocation(boundary.getX() + center,
+								boundary.getY() + coordinates[k]);
+				}
+				k++;
+			}
+			offset += thickness[l] + layerSpacing;
+		}
+	}
+
 	public Map<NodeLayout, NodeWrapper> crossReduction(
 			List<List<NodeWrapper>> nodes) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.layout.algorithms;
+
+import java.util.List;
+
+import org.eclipse.gef4.layout.algorithms.TreeLayoutObserver.TreeNode;
+
+/**
+ * Computes a tidy drawing of a tree with Walker's algorithm in the linear-time
+ * formulation of Buchheim, Juenger and Leipert
+ * (http://dx.doi.org/10.1007/3-540-36151-0_32).
+ * <p>
+ * Subtrees are placed as close to each other as their contours allow, with a
+ * distance of at least 1 between neighboring nodes of a layer, and parents are
+ * centered above their children. While the contours are followed, threads
+ * connect the outermost node of each layer of a subtree to the next layer, so
+ * that the contours can be traversed without visiting the inner nodes. The
+ * tree is stored in primitive arrays, in which siblings have consecutive
+ * indices, and all traversals are iterative, so that deep trees do not exhaust
+ * the stack.
+ */
+class TidyTreePlacement {
+
+	private static final double DISTANCE = 1;
+
+	private final TreeNode[] nodes;
+
+	/**
+	 * The children of node <code>v</code> have the consecutive indices from
+	 * <code>firstChild[v]</code> up to (excluding)
+	 * <code>firstChild[v] + childCount[v]</code>. The number of a node is its
+	 * position among its siblings, starting from 1.
+	 */
+	private final int[] parent, firstChild, childCount, number;
+
+	private final int[] preorder;
+
+	private final int[] thread, ancestor;
+
+	private final double[] prelim, mod, shift, change;
+
+	/**
+	 * Creates a new placement for the tree below the given root, whose
+	 * structure has to be precomputed. The children of each node are placed
+	 * in the order of {@link TreeNode#getChildren()}.
+	 *
+	 * @param root
+	 *            the root of the tree, which may be the super root
+	 */
+	public TidyTreePlacement(TreeNode root) {
+		int size = root.numOfDescendants + 1;
+		nodes = new TreeNode[size];
+		parent = new int[size];
+		firstChild = new int[size];
+		childCount = new int[size];
+		number = new int[size];
+		preorder = new int[size];
+
+		// index the children of each node consecutively when the node is
+		// visited and list the nodes in pre-order
+		int[] stack = new int[size];
+		int top = 0;
+		int count = 1;
+		nodes[0] = root;
+		parent[0] = -1;
+		stack[top++] = 0;
+		int visited = 0;
+		while (top > 0) {
+			int v = stack[--top];
+			preorder[visited++] = v;
+			List list = nodes[v].children;
+			firstChild[v] = count;
+			childCount[v] = list.size();
+			for (int k = 0; k < list.size(); k++) {
+				nodes[count] = (TreeNode) list.get(k);
+				parent[count] = v;
+				number[count] = k + 1;
+				count++;
+			}
+			// push in reverse, so that the first child is visited first
+			for (int w = count - 1; w >= firstChild[v]; w--) {
+				stack[top++] = w;
+			}
+		}
+
+		thread = new int[size];
+		ancestor = new int[size];
+		prelim = new double[size];
+		mod = new double[size];
+		shift = new double[size];
+		change = new double[size];
+		for (int v = 0; v < size; v++) {
+			thread[v] = -1;
+			ancestor[v] = v;
+		}
+	}
+
+	/**
+	 * Returns the nodes of the tree. The index of each node is the index of
+	 * its position in the array returned by {@link #place()}.
+	 *
+	 * @return the nodes, starting with the root
+	 */
+	public TreeNode[] getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Computes the positions of all nodes along their layers. The root is
+	 * placed at 0.
+	 *
+	 * @return the position of each node
+	 */
+	public double[] place() {
+		int size = nodes.length;
+		// the first walk handles each node after its children and after its
+		// left siblings
+		int[] defaultAncestor = new int[size];
+		int[] stack = new int[size];
+		int[] next = new int[size];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (next[v] < childCount[v]) {
+				stack[top++] = firstChild[v] + next[v]++;
+				continue;
+			}
+			top--;
+			firstWalk(v);
+			if (v != 0) {
+				int p = parent[v];
+				if (number[v] == 1)
+					defaultAncestor[p] = v;
+				defaultAncestor[p] = apportion(v, defaultAncestor[p]);
+			}
+		}
+
+		// the second walk sums up the modifiers of the ancestors of each node
+		double[] positions = new double[size];
+		double[] modSum = new double[size];
+		for (int k = 0; k < size; k++) {
+			int v = preorder[k];
+			positions[v] = prelim[v] + modSum[v];
+			for (int w = firstChild[v]; w < firstChild[v] + childCount[v]; w++) {
+				modSum[w] = modSum[v] + mod[v];
+			}
+		}
+		double offset = positions[0];
+		for (int v = 0; v < size; v++) {
+			positions[v] -= offset;
+		}
+		return positions;
+	}
+
+	/**
+	 * Places the given node relative to its left sibling and centers it above
+	 * its children, which have already been placed.
+	 */
+	private void firstWalk(int v) {
+		boolean hasLeftSibling = number[v] > 1;
+		if (childCount[v] == 0) {
+			prelim[v] = hasLeftSibling ? prelim[v - 1] + DISTANCE : 0;
+			return;
+		}
+		executeShifts(v);
+		double midpoint = (prelim[firstChild[v]] + prelim[firstChild[v]
+				+ childCount[v] - 1]) / 2;
+		if (hasLeftSibling) {
+			prelim[v] = prelim[v - 1] + DISTANCE;
+			mod[v] = prelim[v] - midpoint;
+		} else {
+			prelim[v] = midpoint;
+		}
+	}
+
+	/**
+	 * Moves the subtree of the given node away from the subtrees of its left
+	 * siblings until their contours do not overlap, following the contours
+	 * layer by layer and threading them where one ends earlier.
+	 */
+	private int apportion(int v, int defaultAncestor) {
+		if (number[v] == 1)
+			return defaultAncestor;
+		int vip = v, vop = v;
+		int vim = v - 1;
+		int vom = v - number[v] + 1;
+		double sip = mod[vip], sop = mod[vop];
+		double sim = mod[vim], som = mod[vom];
+		while (nextRight(vim) >= 0 && nextLeft(vip) >= 0) {
+			vim = nextRight(vim);
+			vip = nextLeft(vip);
+			vom = nextLeft(vom);
+			vop = nextRight(vop);
+			ancestor[vop] = v;
+			double distance = (prelim[vim] + sim) - (prelim[vip] + sip)
+					+ DISTANCE;
+			if (distance > 0) {
+				int a = parent[ancestor[vim]] == parent[v] ? ancestor[vim]
+						: defaultAncestor;
+				moveSubtree(a, v, distance);
+				sip += distance;
+				sop += distance;
+			}
+			sim += mod[vim];
+			sip += mod[vip];
+			som += mod[vom];
+			sop += mod[vop];
+		}
+		if (nextRight(vim) >= 0 && nextRight(vop) < 0) {
+			thread[vop] = nextRight(vim);
+			mod[vop] += sim - sop;
+		}
+		if (nextLeft(vip) >= 0 && nextLeft(vom) < 0) {
+			thread[vom] = nextLeft(vip);
+			mod[vom] += sip - som;
+			defaultAncestor = v;
+		}
+		return defaultAncestor;
+	}
+
+	/**
+	 * Moves the subtree of <code>right</code> by the given distance and
+	 * records the shift, so that the subtrees between <code>left</code> and
+	 * <code>right</code> are spaced out evenly by {@link #executeShifts(int)}.
+	 */
+	private void moveSubtree(int left, int right, double distance) {
+		int subtrees = number[right] - number[left];
+		change[right] -= distance / subtrees;
+		shift[right] += distance;
+		change[left] += distance / subtrees;
+		prelim[right] += distance;
+		mod[right] += distance;
+	}
+
+	/**
+	 * Applies the shifts recorded for the children of the given node.
+	 */
+	private void executeShifts(int v) {
+		double totalShift = 0, totalChange = 0;
+		for (int w = firstChild[v] + childCount[v] - 1; w >= firstChild[v]; w--) {
+			prelim[w] += totalShift;
+			mod[w] += totalShift;
+			totalChange += change[w];
+			totalShift += shift[w] + totalChange;
+		}
+	}
+
+	private int nextLeft(int v) {
+		return childCount[v] > 0 ? firstChild[v] : thread[v];
+	}
+
+	private int nextRight(int v) {
+		return childCount[v] > 0 ? firstChild[v] + childCount[v] - 1
+				: thread[v];
+	}
+
+}
@@ -12,6 +12,7 @@
 package org.eclipse.gef4.layout.algorithms;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 
 import org.eclipse.gef4.geometry.planar.Dimension;
 import org.eclipse.gef4.geometry.planar.Rectangle;
@@ -59,6 +60,8 @@ public class TreeLayoutAlgorithm implements LayoutAlgorithm {
 
 	private boolean resize = false;
 
+	private boolean tidy = false;
+
 	private LayoutContext context;
 
 	private Rectangle bounds;
@@ -146,6 +149,28 @@ public class TreeLayoutAlgorithm implements LayoutAlgorithm {
 		resize = resizing;
 	}
 
+	/**
+	 * 
+	 * @return true if this algorithm places subtrees as close to each other
+	 *         as possible
+	 */
+	public boolean isTidy() {
+		return tidy;
+	}
+
+	/**
+	 * Sets whether subtrees are placed as close to each other as possible,
+	 * using Walker's algorithm in linear time. Otherwise each leaf gets a
+	 * slot of the same width, which makes broad trees very wide.
+	 * 
+	 * @param tidy
+	 *            true if this algorithm should place subtrees as close to
+	 *            each other as possible (default is false)
+	 */
+	public void setTidy(boolean tidy) {
+		this.tidy = tidy;
+	}
+
 	public void setLayoutContext(LayoutContext context) {
 		if (treeObserver != null) {
 			treeObserver.stop();
@@ -184,17 +209,28 @@ public class TreeLayoutAlgorithm implements LayoutAlgorithm {
 	void internalApplyLayout() {
 		TreeNode superRoot = treeObserver.getSuperRoot();
 		bounds = context.getBounds();
-		updateLeafAndLayerSizes();
-		int leafCountSoFar = 0;
-		for (Iterator iterator = superRoot.getChildren().iterator(); iterator
-				.hasNext();) {
-			TreeNode rootInfo = (TreeNode) iterator.next();
-			computePositionRecursively(rootInfo, leafCountSoFar);
-			leafCountSoFar = leafCountSoFar + rootInfo.numOfLeaves;
+		if (tidy) {
+			TidyTreePlacement placement = new TidyTreePlacement(superRoot);
+			TreeNode[] nodes = placement.getNodes();
+			double[] positions = placement.place();
+			// the super root is not placed
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = 1; i < nodes.length; i++) {
+				min = Math.min(min, positions[i]);
+				max = Math.max(max, positions[i]);
+			}
+			updateLeafAndLayerSizes(max - min + 1);
+			for (int i = 1; i < nodes.length; i++) {
+				setLocation(nodes[i], positions[i] - min + 0.5);
+			}
+		} else {
+			updateLeafAndLayerSizes(superRoot.numOfLeaves);
+			computePositions(superRoot);
 		}
 	}
 
-	private void updateLeafAndLayerSizes() {
+	private void updateLeafAndLayerSizes(double breadth) {
 		if (nodeSpace != null) {
 			if (getDirection() == TOP_DOWN || getDirection() == BOTTOM_UP) {
 				leafSize = nodeSpace.getWidth();
@@ -206,22 +242,47 @@ public class TreeLayoutAlgorithm implements LayoutAlgorithm {
 		} else {
 			TreeNode superRoot = treeObserver.getSuperRoot();
 			if (direction == TOP_DOWN || direction == BOTTOM_UP) {
-				leafSize = bounds.getWidth() / superRoot.numOfLeaves;
+				leafSize = bounds.getWidth() / breadth;
 				layerSize = bounds.getHeight() / superRoot.height;
 			} else {
-				leafSize = bounds.getHeight() / superRoot.numOfLeaves;
+				leafSize = bounds.getHeight() / breadth;
 				layerSize = bounds.getWidth() / superRoot.height;
 			}
 		}
 	}
 
 	/**
-	 * Computes positions recursively until the leaf nodes are reached.
+	 * Computes the positions of all descendants of the given node, giving
+	 * each leaf a slot of the same size. The tree is traversed iteratively,
+	 * so that deep trees do not exhaust the stack.
 	 */
-	private void computePositionRecursively(TreeNode entityInfo,
-			int relativePosition) {
-		double breadthPosition = relativePosition + entityInfo.numOfLeaves
-				/ 2.0;
+	private void computePositions(TreeNode root) {
+		// the queues hold each node and the position of its first leaf
+		LinkedList<TreeNode> nodesToVisit = new LinkedList<TreeNode>();
+		LinkedList<Integer> positionsToVisit = new LinkedList<Integer>();
+		nodesToVisit.addLast(root);
+		positionsToVisit.addLast(Integer.valueOf(0));
+		while (!nodesToVisit.isEmpty()) {
+			TreeNode entityInfo = nodesToVisit.removeFirst();
+			int relativePosition = positionsToVisit.removeFirst().intValue();
+			if (entityInfo != root)
+				setLocation(entityInfo, relativePosition
+						+ entityInfo.numOfLeaves / 2.0);
+			for (Iterator iterator = entityInfo.children.iterator(); iterator
+					.hasNext();) {
+				TreeNode childInfo = (TreeNode) iterator.next();
+				nodesToVisit.addLast(childInfo);
+				positionsToVisit.addLast(Integer.valueOf(relativePosition));
+				relativePosition += childInfo.numOfLeaves;
+			}
+		}
+	}
+
+	/**
+	 * Places the given node at the given position along its layer, in units
+	 * of the leaf size.
+	 */
+	private void setLocation(TreeNode entityInfo, double breadthPosition) {
 		double depthPosition = (entityInfo.depth + 0.5);
 
 		switch (direction) {
@@ -243,12 +304,5 @@ public class TreeLayoutAlgorithm implements LayoutAlgorithm {
 					breadthPosition * leafSize);
 			break;
 		}
-
-		for (Iterator iterator = entityInfo.children.iterator(); iterator
-				.hasNext();) {
-			TreeNode childInfo = (TreeNode) iterator.next();
-			computePositionRecursively(childInfo, relativePosition);
-			relativePosition += childInfo.numOfLeaves;
-		}
 	}
 }
@@ -55,7 +55,7 @@ public class TreeLayoutObserver {
 		final protected TreeLayoutObserver owner;
 		protected int height = 0;
 		protected int depth = -1;
-		protected int numOfLeaves = 0;
+		protected int numOfLeaves = 1;
 		protected int numOfDescendants = 0;
 		protected int order = 0;
 		protected final List children = new ArrayList();
@@ -128,6 +128,8 @@ public class TreeLayoutObserver {
 		 * @return order of this node
 		 */
 		public int getOrder() {
+			if (owner != null)
+				owner.refreshOrders();
 			return order;
 		}
 
@@ -153,6 +155,8 @@ public class TreeLayoutObserver {
 		 *         smallest order)
 		 */
 		public boolean isFirstChild() {
+			if (owner != null)
+				owner.refreshOrders();
 			return firstChild;
 		}
 
@@ -161,6 +165,8 @@ public class TreeLayoutObserver {
 		 * @return
 		 */
 		public boolean isLastChild() {
+			if (owner != null)
+				owner.refreshOrders();
 			return lastChild;
 		}
 
@@ -189,35 +195,63 @@ public class TreeLayoutObserver {
 				return;
 			children.add(child);
 			child.parent = this;
+			if (owner != null)
+				owner.ordersValid = false;
 		}
 
 		/**
 		 * Performs a DFS on the tree structure and calculates all parameters of
 		 * its nodes. Should be called on
-		 * {@link TreeLayoutObserver#getSuperRoot() Super Root}. Uses recurrence
-		 * to go through all the nodes.
+		 * {@link TreeLayoutObserver#getSuperRoot() Super Root}. The tree is
+		 * traversed iteratively, so that deep trees do not exhaust the stack.
 		 */
 		protected void precomputeTree() {
-			if (children.isEmpty()) {
-				height = 0;
-				numOfLeaves = 1;
-				numOfDescendants = 0;
-			} else {
-				height = 0;
-				numOfLeaves = 0;
-				numOfDescendants = 0;
-				for (ListIterator iterator = children.listIterator(); iterator
+			// list the descendants in pre-order, setting their depths
+			ArrayList<TreeNode> preorder = new ArrayList<TreeNode>();
+			preorder.add(this);
+			LinkedList<TreeNode> nodesToVisit = new LinkedList<TreeNode>();
+			nodesToVisit.addFirst(this);
+			while (!nodesToVisit.isEmpty()) {
+				TreeNode node = nodesToVisit.removeFirst();
+				if (node != this)
+					preorder.add(node);
+				for (ListIterator iterator = node.children
+						.listIterator(node.children.size()); iterator
+						.hasPrevious();) {
+					TreeNode child = (TreeNode) iterator.previous();
+					child.depth = node.depth + 1;
+					nodesToVisit.addFirst(child);
+				}
+			}
+
+			// children are handled before their parents in reverse pre-order
+			for (int i = preorder.size() - 1; i >= 0; i--) {
+				TreeNode node = preorder.get(i);
+				node.height = 0;
+				node.numOfLeaves = node.children.isEmpty() ? 1 : 0;
+				node.numOfDescendants = 0;
+				for (Iterator iterator = node.children.iterator(); iterator
 						.hasNext();) {
 					TreeNode child = (TreeNode) iterator.next();
-					child.depth = this.depth + 1;
-					child.order = this.order + this.numOfLeaves;
-					child.precomputeTree();
-					child.firstChild = (this.numOfLeaves == 0);
-					child.lastChild = !iterator.hasNext();
+					node.height = Math.max(node.height, child.height + 1);
+					node.numOfLeaves += child.numOfLeaves;
+					node.numOfDescendants += child.numOfDescendants + 1;
+				}
+			}
 
-					this.height = Math.max(this.height, child.height + 1);
-					this.numOfLeaves += child.numOfLeaves;
-					this.numOfDescendants += child.numOfDescendants + 1;
+			// the order of a child depends on the leaves of its left siblings
+			if (owner != null && this == owner.superRoot)
+				owner.ordersValid = true;
+			for (int i = 0; i < preorder.size(); i++) {
+				TreeNode node = preorder.get(i);
+				int leavesSoFar = 0;
+				for (ListIterator iterator = node.children.listIterator(); iterator
+						.hasNext();) {
+					TreeNode child = (TreeNode) iterator.next();
+					child.order = node.order + leavesSoFar;
+					child.firstChild = (leavesSoFar == 0);
+					child.lastChild = !iterator.hasNext();
+					leavesSoFar += child.numOfLeaves;
 				}
 			}
 		}
@@ -340,8 +374,9 @@ public class TreeLayoutObserver {
 
 		public boolean nodeRemoved(LayoutContext context, NodeLayout node) {
 			TreeNode treeNode = (TreeNode) layoutToTree.get(node);
-			treeNode.parent.children.remove(treeNode);
-			superRoot.precomputeTree();
+			TreeNode previousParent = treeNode.parent;
+			previousParent.children.remove(treeNode);
+			subtreeRemoved(treeNode, previousParent);
 			for (Iterator iterator = treeListeners.iterator(); iterator
 					.hasNext();) {
 				TreeListener listener = (TreeListener) iterator.next();
@@ -353,7 +388,7 @@ public class TreeLayoutObserver {
 		public boolean nodeAdded(LayoutContext context, NodeLayout node) {
 			TreeNode treeNode = getTreeNode(node);
 			superRoot.addChild(treeNode);
-			superRoot.precomputeTree();
+			subtreeAdded(treeNode);
 			for (Iterator iterator = treeListeners.iterator(); iterator
 					.hasNext();) {
 				TreeListener listener = (TreeListener) iterator.next();
@@ -370,17 +405,15 @@ public class TreeLayoutObserver {
 					.get(connection.getTarget());
 			if (node1.parent == node2) {
 				node1.findNewParent();
-				if (node1.parent != node2) {
-					superRoot.precomputeTree();
+				subtreeMoved(node1, node2);
+				if (node1.parent != node2)
 					fireParentChanged(node1, node2);
-				}
 			}
 			if (node2.parent == node1) {
 				node2.findNewParent();
-				if (node2.parent != node1) {
-					superRoot.precomputeTree();
+				subtreeMoved(node2, node1);
+				if (node2.parent != node1)
 					fireParentChanged(node2, node1);
-				}
 			}
 			return false;
 		}
@@ -397,14 +430,14 @@ public class TreeLayoutObserver {
 				TreeNode previousParent = target.parent;
 				previousParent.children.remove(target);
 				source.addChild(target);
-				superRoot.precomputeTree();
+				subtreeMoved(target, previousParent);
 				fireParentChanged(target, previousParent);
 			}
 			if (!connection.isDirected() && source.isBetterParent(target)) {
 				TreeNode previousParent = source.parent;
 				previousParent.children.remove(source);
 				target.addChild(source);
-				superRoot.precomputeTree();
+				subtreeMoved(source, previousParent);
 				fireParentChanged(source, previousParent);
 			}
 			return false;
@@ -425,6 +458,13 @@ public class TreeLayoutObserver {
 	private TreeNode superRoot;
 	private ArrayList treeListeners = new ArrayList();
 
+	/**
+	 * False if the orders of the nodes and their first and last child flags
+	 * have to be recomputed, which is done lazily, because it requires a
+	 * traversal of the whole tree.
+	 */
+	private boolean ordersValid = false;
+
 	/**
 	 * Creates a
 	 * 
@@ -504,7 +544,133 @@ public class TreeLayoutObserver {
 	 *            listener to remove
 	 */
 	public void removeTreeListener(TreeListener listener) {
-		treeListeners.add(listener);
+		treeListeners.remove(listener);
+	}
+
+	/**
+	 * Updates the depths within the given subtree, which has been moved from
+	 * the given previous parent to its current parent, and the parameters of
+	 * the ancestors of both parents.
+	 */
+	private void subtreeMoved(TreeNode node, TreeNode previousParent) {
+		subtreeRemoved(node, previousParent);
+		subtreeAdded(node);
+	}
+
+	/**
+	 * Updates the parameters of the given parent and its ancestors after the
+	 * given subtree has been removed from its children.
+	 */
+	private void subtreeRemoved(TreeNode node, TreeNode previousParent) {
+		ordersValid = false;
+		int descendants = node.numOfDescendants + 1;
+		int leavesDelta = 0;
+		int childHeight = node.height;
+		int previousChildHeight = node.height;
+		for (TreeNode ancestor = previousParent; ancestor != null; ancestor = ancestor.parent) {
+			int previousLeaves = ancestor.numOfLeaves;
+			int previousHeight = ancestor.height;
+			if (ancestor == previousParent) {
+				ancestor.numOfLeaves = ancestor.children.isEmpty() ? 1
+						: previousLeaves - node.numOfLeaves;
+			} else {
+				ancestor.numOfLeaves += leavesDelta;
+			}
+			if (previousChildHeight + 1 == previousHeight
+					&& (ancestor == previousParent || childHeight < previousChildHeight)) {
+				ancestor.height = computeHeight(ancestor);
+			}
+			ancestor.numOfDescendants -= descendants;
+			leavesDelta = ancestor.numOfLeaves - previousLeaves;
+			childHeight = ancestor.height;
+			previousChildHeight = previousHeight;
+		}
+	}
+
+	/**
+	 * Updates the depths within the given subtree, which has been added to
+	 * the children of its parent, and the parameters of its ancestors.
+	 */
+	private void subtreeAdded(TreeNode node) {
+		ordersValid = false;
+		TreeNode parent = node.parent;
+		node.depth = parent.depth + 1;
+		if (!node.children.isEmpty()
+				&& ((TreeNode) node.children.get(0)).depth != node.depth + 1) {
+			LinkedList<TreeNode> nodesToVisit = new LinkedList<TreeNode>();
+			nodesToVisit.addLast(node);
+			while (!nodesToVisit.isEmpty()) {
+				TreeNode current = nodesToVisit.removeFirst();
+				for (Iterator iterator = current.children.iterator(); iterator
+						.hasNext();) {
+					TreeNode child = (TreeNode) iterator.next();
+					child.depth = current.depth + 1;
+					nodesToVisit.addLast(child);
+				}
+			}
+		}
+
+		int descendants = node.numOfDescendants + 1;
+		int leavesDelta = 0;
+		int childHeight = node.height;
+		for (TreeNode ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+			int previousLeaves = ancestor.numOfLeaves;
+			if (ancestor == parent) {
+				// a leaf becoming a parent loses its own leaf
+				ancestor.numOfLeaves = ancestor.children.size() == 1 ? node.numOfLeaves
+						: previousLeaves + node.numOfLeaves;
+				ancestor.height = ancestor.children.size() == 1 ? childHeight + 1
+						: Math.max(ancestor.height, childHeight + 1);
+			} else {
+				ancestor.numOfLeaves += leavesDelta;
+				ancestor.height = Math.max(ancestor.height, childHeight + 1);
+			}
+			ancestor.numOfDescendants += descendants;
+			leavesDelta = ancestor.numOfLeaves - previousLeaves;
+			childHeight = ancestor.height;
+		}
+	}
+
+	private static int computeHeight(TreeNode node) {
+		int height = 0;
+		for (Iterator iterator = node.children.iterator(); iterator.hasNext();) {
+			height = Math.max(height,
+					((TreeNode) iterator.next()).height + 1);
+		}
+		return height;
+	}
+
+	/**
+	 * Recomputes the orders of all nodes and their first and last child flags
+	 * if the tree structure has changed since they were last computed. The
+	 * leaves are counted during the traversal, so that the other parameters
+	 * of the nodes do not have to be up to date.
+	 */
+	void refreshOrders() {
+		if (ordersValid)
+			return;
+		ordersValid = true;
+		int leavesSoFar = 0;
+		LinkedList<TreeNode> nodesToVisit = new LinkedList<TreeNode>();
+		nodesToVisit.addFirst(superRoot);
+		while (!nodesToVisit.isEmpty()) {
+			TreeNode node = nodesToVisit.removeFirst();
+			if (node != superRoot)
+				node.order = leavesSoFar;
+			if (node.children.isEmpty()) {
+				leavesSoFar++;
+				continue;
+			}
+			for (ListIterator iterator = node.children
+					.listIterator(node.children.size()); iterator
+					.hasPrevious();) {
+				TreeNode child = (TreeNode) iterator.previous();
+				child.firstChild = !iterator.hasPrevious();
+				child.lastChild = child == node.children.get(node.children
+						.size() - 1);
+				nodesToVisit.addFirst(child);
+			}
+		}
 	}
 
 	/**
@@ -515,9 +681,10 @@ public class TreeLayoutObserver {
 	 */
 	private void createTrees(NodeLayout[] nodes) {
 		HashSet alreadyVisited = new HashSet();
+		HashSet<NodeLayout> alreadyWalked = new HashSet<NodeLayout>();
 		LinkedList nodesToAdd = new LinkedList();
 		for (int i = 0; i < nodes.length; i++) {
-			NodeLayout root = findRoot(nodes[i], alreadyVisited);
+			NodeLayout root = findRoot(nodes[i], alreadyVisited, alreadyWalked);
 			if (root != null) {
 				alreadyVisited.add(root);
 				nodesToAdd.addLast(new Object[] { root, superRoot });
@@ -546,29 +713,40 @@ public class TreeLayoutObserver {
 	/**
 	 * Searches for a root of a tree containing given node by continuously
 	 * grabbing a predecessor of current node. If it reaches an node that exists
-	 * in alreadyVisited set, it returns null. If it detects a cycle, it returns
-	 * the first found node of that cycle. If it reaches a node that has no
-	 * predecessors, it returns that node.
+	 * in alreadyVisited set or has already been passed by a previous search,
+	 * it returns null. If it detects a cycle, it returns the first found node
+	 * of that cycle. If it reaches a node that has no predecessors, it returns
+	 * that node.
 	 * 
 	 * @param nodeLayout
 	 *            starting node
 	 * @param alreadyVisited
 	 *            set of nodes that can't lay on path to the root (if one does,
 	 *            method stops and returns null).
+	 * @param alreadyWalked
+	 *            set of nodes passed by previous searches, whose roots have
+	 *            already been found; the nodes passed by this search are added
 	 * @return
 	 */
-	private NodeLayout findRoot(NodeLayout nodeLayout, Set alreadyVisited) {
-		HashSet alreadyVisitedRoot = new HashSet();
+	private NodeLayout findRoot(NodeLayout nodeLayout, Set alreadyVisited,
+			Set<NodeLayout> alreadyWalked) {
+		HashSet<NodeLayout> alreadyVisitedRoot = new HashSet<NodeLayout>();
 		while (true) {
-			if (alreadyVisited.contains(nodeLayout))
+			if (alreadyVisited.contains(nodeLayout)
+					|| alreadyWalked.contains(nodeLayout)) {
+				alreadyWalked.addAll(alreadyVisitedRoot);
 				return null;
-			if (alreadyVisitedRoot.contains(nodeLayout))
+			}
+			if (alreadyVisitedRoot.contains(nodeLayout)) {
+				alreadyWalked.addAll(alreadyVisitedRoot);
 				return nodeLayout;
+			}
 			alreadyVisitedRoot.add(nodeLayout);
 			NodeLayout[] predecessingNodes = nodeLayout.getPredecessingNodes();
 			if (predecessingNodes.length > 0) {
 				nodeLayout = predecessingNodes[0];
 			} else {
+				alreadyWalked.addAll(alreadyVisitedRoot);
 				return nodeLayout;
 			}
 		}
@@ -237,7 +237,14 @@ public class GraphConnection extends GraphItem {
 	 * @see #ZestStyles
 	 */
 	public void setConnectionStyle(int style) {
+		boolean wasDirected = isDirected();
 		this.connectionStyle = style;
+		if (wasDirected != isDirected() && sourceNode != null
+				&& destinationNode != null) {
+			// directed connections are incoming or outgoing on one side only
+			sourceNode.invalidateLayoutConnections();
+			destinationNode.invalidateLayoutConnections();
+		}
 		updateFigure(this.connectionFigure);
 	}
 
@@ -746,18 +746,22 @@ public class GraphNode extends GraphItem {
 
 	void addSourceConnection(GraphConnection connection) {
 		this.sourceConnections.add(connection);
+		invalidateLayoutConnections();
 	}
 
 	void addTargetConnection(GraphConnection connection) {
 		this.targetConnections.add(connection);
+		invalidateLayoutConnections();
 	}
 
 	void removeSourceConnection(GraphConnection connection) {
 		this.sourceConnections.remove(connection);
+		invalidateLayoutConnections();
 	}
 
 	void removeTargetConnection(GraphConnection connection) {
 		this.targetConnections.remove(connection);
+		invalidateLayoutConnections();
 	}
 
 	/**
@@ -806,6 +810,16 @@ public class GraphNode extends GraphItem {
 		return layout;
 	}
 
+	/**
+	 * Discards the connections and neighbors cached by the layout of this
+	 * node, if it has been created.
+	 */
+	void invalidateLayoutConnections() {
+		if (layout != null) {
+			layout.invalidateConnections();
+		}
+	}
+
 	void applyLayoutChanges() {
 		if (layout != null) {
 			layout.applyLayout();
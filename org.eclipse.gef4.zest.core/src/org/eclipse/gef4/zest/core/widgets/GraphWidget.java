@@ -18,6 +18,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.draw2d.Animation;
 import org.eclipse.draw2d.ColorConstants;
@@ -45,7 +46,11 @@ import org.eclipse.gef4.graph.Graph.Attr;
 import org.eclipse.gef4.graph.Node;
 import org.eclipse.gef4.layout.LayoutAlgorithm;
 import org.eclipse.gef4.layout.algorithms.TreeLayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
 import org.eclipse.gef4.layout.interfaces.ExpandCollapseManager;
+import org.eclipse.gef4.layout.interfaces.GraphStructureListener;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
 import org.eclipse.gef4.zest.core.widgets.decoration.DefaultConnectionDecorator;
 import org.eclipse.gef4.zest.core.widgets.decoration.DirectedConnectionDecorator;
 import org.eclipse.gef4.zest.core.widgets.decoration.IConnectionDecorator;
@@ -113,6 +118,37 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	private volatile boolean shouldSheduleLayout;
 	private volatile Runnable scheduledLayoutRunnable = null;
 	private volatile boolean scheduledLayoutClean = false;
+	private boolean threadedLayout = false;
+	// the snapshot the layout algorithm is currently running on and the
+	// thread running it, only accessed from the UI thread
+	private LayoutSnapshot runningLayout = null;
+	private Thread layoutWorker = null;
+	private boolean runningLayoutClean = false;
+	private boolean rescheduleLayout = false;
+	private boolean rescheduleLayoutClean = false;
+	private final GraphStructureListener layoutCanceller = new GraphStructureListener.Stub() {
+		public boolean nodeAdded(LayoutContext context, NodeLayout node) {
+			cancelThreadedLayout(true);
+			return false;
+		}
+
+		public boolean nodeRemoved(LayoutContext context, NodeLayout node) {
+			cancelThreadedLayout(true);
+			return false;
+		}
+
+		public boolean connectionAdded(LayoutContext context,
+				ConnectionLayout connection) {
+			cancelThreadedLayout(true);
+			return false;
+		}
+
+		public boolean connectionRemoved(LayoutContext context,
+				ConnectionLayout connection) {
+			cancelThreadedLayout(true);
+			return false;
+		}
+	};
 	private Dimension preferredSize = null;
 	int style = 0;
 
@@ -462,6 +498,7 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	 * Dispose of the nodes and edges when the graph is disposed.
 	 */
 	public void dispose() {
+		cancelThreadedLayout(false);
 		release();
 		super.dispose();
 	}
@@ -480,6 +517,14 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	 * @since 2.0
 	 */
 	public void applyLayoutNow() {
+		if (threadedLayout) {
+			// discard the results of a running layout and rebind the
+			// algorithm, which was bound to a snapshot
+			stopThreadedLayout();
+			if (getLayoutAlgorithm() != null) {
+				getLayoutAlgorithm().setLayoutContext(getLayoutContext());
+			}
+		}
 		getLayoutContext().applyLayout(true);
 		layoutContext.flushChanges(false);
 	}
@@ -516,6 +561,48 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 		return getLayoutContext().isBackgroundLayoutEnabled();
 	}
 
+	/**
+	 * Enables or disables threaded layout. If enabled, the layout algorithm is
+	 * not run on the UI thread, but on a separate thread against a snapshot of
+	 * the nodes and connections, and the results are applied at once when it
+	 * has finished. If nodes or connections are added or removed in the
+	 * meantime, the running layout is cancelled and started again.
+	 * 
+	 * As the snapshot does not support subgraphs and pruning, threaded layout
+	 * is not suited for algorithms depending on these features. While threaded
+	 * layout is enabled, the layout algorithm must not be used by other means
+	 * (e.g. as the main algorithm of a dynamic layout).
+	 * 
+	 * @param enabled
+	 * 
+	 * @since 2.0
+	 */
+	public void setThreadedLayout(boolean enabled) {
+		if (threadedLayout != enabled) {
+			threadedLayout = enabled;
+			if (enabled) {
+				getLayoutContext().addGraphStructureListener(layoutCanceller);
+			} else {
+				layoutContext.removeGraphStructureListener(layoutCanceller);
+				stopThreadedLayout();
+				if (getLayoutAlgorithm() != null) {
+					// rebind the algorithm, which was bound to a snapshot
+					getLayoutAlgorithm().setLayoutContext(layoutContext);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if threaded layout is enabled (see
+	 *         {@link #setThreadedLayout(boolean)})
+	 * @since 2.0
+	 */
+	public boolean isThreadedLayoutEnabled() {
+		return threadedLayout;
+	}
+
 	private void release() {
 		while (nodes.size() > 0) {
 			GraphNode node = nodes.get(0);
@@ -536,10 +623,20 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 		LIGHT_YELLOW.dispose();
 	}
 
-	private void applyLayoutInternal(boolean clean) {
+	private void applyLayoutInternal(final boolean clean) {
 		if (getLayoutContext().getLayoutAlgorithm() == null) {
 			return;
 		}
+		if (threadedLayout) {
+			getDisplay().asyncExec(new Runnable() {
+				public void run() {
+					if (!isDisposed()) {
+						startThreadedLayout(clean);
+					}
+				}
+			});
+			return;
+		}
 		scheduledLayoutClean = scheduledLayoutClean || clean;
 		synchronized (this) {
 			if (scheduledLayoutRunnable == null) {
@@ -567,6 +664,143 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 		}
 	}
 
+	/**
+	 * Takes a snapshot of the layout context and runs the layout algorithm on
+	 * it in a separate thread. If a layout is already running, it is cancelled
+	 * and started again when it has finished. Has to be called on the UI
+	 * thread.
+	 */
+	private void startThreadedLayout(final boolean clean) {
+		if (runningLayout != null) {
+			cancelThreadedLayout(true);
+			rescheduleLayoutClean = rescheduleLayoutClean || clean;
+			return;
+		}
+		final LayoutAlgorithm algorithm = getLayoutAlgorithm();
+		if (algorithm == null) {
+			return;
+		}
+		final LayoutSnapshot snapshot = new LayoutSnapshot(getLayoutContext());
+		final Display display = getDisplay();
+		runningLayout = snapshot;
+		runningLayoutClean = clean;
+		layoutWorker = new Thread("Zest layout") {
+			public void run() {
+				Throwable failure = null;
+				try {
+					algorithm.setLayoutContext(snapshot);
+					algorithm.applyLayout(clean);
+				} catch (CancellationException e) {
+					// the graph has changed, the layout is started again
+				} catch (Throwable e) {
+					// errors are passed on, so that the running layout is
+					// always finished
+					failure = e;
+				}
+				final Throwable error = failure;
+				if (!display.isDisposed()) {
+					display.asyncExec(new Runnable() {
+						public void run() {
+							finishThreadedLayout(snapshot, algorithm, error);
+						}
+					});
+				}
+			}
+		};
+		layoutWorker.setDaemon(true);
+		layoutWorker.start();
+	}
+
+	/**
+	 * Applies the results of a threaded layout, unless it has been cancelled
+	 * or has failed, and starts a pending layout. A failure of the layout
+	 * algorithm is rethrown afterwards. Has to be called on the UI thread.
+	 */
+	private void finishThreadedLayout(LayoutSnapshot snapshot,
+			LayoutAlgorithm algorithm, Throwable error) {
+		if (isDisposed() || snapshot != runningLayout) {
+			return;
+		}
+		runningLayout = null;
+		layoutWorker = null;
+		if (!threadedLayout && algorithm == getLayoutAlgorithm()) {
+			// threaded layout has been disabled while running
+			algorithm.setLayoutContext(getLayoutContext());
+		}
+		if (!snapshot.isCancelled() && error == null
+				&& algorithm == getLayoutAlgorithm()) {
+			if (animate) {
+				Animation.markBegin();
+			}
+			getLayoutContext().applySnapshot(snapshot);
+			if (animate) {
+				Animation.run(ANIMATION_TIME);
+			}
+			getLightweightSystem().getUpdateManager().performUpdate();
+		}
+		if (rescheduleLayout && threadedLayout) {
+			rescheduleLayout = false;
+			boolean clean = rescheduleLayoutClean;
+			rescheduleLayoutClean = false;
+			startThreadedLayout(clean);
+		}
+		if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error != null) {
+			throw new RuntimeException(error);
+		}
+	}
+
+	/**
+	 * Cancels the running threaded layout, if any, so that its results are
+	 * discarded. Has to be called on the UI thread.
+	 * 
+	 * @param restart
+	 *            whether to start the layout again when it has finished
+	 */
+	private void cancelThreadedLayout(boolean restart) {
+		if (runningLayout != null) {
+			runningLayout.cancel();
+			if (restart) {
+				rescheduleLayout = true;
+				rescheduleLayoutClean = rescheduleLayoutClean
+						|| runningLayoutClean;
+			} else {
+				rescheduleLayout = false;
+				rescheduleLayoutClean = false;
+			}
+		}
+	}
+
+	/**
+	 * Cancels the running threaded layout, if any, and waits for its thread
+	 * to terminate, so that the layout algorithm can be used on the UI thread
+	 * afterwards. The algorithm is aborted as soon as it accesses the
+	 * snapshot, so the wait is usually short. Has to be called on the UI
+	 * thread.
+	 */
+	private void stopThreadedLayout() {
+		cancelThreadedLayout(false);
+		if (layoutWorker != null) {
+			boolean interrupted = false;
+			while (layoutWorker.isAlive()) {
+				try {
+					layoutWorker.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// the results of the worker are discarded by finishThreadedLayout()
+		runningLayout = null;
+		layoutWorker = null;
+	}
+
 	/**
 	 * Sets the preferred size of the layout area. Size of ( -1, -1) uses the
 	 * current canvas size.
@@ -609,6 +843,10 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	 */
 	public void setLayoutAlgorithm(LayoutAlgorithm algorithm,
 			boolean applyLayout) {
+		if (threadedLayout) {
+			// the algorithm is bound to the context on the UI thread
+			stopThreadedLayout();
+		}
 		getLayoutContext().setLayoutAlgorithm(algorithm);
 		if (applyLayout) {
 			applyLayout();
@@ -665,6 +903,7 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	 */
 	public void addLayoutFilter(LayoutFilter filter) {
 		getLayoutContext().addFilter(filter);
+		cancelThreadedLayout(true);
 	}
 
 	/**
@@ -677,6 +916,7 @@ public class GraphWidget extends FigureCanvas implements IContainer {
 	 */
 	public void removeLayoutFilter(LayoutFilter filter) {
 		getLayoutContext().removeFilter(filter);
+		cancelThreadedLayout(true);
 	}
 
 	/**
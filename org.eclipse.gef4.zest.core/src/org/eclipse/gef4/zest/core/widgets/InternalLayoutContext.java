@@ -45,6 +45,7 @@ class InternalLayoutContext implements LayoutContext {
 	private boolean eventsOn = true;
 	private boolean backgorundLayoutEnabled = false;
 	private boolean externalLayoutInvocation = true;
+	private int connectionsVersion = 0;
 
 	/**
 	 * @param graph
@@ -300,10 +301,29 @@ class InternalLayoutContext implements LayoutContext {
 
 	void addFilter(LayoutFilter filter) {
 		filters.add(filter);
+		invalidateConnections();
 	}
 
 	void removeFilter(LayoutFilter filter) {
 		filters.remove(filter);
+		invalidateConnections();
+	}
+
+	/**
+	 * Discards the connections and neighbors cached by the nodes of this
+	 * context. Filters may depend on state that changes without notice, so
+	 * this is done on filter changes and before each layout run.
+	 */
+	void invalidateConnections() {
+		connectionsVersion++;
+	}
+
+	/**
+	 * Returns a number that changes whenever the connections cached by the
+	 * nodes of this context become invalid.
+	 */
+	int getConnectionsVersion() {
+		return connectionsVersion;
 	}
 
 	boolean isLayoutItemFiltered(GraphItem item) {
@@ -344,6 +364,7 @@ class InternalLayoutContext implements LayoutContext {
 
 	void applyMainAlgorithm() {
 		if (backgorundLayoutEnabled && mainAlgorithm != null) {
+			invalidateConnections();
 			mainAlgorithm.applyLayout(true);
 			flushChanges(false);
 		}
@@ -366,12 +387,27 @@ class InternalLayoutContext implements LayoutContext {
 
 	void applyLayout(boolean clean) {
 		if (layoutAlgorithm != null) {
+			invalidateConnections();
 			externalLayoutInvocation = true;
 			layoutAlgorithm.applyLayout(clean);
 			externalLayoutInvocation = false;
 		}
 	}
 
+	/**
+	 * Transfers the results of a layout computed on the given snapshot to the
+	 * nodes and connections of this context and displays them.
+	 */
+	void applySnapshot(LayoutSnapshot snapshot) {
+		externalLayoutInvocation = true;
+		try {
+			snapshot.commit();
+		} finally {
+			externalLayoutInvocation = false;
+		}
+		flushChanges(false);
+	}
+
 	void checkChangesAllowed() {
 		if (!backgorundLayoutEnabled && !externalLayoutInvocation) {
 			throw new RuntimeException(
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import org.eclipse.draw2d.FigureListener;
 import org.eclipse.draw2d.IFigure;
@@ -51,6 +52,19 @@ class InternalNodeLayout implements NodeLayout {
 	private DefaultSubgraph subgraph;
 	private boolean isDisposed = false;
 
+	/**
+	 * Connections, neighbors and entities are cached until they are
+	 * invalidated by this node or by the owner context. The cached arrays are
+	 * never passed to clients, which get copies instead.
+	 */
+	private ConnectionLayout[] incomingConnections;
+	private ConnectionLayout[] outgoingConnections;
+	private NodeLayout[] predecessingNodes;
+	private NodeLayout[] successingNodes;
+	private EntityLayout[] predecessingEntities;
+	private EntityLayout[] successingEntities;
+	private int connectionsVersion;
+
 	public InternalNodeLayout(GraphNode graphNode) {
 		this.node = graphNode;
 		this.ownerLayoutContext = node.parent.getLayoutContext();
@@ -110,6 +124,7 @@ class InternalNodeLayout implements NodeLayout {
 			this.subgraph = (DefaultSubgraph) subgraph;
 			subgraph.addNodes(new NodeLayout[] { this });
 		}
+		invalidateNeighbors();
 	}
 
 	public void setLocation(double x, double y) {
@@ -153,69 +168,74 @@ class InternalNodeLayout implements NodeLayout {
 	}
 
 	public NodeLayout[] getPredecessingNodes() {
-		ConnectionLayout[] connections = getIncomingConnections();
-		NodeLayout[] result = new NodeLayout[connections.length];
-		for (int i = 0; i < connections.length; i++) {
-			result[i] = connections[i].getSource();
-			if (result[i] == this) {
-				result[i] = connections[i].getTarget();
-			}
-		}
-		return result;
+		validateConnections();
+		return getCachedPredecessingNodes().clone();
 	}
 
 	public NodeLayout[] getSuccessingNodes() {
-		ConnectionLayout[] connections = getOutgoingConnections();
-		NodeLayout[] result = new NodeLayout[connections.length];
-		for (int i = 0; i < connections.length; i++) {
-			result[i] = connections[i].getTarget();
-			if (result[i] == this) {
-				result[i] = connections[i].getSource();
-			}
-		}
-		return result;
+		validateConnections();
+		return getCachedSuccessingNodes().clone();
 	}
 
 	public EntityLayout[] getSuccessingEntities() {
 		if (isPruned()) {
 			return new NodeLayout[0];
 		}
-		ArrayList<EntityLayout> result = new ArrayList<EntityLayout>();
-		HashSet<SubgraphLayout> addedSubgraphs = new HashSet<SubgraphLayout>();
-		NodeLayout[] successingNodes = getSuccessingNodes();
-		for (int i = 0; i < successingNodes.length; i++) {
-			if (!successingNodes[i].isPruned()) {
-				result.add(successingNodes[i]);
-			} else {
-				SubgraphLayout successingSubgraph = successingNodes[i]
-						.getSubgraph();
-				if (successingSubgraph.isGraphEntity()
-						&& !addedSubgraphs.contains(successingSubgraph)) {
-					result.add(successingSubgraph);
-					addedSubgraphs.add(successingSubgraph);
-				}
-			}
+		validateConnections();
+		if (successingEntities == null) {
+			successingEntities = getEntities(getCachedSuccessingNodes());
 		}
-		return result.toArray(new EntityLayout[result.size()]);
+		return successingEntities.clone();
 	}
 
 	public EntityLayout[] getPredecessingEntities() {
 		if (isPruned()) {
 			return new NodeLayout[0];
 		}
+		validateConnections();
+		if (predecessingEntities == null) {
+			predecessingEntities = getEntities(getCachedPredecessingNodes());
+		}
+		return predecessingEntities.clone();
+	}
+
+	private NodeLayout[] getCachedPredecessingNodes() {
+		if (predecessingNodes == null) {
+			predecessingNodes = getOppositeNodes(getCachedIncomingConnections());
+		}
+		return predecessingNodes;
+	}
+
+	private NodeLayout[] getCachedSuccessingNodes() {
+		if (successingNodes == null) {
+			successingNodes = getOppositeNodes(getCachedOutgoingConnections());
+		}
+		return successingNodes;
+	}
+
+	private NodeLayout[] getOppositeNodes(ConnectionLayout[] connections) {
+		NodeLayout[] result = new NodeLayout[connections.length];
+		for (int i = 0; i < connections.length; i++) {
+			result[i] = connections[i].getSource();
+			if (result[i] == this) {
+				result[i] = connections[i].getTarget();
+			}
+		}
+		return result;
+	}
+
+	private static EntityLayout[] getEntities(NodeLayout[] nodes) {
 		ArrayList<EntityLayout> result = new ArrayList<EntityLayout>();
 		HashSet<SubgraphLayout> addedSubgraphs = new HashSet<SubgraphLayout>();
-		NodeLayout[] predecessingNodes = getPredecessingNodes();
-		for (int i = 0; i < predecessingNodes.length; i++) {
-			if (!predecessingNodes[i].isPruned()) {
-				result.add(predecessingNodes[i]);
+		for (int i = 0; i < nodes.length; i++) {
+			if (!nodes[i].isPruned()) {
+				result.add(nodes[i]);
 			} else {
-				SubgraphLayout predecessingSubgraph = predecessingNodes[i]
-						.getSubgraph();
-				if (predecessingSubgraph.isGraphEntity()
-						&& !addedSubgraphs.contains(predecessingSubgraph)) {
-					result.add(predecessingSubgraph);
-					addedSubgraphs.add(predecessingSubgraph);
+				SubgraphLayout subgraph = nodes[i].getSubgraph();
+				if (subgraph.isGraphEntity()
+						&& !addedSubgraphs.contains(subgraph)) {
+					result.add(subgraph);
+					addedSubgraphs.add(subgraph);
 				}
 			}
 		}
@@ -223,15 +243,48 @@ class InternalNodeLayout implements NodeLayout {
 	}
 
 	public ConnectionLayout[] getIncomingConnections() {
+		validateConnections();
+		return getCachedIncomingConnections().clone();
+	}
+
+	public ConnectionLayout[] getOutgoingConnections() {
+		validateConnections();
+		return getCachedOutgoingConnections().clone();
+	}
+
+	private ConnectionLayout[] getCachedIncomingConnections() {
+		if (incomingConnections == null) {
+			incomingConnections = collectConnections(
+					node.getTargetConnections(), node.getSourceConnections());
+		}
+		return incomingConnections;
+	}
+
+	private ConnectionLayout[] getCachedOutgoingConnections() {
+		if (outgoingConnections == null) {
+			outgoingConnections = collectConnections(
+					node.getSourceConnections(), node.getTargetConnections());
+		}
+		return outgoingConnections;
+	}
+
+	/**
+	 * Returns the layouts of all given directed connections and of the given
+	 * reverse connections that are not directed, leaving out filtered
+	 * connections.
+	 */
+	private ConnectionLayout[] collectConnections(
+			List<GraphConnection> connections,
+			List<GraphConnection> reverseConnections) {
 		ArrayList<InternalConnectionLayout> result = new ArrayList<InternalConnectionLayout>();
-		for (Iterator<GraphConnection> iterator = node.getTargetConnections()
-				.iterator(); iterator.hasNext();) {
+		for (Iterator<GraphConnection> iterator = connections.iterator(); iterator
+				.hasNext();) {
 			GraphConnection connection = iterator.next();
 			if (!ownerLayoutContext.isLayoutItemFiltered(connection)) {
 				result.add(connection.getLayout());
 			}
 		}
-		for (Iterator<GraphConnection> iterator = node.getSourceConnections()
+		for (Iterator<GraphConnection> iterator = reverseConnections
 				.iterator(); iterator.hasNext();) {
 			GraphConnection connection = iterator.next();
 			if (!connection.isDirected()
@@ -242,24 +295,43 @@ class InternalNodeLayout implements NodeLayout {
 		return result.toArray(new ConnectionLayout[result.size()]);
 	}
 
-	public ConnectionLayout[] getOutgoingConnections() {
-		ArrayList<InternalConnectionLayout> result = new ArrayList<InternalConnectionLayout>();
+	/**
+	 * Discards the cached connections if the owner context has invalidated
+	 * them since they were collected.
+	 */
+	private void validateConnections() {
+		int version = ownerLayoutContext.getConnectionsVersion();
+		if (connectionsVersion != version) {
+			invalidateConnections();
+			connectionsVersion = version;
+		}
+	}
+
+	/**
+	 * Discards the cached connections, neighbors and entities of this node.
+	 */
+	void invalidateConnections() {
+		incomingConnections = null;
+		outgoingConnections = null;
+		predecessingNodes = null;
+		successingNodes = null;
+		predecessingEntities = null;
+		successingEntities = null;
+	}
+
+	/**
+	 * Discards the cached entities of the neighbors of this node, which
+	 * depend on whether this node is pruned.
+	 */
+	private void invalidateNeighbors() {
 		for (Iterator<GraphConnection> iterator = node.getSourceConnections()
 				.iterator(); iterator.hasNext();) {
-			GraphConnection connection = iterator.next();
-			if (!ownerLayoutContext.isLayoutItemFiltered(connection)) {
-				result.add(connection.getLayout());
-			}
+			iterator.next().getDestination().invalidateLayoutConnections();
 		}
 		for (Iterator<GraphConnection> iterator = node.getTargetConnections()
 				.iterator(); iterator.hasNext();) {
-			GraphConnection connection = iterator.next();
-			if (!connection.isDirected()
-					&& !ownerLayoutContext.isLayoutItemFiltered(connection)) {
-				result.add(connection.getLayout());
-			}
+			iterator.next().getSource().invalidateLayoutConnections();
 		}
-		return result.toArray(new ConnectionLayout[result.size()]);
 	}
 
 	public double getPreferredAspectRatio() {
@@ -0,0 +1,457 @@
+/*******************************************************************************
+ * Copyright (c) 2014 itemis AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     itemis AG - initial API and implementation
+ *
+ *******************************************************************************/
+package org.eclipse.gef4.zest.core.widgets;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.gef4.geometry.planar.Dimension;
+import org.eclipse.gef4.geometry.planar.Point;
+import org.eclipse.gef4.geometry.planar.Rectangle;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.ConnectionLayout;
+import org.eclipse.gef4.layout.interfaces.ContextListener;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.ExpandCollapseManager;
+import org.eclipse.gef4.layout.interfaces.GraphStructureListener;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.LayoutListener;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
+import org.eclipse.gef4.layout.interfaces.PruningListener;
+import org.eclipse.gef4.layout.interfaces.SubgraphLayout;
+import org.eclipse.gef4.zest.core.widgets.GraphConnection.InternalConnectionLayout;
+
+/**
+ * A copy of the nodes (with their locations and sizes) and connections of an
+ * {@link InternalLayoutContext}, on which a {@link LayoutAlgorithm} can be run
+ * outside of the UI thread. The results are transferred to the graph by
+ * {@link InternalLayoutContext#applySnapshot(LayoutSnapshot)}.
+ * <p>
+ * The snapshot does not support subgraphs, pruning and events. Once it has
+ * been cancelled, any further access to its nodes and connections aborts the
+ * running algorithm with a {@link CancellationException}.
+ */
+class LayoutSnapshot implements LayoutContext {
+
+	private final InternalNodeLayout[] originalNodes;
+	private final SnapshotNode[] nodes;
+	private final InternalConnectionLayout[] originalConnections;
+	private final SnapshotConnection[] connections;
+	private final Rectangle bounds;
+	private LayoutAlgorithm mainAlgorithm;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Copies the nodes and connections of the given context, which are not
+	 * filtered. Has to be called on the UI thread.
+	 *
+	 * @param context
+	 *            the context to copy
+	 */
+	LayoutSnapshot(InternalLayoutContext context) {
+		bounds = context.getBounds();
+		NodeLayout[] contextNodes = context.getNodes();
+		originalNodes = new InternalNodeLayout[contextNodes.length];
+		nodes = new SnapshotNode[contextNodes.length];
+		IdentityHashMap<NodeLayout, SnapshotNode> nodeMap = new IdentityHashMap<NodeLayout, SnapshotNode>();
+		for (int i = 0; i < contextNodes.length; i++) {
+			originalNodes[i] = (InternalNodeLayout) contextNodes[i];
+			nodes[i] = new SnapshotNode(originalNodes[i]);
+			nodeMap.put(contextNodes[i], nodes[i]);
+		}
+
+		ConnectionLayout[] contextConnections = context.getConnections();
+		List<InternalConnectionLayout> originals = new ArrayList<InternalConnectionLayout>();
+		List<SnapshotConnection> copies = new ArrayList<SnapshotConnection>();
+		for (int i = 0; i < contextConnections.length; i++) {
+			SnapshotNode source = nodeMap.get(contextConnections[i]
+					.getSource());
+			SnapshotNode target = nodeMap.get(contextConnections[i]
+					.getTarget());
+			if (source != null && target != null) {
+				originals
+						.add((InternalConnectionLayout) contextConnections[i]);
+				copies.add(new SnapshotConnection(contextConnections[i],
+						source, target));
+			}
+		}
+		originalConnections = originals
+				.toArray(new InternalConnectionLayout[originals.size()]);
+		connections = copies.toArray(new SnapshotConnection[copies.size()]);
+		for (int i = 0; i < connections.length; i++) {
+			connections[i].source.add(connections[i]);
+			if (connections[i].target != connections[i].source) {
+				connections[i].target.add(connections[i]);
+			}
+		}
+	}
+
+	/**
+	 * Marks this snapshot as outdated, so that the algorithm running on it is
+	 * aborted as soon as it accesses the nodes or connections, and its results
+	 * are not applied.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	private void checkNotCancelled() {
+		if (cancelled) {
+			throw new CancellationException("The layout has been cancelled.");
+		}
+	}
+
+	/**
+	 * Transfers the changed locations, sizes and visibilities to the original
+	 * nodes and connections, which have not been disposed in the meantime.
+	 * Has to be called on the UI thread, while changes are allowed.
+	 */
+	void commit() {
+		for (int i = 0; i < nodes.length; i++) {
+			InternalNodeLayout original = originalNodes[i];
+			SnapshotNode node = nodes[i];
+			if (original.isDisposed()) {
+				continue;
+			}
+			if (node.minimized != original.isMinimized()) {
+				original.setMinimized(node.minimized);
+			}
+			if (node.resized) {
+				original.setSize(node.width, node.height);
+			}
+			if (node.moved) {
+				original.setLocation(node.x, node.y);
+			}
+		}
+		for (int i = 0; i < connections.length; i++) {
+			if (connections[i].visible != originalConnections[i].isVisible()) {
+				originalConnections[i].setVisible(connections[i].visible);
+			}
+		}
+	}
+
+	public NodeLayout[] getNodes() {
+		checkNotCancelled();
+		NodeLayout[] result = new NodeLayout[nodes.length];
+		System.arraycopy(nodes, 0, result, 0, nodes.length);
+		return result;
+	}
+
+	public ConnectionLayout[] getConnections() {
+		checkNotCancelled();
+		ConnectionLayout[] result = new ConnectionLayout[connections.length];
+		System.arraycopy(connections, 0, result, 0, connections.length);
+		return result;
+	}
+
+	public EntityLayout[] getEntities() {
+		checkNotCancelled();
+		EntityLayout[] result = new EntityLayout[nodes.length];
+		System.arraycopy(nodes, 0, result, 0, nodes.length);
+		return result;
+	}
+
+	public ConnectionLayout[] getConnections(EntityLayout layoutEntity1,
+			EntityLayout layoutEntity2) {
+		checkNotCancelled();
+		List<ConnectionLayout> result = new ArrayList<ConnectionLayout>();
+		if (layoutEntity1 instanceof SnapshotNode) {
+			for (SnapshotConnection connection : ((SnapshotNode) layoutEntity1).connections) {
+				if ((connection.source == layoutEntity1 && connection.target == layoutEntity2)
+						|| (connection.source == layoutEntity2 && connection.target == layoutEntity1)) {
+					result.add(connection);
+				}
+			}
+		}
+		return result.toArray(new ConnectionLayout[result.size()]);
+	}
+
+	public Rectangle getBounds() {
+		return bounds.getCopy();
+	}
+
+	public boolean isBoundsExpandable() {
+		return false;
+	}
+
+	public SubgraphLayout[] getSubgraphs() {
+		return new SubgraphLayout[0];
+	}
+
+	public SubgraphLayout createSubgraph(NodeLayout[] nodes) {
+		throw new UnsupportedOperationException(
+				"Subgraphs are not supported by layouts running in a separate thread.");
+	}
+
+	public boolean isPruningEnabled() {
+		return false;
+	}
+
+	public boolean isBackgroundLayoutEnabled() {
+		return false;
+	}
+
+	public void setMainLayoutAlgorithm(LayoutAlgorithm algorithm) {
+		mainAlgorithm = algorithm;
+	}
+
+	public LayoutAlgorithm getMainLayoutAlgorithm() {
+		return mainAlgorithm;
+	}
+
+	public void setExpandCollapseManager(
+			ExpandCollapseManager expandCollapseManager) {
+	}
+
+	public ExpandCollapseManager getExpandCollapseManager() {
+		return null;
+	}
+
+	// a snapshot does not change, so there are no events to fire
+	public void addLayoutListener(LayoutListener listener) {
+	}
+
+	public void removeLayoutListener(LayoutListener listener) {
+	}
+
+	public void addGraphStructureListener(GraphStructureListener listener) {
+	}
+
+	public void removeGraphStructureListener(GraphStructureListener listener) {
+	}
+
+	public void addContextListener(ContextListener listener) {
+	}
+
+	public void removeContextListener(ContextListener listener) {
+	}
+
+	public void addPruningListener(PruningListener listener) {
+	}
+
+	public void removePruningListener(PruningListener listener) {
+	}
+
+	public void flushChanges(boolean animationHint) {
+		// changes are applied when the layout has finished
+	}
+
+	private class SnapshotNode implements NodeLayout {
+
+		private final Object[] items;
+		private final boolean resizable;
+		private final boolean movable;
+		private final double preferredAspectRatio;
+		private final List<SnapshotConnection> connections = new ArrayList<SnapshotConnection>();
+		private double x, y, width, height;
+		private boolean minimized;
+		private boolean moved = false;
+		private boolean resized = false;
+
+		SnapshotNode(InternalNodeLayout original) {
+			items = original.getItems();
+			resizable = original.isResizable();
+			movable = original.isMovable();
+			preferredAspectRatio = original.getPreferredAspectRatio();
+			Point location = original.getLocation();
+			x = location.x;
+			y = location.y;
+			Dimension size = original.getSize();
+			width = size.width;
+			height = size.height;
+			minimized = original.isMinimized();
+		}
+
+		void add(SnapshotConnection connection) {
+			connections.add(connection);
+		}
+
+		public Point getLocation() {
+			checkNotCancelled();
+			return new Point(x, y);
+		}
+
+		public void setLocation(double x, double y) {
+			checkNotCancelled();
+			this.x = x;
+			this.y = y;
+			moved = true;
+		}
+
+		public Dimension getSize() {
+			checkNotCancelled();
+			return new Dimension(width, height);
+		}
+
+		public void setSize(double width, double height) {
+			checkNotCancelled();
+			this.width = width;
+			this.height = height;
+			resized = true;
+		}
+
+		public double getPreferredAspectRatio() {
+			return preferredAspectRatio;
+		}
+
+		public boolean isResizable() {
+			return resizable;
+		}
+
+		public boolean isMovable() {
+			return movable;
+		}
+
+		public EntityLayout[] getSuccessingEntities() {
+			return getSuccessingNodes();
+		}
+
+		public EntityLayout[] getPredecessingEntities() {
+			return getPredecessingNodes();
+		}
+
+		public Object[] getItems() {
+			return items;
+		}
+
+		public boolean isPrunable() {
+			return false;
+		}
+
+		public boolean isPruned() {
+			return false;
+		}
+
+		public SubgraphLayout getSubgraph() {
+			return null;
+		}
+
+		public void prune(SubgraphLayout subgraph) {
+			if (subgraph != null) {
+				throw new UnsupportedOperationException(
+						"Pruning is not supported by layouts running in a separate thread.");
+			}
+		}
+
+		public NodeLayout[] getSuccessingNodes() {
+			ConnectionLayout[] outgoing = getOutgoingConnections();
+			NodeLayout[] result = new NodeLayout[outgoing.length];
+			for (int i = 0; i < outgoing.length; i++) {
+				result[i] = outgoing[i].getTarget();
+				if (result[i] == this) {
+					result[i] = outgoing[i].getSource();
+				}
+			}
+			return result;
+		}
+
+		public NodeLayout[] getPredecessingNodes() {
+			ConnectionLayout[] incoming = getIncomingConnections();
+			NodeLayout[] result = new NodeLayout[incoming.length];
+			for (int i = 0; i < incoming.length; i++) {
+				result[i] = incoming[i].getSource();
+				if (result[i] == this) {
+					result[i] = incoming[i].getTarget();
+				}
+			}
+			return result;
+		}
+
+		public ConnectionLayout[] getIncomingConnections() {
+			checkNotCancelled();
+			// like InternalNodeLayout, undirected connections are incoming
+			// and outgoing for both of their nodes
+			List<ConnectionLayout> result = new ArrayList<ConnectionLayout>();
+			for (SnapshotConnection connection : connections) {
+				if (connection.target == this
+						|| (connection.source == this && !connection.directed)) {
+					result.add(connection);
+				}
+			}
+			return result.toArray(new ConnectionLayout[result.size()]);
+		}
+
+		public ConnectionLayout[] getOutgoingConnections() {
+			checkNotCancelled();
+			List<ConnectionLayout> result = new ArrayList<ConnectionLayout>();
+			for (SnapshotConnection connection : connections) {
+				if (connection.source == this
+						|| (connection.target == this && !connection.directed)) {
+					result.add(connection);
+				}
+			}
+			return result.toArray(new ConnectionLayout[result.size()]);
+		}
+
+		public void setMinimized(boolean minimized) {
+			checkNotCancelled();
+			this.minimized = minimized;
+		}
+
+		public boolean isMinimized() {
+			return minimized;
+		}
+
+		public String toString() {
+			return items[0] + "(snapshot)";
+		}
+	}
+
+	private static class SnapshotConnection implements ConnectionLayout {
+
+		private final SnapshotNode source;
+		private final SnapshotNode target;
+		private final double weight;
+		private final boolean directed;
+		private boolean visible;
+
+		SnapshotConnection(ConnectionLayout original, SnapshotNode source,
+				SnapshotNode target) {
+			this.source = source;
+			this.target = target;
+			weight = original.getWeight();
+			directed = original.isDirected();
+			visible = original.isVisible();
+		}
+
+		public NodeLayout getSource() {
+			return source;
+		}
+
+		public NodeLayout getTarget() {
+			return target;
+		}
+
+		public double getWeight() {
+			return weight;
+		}
+
+		public boolean isDirected() {
+			return directed;
+		}
+
+		public void setVisible(boolean visible) {
+			this.visible = visible;
+		}
+
+		public boolean isVisible() {
+			return visible;
+		}
+	}
+
+}
@@ -8,9 +8,16 @@
  *******************************************************************************/
 package org.eclipse.gef4.zest.tests;
 
+import java.util.concurrent.CancellationException;
+
 import junit.framework.TestCase;
 
 import org.eclipse.draw2d.Figure;
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.gef4.layout.LayoutAlgorithm;
+import org.eclipse.gef4.layout.interfaces.EntityLayout;
+import org.eclipse.gef4.layout.interfaces.LayoutContext;
+import org.eclipse.gef4.layout.interfaces.NodeLayout;
 import org.eclipse.gef4.zest.core.widgets.GraphConnection;
 import org.eclipse.gef4.zest.core.widgets.GraphItem;
 import org.eclipse.gef4.zest.core.widgets.GraphNode;
@@ -18,6 +25,8 @@ import org.eclipse.gef4.zest.core.widgets.GraphWidget;
 import org.eclipse.gef4.zest.core.widgets.ZestStyles;
 import org.eclipse.gef4.zest.core.widgets.internal.ZestRootLayer;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
 
 /**
@@ -144,4 +153,240 @@ public class GraphTests extends TestCase {
 		assertTrue("Graph animation can be enabled", g.isAnimationEnabled());
 	}
 
+	/**
+	 * Check that threaded layout is disabled by default and can be enabled and
+	 * disabled later.
+	 */
+	public void testZestGraphThreadedLayoutEnabled() {
+		GraphWidget g = new GraphWidget(shell, ZestStyles.NONE);
+		assertFalse("Graph should have threaded layout disabled by default",
+				g.isThreadedLayoutEnabled());
+		g.setThreadedLayout(true);
+		assertTrue("Threaded layout can be enabled",
+				g.isThreadedLayoutEnabled());
+		g.setThreadedLayout(false);
+		assertFalse("Threaded layout can be disabled",
+				g.isThreadedLayoutEnabled());
+	}
+
+	/**
+	 * Check that a threaded layout runs outside of the UI thread and that its
+	 * results are applied to the graph when it has finished.
+	 */
+	public void testZestGraphThreadedLayout() {
+		shell.setLayout(new FillLayout());
+		shell.open();
+		graph.setThreadedLayout(true);
+		TestLayoutAlgorithm algorithm = new TestLayoutAlgorithm(false);
+		graph.setLayoutAlgorithm(algorithm, true);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!algorithm.finished && System.currentTimeMillis() < deadline) {
+			dispatch();
+		}
+		assertTrue("Threaded layout should finish", algorithm.finished);
+		assertNotSame("Layout should not run on the UI thread",
+				shell.getDisplay().getThread(), algorithm.layoutThread);
+		while (Math.abs(getCenter(nodes[1]).x - 200) > 1
+				&& System.currentTimeMillis() < deadline) {
+			// wait for the results to be applied on the UI thread
+			dispatch();
+		}
+		assertCenter(nodes[0], 100, 100);
+		assertCenter(nodes[1], 200, 100);
+	}
+
+	/**
+	 * Check that a running threaded layout is aborted when threaded layout is
+	 * disabled, that its results are discarded, and that the algorithm is
+	 * bound to the graph again.
+	 */
+	public void testZestGraphThreadedLayoutCancelled() {
+		shell.setLayout(new FillLayout());
+		shell.open();
+		graph.setThreadedLayout(true);
+		TestLayoutAlgorithm algorithm = new TestLayoutAlgorithm(true);
+		graph.setLayoutAlgorithm(algorithm, true);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!algorithm.started && System.currentTimeMillis() < deadline) {
+			dispatch();
+		}
+		assertTrue("Threaded layout should start", algorithm.started);
+		Point location = nodes[0].getLocation().getCopy();
+		graph.setThreadedLayout(false);
+		assertTrue("Layout should be cancelled", algorithm.cancelled);
+		assertFalse("Layout should not finish", algorithm.finished);
+		assertSame("Algorithm should be bound on the UI thread",
+				shell.getDisplay().getThread(), algorithm.contextThread);
+		while (shell.getDisplay().readAndDispatch()) {
+			// process the notification of the worker thread
+		}
+		assertEquals("Results of a cancelled layout should be discarded",
+				location, nodes[0].getLocation());
+	}
+
+	/**
+	 * Check that an error thrown by a threaded layout is rethrown on the UI
+	 * thread and that later threaded layouts still run.
+	 */
+	public void testZestGraphThreadedLayoutError() {
+		shell.setLayout(new FillLayout());
+		shell.open();
+		graph.setThreadedLayout(true);
+		graph.setLayoutAlgorithm(new LayoutAlgorithm() {
+			public void setLayoutContext(LayoutContext context) {
+			}
+
+			public void applyLayout(boolean clean) {
+				throw new AssertionError("layout failed");
+			}
+		}, true);
+		AssertionError error = null;
+		long deadline = System.currentTimeMillis() + 10000;
+		while (error == null && System.currentTimeMillis() < deadline) {
+			try {
+				dispatch();
+			} catch (AssertionError e) {
+				error = e;
+			}
+		}
+		assertNotNull("Error should be rethrown on the UI thread", error);
+		assertEquals("layout failed", error.getMessage());
+
+		TestLayoutAlgorithm algorithm = new TestLayoutAlgorithm(false);
+		graph.setLayoutAlgorithm(algorithm, true);
+		while (!algorithm.finished && System.currentTimeMillis() < deadline) {
+			dispatch();
+		}
+		assertTrue("Threaded layout should run after an error",
+				algorithm.finished);
+	}
+
+	/**
+	 * Check that the connections and neighbors cached by a node layout are
+	 * updated when connections are added to or removed from the node.
+	 */
+	public void testNodeLayoutConnectionsAddedAndRemoved() {
+		connection.setConnectionStyle(ZestStyles.CONNECTIONS_DIRECTED);
+		NodeLayout source = nodes[0].getLayout();
+		NodeLayout target = nodes[1].getLayout();
+		assertEquals(1, source.getOutgoingConnections().length);
+		assertEquals(1, source.getSuccessingNodes().length);
+		assertSame(target, source.getSuccessingNodes()[0]);
+
+		GraphNode node = new GraphNode(graph, STYLE);
+		NodeLayout layout = node.getLayout();
+		assertEquals(0, layout.getPredecessingNodes().length);
+		GraphConnection added = new GraphConnection(graph,
+				ZestStyles.CONNECTIONS_DIRECTED, nodes[0], node);
+		assertEquals(2, source.getOutgoingConnections().length);
+		assertEquals(2, source.getSuccessingEntities().length);
+		assertSame(layout, source.getSuccessingNodes()[1]);
+		assertEquals(1, layout.getIncomingConnections().length);
+		assertSame(source, layout.getPredecessingNodes()[0]);
+
+		added.dispose();
+		assertEquals(1, source.getOutgoingConnections().length);
+		assertEquals(1, source.getSuccessingEntities().length);
+		assertSame(target, source.getSuccessingNodes()[0]);
+		assertEquals(0, layout.getIncomingConnections().length);
+		assertEquals(0, layout.getPredecessingNodes().length);
+	}
+
+	/**
+	 * Check that the connections and neighbors cached by a node layout are
+	 * updated when a connection of the node changes its direction.
+	 */
+	public void testNodeLayoutConnectionStyle() {
+		connection.setConnectionStyle(ZestStyles.CONNECTIONS_DIRECTED);
+		NodeLayout source = nodes[0].getLayout();
+		NodeLayout target = nodes[1].getLayout();
+		assertEquals(0, source.getIncomingConnections().length);
+		assertEquals(0, target.getOutgoingConnections().length);
+		assertEquals(0, target.getSuccessingNodes().length);
+
+		// undirected connections are incoming and outgoing on both sides
+		connection.setConnectionStyle(ZestStyles.NONE);
+		assertEquals(1, source.getIncomingConnections().length);
+		assertSame(target, source.getPredecessingNodes()[0]);
+		assertEquals(1, target.getOutgoingConnections().length);
+		assertSame(source, target.getSuccessingNodes()[0]);
+		assertSame(source, target.getSuccessingEntities()[0]);
+
+		connection.setConnectionStyle(ZestStyles.CONNECTIONS_DIRECTED);
+		assertEquals(0, source.getIncomingConnections().length);
+		assertEquals(0, source.getPredecessingNodes().length);
+		assertEquals(0, target.getOutgoingConnections().length);
+		assertEquals(0, target.getSuccessingEntities().length);
+		assertEquals(1, source.getOutgoingConnections().length);
+	}
+
+	private void dispatch() {
+		if (!shell.getDisplay().readAndDispatch()) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static Point getCenter(GraphNode node) {
+		Point location = node.getLocation();
+		return new Point(location.x + node.getSize().width / 2, location.y
+				+ node.getSize().height / 2);
+	}
+
+	private static void assertCenter(GraphNode node, int x, int y) {
+		Point center = getCenter(node);
+		assertEquals(x, center.x, 1);
+		assertEquals(y, center.y, 1);
+	}
+
+	/**
+	 * Places the nodes in a row. If blocking, it keeps on reading the location
+	 * of the first node for up to ten seconds after moving it, to give the
+	 * test time to cancel it.
+	 */
+	private static class TestLayoutAlgorithm implements LayoutAlgorithm {
+
+		private final boolean blocking;
+		private LayoutContext context;
+		volatile Thread contextThread;
+		volatile Thread layoutThread;
+		volatile boolean started = false;
+		volatile boolean cancelled = false;
+		volatile boolean finished = false;
+
+		TestLayoutAlgorithm(boolean blocking) {
+			this.blocking = blocking;
+		}
+
+		public void setLayoutContext(LayoutContext context) {
+			this.context = context;
+			contextThread = Thread.currentThread();
+		}
+
+		public void applyLayout(boolean clean) {
+			layoutThread = Thread.currentThread();
+			started = true;
+			try {
+				EntityLayout[] entities = context.getEntities();
+				for (int i = 0; i < entities.length; i++) {
+					entities[i].setLocation(100 + 100 * i, 100);
+				}
+				long deadline = System.currentTimeMillis() + 10000;
+				while (blocking && System.currentTimeMillis() < deadline) {
+					entities[0].getLocation();
+					Thread.sleep(1);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (CancellationException e) {
+				cancelled = true;
+				throw e;
+			}
+			finished = true;
+		}
+	}
+
 }